@@ -0,0 +1,1360 @@
+package cycling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small stand-alone benchmark for the hot paths of CyclingPortalImpl.
+ * Each section builds its own portal, warms up, and then prints the average
+ * latency and the bytes allocated per operation on the current thread.
+ *
+ * @author Olly Johnson and Laith Al-Qudah
+ * @version 1.0
+ */
+public class CyclingPortalBenchmark {
+    /** Number of timed iterations for each measurement. */
+    private static final int ITERATIONS = 20_000;
+    /** Number of riders in each generated stage. */
+    private static final int RIDERS_PER_STAGE = 200;
+    /** Values returned by timed operations, kept so the JIT cannot discard them. */
+    private static long sink;
+
+    /**
+     * Runs every benchmark section.
+     *
+     * @param args not used
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    public static void main(String[] args) throws Exception {
+        benchmarkRaceIdValidation(10_000);
+        benchmarkNameValidation(100_000);
+        benchmarkTimeRepresentation(200_000);
+        benchmarkConcurrentQueries(4, 3, 500);
+        benchmarkRaceIngestion(8);
+        benchmarkStandingsReads();
+        benchmarkBatchRegistration(200);
+        benchmarkSingleRegistration(1_000, 10_000, 100_000);
+        benchmarkImport(2_500);
+        benchmarkSnapshot(10);
+        benchmarkJournal(400);
+        benchmarkSeal(10);
+        benchmarkLazyLoad(10);
+        benchmarkCompression(10);
+        benchmarkBackgroundSnapshot(10);
+        benchmarkCheckpointPoints(20_000);
+        benchmarkTopRiders(1_000);
+        benchmarkPagesAndRanks(1_000);
+        benchmarkRiderStanding(1_000);
+    }
+
+    /**
+     * Compares looking up a race through the old {@code getRaceIds()} scan with the
+     * map-based validation now used by the race queries.
+     *
+     * @param numberOfRaces The number of races to load into the portal.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkRaceIdValidation(int numberOfRaces) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        for (int i = 0; i < numberOfRaces; i++) {
+            portal.createRace("Race" + i, "Benchmark race");
+        }
+        int lastRaceId = numberOfRaces;
+        System.out.println("Race ID validation with " + numberOfRaces + " races:");
+        measure("  getRaceIds() scan", () -> {
+            int found = 0;
+            for (int id : portal.getRaceIds()) {
+                if (id == lastRaceId) {
+                    found = id;
+                    break;
+                }
+            }
+            return found;
+        });
+        measure("  map lookup (getNumberOfStages)", () -> portal.getNumberOfStages(lastRaceId));
+    }
+
+    /**
+     * Compares the regex-based name checks the portal used to perform with the single-pass
+     * validator, and then times importing teams and riders through the portal.
+     *
+     * @param numberOfTeams The number of teams (each with one rider) to import.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkNameValidation(int numberOfTeams) throws Exception {
+        String[] names = new String[numberOfTeams];
+        for (int i = 0; i < numberOfTeams; i++) {
+            names[i] = "Team" + i;
+        }
+        HashMap<String, Integer> namesInUse = new HashMap<>();
+        System.out.println("Name validation over " + numberOfTeams + " names:");
+        int[] next = new int[1];
+        measure("  regex (String.matches)", () -> {
+            String name = names[next[0]++ % names.length];
+            return legacyValidateName(name, namesInUse) ? 1 : 0;
+        });
+        measure("  single-pass validator", () -> {
+            String name = names[next[0]++ % names.length];
+            CyclingPortalImpl.validateName(name, "Team", namesInUse);
+            return name.length();
+        });
+
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        long start = System.nanoTime();
+        for (int i = 0; i < numberOfTeams; i++) {
+            int teamId = portal.createTeam(names[i], "Benchmark team");
+            portal.createRider(teamId, "Rider" + i, 1990);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  imported %d teams and riders in %.1f ms%n", numberOfTeams, elapsed / 1e6);
+    }
+
+    /**
+     * The name checks as they were written before the single-pass validator, kept as a baseline.
+     *
+     * @param name The name to be validated.
+     * @param namesInUse The names already in use.
+     * @return true if the name is valid, false otherwise.
+     */
+    private static boolean legacyValidateName(String name, Map<String, Integer> namesInUse) {
+        return name != null && !name.trim().isEmpty() && name.length() <= 30
+                && !name.matches(".*\\s.*") && !namesInUse.containsKey(name);
+    }
+
+    /**
+     * Compares ranking and summing stage times held as one object per result with LocalTime
+     * fields, as stage results used to be stored, with the primitive columns of StageResultTable,
+     * and estimates the heap used per result by each. Results are split into stages of
+     * {@value #RIDERS_PER_STAGE} riders.
+     *
+     * @param numberOfResults The number of stage results to generate.
+     * @throws Exception If a timed operation fails.
+     */
+    private static void benchmarkTimeRepresentation(int numberOfResults) throws Exception {
+        Random random = new Random(42);
+        long[][] nanos = new long[numberOfResults][];
+        for (int i = 0; i < numberOfResults; i++) {
+            long start = 10 * 3_600_000_000_000L + random.nextInt(60) * 60_000_000_000L;
+            long finish = start + 4 * 3_600_000_000_000L + random.nextInt(3_600) * 1_000_000_000L + random.nextInt(1_000_000_000);
+            nanos[i] = new long[] {start, (start + finish) / 2, finish};
+        }
+        int numberOfStages = numberOfResults / RIDERS_PER_STAGE;
+        System.out.println("Stage result storage over " + numberOfResults + " results in " + numberOfStages + " stages:");
+
+        long heapBefore = usedHeap();
+        LegacyStageResult[][] legacy = new LegacyStageResult[numberOfStages][RIDERS_PER_STAGE];
+        for (int i = 0; i < numberOfStages * RIDERS_PER_STAGE; i++) {
+            legacy[i / RIDERS_PER_STAGE][i % RIDERS_PER_STAGE] = new LegacyStageResult(nanos[i]);
+        }
+        long legacyBytes = usedHeap() - heapBefore;
+        heapBefore = usedHeap();
+        StageResultTable[] tables = new StageResultTable[numberOfStages];
+        for (int i = 0; i < numberOfStages * RIDERS_PER_STAGE; i++) {
+            if (i % RIDERS_PER_STAGE == 0) {
+                tables[i / RIDERS_PER_STAGE] = new StageResultTable();
+            }
+            tables[i / RIDERS_PER_STAGE].insert(i, nanos[i]);
+        }
+        long columnarBytes = usedHeap() - heapBefore;
+        System.out.printf("  heap per result: objects with LocalTime %d B, columns %d B%n",
+                legacyBytes / (numberOfStages * RIDERS_PER_STAGE), columnarBytes / (numberOfStages * RIDERS_PER_STAGE));
+
+        long legacyNanos = bestOf(5, timed(() -> {
+            long sum = 0;
+            for (LegacyStageResult[] stage : legacy) {
+                LegacyStageResult[] sorted = stage.clone();
+                Arrays.sort(sorted, (a, b) -> a.elapsedTime.compareTo(b.elapsedTime));
+                //sum the stage the way the general classification used to add LocalTimes
+                LocalTime total = LocalTime.MIN;
+                for (LegacyStageResult result : sorted) {
+                    total = LocalTime.ofNanoOfDay((total.toNanoOfDay() + result.elapsedTime.toNanoOfDay()) % 86_400_000_000_000L);
+                }
+                sum += total.getNano();
+            }
+            return sum;
+        }));
+        long columnarNanos = bestOf(5, timed(() -> {
+            long sum = 0;
+            for (int stage = 0; stage < numberOfStages; stage++) {
+                StageResultTable table = new StageResultTable();
+                for (int i = stage * RIDERS_PER_STAGE; i < (stage + 1) * RIDERS_PER_STAGE; i++) {
+                    table.insert(i, nanos[i]);
+                }
+                for (int position = 0; position < table.size(); position++) {
+                    sum += table.getElapsedTime(table.slotAtPosition(position));
+                }
+            }
+            return sum;
+        }));
+        System.out.printf("  rank + sum (best of 5): objects with LocalTime %.1f ms, columns %.1f ms   (%d)%n",
+                legacyNanos / 1e6, columnarNanos / 1e6, sink & 1);
+    }
+
+    /**
+     * The shape of a stage result before times were stored as nanoseconds, kept as a baseline.
+     */
+    private static final class LegacyStageResult {
+        /** Times at each checkpoint. */
+        private final LocalTime[] checkpointTimes;
+        /** Elapsed time from the first to the last checkpoint. */
+        private final LocalTime elapsedTime;
+        /** Adjusted elapsed time. */
+        private final LocalTime adjustedElapsedTime;
+        /** Rank in the stage. */
+        private int rank;
+        /** Stage finishing points. */
+        private int points;
+        /** Sprint points. */
+        private int sprintPoints;
+        /** Mountain points. */
+        private int mountainPoints;
+
+        /**
+         * Creates a baseline result from nanosecond times.
+         *
+         * @param nanos The checkpoint times in nanoseconds of the day.
+         */
+        LegacyStageResult(long[] nanos) {
+            checkpointTimes = new LocalTime[nanos.length];
+            for (int i = 0; i < nanos.length; i++) {
+                checkpointTimes[i] = LocalTime.ofNanoOfDay(nanos[i]);
+            }
+            elapsedTime = LocalTime.ofNanoOfDay(nanos[nanos.length - 1] - nanos[0]);
+            adjustedElapsedTime = LocalTime.ofNanoOfDay(nanos[nanos.length - 1] - nanos[0]);
+        }
+    }
+
+    /**
+     * Measures query throughput as reader threads are added, for a CyclingPortalImpl behind one
+     * global lock (as callers had to share it before) and for ConcurrentCyclingPortalImpl, whose
+     * read lock lets queries run side by side. Each configuration is run once with readers only
+     * and once with a writer thread repeatedly deleting and re-registering results.
+     *
+     * @param numberOfRaces The number of races to generate.
+     * @param stagesPerRace The number of stages in each race.
+     * @param millis How long each configuration runs for, in milliseconds.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkConcurrentQueries(int numberOfRaces, int stagesPerRace, long millis) throws Exception {
+        CyclingPortalImpl plain = new CyclingPortalImpl();
+        ConcurrentCyclingPortalImpl concurrent = new ConcurrentCyclingPortalImpl();
+        int[][] plainIds = populate(plain, numberOfRaces, stagesPerRace, RIDERS_PER_STAGE, StageType.FLAT);
+        int[][] concurrentIds = populate(concurrent, numberOfRaces, stagesPerRace, RIDERS_PER_STAGE, StageType.FLAT);
+        Object globalLock = new Object();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Concurrent queries over " + numberOfRaces + " races of " + stagesPerRace + " stages ("
+                + cores + " cores, reads/s):");
+        System.out.printf("  %-8s %14s %14s %14s %14s%n", "readers", "global lock", "read/write", "global+writer", "r/w+writer");
+        Operation plainRead = () -> {
+            synchronized (globalLock) {
+                return query(plain, plainIds);
+            }
+        };
+        Operation plainWrite = () -> {
+            synchronized (globalLock) {
+                return rewriteResult(plain, plainIds);
+            }
+        };
+        Operation concurrentRead = () -> query(concurrent, concurrentIds);
+        Operation concurrentWrite = () -> rewriteResult(concurrent, concurrentIds);
+        //warm up both portals before anything is timed
+        throughput(1, millis, plainRead, plainWrite);
+        throughput(1, millis, concurrentRead, concurrentWrite);
+        for (int threads = 1; threads <= Math.max(4, cores); threads *= 2) {
+            System.out.printf("  %-8d %14.0f %14.0f %14.0f %14.0f%n", threads,
+                    throughput(threads, millis, plainRead, null),
+                    throughput(threads, millis, concurrentRead, null),
+                    throughput(threads, millis, plainRead, plainWrite),
+                    throughput(threads, millis, concurrentRead, concurrentWrite));
+        }
+    }
+
+    /**
+     * Measures how result registration scales with writer threads when each thread ingests a
+     * different race, where only the threads' own race locks are taken, compared with the same
+     * threads all ingesting stages of one race.
+     *
+     * @param stagesPerThread The number of stages each thread registers results for.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkRaceIngestion(int stagesPerThread) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Concurrent result ingestion, " + stagesPerThread + " stages of " + RIDERS_PER_STAGE
+                + " riders per thread (" + cores + " cores, results/s):");
+        System.out.printf("  %-8s %16s %16s%n", "writers", "one race each", "shared race");
+        //the first run only warms up
+        ingest(1, stagesPerThread, true);
+        for (int threads = 1; threads <= Math.max(4, cores); threads *= 2) {
+            System.out.printf("  %-8d %16.0f %16.0f%n", threads,
+                    ingest(threads, stagesPerThread, true), ingest(threads, stagesPerThread, false));
+        }
+    }
+
+    /**
+     * Creates empty stages in a new ConcurrentCyclingPortalImpl and times writer threads
+     * registering a result for every rider in their own stages.
+     *
+     * @param threads The number of writer threads.
+     * @param stagesPerThread The number of stages each thread fills.
+     * @param racePerThread true to give each thread its own race, false to put every stage in one race.
+     * @return The number of results registered per second.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static double ingest(int threads, int stagesPerThread, boolean racePerThread) throws Exception {
+        ConcurrentCyclingPortalImpl portal = new ConcurrentCyclingPortalImpl();
+        int[] riderIds = createRiders(portal, "Team", RIDERS_PER_STAGE);
+        int[][] stageIds = new int[threads][stagesPerThread];
+        int raceId = portal.createRace("Race", "Benchmark race");
+        for (int thread = 0; thread < threads; thread++) {
+            if (racePerThread && thread > 0) {
+                raceId = portal.createRace("Race" + thread, "Benchmark race");
+            }
+            for (int stage = 0; stage < stagesPerThread; stage++) {
+                stageIds[thread][stage] = addStage(portal, raceId, "Stage" + thread + "x" + stage,
+                        thread * stagesPerThread + stage, StageType.FLAT);
+            }
+        }
+        Thread[] writers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int thread = 0; thread < threads; thread++) {
+            int[] ownStages = stageIds[thread];
+            Random random = new Random(thread);
+            writers[thread] = new Thread(() -> {
+                try {
+                    for (int stageId : ownStages) {
+                        for (int riderId : riderIds) {
+                            portal.registerRiderResultsInStage(stageId, riderId, randomTimes(random));
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            writers[thread].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return (double) threads * stagesPerThread * RIDERS_PER_STAGE * 1e9 / elapsed;
+    }
+
+    /**
+     * Compares reading a stage ranking through the portal interface, which copies it into a new
+     * array, with reading the published standings of ConcurrentCyclingPortalImpl by position.
+     *
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkStandingsReads() throws Exception {
+        ConcurrentCyclingPortalImpl portal = new ConcurrentCyclingPortalImpl();
+        int[][] ids = populate(portal, 1, 1, RIDERS_PER_STAGE, StageType.FLAT);
+        int stageId = ids[1][0];
+        int raceId = ids[0][0];
+        System.out.println("Stage and race standings reads with " + RIDERS_PER_STAGE + " riders:");
+        measure("  getRankedAdjustedElapsedTimesInStage", () -> portal.getRankedAdjustedElapsedTimesInStage(stageId).length);
+        measure("  stage standings by position", () -> {
+            Standings standings = portal.getStageStandings(stageId);
+            long total = 0;
+            for (int position = 0; position < standings.size(); position++) {
+                total += standings.getAdjustedElapsedTime(position);
+            }
+            return total;
+        });
+        measure("  getRidersGeneralClassificationRank", () -> portal.getRidersGeneralClassificationRank(raceId).length);
+        measure("  race standings by position", () -> {
+            Standings standings = portal.getRaceStandings(raceId);
+            long total = 0;
+            for (int position = 0; position < standings.size(); position++) {
+                total += standings.getRiderId(position);
+            }
+            return total;
+        });
+    }
+
+    /**
+     * Compares registering every result of a stage one call at a time with registering them in
+     * one batch, for both portal implementations.
+     *
+     * @param numberOfStages The number of stages to fill, each with {@value #RIDERS_PER_STAGE} results.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkBatchRegistration(int numberOfStages) throws Exception {
+        Random random = new Random(3);
+        LocalTime[][][] times = new LocalTime[numberOfStages][RIDERS_PER_STAGE][];
+        for (int stage = 0; stage < numberOfStages; stage++) {
+            for (int rider = 0; rider < RIDERS_PER_STAGE; rider++) {
+                times[stage][rider] = randomTimes(random);
+            }
+        }
+        System.out.println("Registering " + numberOfStages + " stages of " + RIDERS_PER_STAGE + " results (best of 3):");
+        for (CyclingPortal portal : new CyclingPortal[] {new CyclingPortalImpl(), new ConcurrentCyclingPortalImpl()}) {
+            long oneByOne = bestOf(3, () -> registerStages(portal, times, false));
+            long batched = bestOf(3, () -> registerStages(portal, times, true));
+            System.out.printf("  %-28s one at a time %8.1f ms, batched %8.1f ms%n",
+                    portal.getClass().getSimpleName(), oneByOne / 1e6, batched / 1e6);
+        }
+    }
+
+    /**
+     * Times registering and deleting one result in a stage of ConcurrentCyclingPortalImpl that
+     * already holds every other rider's result, for growing fields. The standings are only
+     * rebuilt when read, so nothing is copied per write and the allocation stays flat as the
+     * field grows; the time that remains grows only with the array shift of each ranking insert.
+     *
+     * @param fieldSizes The numbers of riders in the stage.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkSingleRegistration(int... fieldSizes) throws Exception {
+        System.out.println("Registering and deleting one result in a full stage:");
+        Random random = new Random(5);
+        for (int fieldSize : fieldSizes) {
+            ConcurrentCyclingPortalImpl portal = new ConcurrentCyclingPortalImpl();
+            int[] riderIds = createRiders(portal, "Team", fieldSize);
+            LocalTime[][] times = new LocalTime[fieldSize - 1][];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = randomTimes(random);
+            }
+            int raceId = portal.createRace("Race", "Benchmark race");
+            int stageId = addStage(portal, raceId, "Stage", 0, StageType.FLAT);
+            portal.registerRidersResultsInStage(stageId, Arrays.copyOf(riderIds, times.length), times);
+            int lastRiderId = riderIds[fieldSize - 1];
+            LocalTime[] lastTimes = randomTimes(random);
+            portal.getStageStandings(stageId);
+            portal.getRaceStandings(raceId);
+            measure("  " + fieldSize + " riders", () -> {
+                portal.registerRiderResultsInStage(stageId, lastRiderId, lastTimes);
+                portal.deleteRiderResultsInStage(stageId, lastRiderId);
+                return lastRiderId;
+            });
+        }
+    }
+
+    /**
+     * Erases a portal, creates the stages and riders for a set of results, and times registering them.
+     *
+     * @param portal The portal to fill.
+     * @param times The times of every rider in every stage.
+     * @param batched true to register each stage with one batch call, false to register each result separately.
+     * @return The time taken to register the results, in nanoseconds.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static long registerStages(CyclingPortal portal, LocalTime[][][] times, boolean batched) throws Exception {
+        int[][] ids = prepareStages(portal, times.length);
+        int[] stageIds = ids[0];
+        int[] riderIds = ids[1];
+        long start = System.nanoTime();
+        for (int stage = 0; stage < times.length; stage++) {
+            if (batched) {
+                portal.registerRidersResultsInStage(stageIds[stage], riderIds, times[stage]);
+            } else {
+                for (int rider = 0; rider < riderIds.length; rider++) {
+                    portal.registerRiderResultsInStage(stageIds[stage], riderIds[rider], times[stage][rider]);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Erases a portal and creates {@value #RIDERS_PER_STAGE} riders and a race with the given
+     * number of stages, each with one sprint and waiting for results.
+     *
+     * @param portal The portal to fill.
+     * @param numberOfStages The number of stages to create.
+     * @return The stage IDs in the first row and the rider IDs in the second.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static int[][] prepareStages(CyclingPortal portal, int numberOfStages) throws Exception {
+        portal.eraseCyclingPortal();
+        int[] riderIds = createRiders(portal, "Team", RIDERS_PER_STAGE);
+        int raceId = portal.createRace("Race", "Benchmark race");
+        int[] stageIds = new int[numberOfStages];
+        for (int stage = 0; stage < numberOfStages; stage++) {
+            stageIds[stage] = addStage(portal, raceId, "Stage" + stage, stage, StageType.FLAT);
+        }
+        return new int[][] {stageIds, riderIds};
+    }
+
+    /**
+     * Writes a timing-system export with a result for every rider in every stage, and compares
+     * importing it line by line with {@code String.split}, {@code LocalTime.parse} and one
+     * registration per row against importing it with StageResultImporter.
+     *
+     * @param numberOfStages The number of stages in the export, each with {@value #RIDERS_PER_STAGE} rows.
+     * @throws Exception If the file cannot be written or the portal rejects any of the generated data.
+     */
+    private static void benchmarkImport(int numberOfStages) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[][] ids = prepareStages(portal, numberOfStages);
+        Path file = Files.createTempFile("results", ".csv");
+        Random random = new Random(11);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writer.write("stage,rider,start,sprint,finish\n");
+            for (int stageId : ids[0]) {
+                for (int riderId : ids[1]) {
+                    LocalTime[] times = randomTimes(random);
+                    writer.write(stageId + "," + riderId + "," + times[0] + "," + times[1] + "," + times[2] + "\n");
+                }
+            }
+        }
+        int rows = numberOfStages * RIDERS_PER_STAGE;
+        System.out.printf("Importing %d rows (%.1f MB):%n", rows, Files.size(file) / 1e6);
+        long elapsed = bestOf(1, () -> {
+            prepareStages(portal, numberOfStages);
+            long start = System.nanoTime();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+                reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(",");
+                    LocalTime[] times = new LocalTime[fields.length - 2];
+                    for (int i = 0; i < times.length; i++) {
+                        times[i] = LocalTime.parse(fields[i + 2]);
+                    }
+                    portal.registerRiderResultsInStage(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), times);
+                }
+            }
+            return System.nanoTime() - start;
+        });
+        System.out.printf("  split and LocalTime.parse %10.0f rows/s%n", rows * 1e9 / elapsed);
+        StageResultImporter.Report report = null;
+        for (int round = 0; round < 2; round++) {
+            //the first import only warms up
+            prepareStages(portal, numberOfStages);
+            report = new StageResultImporter(portal).importFile(file);
+        }
+        System.out.printf("  StageResultImporter       %10.0f rows/s (%d registered, %d rejected)%n",
+                report.getRowsPerSecond(), report.getRowsRegistered(), report.getRowsRejected());
+        Files.delete(file);
+    }
+
+    /**
+     * Measures how many results a journaled portal can make durable per second as the number
+     * of writers grows, and how many results each fsync covers thanks to group commit, against
+     * making each result durable by saving the whole portal after it.
+     *
+     * @param resultsPerWriter The number of results each writer registers, one call per result.
+     * @throws Exception If the portal rejects any of the generated data or a file cannot be written.
+     */
+    private static void benchmarkJournal(int resultsPerWriter) throws Exception {
+        System.out.printf("Durable result registration, %d results per writer:%n", resultsPerWriter);
+        System.out.printf("  %-8s %14s %16s%n", "writers", "results/s", "results/fsync");
+        for (int threads : new int[] {1, 4, 16}) {
+            Path directory = Files.createTempDirectory("journal");
+            JournaledCyclingPortalImpl portal = new JournaledCyclingPortalImpl(new ConcurrentCyclingPortalImpl(), directory);
+            int[][] ids = prepareStages(portal, threads);
+            int perWriter = Math.min(resultsPerWriter, ids[1].length);
+            long recordsBefore = portal.getRecordsAppended();
+            long syncsBefore = portal.getSyncCount();
+            Thread[] writers = new Thread[threads];
+            AtomicLong failures = new AtomicLong();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int stageId = ids[0][t];
+                writers[t] = new Thread(() -> {
+                    LocalTime startTime = LocalTime.of(12, 0);
+                    for (int rider = 0; rider < perWriter; rider++) {
+                        try {
+                            portal.registerRiderResultsInStage(stageId, ids[1][rider], startTime,
+                                    startTime.plusSeconds(3_600 + rider), startTime.plusSeconds(7_200 + rider * 3));
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            long records = portal.getRecordsAppended() - recordsBefore;
+            long syncs = portal.getSyncCount() - syncsBefore;
+            System.out.printf("  %-8d %14.0f %16.1f%s%n", threads, records * 1e9 / elapsed, (double) records / Math.max(syncs, 1),
+                    failures.get() == 0 ? "" : "   (" + failures.get() + " failed)");
+            portal.close();
+            deleteDirectory(directory);
+        }
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[][] ids = prepareStages(portal, 1);
+        Path file = Files.createTempFile("portal", ".snapshot");
+        int saves = Math.min(50, ids[1].length);
+        LocalTime startTime = LocalTime.of(12, 0);
+        long start = System.nanoTime();
+        for (int rider = 0; rider < saves; rider++) {
+            portal.registerRiderResultsInStage(ids[0][0], ids[1][rider], startTime,
+                    startTime.plusSeconds(3_600 + rider), startTime.plusSeconds(7_200 + rider * 3));
+            portal.saveCyclingPortal(file.toString());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  %-8s %14.0f %16s%n", "save all", saves * 1e9 / elapsed, "1.0");
+        Files.delete(file);
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     *
+     * @param directory The directory to delete.
+     * @throws IOException If a file cannot be deleted.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Builds a synthetic archive of several seasons, each with three grand tours of 21 stages
+     * and a full peloton, and compares saving and loading it as a binary snapshot with writing
+     * the whole portal with Java serialization, as saves used to.
+     *
+     * @param seasons The number of seasons in the archive.
+     * @throws Exception If the portal rejects any of the generated data or a file cannot be written.
+     */
+    private static void benchmarkSnapshot(int seasons) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int results = populateSeasons(portal, seasons);
+        Path snapshotFile = Files.createTempFile("portal", ".snapshot");
+        Path serializedFile = Files.createTempFile("portal", ".ser");
+        System.out.printf("Saving and loading %d seasons (%d races, %d results, best of 3):%n", seasons, seasons * 3, results);
+        CyclingPortalImpl loaded = new CyclingPortalImpl();
+        long serializedSave = bestOf(3, timed(() -> {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(serializedFile)))) {
+                out.writeObject(portal);
+            }
+            return 0;
+        }));
+        long serializedLoad = bestOf(3, timed(() -> {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(serializedFile)))) {
+                return in.readObject().hashCode();
+            }
+        }));
+        long snapshotSave = bestOf(3, timed(() -> save(portal, snapshotFile, 0)));
+        long snapshotLoad = bestOf(3, timed(() -> load(loaded, snapshotFile)));
+        System.out.printf("  Java serialization  save %8.1f ms  load %8.1f ms  %8.1f MB%n",
+                serializedSave / 1e6, serializedLoad / 1e6, Files.size(serializedFile) / 1e6);
+        System.out.printf("  binary snapshot     save %8.1f ms  load %8.1f ms  %8.1f MB%n",
+                snapshotSave / 1e6, snapshotLoad / 1e6, Files.size(snapshotFile) / 1e6);
+        Files.delete(snapshotFile);
+        Files.delete(serializedFile);
+    }
+
+    /**
+     * Fills a portal with several seasons, each with three grand tours of 21 stages whose
+     * checkpoint points have been assigned, and a result for each of 176 riders in every stage.
+     *
+     * @param portal The portal to fill.
+     * @param seasons The number of seasons to create.
+     * @return The number of results registered.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static int populateSeasons(CyclingPortal portal, int seasons) throws Exception {
+        Random random = new Random(13);
+        int[] riderIds = new int[176];
+        for (int team = 0; team < 22; team++) {
+            int teamId = portal.createTeam("Team" + team, "Benchmark team");
+            for (int rider = 0; rider < 8; rider++) {
+                riderIds[team * 8 + rider] = portal.createRider(teamId, "Rider" + rider, 1990 + rider);
+            }
+        }
+        int results = 0;
+        for (int season = 0; season < seasons; season++) {
+            for (int tour = 0; tour < 3; tour++) {
+                int raceId = portal.createRace("Tour" + tour + "Season" + season, "Grand tour");
+                for (int stage = 0; stage < 21; stage++) {
+                    int stageId = portal.addStageToRace(raceId, "S" + season + "x" + tour + "x" + stage, "Benchmark stage", 180,
+                            LocalDateTime.of(2015 + season, 5 + tour, 1 + stage, 12, 0), stage % 3 == 0 ? StageType.HIGH_MOUNTAIN : StageType.FLAT);
+                    portal.addIntermediateSprintToStage(stageId, 90);
+                    portal.addCategorizedClimbToStage(stageId, 120.0, CheckpointType.C1, 7.0, 10.0);
+                    portal.addCategorizedClimbToStage(stageId, 170.0, CheckpointType.HC, 9.0, 12.0);
+                    portal.concludeStagePreparation(stageId);
+                    LocalTime[][] times = new LocalTime[riderIds.length][];
+                    for (int rider = 0; rider < riderIds.length; rider++) {
+                        LocalTime start = LocalTime.of(12, 0);
+                        times[rider] = new LocalTime[] {start, start.plusSeconds(7_000 + random.nextInt(900)),
+                                start.plusSeconds(11_000 + random.nextInt(1_200)), start.plusSeconds(15_000 + random.nextInt(1_800)),
+                                start.plusSeconds(17_000 + random.nextInt(2_400)).plusNanos(random.nextInt(1_000_000_000))};
+                    }
+                    portal.registerRidersResultsInStage(stageId, riderIds, times);
+                    portal.getRidersPointsInStage(stageId);
+                    results += riderIds.length;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Builds the same multi-season archive as {@link #benchmarkSnapshot(int)} and seals every
+     * race into a memory-mapped archive file, comparing the heap held by the portal before and
+     * after, and the speed of the stage and classification queries on the heap and from the
+     * mapped files.
+     *
+     * @param seasons The number of seasons in the archive.
+     * @throws Exception If the portal rejects any of the generated data or a file cannot be written.
+     */
+    private static void benchmarkSeal(int seasons) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int results = populateSeasons(portal, seasons);
+        int[] raceIds = portal.getRaceIds();
+        int[] stageIds = portal.getRaceStages(raceIds[0]);
+        System.out.printf("Sealing %d seasons (%d races, %d results):%n", seasons, raceIds.length, results);
+        measure("  heap stage ranking", () -> portal.getRidersRankInStage(stageIds[3]).length);
+        measure("  heap stage points", () -> portal.getRidersPointsInStage(stageIds[3]).length);
+        measure("  heap general classification", () -> portal.getRidersGeneralClassificationRank(raceIds[0]).length);
+        measure("  heap rider times", () -> portal.getRiderResultsInStage(stageIds[3], 100).length);
+        long heapBefore = usedHeap();
+        Path directory = Files.createTempDirectory("archive");
+        long start = System.nanoTime();
+        for (int raceId : raceIds) {
+            portal.sealRace(raceId, directory.resolve("race-" + raceId + ".cypa").toString());
+        }
+        long sealing = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+        long archiveBytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                archiveBytes += Files.size(file);
+            }
+        }
+        measure("  sealed stage ranking", () -> portal.getRidersRankInStage(stageIds[3]).length);
+        measure("  sealed stage points", () -> portal.getRidersPointsInStage(stageIds[3]).length);
+        measure("  sealed general classification", () -> portal.getRidersGeneralClassificationRank(raceIds[0]).length);
+        measure("  sealed rider times", () -> portal.getRiderResultsInStage(stageIds[3], 100).length);
+        System.out.printf("  heap in use before sealing %8.1f MB, after %8.1f MB%n", heapBefore / 1e6, heapAfter / 1e6);
+        System.out.printf("  sealing took %8.1f ms, archive files %8.1f MB%n", sealing / 1e6, archiveBytes / 1e6);
+        portal.eraseCyclingPortal();
+        deleteDirectory(directory);
+    }
+
+    /**
+     * Saves the same multi-season archive as {@link #benchmarkSnapshot(int)} and compares loading
+     * it whole with loading it lazily: the time to open the file, the heap in use afterwards, the
+     * time to read one race on its first query, and the heap in use after every race has been
+     * queried once with only a few kept on the heap.
+     *
+     * @param seasons The number of seasons in the archive.
+     * @throws Exception If the portal rejects any of the generated data or a file cannot be written.
+     */
+    private static void benchmarkLazyLoad(int seasons) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int results = populateSeasons(portal, seasons);
+        Path snapshotFile = Files.createTempFile("portal", ".snapshot");
+        portal.saveCyclingPortal(snapshotFile.toString());
+        portal.eraseCyclingPortal();
+        System.out.printf("Loading %d seasons lazily (%d races, %d results):%n", seasons, seasons * 3, results);
+        long start = System.nanoTime();
+        portal.loadCyclingPortal(snapshotFile.toString());
+        long eagerLoad = System.nanoTime() - start;
+        long eagerHeap = usedHeap();
+        portal.eraseCyclingPortal();
+        start = System.nanoTime();
+        portal.loadCyclingPortalLazily(snapshotFile.toString(), 4);
+        long lazyLoad = System.nanoTime() - start;
+        long lazyHeap = usedHeap();
+        int[] raceIds = portal.getRaceIds();
+        start = System.nanoTime();
+        portal.getRidersGeneralClassificationRank(raceIds[0]);
+        long firstQuery = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int raceId : raceIds) {
+            portal.getRidersGeneralClassificationRank(raceId);
+        }
+        long everyRace = System.nanoTime() - start;
+        long boundedHeap = usedHeap();
+        measure("  query of a race held on the heap", () -> portal.getRidersGeneralClassificationRank(raceIds[raceIds.length - 1]).length);
+        System.out.printf("  whole load %8.1f ms, heap in use %8.1f MB%n", eagerLoad / 1e6, eagerHeap / 1e6);
+        System.out.printf("  lazy load  %8.1f ms, heap in use %8.1f MB%n", lazyLoad / 1e6, lazyHeap / 1e6);
+        System.out.printf("  first query of a race %8.2f ms, every race once %8.2f ms per race%n",
+                firstQuery / 1e6, everyRace / 1e6 / raceIds.length);
+        System.out.printf("  heap in use after querying every race with 4 kept %8.1f MB%n", boundedHeap / 1e6);
+        portal.eraseCyclingPortal();
+        Files.delete(snapshotFile);
+    }
+
+    /**
+     * Saves the same multi-season archive as {@link #benchmarkSnapshot(int)} as a plain snapshot
+     * and as compressed snapshots at the fastest, default and smallest compression levels,
+     * reporting each file's size, its ratio to the plain snapshot, and how fast it is saved and
+     * loaded, measured in megabytes of plain snapshot per second.
+     *
+     * @param seasons The number of seasons in the archive.
+     * @throws Exception If the portal rejects any of the generated data or a file cannot be written.
+     */
+    private static void benchmarkCompression(int seasons) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int results = populateSeasons(portal, seasons);
+        Path file = Files.createTempFile("portal", ".snapshot");
+        CyclingPortalImpl loaded = new CyclingPortalImpl();
+        System.out.printf("Compressing %d seasons (%d races, %d results, best of 3):%n", seasons, seasons * 3, results);
+        long plainBytes = 0;
+        for (int level : new int[] {0, 1, 6, 9}) {
+            long save = bestOf(3, timed(() -> save(portal, file, level)));
+            long load = bestOf(3, timed(() -> load(loaded, file)));
+            long bytes = Files.size(file);
+            if (level == 0) {
+                plainBytes = bytes;
+            }
+            System.out.printf("  %-12s %8.2f MB  ratio %5.2f  save %7.1f ms (%6.1f MB/s)  load %7.1f ms (%6.1f MB/s)%n",
+                    level == 0 ? "plain" : "level " + level, bytes / 1e6, (double) plainBytes / bytes,
+                    save / 1e6, plainBytes * 1e3 / save, load / 1e6, plainBytes * 1e3 / load);
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * Saves the same multi-season archive as {@link #benchmarkSnapshot(int)} in the background
+     * while a writer thread keeps registering and deleting results in a live stage, comparing the
+     * writer's throughput and worst registration latency with and without a snapshot being
+     * written. A save holding the portal lock throughout would stall the writer for the whole
+     * capture and write time; a background save only stalls it for the capture.
+     *
+     * @param seasons The number of seasons in the archive.
+     * @throws Exception If the portal rejects any of the generated data or a file cannot be written.
+     */
+    private static void benchmarkBackgroundSnapshot(int seasons) throws Exception {
+        ConcurrentCyclingPortalImpl portal = new ConcurrentCyclingPortalImpl();
+        int results = populateSeasons(portal, seasons);
+        int[] riderIds = createRiders(portal, "LiveTeam", RIDERS_PER_STAGE);
+        int raceId = portal.createRace("LiveRace", "Benchmark race");
+        int stageId = addStage(portal, raceId, "LiveStage", 0, StageType.FLAT);
+        Path file = Files.createTempFile("portal", ".snapshot");
+
+        //phase 0 is idle, phase 1 is while snapshots are saved in the background, and -1 stops the writer
+        AtomicInteger phase = new AtomicInteger();
+        AtomicLong[] calls = {new AtomicLong(), new AtomicLong()};
+        AtomicLong[] worst = {new AtomicLong(), new AtomicLong()};
+        Thread writer = new Thread(() -> {
+            Random random = new Random(5);
+            try {
+                int current;
+                for (int i = 0; (current = phase.get()) >= 0; i++) {
+                    int riderId = riderIds[i % riderIds.length];
+                    long start = System.nanoTime();
+                    if (i / riderIds.length % 2 == 0) {
+                        portal.registerRiderResultsInStage(stageId, riderId, randomTimes(random));
+                    } else {
+                        portal.deleteRiderResultsInStage(stageId, riderId);
+                    }
+                    long latency = System.nanoTime() - start;
+                    calls[current].incrementAndGet();
+                    worst[current].accumulateAndGet(latency, Math::max);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        long idleStart = System.nanoTime();
+        Thread.sleep(1_000);
+        long idle = System.nanoTime() - idleStart;
+        phase.set(1);
+        int snapshots = 5;
+        long capture = 0;
+        long write = 0;
+        long worstCapture = 0;
+        long bytes = 0;
+        long savingStart = System.nanoTime();
+        for (int i = 0; i < snapshots; i++) {
+            SnapshotMetrics metrics = portal.saveCyclingPortalInBackground(file.toString()).join();
+            capture += metrics.getCaptureTime().toNanos();
+            worstCapture = Math.max(worstCapture, metrics.getCaptureTime().toNanos());
+            write += metrics.getWriteTime().toNanos();
+            bytes = metrics.getBytesWritten();
+        }
+        long saving = System.nanoTime() - savingStart;
+        phase.set(-1);
+        writer.join();
+
+        System.out.printf("Background snapshots of %d seasons (%d races, %d results, %.2f MB) with a live writer:%n",
+                seasons, seasons * 3, results, bytes / 1e6);
+        System.out.printf("  capture %7.2f ms (worst %7.2f ms), write %7.1f ms, per snapshot%n",
+                capture / 1e6 / snapshots, worstCapture / 1e6, write / 1e6 / snapshots);
+        System.out.printf("  writer while idle   %10.0f calls/s, worst call %7.2f ms%n",
+                calls[0].get() * 1e9 / idle, worst[0].get() / 1e6);
+        System.out.printf("  writer while saving %10.0f calls/s, worst call %7.2f ms%n",
+                calls[1].get() * 1e9 / saving, worst[1].get() / 1e6);
+        System.out.printf("  a save holding the portal lock would stall the writer for %7.1f ms per snapshot%n",
+                (capture + write) / 1e6 / snapshots);
+        Files.delete(file);
+    }
+
+    /**
+     * Times correcting results in a stage with a sprint and three climbs, where each correction
+     * deletes a rider's result and registers it again, and compares keeping the points up to date
+     * as the results change with working every checkpoint out again after each correction.
+     *
+     * @param corrections The number of corrections to time.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkCheckpointPoints(int corrections) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int raceId = portal.createRace("Race", "Benchmark race");
+        int stageId = portal.addStageToRace(raceId, "Stage", "Benchmark stage", 150, LocalDateTime.of(2024, 7, 1, 12, 0), StageType.HIGH_MOUNTAIN);
+        portal.addCategorizedClimbToStage(stageId, 30.0, CheckpointType.C2, 5.0, 6.0);
+        portal.addIntermediateSprintToStage(stageId, 75);
+        portal.addCategorizedClimbToStage(stageId, 100.0, CheckpointType.C1, 7.0, 10.0);
+        portal.addCategorizedClimbToStage(stageId, 140.0, CheckpointType.HC, 8.0, 15.0);
+        portal.concludeStagePreparation(stageId);
+        Random random = new Random(9);
+        int[] riderIds = createRiders(portal, "Team", RIDERS_PER_STAGE);
+        LocalTime[][] times = new LocalTime[RIDERS_PER_STAGE][];
+        for (int i = 0; i < riderIds.length; i++) {
+            LocalTime[] checkpointTimes = new LocalTime[6];
+            checkpointTimes[0] = LocalTime.of(12, 0);
+            for (int c = 1; c < checkpointTimes.length; c++) {
+                checkpointTimes[c] = checkpointTimes[c - 1].plusSeconds(1800 + random.nextInt(600));
+            }
+            times[i] = checkpointTimes;
+            portal.registerRiderResultsInStage(stageId, riderIds[i], checkpointTimes);
+        }
+        Stage stage = portal.findStageById(stageId);
+        System.out.println("Correcting " + corrections + " results in a stage of " + RIDERS_PER_STAGE + " riders and 4 checkpoints (best of 3):");
+        for (boolean recompute : new boolean[] {false, true}) {
+            long elapsed = bestOf(3, timed(() -> {
+                for (int i = 0; i < corrections; i++) {
+                    int rider = random.nextInt(riderIds.length);
+                    portal.deleteRiderResultsInStage(stageId, riderIds[rider]);
+                    portal.registerRiderResultsInStage(stageId, riderIds[rider], times[rider]);
+                    if (recompute) {
+                        stage.assignCheckpointPoints();
+                    }
+                }
+                return corrections;
+            }));
+            System.out.printf("  %-16s %8.2f us per correction%n", recompute ? "recomputed" : "kept up to date", elapsed / 1e3 / corrections);
+        }
+    }
+
+    /**
+     * Compares asking for the first 3 and 15 places of a stage and of a race's classifications
+     * with reading the full classification and keeping its first places, as callers had to before.
+     * The stage ranking and general classification are copied from their kept order, and the
+     * points classifications are picked with a bounded heap instead of sorting every rider.
+     *
+     * @param numberOfRiders The number of riders with results in each of the race's three stages.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkTopRiders(int numberOfRiders) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[][] ids = populate(portal, 1, 3, numberOfRiders, StageType.MEDIUM_MOUNTAIN);
+        int raceId = ids[0][0];
+        int lastStageId = ids[1][2];
+        System.out.println("First places of a race of " + numberOfRiders + " riders over 3 stages:");
+        for (int limit : new int[] {3, 15}) {
+            measure("  stage, full ranking, top " + limit, () -> Arrays.copyOf(portal.getRidersRankInStage(lastStageId), limit)[0]);
+            measure("  stage, getTopRidersInStage " + limit, () -> portal.getTopRidersInStage(lastStageId, limit)[0]);
+            measure("  general, full ranking, top " + limit, () -> Arrays.copyOf(portal.getRidersGeneralClassificationRank(raceId), limit)[0]);
+            measure("  general, top " + limit, () -> portal.getTopRidersGeneralClassification(raceId, limit)[0]);
+            measure("  points, full sort, top " + limit, () -> Arrays.copyOf(portal.getRidersPointClassificationRank(raceId), limit)[0]);
+            measure("  points, bounded heap " + limit, () -> portal.getTopRidersPointClassification(raceId, limit)[0]);
+            measure("  mountain, full sort, top " + limit, () -> Arrays.copyOf(portal.getRidersMountainPointClassificationRank(raceId), limit)[0]);
+            measure("  mountain, bounded heap " + limit, () -> portal.getTopRidersMountainPointClassification(raceId, limit)[0]);
+        }
+    }
+
+    /**
+     * Compares reading one page of a classification, and one rider's rank, with reading the full
+     * classification and slicing or searching it, as callers had to before. Pages are copied from
+     * the kept order, and stage and general classification ranks are found by binary search.
+     *
+     * @param numberOfRiders The number of riders with results in each of the race's three stages.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkPagesAndRanks(int numberOfRiders) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[][] ids = populate(portal, 1, 3, numberOfRiders, StageType.FLAT);
+        int raceId = ids[0][0];
+        int lastStageId = ids[1][2];
+        int riderId = ids[2][numberOfRiders / 2];
+        int offset = numberOfRiders / 2;
+        System.out.println("Pages and ranks of a race of " + numberOfRiders + " riders over 3 stages:");
+        measure("  stage, full ranking, ranks " + (offset + 1) + ".." + (offset + 50),
+                () -> Arrays.copyOfRange(portal.getRidersRankInStage(lastStageId), offset, offset + 50)[0]);
+        measure("  stage, page of 50", () -> portal.getStageStandingsPage(lastStageId, offset, 50).getRiderId(0));
+        measure("  general, full ranking, ranks " + (offset + 1) + ".." + (offset + 50),
+                () -> Arrays.copyOfRange(portal.getRidersGeneralClassificationRank(raceId), offset, offset + 50)[0]);
+        measure("  general, page of 50", () -> portal.getGeneralClassificationPage(raceId, offset, 50).getRiderId(0));
+        measure("  stage, full ranking, rank of one rider", () -> indexOf(portal.getRidersRankInStage(lastStageId), riderId) + 1);
+        measure("  stage, rank lookup", () -> portal.getRiderRankInStage(lastStageId, riderId));
+        measure("  general, full ranking, rank of one rider",
+                () -> indexOf(portal.getRidersGeneralClassificationRank(raceId), riderId) + 1);
+        measure("  general, rank lookup", () -> portal.getRiderGeneralClassificationRank(raceId, riderId));
+    }
+
+    /**
+     * Compares looking up where one rider stands with reading the full classifications and
+     * searching them for the rider, as callers had to before. The stage standing is read from the
+     * rider's row of the results, and the race standing from classifications kept in order.
+     *
+     * @param numberOfRiders The number of riders with results in each of the race's three stages.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static void benchmarkRiderStanding(int numberOfRiders) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[][] ids = populate(portal, 1, 3, numberOfRiders, StageType.MEDIUM_MOUNTAIN);
+        int raceId = ids[0][0];
+        int lastStageId = ids[1][2];
+        int riderId = ids[2][numberOfRiders / 2];
+        System.out.println("Where one rider stands in a race of " + numberOfRiders + " riders over 3 stages:");
+        measure("  stage, full arrays searched", () -> {
+            int position = indexOf(portal.getRidersRankInStage(lastStageId), riderId);
+            LocalTime[] times = portal.getRankedAdjustedElapsedTimesInStage(lastStageId);
+            return position + times[position].getNano() - times[0].getNano()
+                    + portal.getRidersPointsInStage(lastStageId)[position]
+                    + portal.getRidersMountainPointsInStage(lastStageId)[position];
+        });
+        measure("  stage, getRiderStandingInStage", () -> portal.getRiderStandingInStage(lastStageId, riderId).getRank());
+        measure("  race, full arrays searched", () -> {
+            int position = indexOf(portal.getRidersGeneralClassificationRank(raceId), riderId);
+            Duration[] times = portal.getGeneralClassificationDurationsInRace(raceId);
+            return position + times[position].minus(times[0]).getNano()
+                    + portal.getRidersPointsInRace(raceId)[position]
+                    + portal.getRidersMountainPointsInRace(raceId)[position]
+                    + indexOf(portal.getRidersPointClassificationRank(raceId), riderId)
+                    + indexOf(portal.getRidersMountainPointClassificationRank(raceId), riderId);
+        });
+        measure("  race, getRiderStandingInRace", () -> portal.getRiderStandingInRace(raceId, riderId).getRank());
+    }
+
+    /**
+     * Finds a value in an array by reading it from the start.
+     *
+     * @param values The array to search.
+     * @param value The value to find.
+     * @return The index of the value, or -1 if it is not in the array.
+     */
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fills a portal with one team of riders and races whose stages each have a result for every
+     * rider.
+     *
+     * @param portal The portal to fill.
+     * @param numberOfRaces The number of races to create.
+     * @param stagesPerRace The number of stages in each race.
+     * @param numberOfRiders The number of riders.
+     * @param type The type of every stage, which decides its checkpoint as in {@link #addStage}.
+     * @return The race IDs in the first row, followed by the stage IDs in the second row and the
+     *         rider IDs in the third.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static int[][] populate(CyclingPortal portal, int numberOfRaces, int stagesPerRace, int numberOfRiders,
+            StageType type) throws Exception {
+        Random random = new Random(7);
+        int[] riderIds = createRiders(portal, "Team", numberOfRiders);
+        int[] raceIds = new int[numberOfRaces];
+        int[] stageIds = new int[numberOfRaces * stagesPerRace];
+        for (int race = 0; race < numberOfRaces; race++) {
+            raceIds[race] = portal.createRace("Race" + race, "Benchmark race");
+            for (int stage = 0; stage < stagesPerRace; stage++) {
+                int stageId = addStage(portal, raceIds[race], "Stage" + race + "x" + stage, stage, type);
+                LocalTime[][] times = new LocalTime[riderIds.length][];
+                for (int rider = 0; rider < times.length; rider++) {
+                    times[rider] = randomTimes(random);
+                }
+                portal.registerRidersResultsInStage(stageId, riderIds, times);
+                stageIds[race * stagesPerRace + stage] = stageId;
+            }
+        }
+        return new int[][] {raceIds, stageIds, riderIds};
+    }
+
+    /**
+     * Creates a team and its riders.
+     *
+     * @param portal The portal to add them to.
+     * @param teamName The name of the team.
+     * @param numberOfRiders The number of riders in the team.
+     * @return The rider IDs.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static int[] createRiders(CyclingPortal portal, String teamName, int numberOfRiders) throws Exception {
+        int teamId = portal.createTeam(teamName, "Benchmark team");
+        int[] riderIds = new int[numberOfRiders];
+        for (int i = 0; i < riderIds.length; i++) {
+            riderIds[i] = portal.createRider(teamId, "Rider" + i, 1990);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Adds a 150 km stage to a race and concludes its preparation, ready for results. A flat
+     * stage gets a sprint halfway and any other stage a first category climb there, so the
+     * results of a flat stage carry a start, sprint and finish time like {@link #randomTimes}.
+     *
+     * @param portal The portal to add it to.
+     * @param raceId The ID of the race.
+     * @param name The name of the stage.
+     * @param day The number of days after 1 July 2024 the stage starts.
+     * @param type The type of the stage.
+     * @return The stage ID.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    private static int addStage(CyclingPortal portal, int raceId, String name, int day, StageType type) throws Exception {
+        int stageId = portal.addStageToRace(raceId, name, "Benchmark stage", 150,
+                LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(day), type);
+        if (type == StageType.FLAT) {
+            portal.addIntermediateSprintToStage(stageId, 75);
+        } else {
+            portal.addCategorizedClimbToStage(stageId, 75.0, CheckpointType.C1, 6.0, 8.0);
+        }
+        portal.concludeStagePreparation(stageId);
+        return stageId;
+    }
+
+    /**
+     * Generates a start, sprint and finish time for a stage.
+     *
+     * @param random The source of randomness.
+     * @return The three times.
+     */
+    private static LocalTime[] randomTimes(Random random) {
+        LocalTime start = LocalTime.of(12, 0);
+        LocalTime finish = start.plusSeconds(4 * 3600 + random.nextInt(600));
+        return new LocalTime[] {start, start.plusSeconds(7200 + random.nextInt(600)), finish};
+    }
+
+    /**
+     * Runs one randomly chosen ranking or points query.
+     *
+     * @param portal The portal to query.
+     * @param ids The race, stage and rider IDs returned by {@link #populate}.
+     * @return The length of the query's result.
+     * @throws Exception If the portal rejects the query.
+     */
+    private static long query(CyclingPortal portal, int[][] ids) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int raceId = ids[0][random.nextInt(ids[0].length)];
+        int stageId = ids[1][random.nextInt(ids[1].length)];
+        switch (random.nextInt(4)) {
+            case 0:
+                return portal.getRidersGeneralClassificationRank(raceId).length;
+            case 1:
+                return portal.getRidersPointClassificationRank(raceId).length;
+            case 2:
+                return portal.getRidersRankInStage(stageId).length;
+            default:
+                return portal.getRankedAdjustedElapsedTimesInStage(stageId).length;
+        }
+    }
+
+    /**
+     * Deletes a random rider's result in a random stage and registers a new one in its place.
+     *
+     * @param portal The portal to change.
+     * @param ids The race, stage and rider IDs returned by {@link #populate}.
+     * @return The ID of the stage that was changed.
+     * @throws Exception If the portal rejects the change.
+     */
+    private static long rewriteResult(CyclingPortal portal, int[][] ids) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int stageId = ids[1][random.nextInt(ids[1].length)];
+        int riderId = ids[2][random.nextInt(ids[2].length)];
+        portal.deleteRiderResultsInStage(stageId, riderId);
+        LocalTime start = LocalTime.of(12, 0);
+        portal.registerRiderResultsInStage(stageId, riderId, start, start.plusSeconds(7200 + random.nextInt(600)),
+                start.plusSeconds(4 * 3600 + random.nextInt(600)));
+        return stageId;
+    }
+
+    /**
+     * Runs reader threads, and optionally one writer thread, for a fixed time and counts the reads.
+     *
+     * @param readers The number of reader threads.
+     * @param millis How long to run for, in milliseconds.
+     * @param read The operation each reader repeats.
+     * @param write The operation the writer repeats, or null for no writer.
+     * @return The number of reads completed per second across all readers.
+     * @throws InterruptedException If interrupted while waiting for the threads.
+     */
+    private static double throughput(int readers, long millis, Operation read, Operation write) throws InterruptedException {
+        AtomicLong reads = new AtomicLong();
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        Thread[] threads = new Thread[readers + (write == null ? 0 : 1)];
+        for (int i = 0; i < threads.length; i++) {
+            Operation operation = i < readers ? read : write;
+            boolean counted = i < readers;
+            threads[i] = new Thread(() -> {
+                long count = 0;
+                try {
+                    while (System.nanoTime() < deadline) {
+                        operation.run();
+                        count++;
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if (counted) {
+                    reads.addAndGet(count);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return reads.get() * 1000.0 / millis;
+    }
+
+    /**
+     * Gets the heap currently in use.
+     *
+     * @return The used heap in bytes.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * An operation to be timed, returning a value so the JIT cannot discard it.
+     */
+    @FunctionalInterface
+    interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @return Any value derived from the operation.
+         * @throws Exception If the operation fails.
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * Warms up and then times an operation, printing its average latency and allocation.
+     *
+     * @param label The label printed next to the measurement.
+     * @param operation The operation to measure.
+     * @throws Exception If the operation fails.
+     */
+    static void measure(String label, Operation operation) throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += operation.run();
+        }
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        System.out.printf("%-40s %10.1f ns/op %12d B/op   (%d)%n",
+                label, (double) elapsed / ITERATIONS, bytes / ITERATIONS, sink & 1);
+    }
+
+    /**
+     * Runs an operation once to warm up and then a number of times, keeping its shortest time,
+     * which is the one least disturbed by garbage collection and other threads.
+     *
+     * @param attempts The number of timed runs.
+     * @param timed An operation returning how long the part of it being timed took, in nanoseconds,
+     *              such as one wrapped by {@link #timed(Operation)}.
+     * @return The shortest time, in nanoseconds.
+     * @throws Exception If the operation fails.
+     */
+    static long bestOf(int attempts, Operation timed) throws Exception {
+        timed.run();
+        long best = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            best = Math.min(best, timed.run());
+        }
+        return best;
+    }
+
+    /**
+     * Wraps an operation so that it returns how long it took, for {@link #bestOf(int, Operation)}.
+     *
+     * @param operation The operation to time as a whole.
+     * @return An operation running it and returning its time in nanoseconds.
+     */
+    static Operation timed(Operation operation) {
+        return () -> {
+            long start = System.nanoTime();
+            sink += operation.run();
+            return System.nanoTime() - start;
+        };
+    }
+
+    /**
+     * Saves a portal to a file, as a plain snapshot or compressed.
+     *
+     * @param portal The portal to save.
+     * @param file The file to write.
+     * @param level The compression level, or 0 for a plain snapshot.
+     * @return The number of races saved.
+     * @throws Exception If the file cannot be written.
+     */
+    private static long save(CyclingPortalImpl portal, Path file, int level) throws Exception {
+        if (level == 0) {
+            portal.saveCyclingPortal(file.toString());
+        } else {
+            portal.saveCyclingPortalCompressed(file.toString(), level);
+        }
+        return portal.getRaceIds().length;
+    }
+
+    /**
+     * Loads a portal from a file written by {@link #save}.
+     *
+     * @param portal The portal to replace.
+     * @param file The file to read.
+     * @return The number of races loaded.
+     * @throws Exception If the file cannot be read.
+     */
+    private static long load(CyclingPortal portal, Path file) throws Exception {
+        portal.loadCyclingPortal(file.toString());
+        return portal.getRaceIds().length;
+    }
+
+    /**
+     * Reads the number of bytes allocated so far by the current thread.
+     *
+     * @return The allocated bytes, or 0 if the JVM does not support the measurement.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
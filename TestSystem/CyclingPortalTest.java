@@ -1,10 +1,20 @@
 package cycling;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime; // For using LocalDateTime.now()
 import java.time.LocalTime; // For using LocalTime.of()
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class CyclingPortalTest {
     public static void main(String[] args) {
@@ -284,6 +294,12 @@ public class CyclingPortalTest {
             LocalTime riderAdjustedElapsedTimeInStage6 = portal.getRiderAdjustedElapsedTimeInStage(stageId2,riderId3);
             System.out.println("Rider adjusted elapsed time in stage 2: " + riderAdjustedElapsedTimeInStage6);
 
+            // A rider with no result in a stage has no times and no adjusted elapsed time there
+            assert (portal.getRiderResultsInStage(stageId2, riderId7).length == 0)
+                    : "Rider without a result in the stage did not get an empty array.";
+            assert (portal.getRiderAdjustedElapsedTimeInStage(stageId2, riderId7) == null)
+                    : "Rider without a result in the stage did not get a null adjusted elapsed time.";
+
             int[] ridersRankInStage = portal.getRidersRankInStage(stageId);
             System.out.println("Riders ranks in stage: " + Arrays.toString(ridersRankInStage));
 
@@ -314,6 +330,9 @@ public class CyclingPortalTest {
             LocalTime[] generalClassificationTimesInRace = portal.getGeneralClassificationTimesInRace(raceId);
             System.out.println("General classfication times in race: " + Arrays.toString(generalClassificationTimesInRace));
 
+            Duration[] generalClassificationDurationsInRace = portal.getGeneralClassificationDurationsInRace(raceId);
+            System.out.println("General classfication durations in race: " + Arrays.toString(generalClassificationDurationsInRace));
+
             int[] riderPointsInRace = portal.getRidersPointsInRace(raceId);
             System.out.println("Rider points in race: " + Arrays.toString(riderPointsInRace));
 
@@ -468,8 +487,9 @@ public class CyclingPortalTest {
             int[] teamsInPortal2 = portal.getTeams();
             System.out.println("Teams in System: " + Arrays.toString(teamsInPortal2));
 
-            // Define a filename to save the portal state
-            String filename = "cycling_portal_data.ser";
+            // Define a filename to save the portal state, in a directory removed once testing is done
+            Path saveDirectory = Files.createTempDirectory("cycling_portal");
+            String filename = saveDirectory.resolve("cycling_portal_data.ser").toString();
 
             // Save the current state of the portal to a file
             try {
@@ -500,9 +520,449 @@ public class CyclingPortalTest {
                 System.out.println("Races in system after load: " + Arrays.toString(racesAfterLoad)); // Should show the races before erase
                 int[] teamsInPortal3 = portal.getTeams();
             System.out.println("Teams in System after load: " + Arrays.toString(teamsInPortal3));
+                // Rankings and classifications are rebuilt from the saved times
+                System.out.println("Stage 1 ranks after load: " + Arrays.toString(portal.getRidersRankInStage(stageId)));
+                assert Arrays.equals(portal.getRidersRankInStage(stageId), new int[] {1, 4, 5, 6, 7, 8, 9})
+                        : "Stage ranks were not rebuilt after loading.";
+                System.out.println("Stage 1 points after load: " + Arrays.toString(portal.getRidersPointsInStage(stageId)));
+                assert Arrays.equals(portal.getRidersPointsInStage(stageId), new int[] {70, 47, 35, 31, 27, 24, 21})
+                        : "Stage points were not rebuilt after loading.";
+                System.out.println("General classification times after load: " + Arrays.toString(portal.getGeneralClassificationTimesInRace(raceId)));
+                assert Arrays.equals(portal.getGeneralClassificationTimesInRace(raceId), new LocalTime[] {LocalTime.of(3, 0),
+                        LocalTime.of(3, 0), LocalTime.of(3, 1, 0, 15), LocalTime.of(3, 2, 0, 15), LocalTime.of(3, 3, 0, 15),
+                        LocalTime.of(3, 4, 0, 15), LocalTime.of(3, 5, 0, 15)})
+                        : "General classification times were not rebuilt after loading.";
+                // Only the first places, as a podium or a results ticker would show them
+                System.out.println("Stage 1 podium: " + Arrays.toString(portal.getTopRidersInStage(stageId, 3))
+                        + " general classification top 3: " + Arrays.toString(portal.getTopRidersGeneralClassification(raceId, 3)));
+                assert Arrays.equals(portal.getTopRidersInStage(stageId, 3), new int[] {1, 4, 5})
+                        : "Stage podium is not the first three of the stage ranking.";
+                assert Arrays.equals(portal.getTopRidersGeneralClassification(raceId, 3), new int[] {1, 4, 5})
+                        : "General classification top 3 is not the first three of the classification.";
+                System.out.println("Points classification top 3: " + Arrays.toString(portal.getTopRidersPointClassification(raceId, 3))
+                        + " of " + Arrays.toString(portal.getRidersPointClassificationRank(raceId)));
+                assert Arrays.equals(portal.getTopRidersPointClassification(raceId, 3),
+                        Arrays.copyOf(portal.getRidersPointClassificationRank(raceId), 3))
+                        : "Points classification top 3 is not the first three of the classification.";
+                System.out.println("Mountain classification top 2: " + Arrays.toString(portal.getTopRidersMountainPointClassification(raceId, 2))
+                        + " of " + Arrays.toString(portal.getRidersMountainPointClassificationRank(raceId)));
+                assert Arrays.equals(portal.getTopRidersMountainPointClassification(raceId, 2),
+                        Arrays.copyOf(portal.getRidersMountainPointClassificationRank(raceId), 2))
+                        : "Mountain classification top 2 is not the first two of the classification.";
+                try {
+                    portal.getTopRidersInStage(stageId, -1);
+                    assert false : "A negative podium size was accepted.";
+                } catch (IllegalArgumentException ex) {
+                    System.out.println("Negative podium size refused: " + ex.getMessage());
+                }
+                // A page of a classification, and one rider's rank without the whole ranking
+                Standings stagePage = portal.getStageStandingsPage(stageId, 1, 2);
+                System.out.println("Stage 1 page from rank " + stagePage.getFirstRank() + " of " + stagePage.getClassificationSize()
+                        + ": " + Arrays.toString(stagePage.getRiderIds())
+                        + " general classification ranks 2..3: " + Arrays.toString(portal.getGeneralClassificationBetweenRanks(raceId, 2, 3).getRiderIds()));
+                assert (stagePage.getFirstRank() == 2 && stagePage.getClassificationSize() == 7
+                        && Arrays.equals(stagePage.getRiderIds(), new int[] {4, 5}))
+                        : "Stage page does not hold ranks 2 and 3 of 7.";
+                assert Arrays.equals(portal.getGeneralClassificationBetweenRanks(raceId, 2, 3).getRiderIds(), new int[] {4, 5})
+                        : "General classification ranks 2..3 are wrong.";
+                int secondInStage = portal.getRidersRankInStage(stageId)[1];
+                System.out.println("Rider " + secondInStage + " is ranked " + portal.getRiderRankInStage(stageId, secondInStage)
+                        + " in stage 1 and " + portal.getRiderGeneralClassificationRank(raceId, secondInStage) + " in the race");
+                assert (portal.getRiderRankInStage(stageId, secondInStage) == 2)
+                        : "The second rider in the stage ranking is not ranked 2.";
+                assert (portal.getRiderGeneralClassificationRank(raceId, secondInStage) == 2)
+                        : "The second rider in the general classification is not ranked 2.";
+                // Everything about one rider at once, as a rider profile page would show it
+                RiderStanding stageStanding = portal.getRiderStandingInStage(stageId, secondInStage);
+                System.out.println("Stage 1 standing: " + stageStanding);
+                assert (stageStanding.getRank() == 2 && stageStanding.getAdjustedElapsedTime().equals(Duration.ofHours(3))
+                        && stageStanding.getGapToLeader().isZero() && stageStanding.getPoints() == 47
+                        && stageStanding.getMountainPoints() == 3 && stageStanding.getPointsRank() == 0)
+                        : "Stage standing does not match the stage ranking.";
+                RiderStanding raceStanding = portal.getRiderStandingInRace(raceId, secondInStage);
+                System.out.println("Race standing: " + raceStanding);
+                assert (raceStanding.getRank() == 2 && raceStanding.getPoints() == 47 && raceStanding.getPointsRank() == 2
+                        && raceStanding.getMountainPoints() == 3 && raceStanding.getMountainPointsRank() == 2)
+                        : "Race standing does not match the race classifications.";
+                try {
+                    portal.getGeneralClassificationBetweenRanks(raceId, 3, 2);
+                    assert false : "A backwards rank range was accepted.";
+                } catch (IllegalArgumentException ex) {
+                    System.out.println("Backwards rank range refused: " + ex.getMessage());
+                }
+
+                // A file that is not a snapshot is refused and leaves the portal as it was
+                Path notSnapshot = saveDirectory.resolve("not_a_snapshot.ser");
+                try {
+                    Files.write(notSnapshot, "not a snapshot".getBytes(StandardCharsets.US_ASCII));
+                    portal.loadCyclingPortal(notSnapshot.toString());
+                    assert false : "A file that is not a snapshot was loaded.";
+                } catch (IOException ex) {
+                    System.out.println("Non-snapshot file refused: " + ex.getMessage());
+                }
+                assert (portal.getRidersRankInStage(stageId).length > 0)
+                        : "Refusing a file changed the portal.";
             } catch (IOException | ClassNotFoundException ex) {
                 System.err.println("Failed to load cycling portal data: " + ex.getMessage());
             }
+            // Register a whole stage's results in one batch, including rows that should be rejected
+            int bulkRaceId = portal.createRace("BulkTest", "Race for batch registration");
+            int bulkStageId = portal.addStageToRace(bulkRaceId, "BulkStage", "Batch stage", 120.0, LocalDateTime.now(), StageType.FLAT);
+            portal.addIntermediateSprintToStage(bulkStageId, 60.0);
+            portal.concludeStagePreparation(bulkStageId);
+            int bulkTeamId = portal.createTeam("BulkTeam", "Team for batch registration");
+            int[] bulkRiders = new int[5];
+            for (int i = 0; i < bulkRiders.length; i++) {
+                bulkRiders[i] = portal.createRider(bulkTeamId, "BulkRider" + i, 1995);
+            }
+            LocalTime bulkStart = LocalTime.of(11, 0);
+            int[] bulkRows = {bulkRiders[0], bulkRiders[1], bulkRiders[2], 9999, bulkRiders[1], bulkRiders[3], bulkRiders[4]};
+            LocalTime[][] bulkTimes = {
+                {bulkStart, bulkStart.plusMinutes(50), bulkStart.plusHours(3)},
+                {bulkStart, bulkStart.plusMinutes(45), bulkStart.plusHours(3).plusNanos(500_000_000)},
+                {bulkStart, bulkStart.plusMinutes(55), bulkStart.plusHours(2).plusMinutes(58)},
+                {bulkStart, bulkStart.plusMinutes(40), bulkStart.plusHours(3)},
+                {bulkStart, bulkStart.plusMinutes(40), bulkStart.plusHours(3)},
+                {bulkStart, bulkStart.plusHours(3)},
+                {bulkStart, bulkStart.plusMinutes(52), bulkStart.plusHours(3).plusMinutes(5)}
+            };
+            Exception[] bulkErrors = portal.registerRidersResultsInStage(bulkStageId, bulkRows, bulkTimes);
+            for (int row = 0; row < bulkErrors.length; row++) {
+                System.out.println("Batch row " + row + ": " + (bulkErrors[row] == null ? "registered" : bulkErrors[row].getClass().getSimpleName()));
+            }
+            assert (bulkErrors[0] == null && bulkErrors[1] == null && bulkErrors[2] == null && bulkErrors[6] == null)
+                    : "A valid batch row was rejected.";
+            assert (bulkErrors[3] instanceof IDNotRecognisedException && bulkErrors[4] instanceof DuplicatedResultException
+                    && bulkErrors[5] instanceof InvalidCheckpointTimesException)
+                    : "An invalid batch row was not rejected for the right reason.";
+            System.out.println("Batch stage ranks: " + Arrays.toString(portal.getRidersRankInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRidersRankInStage(bulkStageId),
+                    new int[] {bulkRiders[2], bulkRiders[0], bulkRiders[1], bulkRiders[4]})
+                    : "Batch stage ranks are wrong.";
+            System.out.println("Batch stage adjusted times: " + Arrays.toString(portal.getRankedAdjustedElapsedTimesInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRankedAdjustedElapsedTimesInStage(bulkStageId), new LocalTime[] {LocalTime.of(2, 58),
+                    LocalTime.of(3, 0), LocalTime.of(3, 0), LocalTime.of(3, 5)})
+                    : "Batch stage adjusted times are wrong.";
+            System.out.println("Batch stage points: " + Arrays.toString(portal.getRidersPointsInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRidersPointsInStage(bulkStageId), new int[] {63, 47, 40, 33})
+                    : "Batch stage points are wrong.";
+
+            // Import a stage from a timing-system export mixing commas, tabs, quotes and bad rows
+            int importStageId = portal.addStageToRace(bulkRaceId, "ImportStage", "Imported stage", 90.0, LocalDateTime.now().plusDays(1), StageType.FLAT);
+            portal.addIntermediateSprintToStage(importStageId, 45.0);
+            portal.concludeStagePreparation(importStageId);
+            String export = "stage,rider,start,sprint,finish\n"
+                    + "# exported by the finish-line system\n"
+                    + importStageId + "," + bulkRiders[0] + ",9:00:00,10:01:00,12:03:00\n"
+                    + importStageId + "\t" + bulkRiders[1] + "\t09:00:00\t10:00:30.25\t11:59:59.5\r\n"
+                    + "\"" + importStageId + "\",\"" + bulkRiders[2] + "\",\"09:00:00\",\"10:02:00\",\"12:00:00.1\"\n"
+                    + "\n"
+                    + importStageId + "," + bulkRiders[3] + ",09:00:00,10:61:00,12:01:00\n"
+                    + importStageId + ",9999,09:00:00,10:00:00,12:00:00\n"
+                    + importStageId + "," + bulkRiders[4] + ",09:00:00,12:05:00";
+            Path exportFile = Files.createTempFile("stage", ".csv");
+            Files.write(exportFile, export.getBytes(StandardCharsets.US_ASCII));
+            StageResultImporter.Report importReport = new StageResultImporter(portal).importFile(exportFile);
+            Files.delete(exportFile);
+            System.out.println("Import: read " + importReport.getRowsRead() + ", registered " + importReport.getRowsRegistered()
+                    + ", rejected " + importReport.getRowsRejected());
+            assert (importReport.getRowsRead() == 6 && importReport.getRowsRegistered() == 3 && importReport.getRowsRejected() == 3)
+                    : "Import counts are wrong.";
+            for (String rejection : importReport.getRejections()) {
+                System.out.println("Import rejected " + rejection);
+            }
+            assert (importReport.getRejections().size() == 3 && importReport.getRejections().get(0).startsWith("Line 7:")
+                    && importReport.getRejections().get(1).startsWith("Line 8:") && importReport.getRejections().get(2).startsWith("Line 9:"))
+                    : "Import rejections do not name the rejected lines.";
+            System.out.println("Imported stage ranks: " + Arrays.toString(portal.getRidersRankInStage(importStageId)));
+            assert Arrays.equals(portal.getRidersRankInStage(importStageId), new int[] {bulkRiders[1], bulkRiders[2], bulkRiders[0]})
+                    : "Imported stage ranks are wrong.";
+            System.out.println("Imported stage adjusted times: " + Arrays.toString(portal.getRankedAdjustedElapsedTimesInStage(importStageId)));
+            assert Arrays.equals(portal.getRankedAdjustedElapsedTimesInStage(importStageId), new LocalTime[] {
+                    LocalTime.of(2, 59, 59, 500_000_000), LocalTime.of(2, 59, 59, 500_000_000), LocalTime.of(3, 3)})
+                    : "Imported stage adjusted times are wrong.";
+
+            // Seal the finished race into an archive file, query it, save and load it, then change it again
+            int[] batchRanks = portal.getRidersRankInStage(bulkStageId);
+            int[] batchPoints = portal.getRidersPointsInStage(bulkStageId);
+            int[] raceClassification = portal.getRidersGeneralClassificationRank(bulkRaceId);
+            Duration[] raceDurations = portal.getGeneralClassificationDurationsInRace(bulkRaceId);
+            RiderStanding heapStanding = portal.getRiderStandingInRace(bulkRaceId, bulkRiders[1]);
+            Path archiveFile = saveDirectory.resolve("race.cypa");
+            portal.sealRace(bulkRaceId, archiveFile.toString());
+            assert portal.isRaceSealed(bulkRaceId) : "The race was not sealed.";
+            System.out.println("Sealed batch stage ranks: " + Arrays.toString(portal.getRidersRankInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRidersRankInStage(bulkStageId), batchRanks)
+                    : "Sealing changed the stage ranks.";
+            System.out.println("Sealed batch stage points: " + Arrays.toString(portal.getRidersPointsInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRidersPointsInStage(bulkStageId), batchPoints)
+                    : "Sealing changed the stage points.";
+            System.out.println("Sealed race classification: " + Arrays.toString(portal.getRidersGeneralClassificationRank(bulkRaceId)));
+            assert Arrays.equals(portal.getRidersGeneralClassificationRank(bulkRaceId), raceClassification)
+                    : "Sealing changed the general classification.";
+            assert Arrays.equals(raceClassification, new int[] {bulkRiders[4], bulkRiders[2], bulkRiders[1], bulkRiders[0]})
+                    : "The general classification of the batch race is wrong.";
+            System.out.println("Sealed race times: " + Arrays.toString(portal.getGeneralClassificationDurationsInRace(bulkRaceId)));
+            assert Arrays.equals(portal.getGeneralClassificationDurationsInRace(bulkRaceId), raceDurations)
+                    : "Sealing changed the general classification times.";
+            System.out.println("Sealed race top 2: " + Arrays.toString(portal.getTopRidersGeneralClassification(bulkRaceId, 2))
+                    + " points top 2: " + Arrays.toString(portal.getTopRidersPointClassification(bulkRaceId, 2))
+                    + " stage top 10: " + Arrays.toString(portal.getTopRidersInStage(bulkStageId, 10)));
+            assert Arrays.equals(portal.getTopRidersGeneralClassification(bulkRaceId, 2), Arrays.copyOf(raceClassification, 2))
+                    : "Sealed general classification top 2 is wrong.";
+            assert Arrays.equals(portal.getTopRidersPointClassification(bulkRaceId, 2), new int[] {bulkRiders[1], bulkRiders[2]})
+                    : "Sealed points classification top 2 is wrong.";
+            assert Arrays.equals(portal.getTopRidersInStage(bulkStageId, 10), batchRanks)
+                    : "Sealed stage top 10 is not the whole stage ranking.";
+            Standings sealedPage = portal.getGeneralClassificationPage(bulkRaceId, 1, 10);
+            System.out.println("Sealed race page from rank " + sealedPage.getFirstRank() + ": " + Arrays.toString(sealedPage.getRiderIds())
+                    + " rider " + bulkRiders[1] + " ranked " + portal.getRiderGeneralClassificationRank(bulkRaceId, bulkRiders[1])
+                    + " overall and " + portal.getRiderRankInStage(bulkStageId, bulkRiders[1]) + " in the batch stage");
+            assert (sealedPage.getFirstRank() == 2
+                    && Arrays.equals(sealedPage.getRiderIds(), Arrays.copyOfRange(raceClassification, 1, raceClassification.length)))
+                    : "Sealed general classification page is wrong.";
+            assert (portal.getRiderGeneralClassificationRank(bulkRaceId, bulkRiders[1]) == 3
+                    && portal.getRiderRankInStage(bulkStageId, bulkRiders[1]) == 3)
+                    : "Sealed rider ranks are wrong.";
+            RiderStanding sealedStanding = portal.getRiderStandingInRace(bulkRaceId, bulkRiders[1]);
+            System.out.println("Sealed race standing: " + sealedStanding);
+            assert sealedStanding.toString().equals(heapStanding.toString())
+                    : "Sealing changed the rider's race standing.";
+            System.out.println("Sealed rider results: " + Arrays.toString(portal.getRiderResultsInStage(importStageId, bulkRiders[1])));
+            assert Arrays.equals(portal.getRiderResultsInStage(importStageId, bulkRiders[1]),
+                    new LocalTime[] {LocalTime.of(10, 0, 30, 250_000_000), LocalTime.of(2, 59, 59, 500_000_000)})
+                    : "Sealed rider results are wrong.";
+            try {
+                portal.addIntermediateSprintToStage(importStageId, 30.0);
+                assert false : "A sealed stage accepted a new sprint.";
+            } catch (InvalidStageStateException ex) {
+                System.out.println("Sealed stage refused a new sprint: " + ex.getMessage());
+            }
+            // Rejected registrations leave the race sealed
+            try {
+                portal.registerRiderResultsInStage(bulkStageId, bulkRiders[0], bulkTimes[0]);
+                assert false : "A sealed stage accepted a duplicated result.";
+            } catch (DuplicatedResultException ex) {
+                System.out.println("Sealed stage refused a duplicated result: " + ex.getMessage());
+            }
+            try {
+                portal.registerRiderResultsInStage(bulkStageId, bulkRiders[3], bulkStart, bulkStart.plusHours(3));
+                assert false : "A sealed stage accepted the wrong number of times.";
+            } catch (InvalidCheckpointTimesException ex) {
+                System.out.println("Sealed stage refused the wrong number of times: " + ex.getMessage());
+            }
+            Exception[] sealedErrors = portal.registerRidersResultsInStage(bulkStageId,
+                    new int[] {bulkRiders[1], 9999}, new LocalTime[][] {bulkTimes[1], bulkTimes[1]});
+            assert (sealedErrors[0] instanceof DuplicatedResultException && sealedErrors[1] instanceof IDNotRecognisedException)
+                    : "A sealed stage accepted a rejected batch row.";
+            System.out.println("Race sealed after rejected registrations: " + portal.isRaceSealed(bulkRaceId));
+            assert portal.isRaceSealed(bulkRaceId) : "A rejected registration unsealed the race.";
+            String sealedSave = saveDirectory.resolve("cycling_portal_sealed.ser").toString();
+            portal.saveCyclingPortal(sealedSave);
+            portal.eraseCyclingPortal();
+            portal.loadCyclingPortal(sealedSave);
+            System.out.println("Race sealed after loading: " + portal.isRaceSealed(bulkRaceId));
+            assert portal.isRaceSealed(bulkRaceId) : "The race was not sealed after loading.";
+            System.out.println("Sealed imported stage ranks after loading: " + Arrays.toString(portal.getRidersRankInStage(importStageId)));
+            assert Arrays.equals(portal.getRidersRankInStage(importStageId), new int[] {bulkRiders[1], bulkRiders[2], bulkRiders[0]})
+                    : "Sealed imported stage ranks changed after loading.";
+            portal.deleteRiderResultsInStage(bulkStageId, bulkRiders[0]);
+            System.out.println("Race sealed after deleting a result: " + portal.isRaceSealed(bulkRaceId));
+            assert !portal.isRaceSealed(bulkRaceId) : "The race stayed sealed after a result was deleted.";
+            System.out.println("Unsealed batch stage ranks: " + Arrays.toString(portal.getRidersRankInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRidersRankInStage(bulkStageId), new int[] {bulkRiders[2], bulkRiders[1], bulkRiders[4]})
+                    : "Unsealed batch stage ranks are wrong.";
+            System.out.println("Unsealed race classification: " + Arrays.toString(portal.getRidersGeneralClassificationRank(bulkRaceId)));
+            int[] unsealedClassification = {bulkRiders[0], bulkRiders[4], bulkRiders[2], bulkRiders[1]};
+            assert Arrays.equals(portal.getRidersGeneralClassificationRank(bulkRaceId), unsealedClassification)
+                    : "Unsealed general classification is wrong.";
+
+            // Load the portal lazily, reading each race only when it is queried, then evict it and save over the file
+            String lazySave = saveDirectory.resolve("cycling_portal_lazy.ser").toString();
+            portal.saveCyclingPortal(lazySave);
+            portal.loadCyclingPortalLazily(lazySave, 1);
+            System.out.println("Race read after lazy loading: " + portal.isRaceRead(bulkRaceId));
+            assert !portal.isRaceRead(bulkRaceId) : "A race was read before it was queried.";
+            System.out.println("Lazily loaded race IDs: " + Arrays.toString(portal.getRaceIds()));
+            assert Arrays.equals(portal.getRaceIds(), new int[] {raceId, bulkRaceId})
+                    : "Lazily loaded race IDs are wrong.";
+            System.out.println("Lazily loaded race classification: " + Arrays.toString(portal.getRidersGeneralClassificationRank(bulkRaceId)));
+            assert Arrays.equals(portal.getRidersGeneralClassificationRank(bulkRaceId), unsealedClassification)
+                    : "Lazily loaded general classification is wrong.";
+            System.out.println("Race read after querying it: " + portal.isRaceRead(bulkRaceId));
+            assert portal.isRaceRead(bulkRaceId) : "A queried race was not read.";
+            int evicted = portal.evictUnchangedRaces();
+            System.out.println("Races evicted: " + evicted);
+            assert (evicted == 1) : "The unchanged race was not evicted.";
+            System.out.println("Race read after eviction: " + portal.isRaceRead(bulkRaceId));
+            assert !portal.isRaceRead(bulkRaceId) : "An evicted race is still read.";
+            portal.saveCyclingPortal(lazySave);
+            System.out.println("Lazily loaded batch stage ranks after saving over the file: " + Arrays.toString(portal.getRidersRankInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRidersRankInStage(bulkStageId), new int[] {bulkRiders[2], bulkRiders[1], bulkRiders[4]})
+                    : "Saving over the lazily loaded file lost the stage ranks.";
+            portal.deleteRiderResultsInStage(bulkStageId, bulkRiders[1]);
+            evicted = portal.evictUnchangedRaces();
+            System.out.println("Races evicted after changing the race: " + evicted);
+            assert (evicted == 0) : "A changed race was evicted.";
+            System.out.println("Changed batch stage ranks: " + Arrays.toString(portal.getRidersRankInStage(bulkStageId)));
+            int[] changedRanks = {bulkRiders[2], bulkRiders[4]};
+            assert Arrays.equals(portal.getRidersRankInStage(bulkStageId), changedRanks)
+                    : "Changed batch stage ranks are wrong.";
+
+            // Save the portal compressed, then load it back and check it cannot be loaded lazily
+            String compressedSave = saveDirectory.resolve("cycling_portal_compressed.ser").toString();
+            portal.saveCyclingPortal(lazySave);
+            portal.saveCyclingPortalCompressed(compressedSave, 6);
+            boolean smaller = Files.size(Paths.get(compressedSave)) < Files.size(Paths.get(lazySave));
+            System.out.println("Compressed save is smaller: " + smaller);
+            assert smaller : "The compressed save is not smaller.";
+            int[] compressedClassification = portal.getRidersGeneralClassificationRank(bulkRaceId);
+            portal.eraseCyclingPortal();
+            portal.loadCyclingPortal(compressedSave);
+            System.out.println("Batch stage ranks after compressed loading: " + Arrays.toString(portal.getRidersRankInStage(bulkStageId)));
+            assert Arrays.equals(portal.getRidersRankInStage(bulkStageId), changedRanks)
+                    : "Batch stage ranks changed through the compressed save.";
+            System.out.println("Race classification after compressed loading: " + Arrays.toString(portal.getRidersGeneralClassificationRank(bulkRaceId)));
+            assert Arrays.equals(portal.getRidersGeneralClassificationRank(bulkRaceId), compressedClassification)
+                    : "General classification changed through the compressed save.";
+            try {
+                portal.loadCyclingPortalLazily(compressedSave, 1);
+                assert false : "A compressed save was loaded lazily.";
+            } catch (IOException ex) {
+                System.out.println("Lazy loading refused a compressed save: " + ex.getMessage());
+            }
+
+            // Save a shared portal in the background, registering a result before the file is written
+            String backgroundSave = saveDirectory.resolve("cycling_portal_background.ser").toString();
+            ConcurrentCyclingPortalImpl shared = new ConcurrentCyclingPortalImpl();
+            shared.loadCyclingPortal(compressedSave);
+            CompletableFuture<SnapshotMetrics> background = shared.saveCyclingPortalInBackground(backgroundSave);
+            shared.registerRiderResultsInStage(bulkStageId, bulkRiders[1], bulkTimes[1]);
+            SnapshotMetrics metrics = background.join();
+            boolean written = metrics.getBytesWritten() == Files.size(Paths.get(backgroundSave));
+            System.out.println("Background snapshot written: " + written);
+            assert written : "The background snapshot metrics do not match the file.";
+            System.out.println("Shared batch stage ranks after registering: " + Arrays.toString(shared.getRidersRankInStage(bulkStageId)));
+            assert Arrays.equals(shared.getRidersRankInStage(bulkStageId), new int[] {bulkRiders[2], bulkRiders[1], bulkRiders[4]})
+                    : "The shared portal lost the result registered while saving.";
+            shared.loadCyclingPortal(backgroundSave);
+            System.out.println("Batch stage ranks in the background snapshot: " + Arrays.toString(shared.getRidersRankInStage(bulkStageId)));
+            assert Arrays.equals(shared.getRidersRankInStage(bulkStageId), changedRanks)
+                    : "The background snapshot holds a result registered after it was taken.";
+            CompletableFuture<SnapshotMetrics> failed = shared.saveCyclingPortalInBackground(
+                    saveDirectory.resolve("missing_directory").resolve("cycling_portal.ser").toString());
+            try {
+                failed.join();
+                assert false : "A background snapshot into a missing directory succeeded.";
+            } catch (CompletionException ex) {
+                System.out.println("Background snapshot into a missing directory failed: " + ex.getCause().getClass().getSimpleName());
+                assert (ex.getCause() instanceof UncheckedIOException)
+                        : "A failed background snapshot did not report an UncheckedIOException.";
+            }
+
+            // Add checkpoints out of location order, so points must follow the order of the times
+            int orderRaceId = portal.createRace("OrderRace", "Race with checkpoints added out of order");
+            int orderStageId = portal.addStageToRace(orderRaceId, "OrderStage", "Checkpoints added out of order", 100.0, LocalDateTime.now(), StageType.FLAT);
+            int lateSprintId = portal.addIntermediateSprintToStage(orderStageId, 80.0);
+            int earlyClimbId = portal.addCategorizedClimbToStage(orderStageId, 20.0, CheckpointType.C4, 4.0, 2.0);
+            int middleSprintId = portal.addIntermediateSprintToStage(orderStageId, 50.0);
+            System.out.println("Checkpoints by location with a middle sprint: " + Arrays.toString(portal.getStageCheckpoints(orderStageId)));
+            assert Arrays.equals(portal.getStageCheckpoints(orderStageId), new int[] {earlyClimbId, middleSprintId, lateSprintId})
+                    : "Checkpoints are not ordered by location.";
+            portal.removeCheckpoint(middleSprintId);
+            portal.concludeStagePreparation(orderStageId);
+            System.out.println("Checkpoints by location: " + Arrays.toString(portal.getStageCheckpoints(orderStageId))
+                    + " (climb " + earlyClimbId + ", sprint " + lateSprintId + ")");
+            assert Arrays.equals(portal.getStageCheckpoints(orderStageId), new int[] {earlyClimbId, lateSprintId})
+                    : "Removing a checkpoint left the others out of order.";
+            // bulkRiders[0] leads over the climb, bulkRiders[1] takes the sprint
+            portal.registerRiderResultsInStage(orderStageId, bulkRiders[0],
+                    bulkStart, bulkStart.plusMinutes(30), bulkStart.plusMinutes(125), bulkStart.plusHours(3));
+            portal.registerRiderResultsInStage(orderStageId, bulkRiders[1],
+                    bulkStart, bulkStart.plusMinutes(35), bulkStart.plusMinutes(120), bulkStart.plusHours(3).plusMinutes(1));
+            System.out.println("Out of order stage sprint and climb winners: " + Arrays.toString(portal.getRidersRankInStage(orderStageId))
+                    + " points " + Arrays.toString(portal.getRidersPointsInStage(orderStageId))
+                    + " mountain points " + Arrays.toString(portal.getRidersMountainPointsInStage(orderStageId)));
+            // stage win 50 + second at the sprint 17, second on the stage 30 + sprint win 20
+            assert Arrays.equals(portal.getRidersRankInStage(orderStageId), new int[] {bulkRiders[0], bulkRiders[1]})
+                    : "Out of order stage ranks are wrong.";
+            assert Arrays.equals(portal.getRidersPointsInStage(orderStageId), new int[] {67, 50})
+                    : "Sprint points did not follow the order of the checkpoint times.";
+            assert Arrays.equals(portal.getRidersMountainPointsInStage(orderStageId), new int[] {1, 0})
+                    : "Climb points did not follow the order of the checkpoint times.";
+            // Points are worked out again for the checkpoints a correction touches, never added twice
+            portal.deleteRiderResultsInStage(orderStageId, bulkRiders[0]);
+            System.out.println("Out of order stage points without the climb winner: " + Arrays.toString(portal.getRidersPointsInStage(orderStageId))
+                    + " mountain points " + Arrays.toString(portal.getRidersMountainPointsInStage(orderStageId))
+                    + " race mountain points " + Arrays.toString(portal.getRidersMountainPointsInRace(orderRaceId)));
+            assert Arrays.equals(portal.getRidersPointsInStage(orderStageId), new int[] {70})
+                    : "Points were not worked out again after a result was deleted.";
+            assert Arrays.equals(portal.getRidersMountainPointsInStage(orderStageId), new int[] {1})
+                    && Arrays.equals(portal.getRidersMountainPointsInRace(orderRaceId), new int[] {1})
+                    : "Mountain points were not worked out again after a result was deleted.";
+            portal.registerRiderResultsInStage(orderStageId, bulkRiders[0],
+                    bulkStart, bulkStart.plusMinutes(30), bulkStart.plusMinutes(125), bulkStart.plusHours(3));
+            System.out.println("Out of order stage points after the correction: " + Arrays.toString(portal.getRidersPointsInStage(orderStageId))
+                    + " mountain points " + Arrays.toString(portal.getRidersMountainPointsInStage(orderStageId))
+                    + " race mountain points " + Arrays.toString(portal.getRidersMountainPointsInRace(orderRaceId)));
+            assert Arrays.equals(portal.getRidersPointsInStage(orderStageId), new int[] {67, 50})
+                    : "Points were added twice after the correction.";
+            assert Arrays.equals(portal.getRidersMountainPointsInStage(orderStageId), new int[] {1, 0})
+                    && Arrays.equals(portal.getRidersMountainPointsInRace(orderRaceId), new int[] {1, 0})
+                    : "Mountain points were added twice after the correction.";
+
+            // Journal changes to a directory, then recover them after reopening, compacting and a torn write
+            Path journalDirectory = Files.createTempDirectory("portal");
+            JournaledCyclingPortalImpl journaled = new JournaledCyclingPortalImpl(new CyclingPortalImpl(), journalDirectory);
+            int journalRaceId = journaled.createRace("JournalRace", "Race kept in a journal");
+            int journalStageId = journaled.addStageToRace(journalRaceId, "JournalStage", "Journaled stage", 80.0, LocalDateTime.now(), StageType.FLAT);
+            journaled.addIntermediateSprintToStage(journalStageId, 40.0);
+            journaled.concludeStagePreparation(journalStageId);
+            int journalTeamId = journaled.createTeam("JournalTeam", "Team kept in a journal");
+            int[] journalRiders = new int[4];
+            LocalTime[][] journalTimes = new LocalTime[journalRiders.length][];
+            for (int i = 0; i < journalRiders.length; i++) {
+                journalRiders[i] = journaled.createRider(journalTeamId, "JournalRider" + i, 1990 + i);
+                journalTimes[i] = new LocalTime[] {bulkStart, bulkStart.plusMinutes(50 - i), bulkStart.plusHours(2).plusMinutes(i * 7 % 5)};
+            }
+            journaled.registerRidersResultsInStage(journalStageId, journalRiders, journalTimes);
+            journaled.deleteRiderResultsInStage(journalStageId, journalRiders[2]);
+            int[] journaledRanks = {journalRiders[0], journalRiders[3], journalRiders[1]};
+            System.out.println("Journaled stage ranks: " + Arrays.toString(journaled.getRidersRankInStage(journalStageId)));
+            assert Arrays.equals(journaled.getRidersRankInStage(journalStageId), journaledRanks)
+                    : "Journaled stage ranks are wrong.";
+            journaled.close();
+            journaled = new JournaledCyclingPortalImpl(new CyclingPortalImpl(), journalDirectory);
+            System.out.println("Journaled stage ranks after reopening: " + Arrays.toString(journaled.getRidersRankInStage(journalStageId)));
+            assert Arrays.equals(journaled.getRidersRankInStage(journalStageId), journaledRanks)
+                    : "Reopening the journal did not recover the stage ranks.";
+            journaled.compact();
+            journaled.registerRiderResultsInStage(journalStageId, journalRiders[2], journalTimes[2]);
+            journaled.close();
+            Path lastJournal = journalDirectory.resolve("journal-1.log");
+            Files.write(lastJournal, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+            journaled = new JournaledCyclingPortalImpl(new CyclingPortalImpl(), journalDirectory);
+            System.out.println("Journaled stage ranks after compaction and a torn write: " + Arrays.toString(journaled.getRidersRankInStage(journalStageId)));
+            assert Arrays.equals(journaled.getRidersRankInStage(journalStageId),
+                    new int[] {journalRiders[0], journalRiders[3], journalRiders[1], journalRiders[2]})
+                    : "The journal was not recovered after compaction and a torn write.";
+            System.out.println("Journaled stage points: " + Arrays.toString(journaled.getRidersPointsInStage(journalStageId)));
+            assert Arrays.equals(journaled.getRidersPointsInStage(journalStageId), new int[] {63, 50, 35, 35})
+                    : "Journaled stage points are wrong.";
+            journaled.close();
+            try (DirectoryStream<Path> journalFiles = Files.newDirectoryStream(journalDirectory)) {
+                for (Path journalFile : journalFiles) {
+                    Files.delete(journalFile);
+                }
+            }
+            Files.delete(journalDirectory);
+            try (DirectoryStream<Path> savedFiles = Files.newDirectoryStream(saveDirectory)) {
+                for (Path savedFile : savedFiles) {
+                    Files.delete(savedFile);
+                }
+            }
+            Files.delete(saveDirectory);
+
             // Finally, print a complete report or summary if needed
             System.out.println("Testing completed successfully.");
 
@@ -0,0 +1,268 @@
+package cycling;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a stage's sprint and mountain points up to date as its results change. For each
+ * checkpoint, in location order, it remembers the riders who crossed it first, up to the
+ * number of places that score points. A new result can only change the checkpoints where the
+ * rider beat the last of those riders, and a removed result only the checkpoints the rider
+ * scored at, so only those checkpoints are worked out again. The points of every rider whose
+ * place changed are then set from the checkpoints they score at, never added to, so working a
+ * checkpoint out twice gives the same points, and the race's totals are changed by the
+ * difference.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class CheckpointPointsEngine {
+    /** Points for each place at a category 4 climb. */
+    private static final int[] C4_POINTS = {1};
+    /** Points for each place at a category 3 climb. */
+    private static final int[] C3_POINTS = {2, 1};
+    /** Points for each place at a category 2 climb. */
+    private static final int[] C2_POINTS = {5, 3, 2, 1};
+    /** Points for each place at a category 1 climb. */
+    private static final int[] C1_POINTS = {10, 8, 6, 4, 2, 1};
+    /** Points for each place at an hors categorie climb. */
+    private static final int[] HC_POINTS = {20, 15, 12, 10, 8, 6, 4, 2};
+    /** Points for each place at an intermediate sprint. */
+    private static final int[] SPRINT_POINTS = {20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+    /** Points for a checkpoint that scores none. */
+    private static final int[] NO_POINTS = {};
+    /** The stage whose points are kept. */
+    private final Stage stage;
+    /** The stage's checkpoints in location order, as the leaders were last worked out for. */
+    private Checkpoint[] checkpoints = new Checkpoint[0];
+    /** The IDs of the riders who crossed each checkpoint first, in the order they crossed it. */
+    private int[][] leaders = new int[0][];
+
+    /**
+     * Creates an engine for a stage. Nothing is worked out until {@link #recomputeAll()}.
+     *
+     * @param stage The stage.
+     */
+    CheckpointPointsEngine(Stage stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Works out every checkpoint's leaders from scratch and sets every rider's sprint and
+     * mountain points from them. Used when the stage's checkpoints change, when many results
+     * are added at once, and for results whose points were worked out elsewhere.
+     */
+    void recomputeAll() {
+        StageResultTable results = stage.getResults();
+        checkpoints = stage.getCheckpointsByLocation();
+        leaders = new int[checkpoints.length][];
+        //a result has the start, each checkpoint and the finish, unless there are no results yet
+        int recorded = results.size() == 0 ? 0 : Math.min(checkpoints.length, results.getTimesPerResult() - 2);
+        for (int c = 0; c < checkpoints.length; c++) {
+            leaders[c] = c < recorded ? findLeaders(c) : new int[0];
+        }
+        for (int slot = 0; slot < results.size(); slot++) {
+            setPoints(results.getRiderId(slot));
+        }
+    }
+
+    /**
+     * Updates the points after a rider's result has been added. Only the checkpoints where the
+     * rider is among the leaders change, and at each of them the rider pushes out at most one.
+     * Calling this again for the same result changes nothing.
+     *
+     * @param riderId The ID of the rider whose result was added.
+     */
+    void resultAdded(int riderId) {
+        if (checkpoints != stage.getCheckpointsByLocation()) {
+            recomputeAll();
+            return;
+        }
+        StageResultTable results = stage.getResults();
+        int slot = results.slotOf(riderId);
+        for (int c = 0; c < checkpoints.length; c++) {
+            if (results.getCheckpointTime(slot, c + 1) == StageResultTable.NO_TIME) {
+                continue;
+            }
+            int[] current = leaders[c];
+            if (indexOf(current, riderId) != -1) {
+                //already worked out, for instance by the recompute that created the engine
+                continue;
+            }
+            int places = distribution(checkpoints[c]).length;
+            int i = current.length;
+            while (i > 0 && crossedBefore(slot, results.slotOf(current[i - 1]), c + 1)) {
+                i--;
+            }
+            if (i >= places) {
+                continue;
+            }
+            int[] updated = Arrays.copyOf(current, Math.min(current.length + 1, places));
+            System.arraycopy(current, i, updated, i + 1, updated.length - i - 1);
+            updated[i] = riderId;
+            leaders[c] = updated;
+            if (current.length == places) {
+                setPoints(current[places - 1]);
+            }
+            for (int j = i + 1; j < updated.length; j++) {
+                setPoints(updated[j]);
+            }
+        }
+        setPoints(riderId);
+    }
+
+    /**
+     * Updates the points after a rider's result has been removed. The rider's own points must
+     * already have been taken off the race's totals. Each checkpoint the rider scored at is
+     * worked out again, since the rider who moves into the last scoring place may be anyone.
+     *
+     * @param riderId The ID of the rider whose result was removed.
+     */
+    void resultRemoved(int riderId) {
+        if (checkpoints != stage.getCheckpointsByLocation()) {
+            recomputeAll();
+            return;
+        }
+        for (int c = 0; c < checkpoints.length; c++) {
+            int[] previous = leaders[c];
+            int index = indexOf(previous, riderId);
+            if (index == -1) {
+                continue;
+            }
+            leaders[c] = findLeaders(c);
+            for (int leader : leaders[c]) {
+                setPoints(leader);
+            }
+        }
+    }
+
+    /**
+     * This helper method finds the riders who crossed a checkpoint first, in the order they
+     * crossed it, with a single pass over that checkpoint's times. Riders with the same time are
+     * ordered by rider ID, and riders with no recorded time are left out.
+     *
+     * @param c The index of the checkpoint in location order.
+     * @return The IDs of the leaders, at most as many as the checkpoint has scoring places.
+     */
+    private int[] findLeaders(int c) {
+        StageResultTable results = stage.getResults();
+        int checkpointIndex = c + 1;
+        int[] slots = new int[Math.min(distribution(checkpoints[c]).length, results.size())];
+        int found = 0;
+        for (int slot = 0; slot < results.size(); slot++) {
+            if (results.getCheckpointTime(slot, checkpointIndex) == StageResultTable.NO_TIME) {
+                continue;
+            }
+            //insertion into the short list of leaders, dropping the last one if it is full
+            int i = found < slots.length ? found++ : slots.length;
+            while (i > 0 && crossedBefore(slot, slots[i - 1], checkpointIndex)) {
+                if (i < slots.length) {
+                    slots[i] = slots[i - 1];
+                }
+                i--;
+            }
+            if (i < slots.length) {
+                slots[i] = slot;
+            }
+        }
+        int[] riderIds = new int[found];
+        for (int i = 0; i < found; i++) {
+            riderIds[i] = results.getRiderId(slots[i]);
+        }
+        return riderIds;
+    }
+
+    /**
+     * This helper method sets a rider's sprint and mountain points in the stage from the
+     * checkpoints the rider leads at, and changes the race's totals by the difference.
+     *
+     * @param riderId The ID of the rider, who may no longer have a result.
+     */
+    private void setPoints(int riderId) {
+        StageResultTable results = stage.getResults();
+        int slot = results.slotOf(riderId);
+        if (slot == -1) {
+            return;
+        }
+        int sprintPoints = 0;
+        int mountainPoints = 0;
+        for (int c = 0; c < checkpoints.length; c++) {
+            int place = indexOf(leaders[c], riderId);
+            if (place == -1) {
+                continue;
+            }
+            if (checkpoints[c] instanceof Climb) {
+                mountainPoints += distribution(checkpoints[c])[place];
+            } else if (checkpoints[c].getType() == CheckpointType.SPRINT) {
+                sprintPoints += distribution(checkpoints[c])[place];
+            }
+        }
+        int sprintChange = sprintPoints - results.getSprintPoints(slot);
+        int mountainChange = mountainPoints - results.getMountainPoints(slot);
+        if (sprintChange != 0 || mountainChange != 0) {
+            results.setSprintPoints(slot, sprintPoints);
+            results.setMountainPoints(slot, mountainPoints);
+            stage.getRace().applyStageResultChange(riderId, 0, 0, sprintChange, mountainChange);
+        }
+    }
+
+    /**
+     * This helper method checks if the rider in one result slot crossed a checkpoint before the
+     * rider in another.
+     *
+     * @param slot The result slot being compared.
+     * @param otherSlot The result slot being compared against.
+     * @param checkpointIndex The index of the checkpoint's time in the results, where 0 is the start.
+     * @return true if the first rider crossed the checkpoint earlier, or at the same time with a lower rider ID.
+     */
+    private boolean crossedBefore(int slot, int otherSlot, int checkpointIndex) {
+        StageResultTable results = stage.getResults();
+        long time = results.getCheckpointTime(slot, checkpointIndex);
+        long otherTime = results.getCheckpointTime(otherSlot, checkpointIndex);
+        if (time != otherTime) {
+            return time < otherTime;
+        }
+        return results.getRiderId(slot) < results.getRiderId(otherSlot);
+    }
+
+    /**
+     * This helper method finds a rider among a checkpoint's leaders.
+     *
+     * @param riderIds The leaders.
+     * @param riderId The ID of the rider.
+     * @return The rider's place, starting from 0, or -1 if the rider is not a leader.
+     */
+    private static int indexOf(int[] riderIds, int riderId) {
+        for (int i = 0; i < riderIds.length; i++) {
+            if (riderIds[i] == riderId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determines the points distribution for different types of checkpoints.
+     *
+     * @param checkpoint The checkpoint.
+     * @return The points for each scoring place at the checkpoint, first place first. The array
+     *         must not be changed.
+     */
+    private static int[] distribution(Checkpoint checkpoint) {
+        switch (checkpoint.getType()) {
+            case C4:
+                return C4_POINTS;
+            case C3:
+                return C3_POINTS;
+            case C2:
+                return C2_POINTS;
+            case C1:
+                return C1_POINTS;
+            case HC:
+                return HC_POINTS;
+            case SPRINT:
+                return SPRINT_POINTS;
+            default:
+                return NO_POINTS;
+        }
+    }
+}
@@ -45,4 +45,21 @@ public class Climb extends Checkpoint {
         return super.toString() + " average gradient=" + averageGradient + " length=" + length;
     }
 
+    /**
+     * Gets the average gradient of the climb.
+     *
+     * @return The average gradient.
+     */
+    public double getAverageGradient(){
+        return averageGradient;
+    }
+
+    /**
+     * Gets the length of the climb in kilometers.
+     *
+     * @return The length of the climb.
+     */
+    public double getLength(){
+        return length;
+    }
 }
@@ -0,0 +1,936 @@
+package cycling;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe implementor of the CyclingPortal interface. Every call is passed on to a
+ * CyclingPortalImpl, guarded by two levels of read/write lock:
+ * <ul>
+ * <li>The portal lock is held for writing by calls that change the portal's structure (teams,
+ * riders, races, stages and checkpoints) or touch every race at once (erase, save and load).
+ * Every other call holds it for reading.</li>
+ * <li>Each race has its own lock, which covers the results of its stages and its general
+ * classification. Registering or deleting results holds the race's lock for writing, and
+ * queries on a race or its stages hold it for reading. Results in different races are
+ * therefore registered in parallel, and queries never block each other.</li>
+ * </ul>
+ * Locks are always taken portal first and race second, so the two levels cannot deadlock.
+ * Calls that only need the portal lock are inherited from {@link ForwardingCyclingPortal},
+ * whose query and change hooks take its read and write side; calls on results are overridden.
+ * <p>
+ * Stage rankings, general classification times and points are read from {@link Standings},
+ * which each stage and race builds the first time it is asked for them after its results
+ * change, so registering a result costs no more however many riders the stage and race have.
+ * Once built, the standings are read without taking any lock, and
+ * {@link #getStageStandings(int)} and {@link #getRaceStandings(int)} hand the standings
+ * themselves to callers that want to read them by position without allocating. Only the first
+ * read after a change takes the portal read lock and the race's read lock, to build them.
+ * <p>
+ * Races sealed with {@link #sealRace(int, String)} are read from their archive files, whose
+ * standings never change and are read without any lock once found. A call that changes a
+ * sealed race brings it back onto the heap, which changes the portal's structure, so it holds
+ * the portal write lock instead.
+ * <p>
+ * Queries share the portal read lock, so they must not change the wrapped portal in any way.
+ * The wrapped portal is never loaded lazily, so none of its races is waiting to be read from a
+ * snapshot or tracked for eviction, and finding a race or stage changes nothing. The lock
+ * helpers go further and only use {@link CyclingPortalImpl#containsRace(int)},
+ * {@link CyclingPortalImpl#findRaceIdOfStage(int)}, {@link CyclingPortalImpl#peekRace(int)} and
+ * {@link CyclingPortalImpl#peekStage(int)}, which never change anything.
+ * <p>
+ * Saving only holds the portal write lock while a {@link PortalImage} of the portal is taken,
+ * which copies each stage's results but encodes nothing, and writes the image once the lock is
+ * released. {@link #saveCyclingPortalInBackground(String)} writes it on a background thread,
+ * so the caller carries on registering results while the file is written. The portal itself
+ * cannot be serialized.
+ *
+ * @author Olly Johnson and Laith Al-Qudah
+ * @version 1.0
+ *
+ */
+public class ConcurrentCyclingPortalImpl extends ForwardingCyclingPortal<CyclingPortalImpl> {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1L;
+
+	/** Held for writing by structural and portal-wide calls, and for reading by every other call. */
+	private final ReentrantReadWriteLock portalLock = new ReentrantReadWriteLock();
+	/** The shared side of {@link #portalLock}. */
+	private final Lock portalReadLock = portalLock.readLock();
+	/** The exclusive side of {@link #portalLock}. */
+	private final Lock portalWriteLock = portalLock.writeLock();
+	/** The lock guarding the results of each race, mapped by race ID and created when first needed. */
+	private final ConcurrentHashMap<Integer, ReentrantReadWriteLock> raceLocks = new ConcurrentHashMap<>();
+	/** Stages whose standings have been read, mapped by stage ID, so they can be found again without locking. */
+	private final ConcurrentHashMap<Integer, Stage> foundStages = new ConcurrentHashMap<>();
+	/** Races whose standings have been read, mapped by race ID, so they can be found again without locking. */
+	private final ConcurrentHashMap<Integer, Race> foundRaces = new ConcurrentHashMap<>();
+	/** Standings of stages of sealed races that have been read, mapped by stage ID. */
+	private final ConcurrentHashMap<Integer, Standings> sealedStageStandings = new ConcurrentHashMap<>();
+	/** Standings of sealed races that have been read, mapped by race ID. */
+	private final ConcurrentHashMap<Integer, Standings> sealedRaceStandings = new ConcurrentHashMap<>();
+	/** Writes the snapshots saved in the background, one at a time, on a daemon thread that stops when idle. */
+	private final ThreadPoolExecutor snapshotWriter = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(), task -> {
+				Thread thread = new Thread(task, "portal-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * Creates an empty portal.
+	 */
+	public ConcurrentCyclingPortalImpl() {
+		super(new CyclingPortalImpl());
+		snapshotWriter.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * This implementation takes the portal read lock.
+	 */
+	@Override
+	void beginQuery() {
+		portalReadLock.lock();
+	}
+
+	/**
+	 * This implementation releases the portal read lock.
+	 */
+	@Override
+	void endQuery() {
+		portalReadLock.unlock();
+	}
+
+	/**
+	 * This implementation takes the portal write lock.
+	 */
+	@Override
+	void beginChange() {
+		portalWriteLock.lock();
+	}
+
+	/**
+	 * This implementation forgets everything found by earlier calls, as the change may have
+	 * removed, sealed or unsealed a stage or race, and releases the portal write lock.
+	 */
+	@Override
+	void endChange() {
+		forgetFound();
+		portalWriteLock.unlock();
+	}
+
+	/**
+	 * This helper method finds the lock guarding a race's results, creating it if needed.
+	 * The caller must hold the portal lock.
+	 *
+	 * @param raceId The ID of the race whose lock is wanted.
+	 * @return The race's lock.
+	 */
+	private ReentrantReadWriteLock raceLock(int raceId) {
+		return raceLocks.computeIfAbsent(raceId, id -> new ReentrantReadWriteLock());
+	}
+
+	/**
+	 * This helper method takes the read lock of a race for a query on it.
+	 * The caller must hold the portal read lock, and release the returned lock once the query is done.
+	 *
+	 * @param raceId The ID of the race to be queried.
+	 * @return The race's read lock, already held.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	private Lock lockRaceForReading(int raceId) throws IDNotRecognisedException {
+		if (!portal.containsRace(raceId)) {
+			throw new IDNotRecognisedException("No entry found with ID: " + raceId);
+		}
+		Lock raceReadLock = raceLock(raceId).readLock();
+		raceReadLock.lock();
+		return raceReadLock;
+	}
+
+	/**
+	 * This helper method takes the read lock of a stage's race for a query on the stage.
+	 * The caller must hold the portal read lock, and release the returned lock once the query is done.
+	 *
+	 * @param stageId The ID of the stage to be queried.
+	 * @return The read lock of the stage's race, already held.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	private Lock lockStageForReading(int stageId) throws IDNotRecognisedException {
+		Lock raceReadLock = raceLock(portal.findRaceIdOfStage(stageId)).readLock();
+		raceReadLock.lock();
+		return raceReadLock;
+	}
+
+	/**
+	 * This helper method takes the write lock of a stage's race so that its results can be changed.
+	 * The caller must hold the portal read lock, and release the returned lock once the change is done.
+	 *
+	 * @param stageId The ID of the stage to be changed.
+	 * @return The write lock of the stage's race, already held.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	private Lock lockStageForWriting(int stageId) throws IDNotRecognisedException {
+		Lock raceWriteLock = raceLock(portal.findRaceIdOfStage(stageId)).writeLock();
+		raceWriteLock.lock();
+		return raceWriteLock;
+	}
+
+	/**
+	 * This helper method forgets the stages, races and sealed standings found by earlier reads,
+	 * as some of them may have been removed, sealed or unsealed, and the race locks, which are
+	 * created again when next needed. The caller must hold the portal write lock, so no race lock
+	 * is held.
+	 */
+	private void forgetFound() {
+		raceLocks.clear();
+		foundStages.clear();
+		foundRaces.clear();
+		sealedStageStandings.clear();
+		sealedRaceStandings.clear();
+	}
+
+	/**
+	 * This helper method finds the standings of a stage, or the archived standings if the
+	 * stage's race is sealed. No lock is taken if the standings have been built since the
+	 * stage's results last changed; otherwise they are built under the portal read lock and the
+	 * read lock of the stage's race.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The stage's standings.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	private Standings stageStandings(int stageId) throws IDNotRecognisedException {
+		Stage stage = foundStages.get(stageId);
+		Standings standings = stage == null ? sealedStageStandings.get(stageId) : stage.getBuiltStandings();
+		if (standings != null) {
+			return standings;
+		}
+		portalReadLock.lock();
+		try {
+			if (portal.isStageSealed(stageId)) {
+				standings = portal.getSealedStageStandings(stageId);
+				sealedStageStandings.put(stageId, standings);
+				return standings;
+			}
+			stage = portal.peekStage(stageId);
+			if (stage == null) {
+				throw new IDNotRecognisedException("The stage ID " + stageId + " was not recognised in any race.");
+			}
+			foundStages.put(stageId, stage);
+			Lock raceReadLock = raceLock(stage.getRace().getRaceId()).readLock();
+			raceReadLock.lock();
+			try {
+				return stage.getStandings();
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This helper method finds the standings of a race, or the archived standings if the race is
+	 * sealed. No lock is taken if the standings have been built since the race's results last
+	 * changed; otherwise they are built under the portal read lock and the race's read lock.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The race's standings.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	private Standings raceStandings(int raceId) throws IDNotRecognisedException {
+		Race race = foundRaces.get(raceId);
+		Standings standings = race == null ? sealedRaceStandings.get(raceId) : race.getBuiltStandings();
+		if (standings != null) {
+			return standings;
+		}
+		portalReadLock.lock();
+		try {
+			if (portal.isRaceSealed(raceId)) {
+				standings = portal.getSealedRaceStandings(raceId);
+				sealedRaceStandings.put(raceId, standings);
+				return standings;
+			}
+			race = portal.peekRace(raceId);
+			if (race == null) {
+				throw new IDNotRecognisedException("No entry found with ID: " + raceId);
+			}
+			foundRaces.put(raceId, race);
+			Lock raceReadLock = raceLock(raceId).readLock();
+			raceReadLock.lock();
+			try {
+				return race.getStandings();
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the standings of a stage: its riders in ranked order with their adjusted elapsed
+	 * times, points and mountain points. No lock is taken unless the stage's results have changed
+	 * since its standings were last read, and the standings can be read by position without
+	 * allocating. A sealed stage's standings are read from its
+	 * race's archive file.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The stage's standings.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	public Standings getStageStandings(int stageId) throws IDNotRecognisedException {
+		return stageStandings(stageId);
+	}
+
+	/**
+	 * Gets the standings of a race: its general classification with each rider's total adjusted
+	 * elapsed time, points and mountain points. No lock is taken unless the race's results have
+	 * changed since its standings were last read, and the standings can be read by position
+	 * without allocating. A sealed race's standings are
+	 * read from its archive file.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The race's standings.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	public Standings getRaceStandings(int raceId) throws IDNotRecognisedException {
+		return raceStandings(raceId);
+	}
+
+	/**
+	 * Seals a finished race into a read-only archive file under the portal write lock, as
+	 * described in {@link CyclingPortalImpl#sealRace(int, String)}. Queries on the race are read
+	 * from the file from then on.
+	 *
+	 * @param raceId The ID of the race to be sealed.
+	 * @param filename The path and name of the archive file, which is replaced if it exists.
+	 * @throws IDNotRecognisedException If the ID does not match any race held on the heap.
+	 * @throws InvalidStageStateException If any stage of the race is not waiting for results.
+	 * @throws IllegalStateException If the race is already sealed.
+	 * @throws IOException If the archive file cannot be written or mapped.
+	 */
+	void sealRace(int raceId, String filename) throws IDNotRecognisedException, InvalidStageStateException, IOException {
+		beginChange();
+		try {
+			portal.sealRace(raceId, filename);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation registers a rider's times in a stage under the portal read lock and the
+	 * write lock of the stage's race, so only registrations in the same race wait for each other.
+	 * The standings of the stage and race are not rebuilt until they are next read.
+	 * A stage of a sealed race is registered in under the portal write lock instead.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @param checkpoints The rider's times at the start, each checkpoint and the finish.
+	 * @throws IDNotRecognisedException If the stage or rider ID does not exist within the system.
+	 * @throws DuplicatedResultException If the rider already has a result in the stage.
+	 * @throws InvalidCheckpointTimesException If the number of times does not match the stage's checkpoints.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	@Override
+	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException,
+			InvalidStageStateException {
+		portalReadLock.lock();
+		try {
+			if (!portal.isStageSealed(stageId)) {
+				Lock raceWriteLock = lockStageForWriting(stageId);
+				try {
+					portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+					return;
+				} finally {
+					raceWriteLock.unlock();
+				}
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+		beginChange();
+		try {
+			portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation registers a batch of results in a stage under the portal read lock and
+	 * the write lock of the stage's race. The standings are rebuilt once, when they are next read.
+	 * A stage of a sealed race is registered in under the portal write lock instead.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderIds The IDs of the riders, one per row.
+	 * @param checkpointTimes The times of each rider at each checkpoint, in the same order as the riders.
+	 * @return One entry per row: null if the row was registered, or the reason it was rejected.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	@Override
+	public Exception[] registerRidersResultsInStage(int stageId, int[] riderIds, LocalTime[][] checkpointTimes)
+			throws IDNotRecognisedException, InvalidStageStateException {
+		portalReadLock.lock();
+		try {
+			if (!portal.isStageSealed(stageId)) {
+				Lock raceWriteLock = lockStageForWriting(stageId);
+				try {
+					Exception[] errors = portal.registerRidersResultsInStage(stageId, riderIds, checkpointTimes);
+					return errors;
+				} finally {
+					raceWriteLock.unlock();
+				}
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+		beginChange();
+		try {
+			return portal.registerRidersResultsInStage(stageId, riderIds, checkpointTimes);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation reads a rider's checkpoint times in a stage under the portal read lock
+	 * and the read lock of the stage's race.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's times at each checkpoint and their elapsed time.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockStageForReading(stageId);
+			try {
+				return portal.getRiderResultsInStage(stageId, riderId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation reads a rider's adjusted elapsed time in a stage under the portal read
+	 * lock and the read lock of the stage's race.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The adjusted elapsed time of the rider in the stage.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockStageForReading(stageId);
+			try {
+				return portal.getRiderAdjustedElapsedTimeInStage(stageId, riderId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation deletes a rider's result in a stage under the portal read lock and the
+	 * write lock of the stage's race. The standings are rebuilt when they are next read.
+	 * A result in a stage of a sealed race is deleted under the portal write lock instead.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			if (!portal.isStageSealed(stageId)) {
+				Lock raceWriteLock = lockStageForWriting(stageId);
+				try {
+					portal.deleteRiderResultsInStage(stageId, riderId);
+					return;
+				} finally {
+					raceWriteLock.unlock();
+				}
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+		beginChange();
+		try {
+			portal.deleteRiderResultsInStage(stageId, riderId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation reads the stage ranking from the stage's standings, taking no lock
+	 * once they are built.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The IDs of the riders in the stage, in order of rank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+		return stageStandings(stageId).getRiderIds();
+	}
+
+	/**
+	 * This implementation reads the ranked adjusted elapsed times from the stage's
+	 * standings, taking no lock once they are built.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The adjusted elapsed times of the riders in the stage, in order of rank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+		return stageStandings(stageId).getAdjustedElapsedLocalTimes();
+	}
+
+	/**
+	 * This implementation reads the riders' points from the stage's standings, taking no lock
+	 * once they are built.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The points of the riders in the stage, in order of rank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+		return stageStandings(stageId).getPoints();
+	}
+
+	/**
+	 * This implementation reads the riders' mountain points from the stage's standings,
+	 * taking no lock once they are built.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The mountain points of the riders in the stage, in order of rank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+		return stageStandings(stageId).getMountainPoints();
+	}
+
+	/**
+	 * This implementation takes an image of the portal under the portal write lock, so that no
+	 * race's results change while it is taken, and writes it once the lock is released.
+	 *
+	 * @param filename The path and name of the file where data will be saved.
+	 * @throws IOException If an I/O error occurs during writing to the file.
+	 */
+	@Override
+	public void saveCyclingPortal(String filename) throws IOException {
+		captureImage().save(filename, false, 0);
+	}
+
+	/**
+	 * Saves the portal as {@link #saveCyclingPortal(String)} does, but writes the file on a
+	 * background thread. The call returns as soon as the image of the portal has been taken, and
+	 * the snapshot holds the portal as it was at that moment, whatever is registered while the
+	 * file is being written. Snapshots are written one at a time, in the order they were asked
+	 * for, so a later snapshot of the same file always replaces an earlier one.
+	 *
+	 * @param filename The path and name of the file where data will be saved.
+	 * @return A future completed with the snapshot's metrics once the file has been written, or
+	 *         completed exceptionally with an {@link UncheckedIOException} if it cannot be.
+	 */
+	public CompletableFuture<SnapshotMetrics> saveCyclingPortalInBackground(String filename) {
+		long requested = System.nanoTime();
+		PortalImage image = captureImage();
+		long captured = System.nanoTime();
+		return CompletableFuture.supplyAsync(() -> {
+			long started = System.nanoTime();
+			long bytesWritten;
+			try {
+				bytesWritten = image.save(filename, false, 0);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			long finished = System.nanoTime();
+			return new SnapshotMetrics(filename, Duration.ofNanos(captured - requested), Duration.ofNanos(finished - started),
+					Duration.ofNanos(finished - requested), bytesWritten);
+		}, snapshotWriter);
+	}
+
+	/**
+	 * This helper method refuses to serialize the portal, whose locks and background snapshot
+	 * writer only make sense in the running program. Use {@link #saveCyclingPortal(String)} instead.
+	 *
+	 * @param out The stream the portal would be written to.
+	 * @throws NotSerializableException Always.
+	 */
+	private void writeObject(ObjectOutputStream out) throws NotSerializableException {
+		throw new NotSerializableException("A concurrent portal cannot be serialized; save it with saveCyclingPortal instead.");
+	}
+
+	/**
+	 * This helper method takes an image of the portal under the portal write lock.
+	 *
+	 * @return The image.
+	 */
+	private PortalImage captureImage() {
+		portalWriteLock.lock();
+		try {
+			return portal.captureImage();
+		} finally {
+			portalWriteLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation reads the general classification from the race's standings,
+	 * taking no lock once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The IDs of the riders in the race, in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+		return raceStandings(raceId).getRiderIds();
+	}
+
+	/**
+	 * This implementation reads the general classification times from the race's
+	 * standings, taking no lock once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The total adjusted elapsed times, in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+		return raceStandings(raceId).getAdjustedElapsedLocalTimes();
+	}
+
+	/**
+	 * This implementation reads the general classification durations from the race's
+	 * standings, taking no lock once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The total adjusted elapsed durations, in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public Duration[] getGeneralClassificationDurationsInRace(int raceId) throws IDNotRecognisedException {
+		return raceStandings(raceId).getAdjustedElapsedDurations();
+	}
+
+	/**
+	 * This implementation reads the riders' points from the race's standings, taking no lock
+	 * once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The points of the riders, in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+		return raceStandings(raceId).getPoints();
+	}
+
+	/**
+	 * This implementation reads the riders' mountain points from the race's standings,
+	 * taking no lock once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The mountain points of the riders, in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+		return raceStandings(raceId).getMountainPoints();
+	}
+
+	/**
+	 * This implementation reads the points classification of a race under the portal and race read locks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The IDs of the riders, ordered by their points in the race.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockRaceForReading(raceId);
+			try {
+				return portal.getRidersPointClassificationRank(raceId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation reads the mountain points classification of a race under the portal and race read locks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The IDs of the riders, ordered by their mountain points in the race.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockRaceForReading(raceId);
+			try {
+				return portal.getRidersMountainPointClassificationRank(raceId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation copies the first riders from the stage's standings, taking no lock
+	 * once they are built.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs in the order of their rank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getTopRidersInStage(int stageId, int limit) throws IDNotRecognisedException {
+		return stageStandings(stageId).getTopRiderIds(limit);
+	}
+
+	/**
+	 * This implementation copies the first riders from the race's standings, taking no lock
+	 * once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getTopRidersGeneralClassification(int raceId, int limit) throws IDNotRecognisedException {
+		return raceStandings(raceId).getTopRiderIds(limit);
+	}
+
+	/**
+	 * This implementation picks the riders with the most points from the race's standings,
+	 * taking no lock once they are built. The standings are in general classification order,
+	 * so riders with the same points come out in the same order as in the full classification.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs, ordered by their points in the race.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getTopRidersPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+		return raceStandings(raceId).getTopRiderIdsByPoints(limit);
+	}
+
+	/**
+	 * This implementation picks the riders with the most mountain points from the race's
+	 * standings, taking no lock once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs, ordered by their mountain points in the race.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getTopRidersMountainPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+		return raceStandings(raceId).getTopRiderIdsByMountainPoints(limit);
+	}
+
+	/**
+	 * This implementation copies one page from the stage's standings, taking no lock once
+	 * they are built.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param offset The number of riders ranked before the page.
+	 * @param limit The most riders the page can hold.
+	 * @return The page of the stage ranking.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public Standings getStageStandingsPage(int stageId, int offset, int limit) throws IDNotRecognisedException {
+		return stageStandings(stageId).getPage(offset, limit);
+	}
+
+	/**
+	 * This implementation copies a range of ranks from the stage's standings, taking no lock
+	 * once they are built.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param firstRank The rank of the first rider wanted.
+	 * @param lastRank The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public Standings getStageStandingsBetweenRanks(int stageId, int firstRank, int lastRank)
+			throws IDNotRecognisedException {
+		int limit = CyclingPortalImpl.rankRangeLimit(firstRank, lastRank);
+		return stageStandings(stageId).getPage(firstRank - 1, limit);
+	}
+
+	/**
+	 * This implementation copies one page from the race's standings, taking no lock once
+	 * they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param offset The number of riders ranked before the page.
+	 * @param limit The most riders the page can hold.
+	 * @return The page of the general classification.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public Standings getGeneralClassificationPage(int raceId, int offset, int limit) throws IDNotRecognisedException {
+		return raceStandings(raceId).getPage(offset, limit);
+	}
+
+	/**
+	 * This implementation copies a range of ranks from the race's standings, taking no lock
+	 * once they are built.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param firstRank The rank of the first rider wanted.
+	 * @param lastRank The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public Standings getGeneralClassificationBetweenRanks(int raceId, int firstRank, int lastRank)
+			throws IDNotRecognisedException {
+		int limit = CyclingPortalImpl.rankRangeLimit(firstRank, lastRank);
+		return raceStandings(raceId).getPage(firstRank - 1, limit);
+	}
+
+	/**
+	 * This implementation reads a rider's rank in a stage under the portal read lock and the read
+	 * lock of the stage's race.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank in the stage, or 0 if they have no result in it.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockStageForReading(stageId);
+			try {
+				return portal.getRiderRankInStage(stageId, riderId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation reads a rider's general classification rank under the portal read lock
+	 * and the race's read lock.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank in the general classification, or 0 if they have no result in the race.
+	 * @throws IDNotRecognisedException If the race ID or rider ID does not match any race or rider in the system.
+	 */
+	@Override
+	public int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockRaceForReading(raceId);
+			try {
+				return portal.getRiderGeneralClassificationRank(raceId, riderId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation reads a rider's standing in a stage under the portal read lock and the
+	 * read lock of the stage's race.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the stage, or null if they have no result in it.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public RiderStanding getRiderStandingInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockStageForReading(stageId);
+			try {
+				return portal.getRiderStandingInStage(stageId, riderId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation reads a rider's standing in a race under the portal read lock and the
+	 * race's read lock. The first lookup in a race sorts its points and mountain classifications,
+	 * which only ever happens while no writer holds the race.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the race, or null if they have no result in it.
+	 * @throws IDNotRecognisedException If the race ID or rider ID does not match any race or rider in the system.
+	 */
+	@Override
+	public RiderStanding getRiderStandingInRace(int raceId, int riderId) throws IDNotRecognisedException {
+		portalReadLock.lock();
+		try {
+			Lock raceReadLock = lockRaceForReading(raceId);
+			try {
+				return portal.getRiderStandingInRace(raceId, riderId);
+			} finally {
+				raceReadLock.unlock();
+			}
+		} finally {
+			portalReadLock.unlock();
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package cycling;
 
+import java.time.Duration;
 import java.time.LocalTime;
 
 /**
@@ -63,6 +64,25 @@ public interface CyclingPortal extends MiniCyclingPortal {
 	 */
 	LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException;
 
+	/**
+	 * Get the general classification times of riders in a race as durations.
+	 * <p>
+	 * Unlike {@link #getGeneralClassificationTimesInRace(int)}, the total elapsed
+	 * time of a race may exceed 24h, as it does in three-week races.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 * 
+	 * @param raceId The ID of the race being queried.
+	 * @return A list of riders' total times sorted by the sum of their adjusted
+	 *         elapsed times in all stages of the race. An empty list if there is no
+	 *         result for any stage in the race. These times should match the riders
+	 *         returned by {@link #getRidersGeneralClassificationRank(int)}.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the
+	 *                                  system.
+	 */
+	Duration[] getGeneralClassificationDurationsInRace(int raceId) throws IDNotRecognisedException;
+
 	/**
 	 * Get the overall points of riders in a race.
 	 * <p>
@@ -128,4 +148,259 @@ public interface CyclingPortal extends MiniCyclingPortal {
 	 */
 	int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException;
 
+	/**
+	 * Record the times of many riders in a stage at once, such as a whole finish
+	 * file from a timing provider.
+	 * <p>
+	 * Each row is validated as {@link #registerRiderResultsInStage(int, int, LocalTime...)}
+	 * would validate it, including against the other rows, so a rider may appear
+	 * only once. Rows that fail are reported and left out; every other row is
+	 * registered. The stage rankings and points are updated once for the whole
+	 * batch.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 * 
+	 * @param stageId         The ID of the stage the results refer to.
+	 * @param riderIds        The IDs of the riders, one per row.
+	 * @param checkpointTimes The times of each rider, in the same order as the
+	 *                        riders, following the format of
+	 *                        {@link #registerRiderResultsInStage(int, int, LocalTime...)}.
+	 * @return An array with one entry per row: null if the row was registered, or
+	 *         the exception that registering it on its own would have thrown (an
+	 *         {@link IDNotRecognisedException} for an unknown rider, a
+	 *         {@link DuplicatedResultException} or an
+	 *         {@link InvalidCheckpointTimesException}).
+	 * @throws IDNotRecognisedException   If the ID does not match to any stage in
+	 *                                    the system.
+	 * @throws InvalidStageStateException Thrown if the stage is not "waiting for
+	 *                                    results".
+	 * @throws IllegalArgumentException   If the number of riders and the number
+	 *                                    of rows of times differ.
+	 */
+	Exception[] registerRidersResultsInStage(int stageId, int[] riderIds, LocalTime[][] checkpointTimes)
+			throws IDNotRecognisedException, InvalidStageStateException;
+
+	/**
+	 * Get the first riders of a stage ranking, such as the podium, without the
+	 * rest of the field.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param limit   The number of riders asked for.
+	 * @return The first limit riders' IDs returned by
+	 *         {@link #getRidersRankInStage(int)}, in the same order. All of them if
+	 *         the stage has fewer results.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If the number of riders asked for is
+	 *                                  negative.
+	 */
+	int[] getTopRidersInStage(int stageId, int limit) throws IDNotRecognisedException;
+
+	/**
+	 * Get the first riders of the general classification of a race.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param limit  The number of riders asked for.
+	 * @return The first limit riders' IDs returned by
+	 *         {@link #getRidersGeneralClassificationRank(int)}, in the same order.
+	 *         All of them if the race has fewer riders.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If the number of riders asked for is
+	 *                                  negative.
+	 */
+	int[] getTopRidersGeneralClassification(int raceId, int limit) throws IDNotRecognisedException;
+
+	/**
+	 * Get the first riders of the points classification of a race, without
+	 * ranking the rest of the field.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param limit  The number of riders asked for.
+	 * @return The first limit riders' IDs returned by
+	 *         {@link #getRidersPointClassificationRank(int)}, in the same order.
+	 *         All of them if the race has fewer riders.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If the number of riders asked for is
+	 *                                  negative.
+	 */
+	int[] getTopRidersPointClassification(int raceId, int limit) throws IDNotRecognisedException;
+
+	/**
+	 * Get the first riders of the mountain classification of a race, without
+	 * ranking the rest of the field.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param limit  The number of riders asked for.
+	 * @return The first limit riders' IDs returned by
+	 *         {@link #getRidersMountainPointClassificationRank(int)}, in the same
+	 *         order. All of them if the race has fewer riders.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If the number of riders asked for is
+	 *                                  negative.
+	 */
+	int[] getTopRidersMountainPointClassification(int raceId, int limit) throws IDNotRecognisedException;
+
+	/**
+	 * Get one page of a stage ranking, such as the riders ranked 51 to 100, with
+	 * their adjusted elapsed times and points.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param offset  The number of riders ranked before the page, so 0 for the
+	 *                first page.
+	 * @param limit   The most riders the page can hold.
+	 * @return The riders returned by {@link #getRidersRankInStage(int)} from the
+	 *         offset onwards, at most limit of them. Empty if the offset is past
+	 *         the last rider. {@link Standings#getFirstRank()} gives the rank of
+	 *         the first rider in the page.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If the offset or limit is negative.
+	 */
+	Standings getStageStandingsPage(int stageId, int offset, int limit) throws IDNotRecognisedException;
+
+	/**
+	 * Get the riders of a stage ranking between two ranks, both included.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param stageId   The ID of the stage being queried.
+	 * @param firstRank The rank of the first rider wanted, starting from 1.
+	 * @param lastRank  The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank, or fewer if the stage has
+	 *         fewer results.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If firstRank is less than 1 or lastRank is
+	 *                                  less than firstRank.
+	 */
+	Standings getStageStandingsBetweenRanks(int stageId, int firstRank, int lastRank) throws IDNotRecognisedException;
+
+	/**
+	 * Get one page of the general classification of a race, with each rider's
+	 * total adjusted elapsed time and points.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param offset The number of riders ranked before the page, so 0 for the
+	 *               first page.
+	 * @param limit  The most riders the page can hold.
+	 * @return The riders returned by
+	 *         {@link #getRidersGeneralClassificationRank(int)} from the offset
+	 *         onwards, at most limit of them. Empty if the offset is past the last
+	 *         rider.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If the offset or limit is negative.
+	 */
+	Standings getGeneralClassificationPage(int raceId, int offset, int limit) throws IDNotRecognisedException;
+
+	/**
+	 * Get the riders of the general classification of a race between two ranks,
+	 * both included.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param raceId    The ID of the race being queried.
+	 * @param firstRank The rank of the first rider wanted, starting from 1.
+	 * @param lastRank  The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank, or fewer if the race has
+	 *         fewer riders.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the
+	 *                                  system.
+	 * @throws IllegalArgumentException If firstRank is less than 1 or lastRank is
+	 *                                  less than firstRank.
+	 */
+	Standings getGeneralClassificationBetweenRanks(int raceId, int firstRank, int lastRank)
+			throws IDNotRecognisedException;
+
+	/**
+	 * Get a rider's rank in a stage without building the whole ranking.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's position in {@link #getRidersRankInStage(int)},
+	 *         starting from 1, or 0 if the rider has no result in the stage.
+	 * @throws IDNotRecognisedException If the ID does not match any stage or
+	 *                                  rider in the system.
+	 */
+	int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException;
+
+	/**
+	 * Get a rider's rank in the general classification of a race without
+	 * building the whole classification.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param raceId  The ID of the race being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's position in
+	 *         {@link #getRidersGeneralClassificationRank(int)}, starting from 1,
+	 *         or 0 if the rider has no result in the race.
+	 * @throws IDNotRecognisedException If the ID does not match any race or
+	 *                                  rider in the system.
+	 */
+	int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException;
+
+	/**
+	 * Get where a rider stands in a stage: their rank, adjusted elapsed time, gap
+	 * to the stage winner, points and mountain points, without building the
+	 * stage ranking.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the stage, or null if the rider has no
+	 *         result in the stage.
+	 * @throws IDNotRecognisedException If the ID does not match any stage or
+	 *                                  rider in the system.
+	 */
+	RiderStanding getRiderStandingInStage(int stageId, int riderId) throws IDNotRecognisedException;
+
+	/**
+	 * Get where a rider stands in a race: their general classification rank,
+	 * total adjusted elapsed time and gap to the leader, and their points and
+	 * mountain points with their ranks in the points and mountain
+	 * classifications, without building any of the classifications.
+	 * <p>
+	 * The state of this CyclingPortal must be unchanged if any exceptions are
+	 * thrown.
+	 *
+	 * @param raceId  The ID of the race being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the race, or null if the rider has no
+	 *         result in the race.
+	 * @throws IDNotRecognisedException If the ID does not match any race or
+	 *                                  rider in the system.
+	 */
+	RiderStanding getRiderStandingInRace(int raceId, int riderId) throws IDNotRecognisedException;
+
 }
@@ -1,10 +1,15 @@
 package cycling;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.ArrayList;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 
 /**
@@ -29,93 +34,581 @@ public class CyclingPortalImpl implements CyclingPortal {
 	private HashMap<Integer, Team> teams = new HashMap<>();
 	/** Collection of races within the cycling portal, mapped by their unique IDs. */
 	private HashMap<Integer, Race> races = new HashMap<>();
+	/** Index of every stage in the portal, mapped by stage ID. Rebuilt after loading. */
+	private transient HashMap<Integer, Stage> stagesById = new HashMap<>();
+	/** Index of every rider in the portal, mapped by rider ID. Rebuilt after loading. */
+	private transient HashMap<Integer, Rider> ridersById = new HashMap<>();
+	/** Index of the stage each checkpoint belongs to, mapped by checkpoint ID. Rebuilt after loading. */
+	private transient HashMap<Integer, Stage> stagesByCheckpointId = new HashMap<>();
+	/** Index of team IDs, mapped by team name. Rebuilt after loading. */
+	private transient HashMap<String, Integer> teamIdsByName = new HashMap<>();
+	/** Index of race IDs, mapped by race name. Rebuilt after loading. */
+	private transient HashMap<String, Integer> raceIdsByName = new HashMap<>();
+	/** Index of stage IDs, mapped by stage name. Rebuilt after loading. */
+	private transient HashMap<String, Integer> stageIdsByName = new HashMap<>();
+	/** The races not held on the heap: sealed races, and races of a lazily loaded snapshot that have not been read. */
+	private transient RaceStorage storage = new RaceStorage();
+
+	/** The maximum number of characters allowed in a team, race or stage name. */
+	static final int MAX_NAME_LENGTH = 30;
 
 	/**
-	 * This helper method checks if the provided team name is valid.
+	 * This helper method checks if the provided team, race or stage name is valid.
 	 * It ensures that the name is not null, not empty, does not exceed 30 characters,
-	 * does not contain any whitespace, and is not already in use by another team.
+	 * does not contain any whitespace, and is not already in use.
+	 * The checks are done in a single pass over the characters so no regular expression
+	 * is compiled and nothing is allocated unless an exception is thrown.
 	 *
-	 * @param name The team name to be validated.
-	 * @throws IllegalNameException If the team name already exists within the system.
-	 * @throws InvalidNameException If the team name is null, empty, too long, or contains whitespace.
+	 * @param name The name to be validated.
+	 * @param kind The kind of name being validated (e.g. "Team"), used in the exception messages.
+	 * @param namesInUse The names already in use by objects of the same kind.
+	 * @throws IllegalNameException If the name already exists within the system.
+	 * @throws InvalidNameException If the name is null, empty, too long, or contains whitespace.
 	 */
-	private void validateTeamName(String name) throws IllegalNameException, InvalidNameException {
-        if (name == null || name.trim().isEmpty()) {
-            throw new InvalidNameException("Team name cannot be null or empty.");
-        }
-		if (name.length() > 30){
-			throw new InvalidNameException("Team name cannot be greater than 30 characters");
+	static void validateName(String name, String kind, Map<String, ?> namesInUse)
+			throws IllegalNameException, InvalidNameException {
+		if (name == null || isBlank(name)) {
+			throw new InvalidNameException(kind + " name cannot be null or empty.");
 		}
-		if (name.matches(".*\\s.*")) {
-			throw new InvalidNameException("Team name cannot contain whitespace.");
+		if (name.length() > MAX_NAME_LENGTH){
+			throw new InvalidNameException(kind + " name cannot be greater than 30 characters");
 		}
-		for (Team team : teams.values()) {
-			if (team.getTeamName().equals(name)){
-				throw new IllegalNameException("Team name already exists.");
+		for (int i = 0; i < name.length(); i++) {
+			if (isWhitespace(name.charAt(i))) {
+				throw new InvalidNameException(kind + " name cannot contain whitespace.");
 			}
 		}
-    }
+		if (namesInUse.containsKey(name)) {
+			throw new IllegalNameException(kind + " name already exists.");
+		}
+	}
 
 	/**
-	 * This helper method verifies the validity of a race name.
-	 * It checks for the name being non-null, non-empty, within a 30-character limit,
-	 * free of whitespace, and ensures it is not already assigned to an existing race.
+	 * This helper method checks if a name would be empty once trimmed, i.e. it only contains
+	 * characters that {@link String#trim()} removes.
 	 *
-	 * @param name The race name to be validated.
-	 * @throws IllegalNameException If the race name already exists within the system.
-	 * @throws InvalidNameException If the race name is null, empty, exceeds the character limit, or contains whitespace.
+	 * @param name The name to be checked.
+	 * @return true if every character of the name is a space or control character, false otherwise.
 	 */
-	private void validateRaceName(String name) throws IllegalNameException, InvalidNameException {
-        if (name == null || name.trim().isEmpty()) {
-            throw new InvalidNameException("Race name cannot be null or empty.");
-        }
-		if (name.length() > 30){
-			throw new InvalidNameException("Race name cannot be greater than 30 characters");
+	private static boolean isBlank(String name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) > ' ') {
+				return false;
+			}
 		}
-		if (name.matches(".*\\s.*")) {
-			throw new InvalidNameException("Race name cannot contain whitespace.");
+		return true;
+	}
+
+	/**
+	 * This helper method checks if a character is one of the whitespace characters matched by
+	 * the regular expression class {@code \s}: space, tab, newline, vertical tab, form feed
+	 * or carriage return.
+	 *
+	 * @param c The character to be checked.
+	 * @return true if the character is whitespace, false otherwise.
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+
+	/**
+	 * This helper method rebuilds the ID and name indexes from the teams and races currently held
+	 * by the portal, and from the sealed and unread races of the file it was loaded from. It is
+	 * used after the portal has been loaded from a file, once the storage has been reset.
+	 *
+	 * @param sealed The sealed races that were loaded, mapped by race ID.
+	 * @param unread The races of a lazily loaded snapshot that have not been read, mapped by race ID.
+	 */
+	private void rebuildIndexes(Map<Integer, RaceArchive> sealed, Map<Integer, RaceSegment> unread) {
+		stagesById = new HashMap<>();
+		ridersById = new HashMap<>();
+		stagesByCheckpointId = new HashMap<>();
+		teamIdsByName = new HashMap<>();
+		raceIdsByName = new HashMap<>();
+		stageIdsByName = new HashMap<>();
+		for (Team team : teams.values()) {
+			teamIdsByName.put(team.getTeamName(), team.getTeamId());
+			for (Rider rider : team.getRiders()) {
+				ridersById.put(rider.getRiderId(), rider);
+			}
 		}
 		for (Race race : races.values()) {
-			if (race.getRaceName().equals(name)){
-				throw new IllegalNameException("Race name already exists.");
+			raceIdsByName.put(race.getRaceName(), race.getRaceId());
+			for (Stage stage : race.getStages()) {
+				indexStage(stage);
 			}
 		}
-    }
+		for (RaceArchive archive : sealed.values()) {
+			indexSealedRace(archive);
+		}
+		for (RaceSegment segment : unread.values()) {
+			indexUnreadRace(segment);
+		}
+	}
+
+	/**
+	 * This helper method adds a stage, its name and all of its checkpoints to the portal indexes.
+	 *
+	 * @param stage The stage to be indexed.
+	 */
+	private void indexStage(Stage stage) {
+		stagesById.put(stage.getStageId(), stage);
+		stageIdsByName.put(stage.getStageName(), stage.getStageId());
+		for (Integer checkpointId : stage.getCheckpoints().keySet()) {
+			stagesByCheckpointId.put(checkpointId, stage);
+		}
+	}
+
+	/**
+	 * This helper method removes a stage, its name and all of its checkpoints from the portal indexes.
+	 *
+	 * @param stage The stage to be removed from the indexes.
+	 */
+	private void unindexStage(Stage stage) {
+		stagesById.remove(stage.getStageId());
+		stageIdsByName.remove(stage.getStageName());
+		for (Integer checkpointId : stage.getCheckpoints().keySet()) {
+			stagesByCheckpointId.remove(checkpointId);
+		}
+	}
+
+	/**
+	 * This helper method adds a sealed race to the storage and the names of it and its stages to
+	 * the portal indexes, so that the names stay in use and the IDs stay recognised while the
+	 * race is sealed.
+	 *
+	 * @param archive The sealed race to be indexed.
+	 */
+	private void indexSealedRace(RaceArchive archive) {
+		storage.addSealedRace(archive);
+		raceIdsByName.put(archive.getRaceName(), archive.getRaceId());
+		for (int stageId : archive.getStageIds()) {
+			stageIdsByName.put(archive.getStageName(stageId), stageId);
+		}
+	}
+
+	/**
+	 * This helper method removes a sealed race from the storage and its names from the portal
+	 * indexes. The archive file itself is left where it is.
+	 *
+	 * @param archive The sealed race to be removed from the indexes.
+	 */
+	private void unindexSealedRace(RaceArchive archive) {
+		storage.removeSealedRace(archive);
+		raceIdsByName.remove(archive.getRaceName());
+		for (int stageId : archive.getStageIds()) {
+			stageIdsByName.remove(archive.getStageName(stageId));
+		}
+	}
+
+	/**
+	 * This helper method adds an unread race to the storage and the names of it and its stages
+	 * to the portal indexes, so that the names stay in use and the IDs stay recognised until the
+	 * race is read.
+	 *
+	 * @param segment The unread race to be indexed.
+	 */
+	private void indexUnreadRace(RaceSegment segment) {
+		storage.addUnreadRace(segment);
+		raceIdsByName.put(segment.getRaceName(), segment.getRaceId());
+		int[] stageIds = segment.getStageIds();
+		for (int s = 0; s < stageIds.length; s++) {
+			stageIdsByName.put(segment.getStageName(s), stageIds[s]);
+		}
+	}
+
+	/**
+	 * This helper method removes an unread race from the storage and its names from the portal
+	 * indexes.
+	 *
+	 * @param segment The unread race to be removed from the indexes.
+	 */
+	private void unindexUnreadRace(RaceSegment segment) {
+		storage.removeUnreadRace(segment);
+		raceIdsByName.remove(segment.getRaceName());
+		int[] stageIds = segment.getStageIds();
+		for (int s = 0; s < stageIds.length; s++) {
+			stageIdsByName.remove(segment.getStageName(s));
+		}
+	}
+
+	/**
+	 * Loads the portal from a snapshot file without reading its races. Only the ID counters,
+	 * the teams and riders, the sealed races and the snapshot's race index are read, and the file
+	 * is kept open. Each race is read onto the heap the first time anything asks for it or one
+	 * of its stages or checkpoints, and its results are registered again as
+	 * {@link #loadCyclingPortal(String)} would have done.
+	 * <p>
+	 * A race that has been read but not changed is only a copy of what is in the file, so it can
+	 * be dropped from the heap again and read back when it is next needed. At most
+	 * {@code maxReadRaces} such races are kept, the one used least recently being evicted when
+	 * another is read, and {@link #evictUnchangedRaces()} drops them all. A race stops being
+	 * evictable as soon as a call changes it.
+	 * <p>
+	 * Saving the portal copies the races that have not been read straight from this file, so a
+	 * portal can be saved over the file it was lazily loaded from. A snapshot saved before the
+	 * race index was added to the format has its races read straight away.
+	 *
+	 * @param filename The path and name of a snapshot file written by {@link #saveCyclingPortal(String)}.
+	 * @param maxReadRaces The most unchanged races to keep on the heap, at least 1.
+	 * @throws IllegalArgumentException If maxReadRaces is less than 1.
+	 * @throws IOException If the file cannot be read or is not a snapshot.
+	 */
+	void loadCyclingPortalLazily(String filename, int maxReadRaces) throws IOException {
+		if (maxReadRaces < 1) {
+			throw new IllegalArgumentException("At least one race must be kept on the heap, not " + maxReadRaces);
+		}
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		HashMap<Integer, Team> loadedTeams = new HashMap<>();
+		HashMap<Integer, Race> loadedRaces = new HashMap<>();
+		HashMap<Integer, RaceArchive> loadedSealedRaces = new HashMap<>();
+		HashMap<Integer, RaceSegment> loadedUnreadRaces = new HashMap<>();
+		int[] counters;
+		try {
+			counters = PortalSnapshot.readLazily(channel, loadedTeams, loadedRaces, loadedSealedRaces, loadedUnreadRaces);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		this.teamIdCounter = counters[0];
+		this.riderIdCounter = counters[1];
+		this.raceIdCounter = counters[2];
+		this.stageIdCounter = counters[3];
+		this.checkpointIdCounter = counters[4];
+		this.teams = loadedTeams;
+		this.races = loadedRaces;
+		storage.reset(channel, maxReadRaces);
+		rebuildIndexes(loadedSealedRaces, loadedUnreadRaces);
+	}
+
+	/**
+	 * This helper method reads an unread race onto the heap from the lazily loaded snapshot,
+	 * evicting the least recently used unchanged race if too many are held.
+	 *
+	 * @param segment The unread race.
+	 * @return The race, now held on the heap.
+	 * @throws UncheckedIOException If the snapshot file cannot be read.
+	 */
+	private Race readRace(RaceSegment segment) {
+		Race race;
+		try {
+			race = segment.load(ridersById);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Race " + segment.getRaceId() + " could not be read from the lazily loaded snapshot", e);
+		}
+		unindexUnreadRace(segment);
+		races.put(race.getRaceId(), race);
+		raceIdsByName.put(race.getRaceName(), race.getRaceId());
+		for (Stage stage : race.getStages()) {
+			indexStage(stage);
+		}
+		int leastRecentlyUsed = storage.markRead(segment);
+		if (leastRecentlyUsed != -1) {
+			evictRace(leastRecentlyUsed);
+		}
+		return race;
+	}
+
+	/**
+	 * This helper method drops an unchanged race from the heap, so that it is read from the
+	 * lazily loaded snapshot again when it is next needed.
+	 *
+	 * @param raceId The ID of an evictable race.
+	 */
+	private void evictRace(int raceId) {
+		RaceSegment segment = storage.removeEvictable(raceId);
+		Race race = races.remove(raceId);
+		for (int riderId : segment.getRiderIds()) {
+			ridersById.get(riderId).removeRace(race);
+		}
+		for (Stage stage : race.getStages()) {
+			unindexStage(stage);
+		}
+		indexUnreadRace(segment);
+	}
+
+	/**
+	 * Drops every race that was read from a lazily loaded snapshot and has not been changed
+	 * since from the heap, for example when memory runs low. Each is read again the next time it
+	 * is needed.
+	 *
+	 * @return The number of races dropped.
+	 */
+	int evictUnchangedRaces() {
+		int evicted = 0;
+		for (int raceId = storage.leastRecentlyUsed(); raceId != -1; raceId = storage.leastRecentlyUsed()) {
+			evictRace(raceId);
+			evicted++;
+		}
+		return evicted;
+	}
+
+	/**
+	 * Checks if a race is held on the heap, rather than sealed or waiting to be read from a
+	 * lazily loaded snapshot.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return true if the race is held on the heap, false otherwise.
+	 */
+	boolean isRaceRead(int raceId) {
+		return races.containsKey(raceId);
+	}
+
+	/**
+	 * This helper method stops a race from being evicted because it is about to be changed, so
+	 * that the heap holds the only up-to-date copy of it.
+	 *
+	 * @param race The race about to be changed.
+	 */
+	private void keepRace(Race race) {
+		storage.keep(race.getRaceId());
+	}
+
+	/**
+	 * Seals a finished race into a read-only archive file. The race's rankings, times and
+	 * points are worked out once and written to the file, which is then memory-mapped, and the
+	 * race's stages and results are dropped from the heap. Every query on the race or its
+	 * stages is answered from the mapped file from then on.
+	 * <p>
+	 * A sealed race is brought back onto the heap by any call that changes it: adding or
+	 * removing a stage, registering or deleting a result, or removing a rider with results in
+	 * it. Removing a sealed race forgets it but leaves its archive file in place, and so does
+	 * unsealing it. Saving the portal records the file name, so the file must be kept for as
+	 * long as any save that refers to it.
+	 *
+	 * @param raceId The ID of the race to be sealed.
+	 * @param filename The path and name of the archive file, which is replaced if it exists.
+	 * @throws IDNotRecognisedException If the ID does not match any race held on the heap.
+	 * @throws InvalidStageStateException If any stage of the race is not waiting for results.
+	 * @throws IllegalStateException If the race is already sealed.
+	 * @throws IOException If the archive file cannot be written or mapped.
+	 */
+	void sealRace(int raceId, String filename) throws IDNotRecognisedException, InvalidStageStateException, IOException {
+		RaceArchive sealed = storage.getSealedRace(raceId);
+		if (sealed != null) {
+			throw new IllegalStateException("Race " + raceId + " is already sealed in " + sealed.getFilename());
+		}
+		Race race = findRaceById(raceId);
+		keepRace(race);
+		for (Stage stage : race.getStages()) {
+			if (stage.getStageState() != StageState.WAITING_FOR_RESULTS) {
+				throw new InvalidStageStateException("Stage " + stage.getStageId() + " is still being prepared, so race " + raceId + " cannot be sealed.");
+			}
+		}
+		RaceArchive archive = RaceArchive.write(race, filename);
+		//the race leaves the heap, so the riders stop referring to it
+		for (Rider rider : ridersById.values()) {
+			if (rider.ridersInRace(race)) {
+				rider.removeRace(race);
+			}
+		}
+		for (Stage stage : race.getStages()) {
+			unindexStage(stage);
+		}
+		races.remove(raceId);
+		raceIdsByName.remove(race.getRaceName());
+		indexSealedRace(archive);
+	}
 
 	/**
-	 * This helper method validates the existence of an ID within a provided array of IDs.
+	 * This helper method brings a sealed race back onto the heap from its archive, so that it
+	 * can be changed. The archive file is left where it is.
+	 *
+	 * @param archive The sealed race.
+	 * @return The race, now held on the heap.
+	 */
+	private Race unsealRace(RaceArchive archive) {
+		Race race = archive.unseal(ridersById);
+		unindexSealedRace(archive);
+		races.put(race.getRaceId(), race);
+		raceIdsByName.put(race.getRaceName(), race.getRaceId());
+		for (Stage stage : race.getStages()) {
+			indexStage(stage);
+		}
+		return race;
+	}
+
+	/**
+	 * This helper method brings the race of a stage back onto the heap if it is sealed, before
+	 * a call that changes the stage.
+	 *
+	 * @param stageId The ID of the stage about to be changed.
+	 */
+	private void unsealStage(int stageId) {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			unsealRace(archive);
+		}
+	}
+
+	/**
+	 * Checks if a race is sealed into an archive file.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return true if the race is sealed, false if it is held on the heap or does not exist.
+	 */
+	boolean isRaceSealed(int raceId) {
+		return storage.getSealedRace(raceId) != null;
+	}
+
+	/**
+	 * Checks if a stage belongs to a race that is sealed into an archive file.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return true if the stage's race is sealed, false if it is held on the heap or does not exist.
+	 */
+	boolean isStageSealed(int stageId) {
+		return storage.getSealedRaceOfStage(stageId) != null;
+	}
+
+	/**
+	 * Finds the race a stage belongs to, whether the race is held on the heap, sealed or waiting
+	 * to be read. Nothing is read and nothing changes, so several threads can call it at once.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The ID of the stage's race.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	int findRaceIdOfStage(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getRaceId();
+		}
+		RaceSegment segment = storage.getUnreadRaceOfStage(stageId);
+		if (segment != null) {
+			return segment.getRaceId();
+		}
+		Stage stage = stagesById.get(stageId);
+		if (stage == null) {
+			throw new IDNotRecognisedException("The stage ID " + stageId + " was not recognised in any race.");
+		}
+		return stage.getRace().getRaceId();
+	}
+
+	/**
+	 * Checks if a race exists, whether it is held on the heap, sealed or waiting to be read.
+	 * Nothing is read and nothing changes, so several threads can call it at once.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return true if the race exists, false otherwise.
+	 */
+	boolean containsRace(int raceId) {
+		return races.containsKey(raceId) || storage.getSealedRace(raceId) != null
+				|| storage.getUnreadRace(raceId) != null;
+	}
+
+	/**
+	 * Finds a race held on the heap. Unlike {@link #findRaceById(int)}, a race waiting to be read
+	 * is not read and the race is not marked as used, so several threads can call it at once.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The race, or null if it is not held on the heap.
+	 */
+	Race peekRace(int raceId) {
+		return races.get(raceId);
+	}
+
+	/**
+	 * Finds a stage held on the heap. Unlike {@link #findStageById(int)}, a stage whose race is
+	 * waiting to be read is not read and its race is not marked as used, so several threads can
+	 * call it at once.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The stage, or null if it is not held on the heap.
+	 */
+	Stage peekStage(int stageId) {
+		return stagesById.get(stageId);
+	}
+
+	/**
+	 * Gets the standings of a stage of a sealed race, read from the race's archive file.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The stage's standings.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage of a sealed race.
+	 */
+	Standings getSealedStageStandings(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive == null) {
+			throw new IDNotRecognisedException("The stage ID " + stageId + " was not recognised in any sealed race.");
+		}
+		return archive.getStageStandings(stageId);
+	}
+
+	/**
+	 * Gets the general classification of a sealed race, read from the race's archive file.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The race's standings.
+	 * @throws IDNotRecognisedException If the race ID does not match any sealed race.
+	 */
+	Standings getSealedRaceStandings(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive == null) {
+			throw new IDNotRecognisedException("No sealed race found with ID: " + raceId);
+		}
+		return archive.getStandings();
+	}
+
+	/**
+	 * This helper method locates a race held on the heap by its ID.
 	 * It throws an exception if the ID is not found, indicating it is not recognized within the system.
+	 * A race of a lazily loaded snapshot is read onto the heap if it has not been already.
+	 * Sealed races are not held on the heap, so they are not found.
 	 *
-	 * @param idArray An array of IDs to be searched.
-	 * @param id The ID to be validated against the array.
-	 * @throws IDNotRecognisedException If the ID is not present in the provided array.
+	 * @param raceId The ID of the race to find.
+	 * @return The race object if found.
+	 * @throws IDNotRecognisedException If no race with the given ID is held on the heap or waiting to be read.
 	 */
-	private void validateId(int[] idArray, int id) throws IDNotRecognisedException {
-		boolean idFound = false;
-		for (int currentId : idArray) {
-			if (currentId == id) {
-				idFound = true;
-				break;
+	Race findRaceById(int raceId) throws IDNotRecognisedException {
+		Race race = races.get(raceId);
+		if (race == null) {
+			RaceSegment segment = storage.getUnreadRace(raceId);
+			if (segment == null) {
+				throw new IDNotRecognisedException("No entry found with ID: " + raceId);
 			}
+			return readRace(segment);
 		}
-		if (!idFound) {
-			throw new IDNotRecognisedException("No entry found with ID: " + id);
+		storage.markUsed(raceId);
+		return race;
+	}
+
+	/**
+	 * This helper method locates a team by its ID.
+	 * It throws an exception if the ID is not found, indicating it is not recognized within the system.
+	 *
+	 * @param teamId The ID of the team to find.
+	 * @return The team object if found.
+	 * @throws IDNotRecognisedException If no team with the given ID exists.
+	 */
+	private Team findTeamById(int teamId) throws IDNotRecognisedException {
+		Team team = teams.get(teamId);
+		if (team == null) {
+			throw new IDNotRecognisedException("No entry found with ID: " + teamId);
 		}
+		return team;
 	}
 
 	/**
-	 * This implementation retrieves all race IDs currently stored in the system.
+	 * This implementation retrieves all race IDs currently stored in the system, including sealed races
+	 * and races of a lazily loaded snapshot that have not been read.
 	 * It compiles these IDs into an array and returns it.
 	 *
 	 * @return An array of all the race IDs.
 	 */
 	@Override
 	public int[] getRaceIds() {
-		int[] raceIds = new int[races.size()];
+		int[] raceIds = new int[races.size() + storage.getSealedRaces().size() + storage.getUnreadRaces().size()];
 		int index = 0;
 		for (Integer key : races.keySet()) {
 			raceIds[index++] = key;
 		}
+		for (RaceArchive archive : storage.getSealedRaces()) {
+			raceIds[index++] = archive.getRaceId();
+		}
+		for (RaceSegment segment : storage.getUnreadRaces()) {
+			raceIds[index++] = segment.getRaceId();
+		}
 		return raceIds;
 	}
 
@@ -131,10 +624,11 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
-		validateRaceName(name);
+		validateName(name, "Race", raceIdsByName);
 		int newRaceId = raceIdCounter++;
 		Race newRace = new Race(newRaceId, name, description);
 		races.put(newRaceId, newRace);
+		raceIdsByName.put(name, newRaceId);
 		return newRaceId;
 	}
 
@@ -148,8 +642,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	@Override
 	public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
 		Race race = races.get(raceId);
-		if (race != null) {
-			return race.getRaceDetails();
+		if (race != null || storage.getUnreadRace(raceId) != null) {
+			return findRaceById(raceId).getRaceDetails();
+		} else if (storage.getSealedRace(raceId) != null) {
+			return storage.getSealedRace(raceId).getRaceDetails();
 		} else {
 			throw new IDNotRecognisedException("No race found with ID: " + raceId);
 		}
@@ -157,26 +653,38 @@ public class CyclingPortalImpl implements CyclingPortal {
 
 	/**
 	 * This implementation removes a race from the system using its ID.
+	 * A sealed race is forgotten without reading it back, and its archive file is left in place.
+	 * A race of a lazily loaded snapshot that has not been read is forgotten without reading it.
 	 *
 	 * @param raceId The ID of the race to be removed.
 	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
 	 */
 	@Override
 	public void removeRaceById(int raceId) throws IDNotRecognisedException {
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			unindexSealedRace(archive);
+			return;
+		}
+		RaceSegment segment = storage.getUnreadRace(raceId);
+		if (segment != null) {
+			unindexUnreadRace(segment);
+			return;
+		}
+		Race race = findRaceById(raceId);
+		keepRace(race);
 		//This will remove the race from the riders races list first
-		for(Team team : teams.values()){
-			//loop through the riders in each team
-			Rider [] riders = team.getRiders();
-			for(Rider rider : riders){
-				if (rider.ridersInRace(race)){
-					rider.removeRace(race);
-				}
+		for(Rider rider : ridersById.values()){
+			if (rider.ridersInRace(race)){
+				rider.removeRace(race);
 			}
 		}
-		//this will remove the race from the portal
+		//this will remove the race and its stages from the portal
+		for (Stage stage : race.getStages()) {
+			unindexStage(stage);
+		}
 		races.remove(raceId);
+		raceIdsByName.remove(race.getRaceName());
 	}
 
 	/**
@@ -188,14 +696,18 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getNumberOfStages();
+		}
+		Race race = findRaceById(raceId);
 		return race.getNumberOfStages();
 	}
 
 	/**
 	 * This implementation adds a new stage to an existing race.
 	 * It requires a stage name, description, length, start time, and type. A unique ID is generated for the new stage.
+	 * A sealed race is brought back onto the heap first.
 	 *
 	 * @param raceId The ID of the race to which the stage will be added.
 	 * @param stageName The name of the stage.
@@ -213,57 +725,45 @@ public class CyclingPortalImpl implements CyclingPortal {
 	public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime, StageType type) 
 		throws IDNotRecognisedException, IllegalNameException, InvalidNameException, InvalidLengthException {
 		// Validate the stage name.
-		if (stageName == null || stageName.trim().isEmpty()) {
-            throw new InvalidNameException("Stage name cannot be null or empty.");
-        }
-		if (stageName.length() > 30){
-			throw new InvalidNameException("Stage name cannot be greater than 30 characters");
-		}
-		if (stageName.matches(".*\\s.*")) {
-			throw new InvalidNameException("Stage name cannot contain whitespace.");
-		}
-		for (Race race : races.values()) {
-			for (Stage stage : race.getStages()){
-				if (stage.getStageName().equals(stageName)){
-					throw new IllegalNameException("Stage name already exists.");
-				}
-			}
-		}
+		validateName(stageName, "Stage", stageIdsByName);
 		// Validate the length of the stage.
 		if (length < 5) {
 			throw new InvalidLengthException("Stage length must be at least 5km.");
 		}
-		//Validate the raceId
-		validateId(getRaceIds(), raceId);
-		// Find the race by ID.
-		Race race = races.get(raceId);
+		//Validate the raceId and find the race, unsealing it if it is sealed
+		RaceArchive archive = storage.getSealedRace(raceId);
+		Race race = archive != null ? unsealRace(archive) : findRaceById(raceId);
+		keepRace(race);
 		int newStageId = stageIdCounter++; //Generate unique stage id
 		// Create a new Stage object.
 		Stage newStage = new Stage(newStageId, stageName, race, description, length, startTime, type);
 		race.addStage(newStageId, newStage);
+		indexStage(newStage);
 		// Return the ID of the newly created Stage.
 		return newStageId;
 	}
 
 	/**
-	 * This helper method locates a stage by its ID across all races.
+	 * This helper method locates a stage by its ID using the portal's stage index.
+	 * The stage's race is read onto the heap if it is a race of a lazily loaded snapshot that has not been read.
 	 *
 	 * @param stageId The ID of the stage to find.
 	 * @return The stage object if found.
 	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
 	 */
-	public Stage findStageById(int stageId) throws IDNotRecognisedException {
-		for (Race race : races.values()) {
-			Stage[] stages = race.getStages();
-			for (Stage stage : stages) {
-				if (stage.getStageId() == stageId) {
-					return stage;
-				}
-			}
+	Stage findStageById(int stageId) throws IDNotRecognisedException {
+		Stage stage = stagesById.get(stageId);
+		RaceSegment unread = stage == null ? storage.getUnreadRaceOfStage(stageId) : null;
+		if (unread != null) {
+			readRace(unread);
+			return stagesById.get(stageId);
 		}
-		
 		// If no stage with the given stageId was found in any race, throw an exception
-		throw new IDNotRecognisedException("The stage ID " + stageId + " was not recognised in any race.");
+		if (stage == null) {
+			throw new IDNotRecognisedException("The stage ID " + stageId + " was not recognised in any race.");
+		}
+		storage.markUsed(stage.getRace().getRaceId());
+		return stage;
 	}
 
 	/**
@@ -275,9 +775,12 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStageIds();
+		}
 		// If the race with the given ID is not found, it will throw an exception.
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		Race race = findRaceById(raceId);
 		// Extract and return the stage IDs for this race.
 		return race.getStageIds();
 	}
@@ -291,6 +794,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public double getStageLength(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageLength(stageId);
+		}
 		//validate the id and find the stage
 		Stage stage = findStageById(stageId);
     	return stage.getLength();
@@ -298,16 +805,20 @@ public class CyclingPortalImpl implements CyclingPortal {
 
 	/**
 	 * This implementation removes a stage from a race by its ID.
+	 * The stage's race is brought back onto the heap first if it is sealed.
 	 *
 	 * @param stageId The ID of the stage to be removed.
 	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
 	 */
 	@Override
 	public void removeStageById(int stageId) throws IDNotRecognisedException {
+		unsealStage(stageId);
 		//validate the id and find the stage
 		Stage stage = findStageById(stageId);
 		Race race = stage.getRace();
+		keepRace(race);
 		race.removeStage(stageId);
+		unindexStage(stage);
 	}
 
 	/**
@@ -328,6 +839,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	public int addCategorizedClimbToStage(int stageId, Double location, CheckpointType type, Double averageGradient,
 			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
 			InvalidStageTypeException {
+		//every stage of a sealed race is waiting for results, so it is checked without unsealing it
+		if (storage.getSealedRaceOfStage(stageId) != null) {
+			rejectSealedCheckpoint(stageId, location, "Climbs");
+		}
 		//validate the id and find the stage
 		Stage stage = findStageById(stageId);
 		Race race = stage.getRace();
@@ -347,7 +862,9 @@ public class CyclingPortalImpl implements CyclingPortal {
 		int checkpointId = checkpointIdCounter++;
 		Climb climb = new Climb(checkpointId, location, stageId, type, averageGradient, length);
 	
+		keepRace(race);
 		stage.addCheckpointToStage(checkpointId, climb);
+		stagesByCheckpointId.put(checkpointId, stage);
 	
 		return checkpointId;
 
@@ -368,6 +885,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	@Override
 	public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
 			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+		//every stage of a sealed race is waiting for results, so it is checked without unsealing it
+		if (storage.getSealedRaceOfStage(stageId) != null) {
+			rejectSealedCheckpoint(stageId, location, "Sprints");
+		}
 		//validate the id and find the stage
 		Stage stage = findStageById(stageId);
 		Race race = stage.getRace();
@@ -387,13 +908,39 @@ public class CyclingPortalImpl implements CyclingPortal {
 		int checkpointId = checkpointIdCounter++;
 		Checkpoint sprint = new Checkpoint(checkpointId, location, stageId, type);
 	
+		keepRace(race);
 		stage.addCheckpointToStage(checkpointId, sprint);
+		stagesByCheckpointId.put(checkpointId, stage);
 	
 		return checkpointId;
 	
 		
 	}
 
+	/**
+	 * This helper method rejects a checkpoint being added to a stage of a sealed race with the
+	 * exception the stage itself would give, checking the location, the stage type and the
+	 * stage state in the same order.
+	 *
+	 * @param stageId The ID of a stage of a sealed race.
+	 * @param location The location of the checkpoint within the stage.
+	 * @param kind The kind of checkpoint (e.g. "Climbs"), used in the exception messages.
+	 * @throws InvalidLocationException If the location is out of stage bounds.
+	 * @throws InvalidStageTypeException If the stage is a time-trial.
+	 * @throws InvalidStageStateException Otherwise, as the stage is waiting for results.
+	 */
+	private void rejectSealedCheckpoint(int stageId, Double location, String kind)
+			throws InvalidLocationException, InvalidStageTypeException, InvalidStageStateException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (!(location > 0 && location <= archive.getStageLength(stageId))) {
+			throw new InvalidLocationException("Location is out of stage bounds.");
+		}
+		if (archive.getStageType(stageId) == StageType.TT) {
+			throw new InvalidStageTypeException(kind + " cannot be added to a time-trial stage.");
+		}
+		throw new InvalidStageStateException("Cannot modify stage in this state.");
+	}
+
 	/**
 	 * This implementation removes a checkpoint from a stage.
 	 *
@@ -403,28 +950,26 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public void removeCheckpoint(int checkpointId) throws IDNotRecognisedException, InvalidStageStateException {
-		boolean checkpointFound = false;
-		//Loop through all races and all stages in each race
-		for (Race race : races.values()) {
-			for (Stage stage : race.getStages()) {
-				//if the checkpoint is in the race and the stage can be modified, then remove the checkpoint
-				if (stage.getCheckpoints().containsKey(checkpointId)) {
-					if (stage.getStageState() == StageState.WAITING_FOR_RESULTS) {
-						throw new InvalidStageStateException("Cannot modify stage in this state.");
-					}
-					stage.removeCheckpointFromStage(checkpointId);
-					checkpointFound = true;
-					break;
-				}
-			}
-			if (checkpointFound) {
-				break;
-			}
+		//find the stage the checkpoint belongs to
+		Stage stage = stagesByCheckpointId.get(checkpointId);
+		RaceSegment unread = stage == null ? storage.getUnreadRaceOfCheckpoint(checkpointId) : null;
+		if (unread != null) {
+			readRace(unread);
+			stage = stagesByCheckpointId.get(checkpointId);
 		}
-	
-		if (!checkpointFound) {
+		if (stage == null && storage.getSealedRaceOfCheckpoint(checkpointId) != null) {
+			throw new InvalidStageStateException("Cannot modify stage in this state.");
+		}
+		if (stage == null) {
 			throw new IDNotRecognisedException("Checkpoint ID not recognized: " + checkpointId);
 		}
+		//if the stage can be modified, then remove the checkpoint
+		if (stage.getStageState() == StageState.WAITING_FOR_RESULTS) {
+			throw new InvalidStageStateException("Cannot modify stage in this state.");
+		}
+		keepRace(stage.getRace());
+		stage.removeCheckpointFromStage(checkpointId);
+		stagesByCheckpointId.remove(checkpointId);
 	}
 
 	/**
@@ -436,11 +981,15 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+		if (storage.getSealedRaceOfStage(stageId) != null) {
+			throw new InvalidStageStateException("Cannot modify stage in this state because it is already waiting for results.");
+		}
 		//validate the id and find the stage
 		Stage stage = findStageById(stageId);
 		if (stage.getStageState() == StageState.WAITING_FOR_RESULTS) {
 			throw new InvalidStageStateException("Cannot modify stage in this state because it is already waiting for results.");
 		}
+		keepRace(stage.getRace());
 		stage.setWaitingForResults();
 		assert stage.getStageState() == StageState.WAITING_FOR_RESULTS : "Stage state was not changed to waiting for results";
 
@@ -455,6 +1004,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getStageCheckpoints(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageCheckpoints(stageId);
+		}
 		//validate the id and find the stage
 		Stage stage = findStageById(stageId);	
 		return stage.getOrderedCheckpointIds();
@@ -471,11 +1024,12 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
-		validateTeamName(name);
+		validateName(name, "Team", teamIdsByName);
 		int newTeamId = teamIdCounter++;
 		assert !teams.containsKey(newTeamId) : "Team with new team id " + newTeamId + " already exists";
 		Team newTeam = new Team(newTeamId, name, description);
 		teams.put(newTeamId, newTeam);
+		teamIdsByName.put(name, newTeamId);
 		assert teams.containsKey(newTeamId) : "Team with ID " + newTeamId + " was not successfully added.";
 		return newTeamId;
 	}
@@ -498,6 +1052,7 @@ public class CyclingPortalImpl implements CyclingPortal {
 			}
 			team.removeAllRiders();
 			teams.remove(teamId);
+			teamIdsByName.remove(team.getTeamName());
 			assert !teams.containsKey(teamId) : "Team with ID " + teamId + " was not successfully removed.";
 		} else {
 			//If not then throw the exception
@@ -528,8 +1083,7 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
-		validateId(getTeams(), teamId);
-		Team team = teams.get(teamId);
+		Team team = findTeamById(teamId);
 		return team.getRiderIds();
 		}
 
@@ -554,45 +1108,37 @@ public class CyclingPortalImpl implements CyclingPortal {
 		if (yearOfBirth < 1900){
 			throw new IllegalArgumentException("Illegal argument, year of birth must be at least 1900: " + yearOfBirth);
 		}
-		//Validate the team id
-		validateId(getTeams(), teamId);
-		//Get the team from the map using the id
-		Team riderTeam = teams.get(teamId);
+		//Validate the team id and get the team from the map
+		Team riderTeam = findTeamById(teamId);
 		// Create a new rider and add to the team
 		int newRiderId = riderIdCounter++;
 		Rider newRider = new Rider(newRiderId, name, yearOfBirth, riderTeam);
 		riderTeam.addRider(newRiderId, newRider);
+		ridersById.put(newRiderId, newRider);
 		
 		// Return the new rider ID
 		return newRiderId;
 	}
 
 	/**
-	 * This helper method searches for a rider by their ID across all teams.
+	 * This helper method locates a rider by their ID using the portal's rider index.
 	 *
 	 * @param riderId The ID of the rider to find.
 	 * @return The rider object if they are found within any team.
 	 * @throws IDNotRecognisedException If no rider with the given ID is found in any team.
 	 */
 	public Rider findRiderById(int riderId) throws IDNotRecognisedException{
-		//loop through each team
-		for(Team team : teams.values()){
-			//loop through the riders in each team
-			Rider [] riders = team.getRiders();
-			for(Rider rider : riders){
-				//if their rider id's match then remove the rider from the team
-				if(rider.getRiderId() == riderId){
-					return rider;
-				}
-			}
+		Rider rider = ridersById.get(riderId);
+		// If no rider with the given riderId was found in any team, throw an exception
+		if (rider == null) {
+			throw new IDNotRecognisedException("The rider ID " + riderId + " was not recognised in any team.");
 		}
-		// If no rider with the given riderId was found in any race, throw an exception
-		throw new IDNotRecognisedException("The rider ID " + riderId + " was not recognised in any team.");
-
+		return rider;
 	}
 
 	/**
 	 * This implementation removes a rider from a team and the system.
+	 * Any sealed or unread race the rider has results in is brought back onto the heap first.
 	 *
 	 * @param riderId The ID of the rider to be removed.
 	 * @throws IDNotRecognisedException If the rider ID does not match any rider in the system.
@@ -601,6 +1147,20 @@ public class CyclingPortalImpl implements CyclingPortal {
 	public void removeRider(int riderId) throws IDNotRecognisedException {
 		//validate the id and find the rider
 		Rider rider = findRiderById(riderId);
+		for (RaceArchive archive : new ArrayList<>(storage.getSealedRaces())) {
+			if (archive.hasRider(riderId)) {
+				unsealRace(archive);
+			}
+		}
+		//the rider's races on the heap are kept first, so reading the unread ones cannot evict them
+		for (Race race : rider.getRiderRaces()) {
+			keepRace(race);
+		}
+		for (RaceSegment segment : new ArrayList<>(storage.getUnreadRaces())) {
+			if (segment.hasRider(riderId)) {
+				keepRace(readRace(segment));
+			}
+		}
 		Team team = rider.getTeam();
 		ArrayList <Race> races = rider.getRiderRaces();
 		for(Race race:races){
@@ -608,12 +1168,15 @@ public class CyclingPortalImpl implements CyclingPortal {
 			
 		}
 		team.removeRider(riderId);
+		ridersById.remove(riderId);
 	}
 
 	/**
 	 * This implementation registers the checkpoint times for a rider in a given stage.
 	 * It updates the stage's results with the times provided, which include both checkpoint
 	 * times and the total elapsed time for the rider in this particular stage.
+	 * If the stage's race is sealed, the result is checked against the archive and the race is
+	 * only brought back onto the heap once the result is known to be accepted.
 	 *
 	 * @param stageId The ID of the stage to which the results should be added.
 	 * @param riderId The ID of the rider whose results are being recorded.
@@ -627,52 +1190,147 @@ public class CyclingPortalImpl implements CyclingPortal {
 	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
 			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException,
 			InvalidStageStateException {
-		//validate the id and find the stage
-		Stage stage = findStageById(stageId);
-		Race race = stage.getRace();
+		//validate the id and find the stage, reading a sealed one from its archive
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		Stage stage = archive == null ? findStageById(stageId) : null;
 		//validate the id and find the rider
 		Rider rider = findRiderById(riderId);
 		Result raceResult;
-		if(stage.riderHasResult(riderId)) {
+		if(archive != null ? archive.hasResult(stageId, riderId) : stage.riderHasResult(riderId)) {
         throw new DuplicatedResultException("Rider " + riderId + " already has a result for stage " + stageId);
     	}
-		if(checkpoints.length != stage.getCheckpoints().size()+2){
-			throw new InvalidCheckpointTimesException("Checkpoints are length: " + checkpoints.length + " but should be length: " + (stage.getCheckpoints().size()+2));
+		int expectedTimes = (archive != null ? archive.getStageCheckpoints(stageId).length : stage.getCheckpoints().size())+2;
+		if(checkpoints.length != expectedTimes){
+			throw new InvalidCheckpointTimesException("Checkpoints are length: " + checkpoints.length + " but should be length: " + expectedTimes);
+		}
+		//every stage of a sealed race is waiting for results, so the result is accepted and the race can be unsealed
+		if(archive != null){
+			unsealRace(archive);
+			stage = findStageById(stageId);
 		}
 		if(stage.getStageState() != StageState.WAITING_FOR_RESULTS){
 			throw new InvalidStageStateException("Stage is not waiting for results");
 		}
+		Race race = stage.getRace();
 		if(race.riderHasResult(riderId)){
 			raceResult = race.getOverallResult(riderId);
 		}
 		else{
 			raceResult = new Result(riderId);
 		}
-		StageResult stageResult = new StageResult(riderId, checkpoints);
-		//add the stage result to the list in the stage
-		stage.addStageResult(riderId, stageResult);
-		//add the stage result to the overall result list
-		raceResult.addStageResult(stageId, stageResult);
+		keepRace(race);
 		//add the overall result to the list in races
 		race.addOverallResult(riderId, raceResult);
+		//add the stage to the overall result's list
+		raceResult.addStageResult(stageId);
+		//add the stage result to the stage, which updates the overall results it affects
+		stage.addStageResult(riderId, checkpoints);
 		//check if the rider is already competing in this race, if not then add to ther riders list of races
 		if(!rider.ridersInRace(race)){
 			rider.addRace(race);
 		}
 	 }
 
+	/**
+	 * This implementation registers a batch of results in a stage. Every row is validated first,
+	 * against the portal and against the rows before it, and the accepted rows are then added to
+	 * the stage together so the ranking, adjusted elapsed times and stage points are worked out
+	 * once for the batch. If the stage's race is sealed, the rows are checked against the archive
+	 * and the race is only brought back onto the heap if at least one row is accepted.
+	 *
+	 * @param stageId The ID of the stage to which the results should be added.
+	 * @param riderIds The IDs of the riders, one per row.
+	 * @param checkpointTimes The times of each rider at each checkpoint, in the same order as the riders.
+	 * @return One entry per row: null if the row was registered, or the reason it was rejected.
+	 * @throws IDNotRecognisedException If the stage ID does not exist within the system.
+	 * @throws InvalidStageStateException If the stage is not in a state that allows result registration.
+	 * @throws IllegalArgumentException If the number of riders and the number of rows of times differ.
+	 */
+	@Override
+	public Exception[] registerRidersResultsInStage(int stageId, int[] riderIds, LocalTime[][] checkpointTimes)
+			throws IDNotRecognisedException, InvalidStageStateException {
+		//validate the id and find the stage, reading a sealed one from its archive
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		Stage stage = archive == null ? findStageById(stageId) : null;
+		if(riderIds.length != checkpointTimes.length){
+			throw new IllegalArgumentException("There are " + riderIds.length + " riders but " + checkpointTimes.length + " rows of times");
+		}
+		//every stage of a sealed race is waiting for results
+		if(archive == null && stage.getStageState() != StageState.WAITING_FOR_RESULTS){
+			throw new InvalidStageStateException("Stage is not waiting for results");
+		}
+		int expectedTimes = (archive != null ? archive.getStageCheckpoints(stageId).length : stage.getCheckpoints().size())+2;
+		Exception[] errors = new Exception[riderIds.length];
+		Rider[] riders = new Rider[riderIds.length];
+		HashMap<Integer, Integer> rowsByRiderId = new HashMap<>();
+		int accepted = 0;
+		for(int row = 0; row < riderIds.length; row++){
+			int riderId = riderIds[row];
+			riders[row] = ridersById.get(riderId);
+			if(riders[row] == null){
+				errors[row] = new IDNotRecognisedException("The rider ID " + riderId + " was not recognised in any team.");
+			}
+			else if((archive != null ? archive.hasResult(stageId, riderId) : stage.riderHasResult(riderId))
+					|| rowsByRiderId.containsKey(riderId)){
+				errors[row] = new DuplicatedResultException("Rider " + riderId + " already has a result for stage " + stageId);
+			}
+			else if(checkpointTimes[row] == null || checkpointTimes[row].length != expectedTimes){
+				int length = checkpointTimes[row] == null ? 0 : checkpointTimes[row].length;
+				errors[row] = new InvalidCheckpointTimesException("Checkpoints are length: " + length + " but should be length: " + expectedTimes);
+			}
+			else{
+				rowsByRiderId.put(riderId, row);
+				accepted++;
+			}
+		}
+		if(accepted == 0){
+			return errors;
+		}
+		if(archive != null){
+			unsealRace(archive);
+			stage = findStageById(stageId);
+		}
+		Race race = stage.getRace();
+		keepRace(race);
+		//gather the accepted rows and give each rider an overall result before the stage reports to it
+		int[] acceptedRiderIds = new int[accepted];
+		long[][] acceptedTimes = new long[accepted][];
+		int index = 0;
+		for(int row = 0; row < riderIds.length; row++){
+			if(errors[row] != null){
+				continue;
+			}
+			int riderId = riderIds[row];
+			Result raceResult = race.riderHasResult(riderId) ? race.getOverallResult(riderId) : new Result(riderId);
+			race.addOverallResult(riderId, raceResult);
+			raceResult.addStageResult(stageId);
+			if(!riders[row].ridersInRace(race)){
+				riders[row].addRace(race);
+			}
+			acceptedRiderIds[index] = riderId;
+			acceptedTimes[index++] = Stage.toNanosOfDay(checkpointTimes[row]);
+		}
+		stage.addStageResults(acceptedRiderIds, acceptedTimes);
+		return errors;
+	}
+
 	/**
 	 * This implementation retrieves the times a rider recorded at each checkpoint in a stage.
 	 *
 	 * @param stageId The ID of the stage being queried.
 	 * @param riderId The ID of the rider whose results are being requested.
-	 * @return An array of LocalTime objects representing the times the rider passed each checkpoint.
+	 * @return An array of LocalTime objects representing the times the rider passed each checkpoint,
+	 *         or an empty array if the rider has no result in the stage.
 	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
 	 */
 	@Override
 	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
 		//find the rider and stage and carry out validations
 		findRiderById(riderId);
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getRiderResults(stageId, riderId);
+		}
 		Stage stage = findStageById(stageId);
 		return stage.getRiderResults(riderId);
 	}
@@ -682,21 +1340,25 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 *
 	 * @param stageId The ID of the stage being queried.
 	 * @param riderId The ID of the rider.
-	 * @return The adjusted elapsed time of the rider in the stage.
+	 * @return The adjusted elapsed time of the rider in the stage, or null if the rider has no
+	 *         result in the stage.
 	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
 	 */
 	@Override
 	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
 		//find the rider and stage and carry out validations
 		findRiderById(riderId);
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getRiderAdjustedElapsedTime(stageId, riderId);
+		}
 		Stage stage = findStageById(stageId);
-		//this will update the elapsed times if needed
-		stage.adjustRiderElapsedTimes();
 		return stage.getRiderAdjustedElapsedTime(riderId);
 	}
 
 	/**
 	 * This implementation deletes the results of a rider in a stage.
+	 * If the stage's race is sealed, it is only brought back onto the heap when the rider has a result to delete.
 	 *
 	 * @param stageId The ID of the stage from which results should be removed.
 	 * @param riderId The ID of the rider whose results are to be deleted.
@@ -706,8 +1368,16 @@ public class CyclingPortalImpl implements CyclingPortal {
 	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
 		//find the rider and stage and carry out validations
 		findRiderById(riderId);
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			if (!archive.hasResult(stageId, riderId)) {
+				return;
+			}
+			unsealRace(archive);
+		}
 		Stage stage = findStageById(stageId);
-		stage.removeRiderResults(riderId);
+		keepRace(stage.getRace());
+		stage.getRace().removeStageResult(stage, riderId);
 	}
 
 	/**
@@ -719,6 +1389,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageStandings(stageId).getRiderIds();
+		}
 		//find the stage and carry out validations
 		Stage stage = findStageById(stageId);
 		return stage.getRiderRanks();
@@ -733,6 +1407,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageStandings(stageId).getAdjustedElapsedLocalTimes();
+		}
 		//find the stage and carry out validations
 		Stage stage = findStageById(stageId);
 		return stage.getRankedAdjustedElapsedTimes();
@@ -747,6 +1425,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageStandings(stageId).getPoints();
+		}
 		//find the stage and carry out validations
 		Stage stage = findStageById(stageId);
 		return stage.getOrderedPoints();
@@ -761,6 +1443,10 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageStandings(stageId).getMountainPoints();
+		}
 		Stage stage = findStageById(stageId); // Validate and retrieve the stage.
 		return stage.getOrderedMountainPoints();
 	}
@@ -774,6 +1460,13 @@ public class CyclingPortalImpl implements CyclingPortal {
 		// Reset all collections
 		teams.clear();
 		races.clear();
+		stagesById.clear();
+		ridersById.clear();
+		stagesByCheckpointId.clear();
+		teamIdsByName.clear();
+		raceIdsByName.clear();
+		stageIdsByName.clear();
+		storage.clear();
 		assert teams.isEmpty() : "There should be no teams in the system";
 		assert races.isEmpty() : "There should be no races in the system";
 
@@ -787,83 +1480,136 @@ public class CyclingPortalImpl implements CyclingPortal {
 
 	/**
 	 * This implementation saves the current state of the cycling portal to a file.
-	 * The portal's entire state is serialized and written to the specified file.
+	 * The portal is written in the binary snapshot format described in {@link PortalSnapshot}:
+	 * only the teams, riders, races, stages, checkpoints, recorded times and ID counters are
+	 * stored, and everything worked out from them is rebuilt when the file is loaded.
+	 * Sealed races are stored as the names of their archive files.
+	 * Races of a lazily loaded snapshot that have not been read are copied from it without being
+	 * read. The snapshot is written to a temporary file that then replaces the named one, so a
+	 * failed save never destroys the previous file and the portal can be saved over the snapshot
+	 * it is reading from.
 	 *
 	 * @param filename The path and name of the file where data will be saved.
 	 * @throws IOException If an I/O error occurs during writing to the file.
 	 */
 	@Override
 	public void saveCyclingPortal(String filename) throws IOException {
-		try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
-			out.writeObject(this);
-		} catch (IOException e) {
-			throw e;
+		saveSnapshot(filename, false, 0);
+	}
+
+	/**
+	 * Saves the portal as a compressed snapshot, described in {@link PortalSnapshot}. Each
+	 * stage's rider IDs and checkpoint times are delta-encoded and the snapshot is compressed
+	 * with {@link java.util.zip.Deflater} as it is written, so the file is a fraction of the size
+	 * of {@link #saveCyclingPortal(String)}'s without the portal being held in memory twice.
+	 * {@link #loadCyclingPortal(String)} recognises and reads compressed snapshots, but they
+	 * cannot be loaded lazily.
+	 *
+	 * @param filename The path and name of the file where data will be saved.
+	 * @param level The compression level, from 1 for the fastest to 9 for the smallest file.
+	 * @throws IllegalArgumentException If the level is not between 1 and 9.
+	 * @throws IOException If an I/O error occurs during writing to the file.
+	 */
+	void saveCyclingPortalCompressed(String filename, int level) throws IOException {
+		if (level < 1 || level > 9) {
+			throw new IllegalArgumentException("The compression level must be between 1 and 9, not " + level);
 		}
+		saveSnapshot(filename, true, level);
+	}
+
+	/**
+	 * This helper method writes the portal as a snapshot, by taking an image of it and saving that.
+	 *
+	 * @param filename The path and name of the file where data will be saved.
+	 * @param compressed true to write a compressed snapshot, false to write a plain one.
+	 * @param level The compression level of a compressed snapshot.
+	 * @throws IOException If an I/O error occurs during writing to the file.
+	 */
+	private void saveSnapshot(String filename, boolean compressed, int level) throws IOException {
+		captureImage().save(filename, compressed, level);
+	}
+
+	/**
+	 * Takes an image of the portal's source data, which can be written as a snapshot after the
+	 * portal has moved on. Races of a lazily loaded snapshot that have not been read are only
+	 * referred to, so the image must be written before the portal loads or erases anything.
+	 *
+	 * @return The image.
+	 */
+	PortalImage captureImage() {
+		int[] counters = {teamIdCounter, riderIdCounter, raceIdCounter, stageIdCounter, checkpointIdCounter};
+		return PortalImage.capture(counters, teams.values(), races.values(), storage.getSealedRaces(), storage.getUnreadRaces());
 	}
 
 	/**
 	 * This implementation loads the state of the cycling portal from a file.
-	 * The state previously saved to the file is deserialized and used to populate the portal.
+	 * Files in the binary snapshot format, compressed or not, are decoded and their results registered again.
+	 * Any other file, including one saved with Java serialization by earlier versions of the portal, is refused.
+	 * The portal is only changed once the whole file has been read successfully.
 	 *
 	 * @param filename The path and name of the file from which to load the data.
-	 * @throws IOException If an I/O error occurs during reading from the file.
-	 * @throws ClassNotFoundException If the class of the serialized object cannot be found.
+	 * @throws IOException If an I/O error occurs during reading from the file, or the file is not a portal snapshot.
+	 * @throws ClassNotFoundException Never thrown, as snapshots hold no serialized objects.
 	 */
 	@Override
 	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
-		Object obj;
-		try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename))) {
-			obj = in.readObject();
-		} catch (IOException | ClassNotFoundException e) {
-			throw e;
-		}
-		if (!(obj instanceof CyclingPortalImpl)) {
-			throw new ClassNotFoundException("The file did not contain a CyclingPortalImpl object.");
+		try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16)) {
+			HashMap<Integer, Team> loadedTeams = new HashMap<>();
+			HashMap<Integer, Race> loadedRaces = new HashMap<>();
+			HashMap<Integer, RaceArchive> loadedSealedRaces = new HashMap<>();
+			int[] counters = PortalSnapshot.read(in, loadedTeams, loadedRaces, loadedSealedRaces);
+			this.teamIdCounter = counters[0];
+			this.riderIdCounter = counters[1];
+			this.raceIdCounter = counters[2];
+			this.stageIdCounter = counters[3];
+			this.checkpointIdCounter = counters[4];
+			this.teams = loadedTeams;
+			this.races = loadedRaces;
+			storage.reset(null, Integer.MAX_VALUE);
+			rebuildIndexes(loadedSealedRaces, new HashMap<>());
 		}
-		// safely downcast as we have checked that it is the correct object type
-		CyclingPortalImpl loadedPortal = (CyclingPortalImpl) obj;
-		this.teamIdCounter = loadedPortal.teamIdCounter;
-		this.riderIdCounter = loadedPortal.riderIdCounter;
-		this.raceIdCounter = loadedPortal.raceIdCounter;
-		this.stageIdCounter = loadedPortal.stageIdCounter;
-		this.checkpointIdCounter = loadedPortal.checkpointIdCounter;
-		this.teams = loadedPortal.teams;
-		this.races = loadedPortal.races;
 	}
-	
 
 	/**
 	 * This implementation removes a race and all related data, including stages and results, from the system based on the race name.
 	 * If the race name is found, the race and its associated data are completely deleted.
+	 * A sealed race is forgotten without reading it back, and its archive file is left in place.
+	 * A race of a lazily loaded snapshot that has not been read is forgotten without reading it.
 	 *
 	 * @param name The name of the race to be removed.
 	 * @throws NameNotRecognisedException If no race with the given name exists within the system.
 	 */
 	@Override
 	public void removeRaceByName(String name) throws NameNotRecognisedException {
-		Race namedRace = null;
-		//find if the race with the given name exists
-		for(Race race:races.values()){
-			if(race.getRaceName().equals(name)){
-				namedRace = race;
-			}
-		}
-		//if it doesn't exist then namedRace will not be updated from null so an exception will be thrown
-		if (namedRace == null) {
+		//find if the race with the given name exists, if not then an exception will be thrown
+		Integer namedRaceId = raceIdsByName.get(name);
+		if (namedRaceId == null) {
 			throw new NameNotRecognisedException("No race found with name: " + name);
 		}
+		RaceArchive archive = storage.getSealedRace(namedRaceId);
+		if (archive != null) {
+			unindexSealedRace(archive);
+			return;
+		}
+		RaceSegment segment = storage.getUnreadRace(namedRaceId);
+		if (segment != null) {
+			unindexUnreadRace(segment);
+			return;
+		}
+		Race namedRace = races.get(namedRaceId);
+		keepRace(namedRace);
 		//This will remove the race from the riders races list first
-		for(Team team : teams.values()){
-			//loop through the riders in each team
-			Rider [] riders = team.getRiders();
-			for(Rider rider : riders){
-				if (rider.ridersInRace(namedRace)){
-					rider.removeRace(namedRace);
-				}
+		for(Rider rider : ridersById.values()){
+			if (rider.ridersInRace(namedRace)){
+				rider.removeRace(namedRace);
 			}
 		}
-		//this will remove the race from the portal
-		races.remove(namedRace.getRaceId());
+		//this will remove the race and its stages from the portal
+		for (Stage stage : namedRace.getStages()) {
+			unindexStage(stage);
+		}
+		races.remove(namedRaceId);
+		raceIdsByName.remove(name);
 	}
 
 	/**
@@ -875,9 +1621,12 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException{
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStandings().getRiderIds();
+		}
 		//validate and retrieve race
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		Race race = findRaceById(raceId);
 		return race.getRiderIdsByTotalTime();
 	}
 
@@ -890,12 +1639,34 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStandings().getAdjustedElapsedLocalTimes();
+		}
 		//validate and retrieve race
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		Race race = findRaceById(raceId);
 		return race.getSortedListOfTimes();
 	}
 
+	/**
+	 * This implementation retrieves the general classification times for a race as durations,
+	 * which, unlike LocalTime, can hold totals longer than 24 hours.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @return An array of Duration objects, sorted according to general classification.
+	 * @throws IDNotRecognisedException If the race ID does not match any existing race.
+	 */
+	@Override
+	public Duration[] getGeneralClassificationDurationsInRace(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStandings().getAdjustedElapsedDurations();
+		}
+		//validate and retrieve race
+		Race race = findRaceById(raceId);
+		return race.getSortedListOfDurations();
+	}
+
 	/**
 	 * This implementation compiles the total points accumulated by riders in a race.
 	 *
@@ -905,9 +1676,12 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStandings().getPoints();
+		}
 		//validate and retrieve race
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		Race race = findRaceById(raceId);
 		return race.getTotalPoints();
 	}
 
@@ -920,9 +1694,12 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStandings().getMountainPoints();
+		}
 		//validate and retrieve race
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		Race race = findRaceById(raceId);
 		return race.getMountainPoints();
 	}
 
@@ -936,9 +1713,12 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getRiderIdsByPoints();
+		}
 		//validate and retrieve race
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		Race race = findRaceById(raceId);
 		return race.getRiderIdsByPoints();
 	}
 
@@ -952,10 +1732,260 @@ public class CyclingPortalImpl implements CyclingPortal {
 	 */
 	@Override
 	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getRiderIdsByMountainPoints();
+		}
 		//validate and retrieve race
-		validateId(getRaceIds(), raceId);
-		Race race = races.get(raceId);
+		Race race = findRaceById(raceId);
 		return race.getRiderIdsByMountainPoints();
 	}
 
+	/**
+	 * This implementation copies the first riders of the stage ranking, which is kept in order,
+	 * without reading the rest of the stage's results.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param limit The number of riders asked for.
+	 * @return An array of at most limit rider IDs in the order of their rank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getTopRidersInStage(int stageId, int limit) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageStandings(stageId).getTopRiderIds(limit);
+		}
+		Stage stage = findStageById(stageId);
+		return stage.getTopRiderRanks(limit);
+	}
+
+	/**
+	 * This implementation copies the first riders of the general classification, which is kept
+	 * in order, without reading the rest of the race's results.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param limit The number of riders asked for.
+	 * @return An array of at most limit rider IDs in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any existing race.
+	 */
+	@Override
+	public int[] getTopRidersGeneralClassification(int raceId, int limit) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStandings().getTopRiderIds(limit);
+		}
+		Race race = findRaceById(raceId);
+		return race.getTopRiderIdsByTotalTime(limit);
+	}
+
+	/**
+	 * This implementation picks the riders with the most points with a bounded heap, so only
+	 * they are put in order. A sealed race reads them from the classification stored in its archive.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param limit The number of riders asked for.
+	 * @return An array of at most limit rider IDs ranked by their total points in the race.
+	 * @throws IDNotRecognisedException If the race ID does not match any existing race.
+	 */
+	@Override
+	public int[] getTopRidersPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getTopRiderIdsByPoints(limit);
+		}
+		Race race = findRaceById(raceId);
+		return race.getTopRiderIdsByPoints(limit);
+	}
+
+	/**
+	 * This implementation picks the riders with the most mountain points with a bounded heap, so
+	 * only they are put in order. A sealed race reads them from the classification stored in its archive.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param limit The number of riders asked for.
+	 * @return An array of at most limit rider IDs ranked by their mountain points total.
+	 * @throws IDNotRecognisedException If the race ID does not match any existing race.
+	 */
+	@Override
+	public int[] getTopRidersMountainPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getTopRiderIdsByMountainPoints(limit);
+		}
+		Race race = findRaceById(raceId);
+		return race.getTopRiderIdsByMountainPoints(limit);
+	}
+
+	/**
+	 * This implementation copies one page of the stage ranking, which is kept in order, without
+	 * reading the results outside the page.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param offset The number of riders ranked before the page.
+	 * @param limit The most riders the page can hold.
+	 * @return The page of the stage ranking.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public Standings getStageStandingsPage(int stageId, int offset, int limit) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getStageStandings(stageId).getPage(offset, limit);
+		}
+		Stage stage = findStageById(stageId);
+		return stage.getStandingsPage(offset, limit);
+	}
+
+	/**
+	 * This implementation turns the ranks into a page of the stage ranking.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param firstRank The rank of the first rider wanted.
+	 * @param lastRank The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public Standings getStageStandingsBetweenRanks(int stageId, int firstRank, int lastRank)
+			throws IDNotRecognisedException {
+		return getStageStandingsPage(stageId, firstRank - 1, rankRangeLimit(firstRank, lastRank));
+	}
+
+	/**
+	 * This implementation copies one page of the general classification, which is kept in order,
+	 * without reading the results outside the page.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param offset The number of riders ranked before the page.
+	 * @param limit The most riders the page can hold.
+	 * @return The page of the general classification.
+	 * @throws IDNotRecognisedException If the race ID does not match any existing race.
+	 */
+	@Override
+	public Standings getGeneralClassificationPage(int raceId, int offset, int limit) throws IDNotRecognisedException {
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getStandings().getPage(offset, limit);
+		}
+		Race race = findRaceById(raceId);
+		return race.getStandingsPage(offset, limit);
+	}
+
+	/**
+	 * This implementation turns the ranks into a page of the general classification.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param firstRank The rank of the first rider wanted.
+	 * @param lastRank The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank.
+	 * @throws IDNotRecognisedException If the race ID does not match any existing race.
+	 */
+	@Override
+	public Standings getGeneralClassificationBetweenRanks(int raceId, int firstRank, int lastRank)
+			throws IDNotRecognisedException {
+		return getGeneralClassificationPage(raceId, firstRank - 1, rankRangeLimit(firstRank, lastRank));
+	}
+
+	/**
+	 * This helper method works out how many riders a range of ranks covers.
+	 *
+	 * @param firstRank The rank of the first rider wanted.
+	 * @param lastRank The rank of the last rider wanted.
+	 * @return The number of ranks from firstRank to lastRank, both included.
+	 * @throws IllegalArgumentException If firstRank is less than 1 or lastRank is less than firstRank.
+	 */
+	static int rankRangeLimit(int firstRank, int lastRank) {
+		if (firstRank < 1) {
+			throw new IllegalArgumentException("Ranks start from 1, not " + firstRank);
+		}
+		if (lastRank < firstRank) {
+			throw new IllegalArgumentException("The last rank " + lastRank + " is before the first rank " + firstRank);
+		}
+		return lastRank - firstRank + 1;
+	}
+
+	/**
+	 * This implementation finds the rider's rank by binary search over the stage's ranked order,
+	 * which is kept sorted by adjusted elapsed time, so it takes O(log n) time. A sealed stage's
+	 * rank is found by binary search in its archive.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank in the stage, or 0 if they have no result in it.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		findRiderById(riderId);
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getRiderRankInStage(stageId, riderId);
+		}
+		Stage stage = findStageById(stageId);
+		return stage.getRiderRank(riderId);
+	}
+
+	/**
+	 * This implementation finds the rider's rank by binary search in the general classification,
+	 * which is kept sorted by total time, so it takes O(log n) time. A sealed race searches an
+	 * index of its archived classification.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank in the general classification, or 0 if they have no result in the race.
+	 * @throws IDNotRecognisedException If the race ID or rider ID does not match any race or rider in the system.
+	 */
+	@Override
+	public int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+		findRiderById(riderId);
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getRiderGeneralClassificationRank(riderId);
+		}
+		Race race = findRaceById(raceId);
+		return race.getRiderRank(riderId);
+	}
+
+	/**
+	 * This implementation reads the rider's row of the stage's results, which hold their rank,
+	 * time and points, and the leader's time, so no ranking is built.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the stage, or null if they have no result in it.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public RiderStanding getRiderStandingInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		findRiderById(riderId);
+		RaceArchive archive = storage.getSealedRaceOfStage(stageId);
+		if (archive != null) {
+			return archive.getRiderStandingInStage(stageId, riderId);
+		}
+		Stage stage = findStageById(stageId);
+		return stage.getRiderStanding(riderId);
+	}
+
+	/**
+	 * This implementation finds each of the rider's ranks by binary search in a classification
+	 * kept in order: the general classification, and the points and mountain classifications,
+	 * which are sorted the first time they are needed and kept in order from then on.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the race, or null if they have no result in it.
+	 * @throws IDNotRecognisedException If the race ID or rider ID does not match any race or rider in the system.
+	 */
+	@Override
+	public RiderStanding getRiderStandingInRace(int raceId, int riderId) throws IDNotRecognisedException {
+		findRiderById(riderId);
+		RaceArchive archive = storage.getSealedRace(raceId);
+		if (archive != null) {
+			return archive.getRiderStanding(riderId);
+		}
+		Race race = findRaceById(raceId);
+		return race.getRiderStanding(riderId);
+	}
+
 }
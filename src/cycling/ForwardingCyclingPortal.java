@@ -0,0 +1,1005 @@
+package cycling;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * A CyclingPortal that passes every call on to another portal, for portals that add something
+ * around the calls they pass on, such as locking or journaling. A subclass only overrides the
+ * calls it treats differently and inherits the rest.
+ * <p>
+ * Each query is passed on between {@link #beginQuery()} and {@link #endQuery()}, and each call
+ * that changes the portal, or saves it, between {@link #beginChange()} and {@link #endChange()}.
+ * The hooks do nothing unless a subclass overrides them, and the end hook is always called once
+ * the begin hook has returned, even if the call fails.
+ *
+ * @param <P> The type of the portal the calls are passed on to.
+ * @author Olly Johnson and Laith Al-Qudah
+ * @version 1.0
+ *
+ */
+abstract class ForwardingCyclingPortal<P extends CyclingPortal> implements CyclingPortal {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1L;
+
+	/** The portal every call is passed on to. */
+	final P portal;
+
+	/**
+	 * Creates a portal that passes every call on to another.
+	 *
+	 * @param portal The portal to pass every call on to.
+	 */
+	ForwardingCyclingPortal(P portal) {
+		this.portal = portal;
+	}
+
+	/**
+	 * Called before a query is passed on. This implementation does nothing.
+	 */
+	void beginQuery() {
+	}
+
+	/**
+	 * Called once a query has been passed on, whether or not it succeeded. This implementation
+	 * does nothing.
+	 */
+	void endQuery() {
+	}
+
+	/**
+	 * Called before a change, or a save, is passed on. This implementation does nothing.
+	 */
+	void beginChange() {
+	}
+
+	/**
+	 * Called once a change, or a save, has been passed on, whether or not it succeeded. This
+	 * implementation does nothing.
+	 */
+	void endChange() {
+	}
+
+	/**
+	 * This implementation returns the IDs of every race between the query hooks.
+	 *
+	 * @return An array of race IDs.
+	 */
+	@Override
+	public int[] getRaceIds() {
+		beginQuery();
+		try {
+			return portal.getRaceIds();
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation creates a race between the change hooks.
+	 *
+	 * @param name The name of the race.
+	 * @param description A description of the race.
+	 * @return The unique ID of the newly created race.
+	 * @throws IllegalNameException If the name is already in use.
+	 * @throws InvalidNameException If the name is null, empty, too long or contains whitespace.
+	 */
+	@Override
+	public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+		beginChange();
+		try {
+			return portal.createRace(name, description);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation describes a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return A string describing the race.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.viewRaceDetails(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation removes a race between the change hooks.
+	 *
+	 * @param raceId The ID of the race to be removed.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public void removeRaceById(int raceId) throws IDNotRecognisedException {
+		beginChange();
+		try {
+			portal.removeRaceById(raceId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation counts the stages of a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The number of stages in the race.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getNumberOfStages(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation adds a stage to a race between the change hooks.
+	 *
+	 * @param raceId The ID of the race the stage is added to.
+	 * @param stageName The name of the stage.
+	 * @param description A description of the stage.
+	 * @param length The length of the stage in kilometres.
+	 * @param startTime The date and time the stage starts.
+	 * @param type The type of the stage.
+	 * @return The unique ID of the newly added stage.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 * @throws IllegalNameException If the stage name is already in use.
+	 * @throws InvalidNameException If the stage name is null, empty, too long or contains whitespace.
+	 * @throws InvalidLengthException If the length is less than 5km.
+	 */
+	@Override
+	public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime,
+			StageType type) throws IDNotRecognisedException, IllegalNameException, InvalidNameException,
+			InvalidLengthException {
+		beginChange();
+		try {
+			return portal.addStageToRace(raceId, stageName, description, length, startTime, type);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation lists the stages of a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The IDs of the race's stages.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRaceStages(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the length of a stage between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The length of the stage in kilometres.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public double getStageLength(int stageId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getStageLength(stageId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation removes a stage between the change hooks.
+	 *
+	 * @param stageId The ID of the stage to be removed.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public void removeStageById(int stageId) throws IDNotRecognisedException {
+		beginChange();
+		try {
+			portal.removeStageById(stageId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation adds a categorised climb to a stage between the change hooks.
+	 *
+	 * @param stageId The ID of the stage the climb is added to.
+	 * @param location The location of the climb's finish in the stage, in kilometres.
+	 * @param type The category of the climb.
+	 * @param averageGradient The average gradient of the climb.
+	 * @param length The length of the climb in kilometres.
+	 * @return The unique ID of the newly added climb.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidLocationException If the location is outside the stage.
+	 * @throws InvalidStageStateException If the stage is waiting for results.
+	 * @throws InvalidStageTypeException If the stage is a time trial.
+	 */
+	@Override
+	public int addCategorizedClimbToStage(int stageId, Double location, CheckpointType type, Double averageGradient,
+			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
+			InvalidStageTypeException {
+		beginChange();
+		try {
+			return portal.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation adds an intermediate sprint to a stage between the change hooks.
+	 *
+	 * @param stageId The ID of the stage the sprint is added to.
+	 * @param location The location of the sprint in the stage, in kilometres.
+	 * @return The unique ID of the newly added sprint.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidLocationException If the location is outside the stage.
+	 * @throws InvalidStageStateException If the stage is waiting for results.
+	 * @throws InvalidStageTypeException If the stage is a time trial.
+	 */
+	@Override
+	public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
+			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+		beginChange();
+		try {
+			return portal.addIntermediateSprintToStage(stageId, location);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation removes a checkpoint between the change hooks.
+	 *
+	 * @param checkpointId The ID of the checkpoint to be removed.
+	 * @throws IDNotRecognisedException If the checkpoint ID does not match any checkpoint in the system.
+	 * @throws InvalidStageStateException If the checkpoint's stage is waiting for results.
+	 */
+	@Override
+	public void removeCheckpoint(int checkpointId) throws IDNotRecognisedException, InvalidStageStateException {
+		beginChange();
+		try {
+			portal.removeCheckpoint(checkpointId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation concludes a stage's preparation between the change hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidStageStateException If the stage is already waiting for results.
+	 */
+	@Override
+	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+		beginChange();
+		try {
+			portal.concludeStagePreparation(stageId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation lists the checkpoints of a stage between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The IDs of the stage's checkpoints.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getStageCheckpoints(int stageId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getStageCheckpoints(stageId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation creates a team between the change hooks.
+	 *
+	 * @param name The name of the team.
+	 * @param description A description of the team.
+	 * @return The unique ID of the newly created team.
+	 * @throws IllegalNameException If the name is already in use.
+	 * @throws InvalidNameException If the name is null, empty, too long or contains whitespace.
+	 */
+	@Override
+	public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+		beginChange();
+		try {
+			return portal.createTeam(name, description);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation removes a team and its riders between the change hooks.
+	 *
+	 * @param teamId The ID of the team to be removed.
+	 * @throws IDNotRecognisedException If the team ID does not match any team in the system.
+	 */
+	@Override
+	public void removeTeam(int teamId) throws IDNotRecognisedException {
+		beginChange();
+		try {
+			portal.removeTeam(teamId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation returns the IDs of every team between the query hooks.
+	 *
+	 * @return An array of team IDs.
+	 */
+	@Override
+	public int[] getTeams() {
+		beginQuery();
+		try {
+			return portal.getTeams();
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation lists the riders of a team between the query hooks.
+	 *
+	 * @param teamId The ID of the team.
+	 * @return The IDs of the team's riders.
+	 * @throws IDNotRecognisedException If the team ID does not match any team in the system.
+	 */
+	@Override
+	public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getTeamRiders(teamId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation creates a rider between the change hooks.
+	 *
+	 * @param teamId The ID of the rider's team.
+	 * @param name The name of the rider.
+	 * @param yearOfBirth The year the rider was born.
+	 * @return The unique ID of the newly created rider.
+	 * @throws IDNotRecognisedException If the team ID does not match any team in the system.
+	 * @throws IllegalArgumentException If the name is null or the year of birth is earlier than 1900.
+	 */
+	@Override
+	public int createRider(int teamId, String name, int yearOfBirth)
+			throws IDNotRecognisedException, IllegalArgumentException {
+		beginChange();
+		try {
+			return portal.createRider(teamId, name, yearOfBirth);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation removes a rider and their results between the change hooks.
+	 *
+	 * @param riderId The ID of the rider to be removed.
+	 * @throws IDNotRecognisedException If the rider ID does not match any rider in the system.
+	 */
+	@Override
+	public void removeRider(int riderId) throws IDNotRecognisedException {
+		beginChange();
+		try {
+			portal.removeRider(riderId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation registers a rider's times in a stage between the change hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @param checkpoints The rider's times at the start, each checkpoint and the finish.
+	 * @throws IDNotRecognisedException If the stage or rider ID does not exist within the system.
+	 * @throws DuplicatedResultException If the rider already has a result in the stage.
+	 * @throws InvalidCheckpointTimesException If the number of times does not match the stage's checkpoints.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	@Override
+	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException,
+			InvalidStageStateException {
+		beginChange();
+		try {
+			portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation registers a batch of results in a stage between the change hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderIds The IDs of the riders, one per row.
+	 * @param checkpointTimes The times of each rider at each checkpoint, in the same order as the riders.
+	 * @return One entry per row: null if the row was registered, or the reason it was rejected.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	@Override
+	public Exception[] registerRidersResultsInStage(int stageId, int[] riderIds, LocalTime[][] checkpointTimes)
+			throws IDNotRecognisedException, InvalidStageStateException {
+		beginChange();
+		try {
+			return portal.registerRidersResultsInStage(stageId, riderIds, checkpointTimes);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation gets a rider's times in a stage between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's checkpoint times followed by their elapsed time.
+	 * @throws IDNotRecognisedException If the stage or rider ID is not recognised.
+	 */
+	@Override
+	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRiderResultsInStage(stageId, riderId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets a rider's adjusted elapsed time in a stage between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's adjusted elapsed time.
+	 * @throws IDNotRecognisedException If the stage or rider ID is not recognised.
+	 */
+	@Override
+	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRiderAdjustedElapsedTimeInStage(stageId, riderId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation deletes a rider's result in a stage between the change hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		beginChange();
+		try {
+			portal.deleteRiderResultsInStage(stageId, riderId);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation ranks the riders in a stage between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The rider IDs in ranked order.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersRankInStage(stageId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the adjusted elapsed times in a stage in ranked order between the query
+	 * hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The adjusted elapsed times in ranked order.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRankedAdjustedElapsedTimesInStage(stageId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the points in a stage in ranked order between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The points in ranked order.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersPointsInStage(stageId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the mountain points in a stage in ranked order between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @return The mountain points in ranked order.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersMountainPointsInStage(stageId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation erases the portal between the change hooks.
+	 */
+	@Override
+	public void eraseCyclingPortal() {
+		beginChange();
+		try {
+			portal.eraseCyclingPortal();
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation saves the portal between the change hooks, so that nothing changes while it
+	 * is written.
+	 *
+	 * @param filename The path and name of the file where data will be saved.
+	 * @throws IOException If an I/O error occurs during writing to the file.
+	 */
+	@Override
+	public void saveCyclingPortal(String filename) throws IOException {
+		beginChange();
+		try {
+			portal.saveCyclingPortal(filename);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation loads the portal between the change hooks.
+	 *
+	 * @param filename The path and name of the file from which to load the data.
+	 * @throws IOException If an I/O error occurs during reading from the file.
+	 * @throws ClassNotFoundException If the file does not contain a saved portal.
+	 */
+	@Override
+	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+		beginChange();
+		try {
+			portal.loadCyclingPortal(filename);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation removes a race by name between the change hooks.
+	 *
+	 * @param name The name of the race to be removed.
+	 * @throws NameNotRecognisedException If no race with the given name exists within the system.
+	 */
+	@Override
+	public void removeRaceByName(String name) throws NameNotRecognisedException {
+		beginChange();
+		try {
+			portal.removeRaceByName(name);
+		} finally {
+			endChange();
+		}
+	}
+
+	/**
+	 * This implementation ranks the riders in a race's general classification between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The rider IDs in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersGeneralClassificationRank(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the general classification times of a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The total adjusted elapsed times in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getGeneralClassificationTimesInRace(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the general classification durations of a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The total adjusted elapsed durations in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public Duration[] getGeneralClassificationDurationsInRace(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getGeneralClassificationDurationsInRace(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the points of each rider in a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The points in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersPointsInRace(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the mountain points of each rider in a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The mountain points in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersMountainPointsInRace(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation ranks the riders in a race's points classification between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The rider IDs in points classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersPointClassificationRank(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation ranks the riders in a race's mountain classification between the query
+	 * hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @return The rider IDs in mountain classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRidersMountainPointClassificationRank(raceId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the first riders of a stage ranking between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs in the order of their rank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public int[] getTopRidersInStage(int stageId, int limit) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getTopRidersInStage(stageId, limit);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the first riders of a race's general classification between the query
+	 * hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs in general classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getTopRidersGeneralClassification(int raceId, int limit) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getTopRidersGeneralClassification(raceId, limit);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the first riders of a race's points classification between the query
+	 * hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs in points classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getTopRidersPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getTopRidersPointClassification(raceId, limit);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the first riders of a race's mountain classification between the query
+	 * hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param limit The number of riders asked for.
+	 * @return At most limit rider IDs in mountain classification order.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public int[] getTopRidersMountainPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getTopRidersMountainPointClassification(raceId, limit);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets one page of a stage ranking between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param offset The number of riders ranked before the page.
+	 * @param limit The most riders the page can hold.
+	 * @return The page of the stage ranking.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public Standings getStageStandingsPage(int stageId, int offset, int limit) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getStageStandingsPage(stageId, offset, limit);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the riders of a stage ranking from one rank to another between the
+	 * query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param firstRank The rank of the first rider wanted.
+	 * @param lastRank The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public Standings getStageStandingsBetweenRanks(int stageId, int firstRank, int lastRank)
+			throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getStageStandingsBetweenRanks(stageId, firstRank, lastRank);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets one page of a race's general classification between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param offset The number of riders ranked before the page.
+	 * @param limit The most riders the page can hold.
+	 * @return The page of the general classification.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public Standings getGeneralClassificationPage(int raceId, int offset, int limit) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getGeneralClassificationPage(raceId, offset, limit);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets the riders of a race's general classification from one rank to
+	 * another between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param firstRank The rank of the first rider wanted.
+	 * @param lastRank The rank of the last rider wanted.
+	 * @return The riders ranked firstRank to lastRank.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public Standings getGeneralClassificationBetweenRanks(int raceId, int firstRank, int lastRank)
+			throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getGeneralClassificationBetweenRanks(raceId, firstRank, lastRank);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets a rider's rank in a stage between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank in the stage, or 0 if they have no result in it.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRiderRankInStage(stageId, riderId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets a rider's rank in a race's general classification between the query
+	 * hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank in the general classification, or 0 if they have no result in the race.
+	 * @throws IDNotRecognisedException If the race ID or rider ID does not match any race or rider in the system.
+	 */
+	@Override
+	public int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRiderGeneralClassificationRank(raceId, riderId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets a rider's standing in a stage between the query hooks.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the stage, or null if they have no result in it.
+	 * @throws IDNotRecognisedException If the stage ID or rider ID does not match any stage or rider in the system.
+	 */
+	@Override
+	public RiderStanding getRiderStandingInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRiderStandingInStage(stageId, riderId);
+		} finally {
+			endQuery();
+		}
+	}
+
+	/**
+	 * This implementation gets a rider's standing in a race between the query hooks.
+	 *
+	 * @param raceId The ID of the race.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's standing in the race, or null if they have no result in it.
+	 * @throws IDNotRecognisedException If the race ID or rider ID does not match any race or rider in the system.
+	 */
+	@Override
+	public RiderStanding getRiderStandingInRace(int raceId, int riderId) throws IDNotRecognisedException {
+		beginQuery();
+		try {
+			return portal.getRiderStandingInRace(raceId, riderId);
+		} finally {
+			endQuery();
+		}
+	}
+}
@@ -0,0 +1,1056 @@
+package cycling;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An implementor of the CyclingPortal interface that keeps a portal on disk as it changes.
+ * Every call is passed on to another portal; each call that changes it is then written to a
+ * journal (see {@link PortalJournal}) and forced to disk before it returns, so a crash loses
+ * nothing that has been acknowledged. Queries are inherited from {@link ForwardingCyclingPortal}
+ * and passed straight on.
+ * <p>
+ * The portal lives in a directory holding at most one snapshot, {@code snapshot-N.cyps}, and
+ * the journal of changes made since, {@code journal-N.log}. Opening the directory loads the
+ * snapshot and replays the journal on top of it. Once the journal grows past the compaction
+ * threshold (or {@link #compact()} is called) the portal is saved as snapshot N+1, a fresh
+ * journal N+1 is started, and the files of generation N are deleted. The new snapshot is only
+ * renamed into place once it is complete, so a crash at any point leaves either the old or the
+ * new generation to recover from.
+ * <p>
+ * Changes are applied and appended to the journal one at a time, but waiting for the journal
+ * to reach the disk happens afterwards, so callers changing the portal from several threads
+ * share fsyncs (group commit). A change is visible to queries as soon as it is applied, slightly
+ * before it is durable. The portal passed in decides how far the whole is thread-safe: with a
+ * ConcurrentCyclingPortalImpl any thread can use it, with a CyclingPortalImpl only one at a time.
+ * <p>
+ * If the journal cannot be written, the change that failed is still applied in memory, an
+ * UncheckedIOException is thrown, and every later change is refused with an
+ * IllegalStateException, since it could no longer be recovered. The portal is kept on disk by
+ * its journal, so it refuses to be serialized.
+ *
+ * @author Olly Johnson and Laith Al-Qudah
+ * @version 1.0
+ *
+ */
+public class JournaledCyclingPortalImpl extends ForwardingCyclingPortal<CyclingPortal> implements Closeable {
+	/** The version of the serialized form, which is never written as the portal refuses to be serialized. */
+	private static final long serialVersionUID = 1L;
+
+	/** The journal size, in bytes, at which the portal is compacted into a new snapshot by default. */
+	public static final long DEFAULT_COMPACTION_THRESHOLD = 64L << 20;
+
+	/** Journal record of a race being created. */
+	private static final int CREATE_RACE = 1;
+	/** Journal record of a race being removed by ID. */
+	private static final int REMOVE_RACE = 2;
+	/** Journal record of a race being removed by name. */
+	private static final int REMOVE_RACE_BY_NAME = 3;
+	/** Journal record of a stage being added to a race. */
+	private static final int ADD_STAGE = 4;
+	/** Journal record of a stage being removed. */
+	private static final int REMOVE_STAGE = 5;
+	/** Journal record of a categorised climb being added to a stage. */
+	private static final int ADD_CLIMB = 6;
+	/** Journal record of an intermediate sprint being added to a stage. */
+	private static final int ADD_SPRINT = 7;
+	/** Journal record of a checkpoint being removed. */
+	private static final int REMOVE_CHECKPOINT = 8;
+	/** Journal record of a stage's preparation being concluded. */
+	private static final int CONCLUDE_STAGE = 9;
+	/** Journal record of a team being created. */
+	private static final int CREATE_TEAM = 10;
+	/** Journal record of a team being removed. */
+	private static final int REMOVE_TEAM = 11;
+	/** Journal record of a rider being created. */
+	private static final int CREATE_RIDER = 12;
+	/** Journal record of a rider being removed. */
+	private static final int REMOVE_RIDER = 13;
+	/** Journal record of one rider's result being registered. */
+	private static final int REGISTER_RESULT = 14;
+	/** Journal record of a batch of results being registered; only the accepted rows are recorded. */
+	private static final int REGISTER_RESULTS = 15;
+	/** Journal record of a rider's result being deleted. */
+	private static final int DELETE_RESULT = 16;
+	/** Journal record of the portal being erased. */
+	private static final int ERASE = 17;
+
+	/** The directory holding the snapshot and journal. */
+	private final Path directory;
+	/** The journal size, in bytes, at which the portal is compacted. */
+	private final long compactionThreshold;
+	/** Held while a change is applied and appended to the journal, so the journal records changes in order. */
+	private final ReentrantLock mutationLock = new ReentrantLock();
+	/** Reused to encode each journal record. Only used while holding the mutation lock. */
+	private final PortalSnapshot.Encoder record = new PortalSnapshot.Encoder();
+	/** The journal changes are currently appended to. Only replaced while holding the mutation lock. */
+	private volatile PortalJournal journal;
+	/** The generation of the current snapshot and journal. Guarded by the mutation lock. */
+	private long generation;
+	/** The fsyncs made by journals that have since been compacted. Guarded by the mutation lock. */
+	private long earlierSyncCount;
+	/** The number of records appended since the portal was opened. Guarded by the mutation lock. */
+	private long recordsAppended;
+	/** Set once the journal could not be written, after which changes are refused. */
+	private volatile boolean failed;
+
+	/**
+	 * Opens a journaled portal kept in a directory, compacting its journal at the
+	 * {@linkplain #DEFAULT_COMPACTION_THRESHOLD default threshold}.
+	 *
+	 * @param portal The portal to pass every call on to. It is erased before the directory is loaded into it.
+	 * @param directory The directory holding the snapshot and journal, created if it does not exist.
+	 * @throws IOException If the directory cannot be read, or its snapshot or journal is not valid.
+	 * @throws ClassNotFoundException If the snapshot holds a serialized object of an unknown class.
+	 */
+	public JournaledCyclingPortalImpl(CyclingPortal portal, Path directory) throws IOException, ClassNotFoundException {
+		this(portal, directory, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	/**
+	 * Opens a journaled portal kept in a directory. The latest snapshot in the directory is
+	 * loaded, its journal replayed on top of it, and any files left over from an interrupted
+	 * compaction are deleted.
+	 *
+	 * @param portal The portal to pass every call on to. It is erased before the directory is loaded into it.
+	 * @param directory The directory holding the snapshot and journal, created if it does not exist.
+	 * @param compactionThreshold The journal size, in bytes, at which the portal is compacted into a new snapshot.
+	 * @throws IOException If the directory cannot be read, or its snapshot or journal is not valid.
+	 * @throws ClassNotFoundException If the snapshot holds a serialized object of an unknown class.
+	 */
+	public JournaledCyclingPortalImpl(CyclingPortal portal, Path directory, long compactionThreshold)
+			throws IOException, ClassNotFoundException {
+		super(portal);
+		this.directory = directory;
+		this.compactionThreshold = compactionThreshold;
+		recover();
+	}
+
+	/**
+	 * This helper method names the snapshot file of a generation.
+	 *
+	 * @param generation The generation.
+	 * @return The path of the snapshot.
+	 */
+	private Path snapshotFile(long generation) {
+		return directory.resolve("snapshot-" + generation + ".cyps");
+	}
+
+	/**
+	 * This helper method names the journal file of a generation.
+	 *
+	 * @param generation The generation.
+	 * @return The path of the journal.
+	 */
+	private Path journalFile(long generation) {
+		return directory.resolve("journal-" + generation + ".log");
+	}
+
+	/**
+	 * This helper method reads the generation from a snapshot or journal file name.
+	 *
+	 * @param name The file name.
+	 * @param prefix The name's expected prefix.
+	 * @param suffix The name's expected suffix.
+	 * @return The generation, or -1 if the name does not have the prefix and suffix around a number.
+	 */
+	private static long generationOf(String name, String prefix, String suffix) {
+		if (!name.startsWith(prefix) || !name.endsWith(suffix) || name.length() == prefix.length() + suffix.length()) {
+			return -1;
+		}
+		String number = name.substring(prefix.length(), name.length() - suffix.length());
+		for (int i = 0; i < number.length(); i++) {
+			if (number.charAt(i) < '0' || number.charAt(i) > '9') {
+				return -1;
+			}
+		}
+		return Long.parseLong(number);
+	}
+
+	/**
+	 * This helper method loads the latest snapshot, replays the journals written since it, and
+	 * opens the last journal for appending.
+	 *
+	 * @throws IOException If the directory cannot be read, or its snapshot or journal is not valid.
+	 * @throws ClassNotFoundException If the snapshot holds a serialized object of an unknown class.
+	 */
+	private void recover() throws IOException, ClassNotFoundException {
+		Files.createDirectories(directory);
+		long snapshotGeneration = -1;
+		TreeSet<Long> journalGenerations = new TreeSet<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(".tmp")) {
+					//a snapshot that was still being written when the portal stopped
+					Files.delete(file);
+				}
+				snapshotGeneration = Math.max(snapshotGeneration, generationOf(name, "snapshot-", ".cyps"));
+				long journalGeneration = generationOf(name, "journal-", ".log");
+				if (journalGeneration >= 0) {
+					journalGenerations.add(journalGeneration);
+				}
+			}
+		}
+		portal.eraseCyclingPortal();
+		if (snapshotGeneration >= 0) {
+			portal.loadCyclingPortal(snapshotFile(snapshotGeneration).toString());
+		}
+		generation = Math.max(snapshotGeneration, 0);
+		long validLength = -1;
+		for (long journalGeneration : journalGenerations.tailSet(generation)) {
+			Path file = journalFile(journalGeneration);
+			validLength = PortalJournal.read(file, (index, decoder) -> replay(file, index, decoder));
+			generation = journalGeneration;
+		}
+		journal = validLength < 0 ? PortalJournal.create(journalFile(generation))
+				: PortalJournal.openForAppend(journalFile(generation), validLength);
+		deleteGenerationsBefore(generation);
+	}
+
+	/**
+	 * This helper method deletes the snapshots and journals older than a generation.
+	 *
+	 * @param oldest The oldest generation to keep.
+	 * @throws IOException If the directory cannot be read or a file cannot be deleted.
+	 */
+	private void deleteGenerationsBefore(long oldest) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				long snapshotGeneration = generationOf(name, "snapshot-", ".cyps");
+				long journalGeneration = generationOf(name, "journal-", ".log");
+				if ((snapshotGeneration >= 0 && snapshotGeneration < oldest) || (journalGeneration >= 0 && journalGeneration < oldest)) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This helper method applies one journal record to the portal, checking that it has the
+	 * same outcome as when it was first made.
+	 *
+	 * @param file The journal being replayed, used in error messages.
+	 * @param index The record's position in the journal.
+	 * @param in The record.
+	 * @throws IOException If the record is corrupt, or the portal rejects it or gives it a different ID.
+	 */
+	private void replay(Path file, long index, PortalSnapshot.Decoder in) throws IOException {
+		int type = -1;
+		try {
+			type = in.readVarInt();
+			switch (type) {
+				case CREATE_RACE:
+					expectId(in.readVarInt(), portal.createRace(in.readString(), in.readString()));
+					break;
+				case REMOVE_RACE:
+					portal.removeRaceById(in.readVarInt());
+					break;
+				case REMOVE_RACE_BY_NAME:
+					portal.removeRaceByName(in.readString());
+					break;
+				case ADD_STAGE:
+					expectId(in.readVarInt(), portal.addStageToRace(in.readVarInt(), in.readString(), in.readString(),
+							in.readDouble(), in.readDateTime(), StageType.valueOf(in.readString())));
+					break;
+				case REMOVE_STAGE:
+					portal.removeStageById(in.readVarInt());
+					break;
+				case ADD_CLIMB:
+					expectId(in.readVarInt(), portal.addCategorizedClimbToStage(in.readVarInt(), in.readDouble(),
+							CheckpointType.valueOf(in.readString()), in.readDouble(), in.readDouble()));
+					break;
+				case ADD_SPRINT:
+					expectId(in.readVarInt(), portal.addIntermediateSprintToStage(in.readVarInt(), in.readDouble()));
+					break;
+				case REMOVE_CHECKPOINT:
+					portal.removeCheckpoint(in.readVarInt());
+					break;
+				case CONCLUDE_STAGE:
+					portal.concludeStagePreparation(in.readVarInt());
+					break;
+				case CREATE_TEAM:
+					expectId(in.readVarInt(), portal.createTeam(in.readString(), in.readString()));
+					break;
+				case REMOVE_TEAM:
+					portal.removeTeam(in.readVarInt());
+					break;
+				case CREATE_RIDER:
+					expectId(in.readVarInt(), portal.createRider(in.readVarInt(), in.readString(), in.readVarInt()));
+					break;
+				case REMOVE_RIDER:
+					portal.removeRider(in.readVarInt());
+					break;
+				case REGISTER_RESULT:
+					portal.registerRiderResultsInStage(in.readVarInt(), in.readVarInt(), readTimes(in));
+					break;
+				case REGISTER_RESULTS:
+					int stageId = in.readVarInt();
+					int[] riderIds = new int[in.readVarInt()];
+					LocalTime[][] checkpointTimes = new LocalTime[riderIds.length][];
+					for (int row = 0; row < riderIds.length; row++) {
+						riderIds[row] = in.readVarInt();
+						checkpointTimes[row] = readTimes(in);
+					}
+					for (Exception error : portal.registerRidersResultsInStage(stageId, riderIds, checkpointTimes)) {
+						if (error != null) {
+							throw error;
+						}
+					}
+					break;
+				case DELETE_RESULT:
+					portal.deleteRiderResultsInStage(in.readVarInt(), in.readVarInt());
+					break;
+				case ERASE:
+					portal.eraseCyclingPortal();
+					break;
+				default:
+					throw new IOException("Unknown record type " + type);
+			}
+		} catch (IOException e) {
+			throw new IOException("Record " + index + " of " + file + " could not be replayed: " + e.getMessage(), e);
+		} catch (Exception e) {
+			throw new IOException("Record " + index + " of " + file + " (type " + type + ") could not be replayed: " + e, e);
+		}
+	}
+
+	/**
+	 * This helper method checks that replaying a creation gave the object the ID it was given
+	 * originally.
+	 *
+	 * @param recorded The ID in the journal.
+	 * @param replayed The ID given when the record was replayed.
+	 * @throws IOException If the IDs differ, meaning the journal does not follow on from the snapshot.
+	 */
+	private static void expectId(int recorded, int replayed) throws IOException {
+		if (recorded != replayed) {
+			throw new IOException("Expected ID " + recorded + " but the portal gave " + replayed);
+		}
+	}
+
+	/**
+	 * This helper method encodes a rider's checkpoint times as their count followed by each
+	 * time in nanoseconds of the day, with {@link StageResultTable#NO_TIME} for a missing time.
+	 *
+	 * @param times The times to encode.
+	 */
+	private void writeTimes(LocalTime[] times) {
+		record.writeVarInt(times.length);
+		for (long nanos : Stage.toNanosOfDay(times)) {
+			record.writeLong(nanos);
+		}
+	}
+
+	/**
+	 * This helper method decodes checkpoint times written by {@link #writeTimes}.
+	 *
+	 * @param in The record being decoded.
+	 * @return The times, with null for a missing time.
+	 */
+	private static LocalTime[] readTimes(PortalSnapshot.Decoder in) {
+		LocalTime[] times = new LocalTime[in.readVarInt()];
+		for (int i = 0; i < times.length; i++) {
+			long nanos = in.readLong();
+			times[i] = nanos == StageResultTable.NO_TIME ? null : LocalTime.ofNanoOfDay(nanos);
+		}
+		return times;
+	}
+
+	/**
+	 * This helper method takes the mutation lock before a change, refusing the change if the
+	 * journal has failed.
+	 *
+	 * @throws IllegalStateException If an earlier change could not be written to the journal.
+	 */
+	private void lockForMutation() {
+		mutationLock.lock();
+		if (failed) {
+			mutationLock.unlock();
+			throw new IllegalStateException("The journal in " + directory + " could not be written, so changes are no longer accepted.");
+		}
+	}
+
+	/**
+	 * This helper method starts encoding a journal record.
+	 * The caller must hold the mutation lock.
+	 *
+	 * @param type The type of the record.
+	 * @return The encoder, holding just the record type.
+	 */
+	private PortalSnapshot.Encoder record(int type) {
+		record.clear();
+		record.writeVarInt(type);
+		return record;
+	}
+
+	/**
+	 * This helper method appends the record that has been encoded to the journal, and compacts
+	 * the portal if the journal has grown past the threshold.
+	 * The caller must hold the mutation lock.
+	 *
+	 * @return The position to wait for with {@link #awaitDurable(long)}, or 0 if the portal was
+	 *         compacted and the change is already on disk in the new snapshot.
+	 * @throws UncheckedIOException If the journal or the new snapshot cannot be written.
+	 */
+	private long append() {
+		try {
+			long position = journal.append(record);
+			recordsAppended++;
+			if (journal.size() >= compactionThreshold) {
+				compactLocked();
+				return 0;
+			}
+			return position;
+		} catch (IOException e) {
+			failed = true;
+			throw new UncheckedIOException("The change could not be written to the journal in " + directory, e);
+		}
+	}
+
+	/**
+	 * This helper method waits until an appended record is on disk, sharing the fsync with any
+	 * other callers waiting at the same time. If the journal has been compacted since, the
+	 * record was forced to disk before the compaction and this returns after at most one fsync
+	 * of the new journal.
+	 *
+	 * @param position The position returned by {@link #append()}.
+	 * @throws UncheckedIOException If the journal cannot be forced to disk.
+	 */
+	private void awaitDurable(long position) {
+		if (position == 0) {
+			return;
+		}
+		try {
+			journal.awaitDurable(position);
+		} catch (IOException e) {
+			failed = true;
+			throw new UncheckedIOException("The journal in " + directory + " could not be forced to disk", e);
+		}
+	}
+
+	/**
+	 * Saves the portal as a new snapshot and starts a new, empty journal, deleting the previous
+	 * snapshot and journal. Changes wait while the snapshot is written.
+	 *
+	 * @throws IOException If the snapshot or journal cannot be written.
+	 */
+	public void compact() throws IOException {
+		lockForMutation();
+		try {
+			compactLocked();
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		} finally {
+			mutationLock.unlock();
+		}
+	}
+
+	/**
+	 * This helper method does the work of {@link #compact()}.
+	 * The caller must hold the mutation lock.
+	 *
+	 * @throws IOException If the snapshot or journal cannot be written.
+	 */
+	private void compactLocked() throws IOException {
+		journal.sync();
+		long next = generation + 1;
+		Path temporary = directory.resolve("snapshot-" + next + ".cyps.tmp");
+		portal.saveCyclingPortal(temporary.toString());
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(temporary, snapshotFile(next), StandardCopyOption.ATOMIC_MOVE);
+		PortalJournal nextJournal = PortalJournal.create(journalFile(next));
+		syncDirectory();
+		PortalJournal previous = journal;
+		earlierSyncCount += previous.getSyncCount();
+		journal = nextJournal;
+		generation = next;
+		previous.close();
+		deleteGenerationsBefore(next);
+	}
+
+	/**
+	 * This helper method forces the directory's entries to disk, so that a renamed snapshot or a
+	 * new journal survives a crash. File systems that cannot sync a directory are skipped.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			//not every platform allows a directory to be opened and forced
+		}
+	}
+
+	/**
+	 * Gets the size of the current journal.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getJournalSize() {
+		return journal.size();
+	}
+
+	/**
+	 * Gets the number of records appended to the journal since the portal was opened.
+	 *
+	 * @return The number of records.
+	 */
+	public long getRecordsAppended() {
+		mutationLock.lock();
+		try {
+			return recordsAppended;
+		} finally {
+			mutationLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of times the journal has been forced to disk since the portal was opened.
+	 * With several threads making changes this is lower than the number of records appended,
+	 * as each fsync covers every record appended before it.
+	 *
+	 * @return The number of fsyncs.
+	 */
+	public long getSyncCount() {
+		mutationLock.lock();
+		try {
+			return earlierSyncCount + journal.getSyncCount();
+		} finally {
+			mutationLock.unlock();
+		}
+	}
+
+	/**
+	 * Forces the journal to disk and closes it. The portal must not be changed afterwards.
+	 *
+	 * @throws IOException If the journal cannot be forced or closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		mutationLock.lock();
+		try {
+			journal.close();
+			failed = true;
+		} finally {
+			mutationLock.unlock();
+		}
+	}
+
+	/**
+	 * This helper method refuses to serialize the portal, which lives in its directory and
+	 * cannot be changed without its journal. Use {@link #saveCyclingPortal(String)} instead.
+	 *
+	 * @param out The stream the portal would be written to.
+	 * @throws NotSerializableException Always.
+	 */
+	private void writeObject(ObjectOutputStream out) throws NotSerializableException {
+		throw new NotSerializableException("A journaled portal is kept in " + directory + " and cannot be serialized.");
+	}
+
+	/**
+	 * This implementation creates a race and journals it with its new ID.
+	 *
+	 * @param name The name of the race.
+	 * @param description A description of the race.
+	 * @return The unique ID of the newly created race.
+	 * @throws IllegalNameException If the name is already in use.
+	 * @throws InvalidNameException If the name is null, empty, too long or contains whitespace.
+	 */
+	@Override
+	public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+		int raceId;
+		long position;
+		lockForMutation();
+		try {
+			raceId = portal.createRace(name, description);
+			PortalSnapshot.Encoder out = record(CREATE_RACE);
+			out.writeVarInt(raceId);
+			out.writeString(name);
+			out.writeString(description);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+		return raceId;
+	}
+
+	/**
+	 * This implementation removes a race and journals the removal.
+	 *
+	 * @param raceId The ID of the race to be removed.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 */
+	@Override
+	public void removeRaceById(int raceId) throws IDNotRecognisedException {
+		long position;
+		lockForMutation();
+		try {
+			portal.removeRaceById(raceId);
+			record(REMOVE_RACE).writeVarInt(raceId);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation adds a stage to a race and journals it with its new ID.
+	 *
+	 * @param raceId The ID of the race the stage is added to.
+	 * @param stageName The name of the stage.
+	 * @param description A description of the stage.
+	 * @param length The length of the stage in kilometres.
+	 * @param startTime The date and time the stage starts.
+	 * @param type The type of the stage.
+	 * @return The unique ID of the newly added stage.
+	 * @throws IDNotRecognisedException If the race ID does not match any race in the system.
+	 * @throws IllegalNameException If the stage name is already in use.
+	 * @throws InvalidNameException If the stage name is null, empty, too long or contains whitespace.
+	 * @throws InvalidLengthException If the length is less than 5km.
+	 */
+	@Override
+	public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime,
+			StageType type) throws IDNotRecognisedException, IllegalNameException, InvalidNameException,
+			InvalidLengthException {
+		int stageId;
+		long position;
+		lockForMutation();
+		try {
+			stageId = portal.addStageToRace(raceId, stageName, description, length, startTime, type);
+			PortalSnapshot.Encoder out = record(ADD_STAGE);
+			out.writeVarInt(stageId);
+			out.writeVarInt(raceId);
+			out.writeString(stageName);
+			out.writeString(description);
+			out.writeDouble(length);
+			out.writeDateTime(startTime);
+			out.writeString(type.name());
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+		return stageId;
+	}
+
+	/**
+	 * This implementation removes a stage and journals the removal.
+	 *
+	 * @param stageId The ID of the stage to be removed.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 */
+	@Override
+	public void removeStageById(int stageId) throws IDNotRecognisedException {
+		long position;
+		lockForMutation();
+		try {
+			portal.removeStageById(stageId);
+			record(REMOVE_STAGE).writeVarInt(stageId);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation adds a categorised climb to a stage and journals it with its new ID.
+	 *
+	 * @param stageId The ID of the stage the climb is added to.
+	 * @param location The location of the climb's finish within the stage.
+	 * @param type The category of the climb.
+	 * @param averageGradient The average gradient of the climb.
+	 * @param length The length of the climb in kilometres.
+	 * @return The unique ID of the newly added checkpoint.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidLocationException If the location is outside the stage.
+	 * @throws InvalidStageStateException If the stage is waiting for results.
+	 * @throws InvalidStageTypeException If the stage is a time trial.
+	 */
+	@Override
+	public int addCategorizedClimbToStage(int stageId, Double location, CheckpointType type, Double averageGradient,
+			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
+			InvalidStageTypeException {
+		int checkpointId;
+		long position;
+		lockForMutation();
+		try {
+			checkpointId = portal.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
+			PortalSnapshot.Encoder out = record(ADD_CLIMB);
+			out.writeVarInt(checkpointId);
+			out.writeVarInt(stageId);
+			out.writeDouble(location);
+			out.writeString(type.name());
+			out.writeDouble(averageGradient);
+			out.writeDouble(length);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+		return checkpointId;
+	}
+
+	/**
+	 * This implementation adds an intermediate sprint to a stage and journals it with its new ID.
+	 *
+	 * @param stageId The ID of the stage the sprint is added to.
+	 * @param location The location of the sprint within the stage.
+	 * @return The unique ID of the newly added checkpoint.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidLocationException If the location is outside the stage.
+	 * @throws InvalidStageStateException If the stage is waiting for results.
+	 * @throws InvalidStageTypeException If the stage is a time trial.
+	 */
+	@Override
+	public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
+			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+		int checkpointId;
+		long position;
+		lockForMutation();
+		try {
+			checkpointId = portal.addIntermediateSprintToStage(stageId, location);
+			PortalSnapshot.Encoder out = record(ADD_SPRINT);
+			out.writeVarInt(checkpointId);
+			out.writeVarInt(stageId);
+			out.writeDouble(location);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+		return checkpointId;
+	}
+
+	/**
+	 * This implementation removes a checkpoint and journals the removal.
+	 *
+	 * @param checkpointId The ID of the checkpoint to be removed.
+	 * @throws IDNotRecognisedException If the checkpoint ID does not match any checkpoint in the system.
+	 * @throws InvalidStageStateException If the checkpoint's stage is waiting for results.
+	 */
+	@Override
+	public void removeCheckpoint(int checkpointId) throws IDNotRecognisedException, InvalidStageStateException {
+		long position;
+		lockForMutation();
+		try {
+			portal.removeCheckpoint(checkpointId);
+			record(REMOVE_CHECKPOINT).writeVarInt(checkpointId);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation concludes the preparation of a stage and journals the change of state.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @throws IDNotRecognisedException If the stage ID does not match any stage in the system.
+	 * @throws InvalidStageStateException If the stage is already waiting for results.
+	 */
+	@Override
+	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+		long position;
+		lockForMutation();
+		try {
+			portal.concludeStagePreparation(stageId);
+			record(CONCLUDE_STAGE).writeVarInt(stageId);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation creates a team and journals it with its new ID.
+	 *
+	 * @param name The name of the team.
+	 * @param description A description of the team.
+	 * @return The unique ID of the newly created team.
+	 * @throws IllegalNameException If the name is already in use.
+	 * @throws InvalidNameException If the name is null, empty, too long or contains whitespace.
+	 */
+	@Override
+	public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+		int teamId;
+		long position;
+		lockForMutation();
+		try {
+			teamId = portal.createTeam(name, description);
+			PortalSnapshot.Encoder out = record(CREATE_TEAM);
+			out.writeVarInt(teamId);
+			out.writeString(name);
+			out.writeString(description);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+		return teamId;
+	}
+
+	/**
+	 * This implementation removes a team and journals the removal.
+	 *
+	 * @param teamId The ID of the team to be removed.
+	 * @throws IDNotRecognisedException If the team ID does not match any team in the system.
+	 */
+	@Override
+	public void removeTeam(int teamId) throws IDNotRecognisedException {
+		long position;
+		lockForMutation();
+		try {
+			portal.removeTeam(teamId);
+			record(REMOVE_TEAM).writeVarInt(teamId);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation creates a rider and journals them with their new ID.
+	 *
+	 * @param teamID The ID of the rider's team.
+	 * @param name The name of the rider.
+	 * @param yearOfBirth The year the rider was born.
+	 * @return The unique ID of the newly created rider.
+	 * @throws IDNotRecognisedException If the team ID does not match any team in the system.
+	 * @throws IllegalArgumentException If the name is null or the year of birth is before 1900.
+	 */
+	@Override
+	public int createRider(int teamID, String name, int yearOfBirth) throws IDNotRecognisedException, IllegalArgumentException {
+		int riderId;
+		long position;
+		lockForMutation();
+		try {
+			riderId = portal.createRider(teamID, name, yearOfBirth);
+			PortalSnapshot.Encoder out = record(CREATE_RIDER);
+			out.writeVarInt(riderId);
+			out.writeVarInt(teamID);
+			out.writeString(name);
+			out.writeVarInt(yearOfBirth);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+		return riderId;
+	}
+
+	/**
+	 * This implementation removes a rider and journals the removal.
+	 *
+	 * @param riderId The ID of the rider to be removed.
+	 * @throws IDNotRecognisedException If the rider ID does not match any rider in the system.
+	 */
+	@Override
+	public void removeRider(int riderId) throws IDNotRecognisedException {
+		long position;
+		lockForMutation();
+		try {
+			portal.removeRider(riderId);
+			record(REMOVE_RIDER).writeVarInt(riderId);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation registers a rider's result in a stage and journals the times.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @param checkpoints The rider's times at the start, each checkpoint and the finish.
+	 * @throws IDNotRecognisedException If the stage or rider ID is not recognised.
+	 * @throws DuplicatedResultException If the rider already has a result in the stage.
+	 * @throws InvalidCheckpointTimesException If the number of times does not match the stage's checkpoints.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	@Override
+	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException,
+			InvalidStageStateException {
+		long position;
+		lockForMutation();
+		try {
+			portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+			PortalSnapshot.Encoder out = record(REGISTER_RESULT);
+			out.writeVarInt(stageId);
+			out.writeVarInt(riderId);
+			writeTimes(checkpoints);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation deletes a rider's result in a stage and journals the deletion.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @throws IDNotRecognisedException If the stage or rider ID is not recognised.
+	 */
+	@Override
+	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		long position;
+		lockForMutation();
+		try {
+			portal.deleteRiderResultsInStage(stageId, riderId);
+			PortalSnapshot.Encoder out = record(DELETE_RESULT);
+			out.writeVarInt(stageId);
+			out.writeVarInt(riderId);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation erases the portal and journals the erasure.
+	 */
+	@Override
+	public void eraseCyclingPortal() {
+		long position;
+		lockForMutation();
+		try {
+			portal.eraseCyclingPortal();
+			record(ERASE);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation saves a copy of the portal to a file, outside the journaled directory.
+	 * Changes wait while it is written.
+	 *
+	 * @param filename The path and name of the file to save to.
+	 * @throws IOException If the file cannot be written.
+	 */
+	@Override
+	public void saveCyclingPortal(String filename) throws IOException {
+		mutationLock.lock();
+		try {
+			portal.saveCyclingPortal(filename);
+		} finally {
+			mutationLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation replaces the portal with one loaded from a file, and then compacts so
+	 * that the loaded portal becomes the snapshot the journal follows on from.
+	 *
+	 * @param filename The path and name of the file to load from.
+	 * @throws IOException If the file cannot be read, or the new snapshot cannot be written.
+	 * @throws ClassNotFoundException If the file holds a serialized object of an unknown class.
+	 */
+	@Override
+	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+		lockForMutation();
+		try {
+			portal.loadCyclingPortal(filename);
+			compactLocked();
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		} finally {
+			mutationLock.unlock();
+		}
+	}
+
+	/**
+	 * This implementation removes a race by name and journals the removal.
+	 *
+	 * @param name The name of the race to be removed.
+	 * @throws NameNotRecognisedException If no race has the name.
+	 */
+	@Override
+	public void removeRaceByName(String name) throws NameNotRecognisedException {
+		long position;
+		lockForMutation();
+		try {
+			portal.removeRaceByName(name);
+			record(REMOVE_RACE_BY_NAME).writeString(name);
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+	}
+
+	/**
+	 * This implementation registers a batch of results in a stage and journals the rows that
+	 * were accepted as one record, so the whole batch shares a single fsync.
+	 *
+	 * @param stageId The ID of the stage.
+	 * @param riderIds The IDs of the riders, one per row.
+	 * @param checkpointTimes The times of each rider at each checkpoint, in the same order as the riders.
+	 * @return One entry per row: null if the row was registered, or the reason it was rejected.
+	 * @throws IDNotRecognisedException If the stage ID is not recognised.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	@Override
+	public Exception[] registerRidersResultsInStage(int stageId, int[] riderIds, LocalTime[][] checkpointTimes)
+			throws IDNotRecognisedException, InvalidStageStateException {
+		Exception[] errors;
+		long position;
+		lockForMutation();
+		try {
+			errors = portal.registerRidersResultsInStage(stageId, riderIds, checkpointTimes);
+			int accepted = 0;
+			for (Exception error : errors) {
+				if (error == null) {
+					accepted++;
+				}
+			}
+			if (accepted == 0) {
+				return errors;
+			}
+			PortalSnapshot.Encoder out = record(REGISTER_RESULTS);
+			out.writeVarInt(stageId);
+			out.writeVarInt(accepted);
+			for (int row = 0; row < riderIds.length; row++) {
+				if (errors[row] == null) {
+					out.writeVarInt(riderIds[row]);
+					writeTimes(checkpointTimes[row]);
+				}
+			}
+			position = append();
+		} finally {
+			mutationLock.unlock();
+		}
+		awaitDurable(position);
+		return errors;
+	}
+}
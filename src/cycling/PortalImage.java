@@ -0,0 +1,292 @@
+package cycling;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * A copy of a portal's source data taken at one moment, which is what {@link PortalSnapshot}
+ * writes. Taking the copy only gathers each stage's rider IDs and checkpoint times into flat
+ * arrays in ranked order, and shares everything that never changes once created (riders'
+ * details apart, which are copied, and checkpoints, which are immutable), so it is much cheaper
+ * than encoding the portal. A portal shared between threads can therefore hold its writers off
+ * only while the image is taken and write the image afterwards, while they carry on.
+ * <p>
+ * Nothing worked out from the source data, such as rankings or points, is copied: the snapshot
+ * does not store it.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class PortalImage {
+    /** The next team, rider, race, stage and checkpoint IDs, in that order. */
+    private final int[] counters;
+    /** Every team in the portal, with its riders. */
+    private final TeamImage[] teams;
+    /** Every race in the portal that is held on the heap. */
+    private final RaceImage[] races;
+    /** The file names of the races in the portal that are sealed into archives. */
+    private final String[] sealedRaceFilenames;
+    /** The races in the portal that are still in a lazily opened snapshot. */
+    private final RaceSegment[] unreadRaces;
+
+    /**
+     * Creates an image from parts that have already been copied.
+     *
+     * @param counters The next team, rider, race, stage and checkpoint IDs.
+     * @param teams The teams.
+     * @param races The races held on the heap.
+     * @param sealedRaceFilenames The file names of the sealed races.
+     * @param unreadRaces The races still in a lazily opened snapshot.
+     */
+    private PortalImage(int[] counters, TeamImage[] teams, RaceImage[] races, String[] sealedRaceFilenames,
+            RaceSegment[] unreadRaces) {
+        this.counters = counters;
+        this.teams = teams;
+        this.races = races;
+        this.sealedRaceFilenames = sealedRaceFilenames;
+        this.unreadRaces = unreadRaces;
+    }
+
+    /**
+     * Takes an image of a portal. The portal must not change while this runs, but may change
+     * freely once it returns.
+     *
+     * @param counters The next team, rider, race, stage and checkpoint IDs, in that order.
+     * @param teams Every team in the portal.
+     * @param races Every race in the portal that is held on the heap.
+     * @param sealedRaces Every race in the portal that is sealed into an archive.
+     * @param unreadRaces Every race in the portal that is still in a lazily opened snapshot. The
+     *                    image reads them from that snapshot when it is written, so the snapshot
+     *                    must stay open until then.
+     * @return The image.
+     */
+    static PortalImage capture(int[] counters, Collection<Team> teams, Collection<Race> races,
+            Collection<RaceArchive> sealedRaces, Collection<RaceSegment> unreadRaces) {
+        TeamImage[] teamImages = new TeamImage[teams.size()];
+        int t = 0;
+        for (Team team : teams) {
+            teamImages[t++] = new TeamImage(team);
+        }
+        RaceImage[] raceImages = new RaceImage[races.size()];
+        int r = 0;
+        for (Race race : races) {
+            raceImages[r++] = new RaceImage(race);
+        }
+        String[] sealedRaceFilenames = new String[sealedRaces.size()];
+        int s = 0;
+        for (RaceArchive archive : sealedRaces) {
+            sealedRaceFilenames[s++] = archive.getFilename();
+        }
+        return new PortalImage(counters.clone(), teamImages, raceImages, sealedRaceFilenames,
+                unreadRaces.toArray(new RaceSegment[0]));
+    }
+
+    /**
+     * Writes the image as a snapshot file. The snapshot is written to a temporary file beside
+     * the named one, which then replaces it, so an existing snapshot is never left half
+     * overwritten and the portal can be saved over the snapshot it is lazily reading from.
+     *
+     * @param filename The path and name of the file to write.
+     * @param compressed true to write a compressed snapshot, false to write a plain one.
+     * @param level The compression level of a compressed snapshot.
+     * @return The size of the file written, in bytes.
+     * @throws IOException If the file cannot be written.
+     */
+    long save(String filename, boolean compressed, int level) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path file = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                if (compressed) {
+                    PortalSnapshot.writeCompressed(out, this, level);
+                } else {
+                    PortalSnapshot.write(out, this, false);
+                }
+            }
+            long size = Files.size(file);
+            //a lazily loaded snapshot stays readable through its open channel after it is replaced
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Gets the next team, rider, race, stage and checkpoint IDs.
+     *
+     * @return The counters, in that order. The array must not be changed.
+     */
+    int[] getCounters() {
+        return counters;
+    }
+
+    /**
+     * Gets the teams.
+     *
+     * @return Every team in the image. The array must not be changed.
+     */
+    TeamImage[] getTeams() {
+        return teams;
+    }
+
+    /**
+     * Gets the races that were held on the heap.
+     *
+     * @return The races. The array must not be changed.
+     */
+    RaceImage[] getRaces() {
+        return races;
+    }
+
+    /**
+     * Gets the file names of the sealed races.
+     *
+     * @return The archive file names. The array must not be changed.
+     */
+    String[] getSealedRaceFilenames() {
+        return sealedRaceFilenames;
+    }
+
+    /**
+     * Gets the races that were still in a lazily opened snapshot.
+     *
+     * @return The segments. The array must not be changed.
+     */
+    RaceSegment[] getUnreadRaces() {
+        return unreadRaces;
+    }
+
+    /**
+     * A team and its riders, as they were when the image was taken.
+     */
+    static final class TeamImage {
+        /** The ID of the team. */
+        final int id;
+        /** The name of the team. */
+        final String name;
+        /** The description of the team. */
+        final String description;
+        /** The IDs of the team's riders. */
+        final int[] riderIds;
+        /** The names of the team's riders, in the same order as their IDs. */
+        final String[] riderNames;
+        /** The years of birth of the team's riders, in the same order as their IDs. */
+        final int[] riderYearsOfBirth;
+
+        /**
+         * Copies a team.
+         *
+         * @param team The team.
+         */
+        TeamImage(Team team) {
+            id = team.getTeamId();
+            name = team.getTeamName();
+            description = team.getDescription();
+            Rider[] riders = team.getRiders();
+            riderIds = new int[riders.length];
+            riderNames = new String[riders.length];
+            riderYearsOfBirth = new int[riders.length];
+            for (int i = 0; i < riders.length; i++) {
+                riderIds[i] = riders[i].getRiderId();
+                riderNames[i] = riders[i].getName();
+                riderYearsOfBirth[i] = riders[i].getYearOfBirth();
+            }
+        }
+    }
+
+    /**
+     * A race and its stages, as they were when the image was taken.
+     */
+    static final class RaceImage {
+        /** The ID of the race. */
+        final int id;
+        /** The name of the race. */
+        final String name;
+        /** The description of the race. */
+        final String description;
+        /** The race's stages, in order. */
+        final StageImage[] stages;
+
+        /**
+         * Copies a race.
+         *
+         * @param race The race.
+         */
+        RaceImage(Race race) {
+            id = race.getRaceId();
+            name = race.getRaceName();
+            description = race.getDescription();
+            Stage[] raceStages = race.getStages();
+            stages = new StageImage[raceStages.length];
+            for (int s = 0; s < raceStages.length; s++) {
+                stages[s] = new StageImage(raceStages[s]);
+            }
+        }
+    }
+
+    /**
+     * A stage, its checkpoints and its results, as they were when the image was taken.
+     */
+    static final class StageImage {
+        /** The ID of the stage. */
+        final int id;
+        /** The name of the stage. */
+        final String name;
+        /** The description of the stage. */
+        final String description;
+        /** The length of the stage in kilometres. */
+        final double length;
+        /** The start time of the stage. */
+        final LocalDateTime startTime;
+        /** The type of the stage. */
+        final StageType type;
+        /** The state of the stage. */
+        final StageState state;
+        /** The stage's checkpoints, ordered by location. */
+        final Checkpoint[] checkpoints;
+        /** The IDs of the stage's checkpoints, in the same order. */
+        final int[] orderedCheckpointIds;
+        /** The number of checkpoint times in each result. */
+        final int timesPerResult;
+        /** The IDs of the riders with results, in ranked order. */
+        final int[] riderIds;
+        /** The riders' checkpoint times in nanoseconds, {@link #timesPerResult} per rider in ranked order. */
+        final long[] times;
+
+        /**
+         * Copies a stage.
+         *
+         * @param stage The stage.
+         */
+        StageImage(Stage stage) {
+            id = stage.getStageId();
+            name = stage.getStageName();
+            description = stage.getDescription();
+            length = stage.getLength();
+            startTime = stage.getStartTime();
+            type = stage.getStageType();
+            state = stage.getStageState();
+            checkpoints = stage.getCheckpointsByLocation();
+            orderedCheckpointIds = stage.getOrderedCheckpointIds();
+            StageResultTable results = stage.getResults();
+            timesPerResult = results.getTimesPerResult();
+            riderIds = new int[results.size()];
+            times = new long[results.size() * timesPerResult];
+            for (int position = 0; position < riderIds.length; position++) {
+                int slot = results.slotAtPosition(position);
+                riderIds[position] = results.getRiderId(slot);
+                for (int i = 0; i < timesPerResult; i++) {
+                    times[position * timesPerResult + i] = results.getCheckpointTime(slot, i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package cycling;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of records describing changes to a portal, written ahead of a snapshot so
+ * that changes made since the snapshot survive a crash. The file starts with the magic
+ * {@code CYPJ} and a version byte, followed by records framed as
+ * <pre>
+ * record := length payload checksum
+ * </pre>
+ * where {@code length} is the payload's size as a four-byte int and {@code checksum} is the
+ * CRC-32 of the payload. A crash can leave the last record torn; reading stops at the first
+ * record that is incomplete or fails its checksum, and the file is cut back to the records
+ * before it when it is reopened for appending.
+ * <p>
+ * Appending only hands the record to the operating system. {@link #awaitDurable(long)} then
+ * waits until it has been forced to disk, using group commit: the first waiter forces
+ * everything appended so far, and the callers that appended while it was doing so find their
+ * records already covered, so one fsync serves many changes.
+ * <p>
+ * Appends must be made by one thread at a time; waiting may be done by any number at once.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class PortalJournal implements Closeable {
+    /** The first four bytes of every journal, "CYPJ" in ASCII. */
+    static final byte[] MAGIC = {'C', 'Y', 'P', 'J'};
+    /** The version of the format written by this class. */
+    static final int VERSION = 1;
+    /** The size of the magic and version at the start of the file. */
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    /** The bytes of framing around each payload: the length in front and the checksum behind. */
+    private static final int FRAME_SIZE = 8;
+
+    /**
+     * Receives the records of a journal as it is read.
+     */
+    interface RecordHandler {
+        /**
+         * Handles one record.
+         *
+         * @param index The record's position in the journal, starting from 0.
+         * @param record The record's payload.
+         * @throws IOException If the record cannot be applied.
+         */
+        void handle(long index, PortalSnapshot.Decoder record) throws IOException;
+    }
+
+    /** The channel records are appended to. */
+    private final FileChannel channel;
+    /** Reused to frame each record before it is written. */
+    private ByteBuffer frame = ByteBuffer.allocate(1 << 12);
+    /** Reused to checksum each record. */
+    private final CRC32 checksum = new CRC32();
+    /** The size of the file including every appended record. Written by the appending thread. */
+    private volatile long writtenPosition;
+    /** The size of the file known to be on disk. Guarded by {@link #syncLock}. */
+    private long syncedPosition;
+    /** The number of times the file has been forced to disk. Guarded by {@link #syncLock}. */
+    private long syncCount;
+    /** Held while forcing the file, so that one caller forces on behalf of all who are waiting. */
+    private final Object syncLock = new Object();
+
+    /**
+     * Opens a journal for appending.
+     *
+     * @param channel The journal's channel, open for writing.
+     * @param length The length of the journal's valid contents, where appending starts.
+     */
+    private PortalJournal(FileChannel channel, long length) {
+        this.channel = channel;
+        this.writtenPosition = length;
+        this.syncedPosition = length;
+    }
+
+    /**
+     * Creates an empty journal, replacing any file of the same name, and forces its header to disk.
+     *
+     * @param file The journal file.
+     * @return The journal, open for appending.
+     * @throws IOException If the file cannot be created.
+     */
+    static PortalJournal create(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).put((byte) VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new PortalJournal(channel, HEADER_SIZE);
+    }
+
+    /**
+     * Opens an existing journal for appending after its last valid record, cutting off anything
+     * after it.
+     *
+     * @param file The journal file.
+     * @param validLength The length of the valid records, as returned by {@link #read}.
+     * @return The journal, open for appending.
+     * @throws IOException If the file cannot be opened.
+     */
+    static PortalJournal openForAppend(Path file, long validLength) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            channel.position(validLength);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new PortalJournal(channel, validLength);
+    }
+
+    /**
+     * Reads every valid record of a journal, stopping at the end of the file or at the first
+     * record that was torn by a crash.
+     *
+     * @param file The journal file.
+     * @param handler Receives each record in order.
+     * @return The length of the file up to the end of the last valid record.
+     * @throws IOException If the file cannot be read, is not a journal, or the handler fails.
+     */
+    static long read(Path file, RecordHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] header = in.readNBytes(HEADER_SIZE);
+            if (header.length < HEADER_SIZE || !Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+                throw new IOException(file + " is not a cycling portal journal.");
+            }
+            if (header[MAGIC.length] > VERSION) {
+                throw new IOException(file + " is journal version " + header[MAGIC.length] + " but only versions up to "
+                        + VERSION + " can be read.");
+            }
+            long position = HEADER_SIZE;
+            CRC32 checksum = new CRC32();
+            for (long index = 0; ; index++) {
+                byte[] payload = readRecord(in, checksum);
+                if (payload == null) {
+                    return position;
+                }
+                handler.handle(index, new PortalSnapshot.Decoder(payload));
+                position += payload.length + FRAME_SIZE;
+            }
+        }
+    }
+
+    /**
+     * This helper method reads the next record, checking its checksum.
+     *
+     * @param in The stream positioned at the start of a record.
+     * @param checksum Reused to checksum the payload.
+     * @return The record's payload, or null if the journal ends here or the record is torn.
+     * @throws IOException If the stream cannot be read.
+     */
+    private static byte[] readRecord(DataInputStream in, CRC32 checksum) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0) {
+                return null;
+            }
+            byte[] payload = in.readNBytes(length);
+            if (payload.length != length) {
+                return null;
+            }
+            int expected = in.readInt();
+            checksum.reset();
+            checksum.update(payload);
+            return (int) checksum.getValue() == expected ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends a record to the journal. The record is handed to the operating system but may not
+     * be on disk until {@link #awaitDurable(long)} returns.
+     *
+     * @param record The encoded payload of the record.
+     * @return The position just past the record, to pass to {@link #awaitDurable(long)}.
+     * @throws IOException If the record cannot be written.
+     */
+    long append(PortalSnapshot.Encoder record) throws IOException {
+        ByteBuffer payload = record.asByteBuffer();
+        int length = payload.remaining();
+        if (frame.capacity() < length + FRAME_SIZE) {
+            frame = ByteBuffer.allocate(Math.max(frame.capacity() * 2, length + FRAME_SIZE));
+        }
+        checksum.reset();
+        checksum.update(payload.duplicate());
+        frame.clear();
+        frame.putInt(length).put(payload).putInt((int) checksum.getValue()).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+        long position = writtenPosition + length + FRAME_SIZE;
+        writtenPosition = position;
+        return position;
+    }
+
+    /**
+     * Waits until every record up to a position is on disk. If nobody is forcing the file, the
+     * caller forces everything appended so far; otherwise it waits for the force in progress,
+     * which often covers its record too.
+     *
+     * @param position A position returned by {@link #append}.
+     * @throws IOException If the file cannot be forced to disk.
+     */
+    void awaitDurable(long position) throws IOException {
+        synchronized (syncLock) {
+            if (syncedPosition >= position) {
+                return;
+            }
+            long target = writtenPosition;
+            channel.force(false);
+            syncedPosition = target;
+            syncCount++;
+        }
+    }
+
+    /**
+     * Forces every appended record to disk.
+     *
+     * @throws IOException If the file cannot be forced to disk.
+     */
+    void sync() throws IOException {
+        awaitDurable(writtenPosition);
+    }
+
+    /**
+     * Gets the size of the journal, including every appended record.
+     *
+     * @return The size in bytes.
+     */
+    long size() {
+        return writtenPosition;
+    }
+
+    /**
+     * Gets the number of times the journal has been forced to disk. Comparing this with the number
+     * of records appended shows how many records each fsync covered.
+     *
+     * @return The number of fsyncs.
+     */
+    long getSyncCount() {
+        synchronized (syncLock) {
+            return syncCount;
+        }
+    }
+
+    /**
+     * Forces every appended record to disk and closes the journal.
+     *
+     * @throws IOException If the file cannot be forced or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
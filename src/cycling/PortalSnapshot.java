@@ -0,0 +1,923 @@
+package cycling;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes the binary snapshot format used to save a cycling portal. Only the portal's
+ * source data is stored: the ID counters, the teams and riders, the races, stages and
+ * checkpoints, and every rider's checkpoint times. Rankings, adjusted elapsed times, points and
+ * general classifications are worked out again when the snapshot is read, by registering each
+ * stage's results as one batch, so a snapshot never depends on how those are stored in memory.
+ * Each stage also has a flag that once recorded whether its checkpoint points had been
+ * assigned. Points are now always kept up to date, so it is written as false and ignored.
+ * <p>
+ * The layout is:
+ * <pre>
+ * snapshot := MAGIC version section* END
+ * section  := tag length payload
+ * </pre>
+ * where {@code MAGIC} is the four bytes {@code CYPS}, {@code version} and {@code length} are
+ * varints and {@code tag} is one byte. Payloads are written with the primitive encodings below,
+ * and a reader skips any section whose tag it does not know. The sections are:
+ * <ul>
+ * <li>{@link #SECTION_COUNTERS}: the next team, rider, race, stage and checkpoint IDs.</li>
+ * <li>{@link #SECTION_TEAMS}: each team, followed by its riders.</li>
+ * <li>{@link #SECTION_RACE}: one race, its stages and their checkpoints and results. There is
+ * one such section per race, after the teams section.</li>
+ * <li>{@link #SECTION_SEALED_RACE}: the file name of one race sealed into a {@link RaceArchive},
+ * whose contents stay in that file. Added in version 2.</li>
+ * <li>{@link #SECTION_RACE_INDEX}: one {@link RaceSegment} entry per race section, in the same
+ * order, naming the race, its stages and checkpoints and the riders with results in it. It comes
+ * after the race sections and lets {@link #readLazily} open a snapshot without decoding them.
+ * Readers that do not know it skip it, so adding it did not change the version.</li>
+ * <li>{@link #SECTION_DELTA_RACE}: one race, encoded as in a race section except that each
+ * stage's rider IDs and checkpoint times are delta-encoded, as described at
+ * {@link #writeRace(Encoder, PortalImage.RaceImage, boolean)}. Written by compressed saves. Added in version 3.</li>
+ * </ul>
+ * IDs, counts and string lengths are unsigned LEB128 varints. Times of day are eight-byte longs
+ * of nanoseconds, lengths, locations and gradients are eight-byte doubles, strings are UTF-8
+ * with their byte length plus one in front (0 marking null), and enum constants are written by
+ * name so that adding constants never changes the meaning of an old file.
+ * <p>
+ * A compressed snapshot is the four bytes {@code CYPZ} followed by a zlib stream, written with
+ * {@link Deflater}, holding a snapshot whose races are delta-encoded. It is compressed and
+ * decompressed as it is streamed, so neither the snapshot nor the compressed file is ever held
+ * in memory whole, and it can be read by {@link #read} but not opened lazily.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class PortalSnapshot {
+    /** The first four bytes of every snapshot, "CYPS" in ASCII. */
+    static final byte[] MAGIC = {'C', 'Y', 'P', 'S'};
+    /** The first four bytes of every compressed snapshot, "CYPZ" in ASCII. */
+    static final byte[] COMPRESSED_MAGIC = {'C', 'Y', 'P', 'Z'};
+    /** The version of the format written by this class. */
+    static final int VERSION = 3;
+    /** Tag of the section marking the end of the snapshot. */
+    static final int SECTION_END = 0;
+    /** Tag of the section holding the ID counters. */
+    static final int SECTION_COUNTERS = 1;
+    /** Tag of the section holding the teams and riders. */
+    static final int SECTION_TEAMS = 2;
+    /** Tag of a section holding one race. */
+    static final int SECTION_RACE = 3;
+    /** Tag of a section naming the archive file of one sealed race. */
+    static final int SECTION_SEALED_RACE = 4;
+    /** Tag of the section indexing the race sections. */
+    static final int SECTION_RACE_INDEX = 5;
+    /** Tag of a section holding one race with delta-encoded results. */
+    static final int SECTION_DELTA_RACE = 6;
+    /** The number of ID counters in the counters section. */
+    static final int NUMBER_OF_COUNTERS = 5;
+
+    /**
+     * Not used; the class only has static methods.
+     */
+    private PortalSnapshot() {
+    }
+
+    /**
+     * Checks if the start of a file is the snapshot magic.
+     *
+     * @param header The first bytes of the file.
+     * @param length The number of bytes in the header that were read.
+     * @return true if the file starts with {@link #MAGIC}, false otherwise.
+     */
+    static boolean hasMagic(byte[] header, int length) {
+        return length >= MAGIC.length && Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC);
+    }
+
+    /**
+     * Checks if the start of a file is the compressed snapshot magic.
+     *
+     * @param header The first bytes of the file.
+     * @param length The number of bytes in the header that were read.
+     * @return true if the file starts with {@link #COMPRESSED_MAGIC}, false otherwise.
+     */
+    static boolean hasCompressedMagic(byte[] header, int length) {
+        return length >= COMPRESSED_MAGIC.length
+                && Arrays.equals(Arrays.copyOf(header, COMPRESSED_MAGIC.length), COMPRESSED_MAGIC);
+    }
+
+    /**
+     * Writes a compressed snapshot of a portal: the compressed magic, then a snapshot with
+     * delta-encoded races compressed with {@link Deflater} as it is written.
+     *
+     * @param out The stream to write to. It is not closed, but the compressed stream is finished.
+     * @param image An image of the portal.
+     * @param level The compression level, from {@link Deflater#BEST_SPEED} to
+     *              {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}.
+     * @throws IOException If the stream or the lazily opened snapshot cannot be read or written.
+     */
+    static void writeCompressed(OutputStream out, PortalImage image, int level) throws IOException {
+        out.write(COMPRESSED_MAGIC);
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, 1 << 16);
+            write(compressed, image, true);
+            compressed.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes a snapshot of a portal.
+     *
+     * @param out The stream to write to. It is not closed or flushed.
+     * @param image An image of the portal. Its races that are still in a lazily opened snapshot
+     *              have their sections copied from that snapshot without being decoded.
+     * @param deltaEncoded true to write the races held on the heap as delta race sections, which
+     *                     are smaller once compressed, false to write them as race sections.
+     * @throws IOException If the stream or the lazily opened snapshot cannot be read or written.
+     */
+    static void write(OutputStream out, PortalImage image, boolean deltaEncoded) throws IOException {
+        out.write(MAGIC);
+        Encoder section = new Encoder();
+        section.writeVarInt(VERSION);
+        section.writeTo(out);
+
+        for (int counter : image.getCounters()) {
+            section.writeVarInt(counter);
+        }
+        writeSection(out, SECTION_COUNTERS, section);
+
+        section.writeVarInt(image.getTeams().length);
+        for (PortalImage.TeamImage team : image.getTeams()) {
+            section.writeVarInt(team.id);
+            section.writeString(team.name);
+            section.writeString(team.description);
+            section.writeVarInt(team.riderIds.length);
+            for (int i = 0; i < team.riderIds.length; i++) {
+                section.writeVarInt(team.riderIds[i]);
+                section.writeString(team.riderNames[i]);
+                section.writeVarInt(team.riderYearsOfBirth[i]);
+            }
+        }
+        writeSection(out, SECTION_TEAMS, section);
+
+        Encoder index = new Encoder();
+        index.writeVarInt(image.getRaces().length + image.getUnreadRaces().length);
+        for (PortalImage.RaceImage race : image.getRaces()) {
+            writeRace(section, race, deltaEncoded);
+            writeSection(out, deltaEncoded ? SECTION_DELTA_RACE : SECTION_RACE, section);
+            RaceSegment.describe(race).writeIndexEntry(index);
+        }
+        for (RaceSegment segment : image.getUnreadRaces()) {
+            byte[] payload = segment.readPayload();
+            writeSectionHeader(out, segment.isDeltaEncoded() ? SECTION_DELTA_RACE : SECTION_RACE, payload.length);
+            out.write(payload);
+            segment.writeIndexEntry(index);
+        }
+        for (String filename : image.getSealedRaceFilenames()) {
+            section.writeString(filename);
+            writeSection(out, SECTION_SEALED_RACE, section);
+        }
+        writeSection(out, SECTION_RACE_INDEX, index);
+        out.write(SECTION_END);
+    }
+
+    /**
+     * This helper method writes a finished section with its tag and length, and empties the
+     * encoder for the next one.
+     *
+     * @param out The stream to write to.
+     * @param tag The section's tag.
+     * @param section The encoder holding the section's payload.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static void writeSection(OutputStream out, int tag, Encoder section) throws IOException {
+        writeSectionHeader(out, tag, section.size());
+        section.writeTo(out);
+    }
+
+    /**
+     * This helper method writes the tag and length in front of a section's payload.
+     *
+     * @param out The stream to write to.
+     * @param tag The section's tag.
+     * @param length The length of the section's payload.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static void writeSectionHeader(OutputStream out, int tag, int length) throws IOException {
+        out.write(tag);
+        Encoder header = new Encoder();
+        header.writeVarInt(length);
+        header.writeTo(out);
+    }
+
+    /**
+     * Encodes a race, its stages and their checkpoints and results, as held in a race section
+     * or a {@link RaceArchive}. Each stage's results are written in ranked order, so reading them
+     * back only has to merge runs that are already sorted.
+     *
+     * @param section The encoder to write to.
+     * @param race The race to encode.
+     */
+    static void writeRace(Encoder section, Race race) {
+        writeRace(section, new PortalImage.RaceImage(race), false);
+    }
+
+    /**
+     * Encodes an image of a race, either as {@link #writeRace(Encoder, Race)} does or, for a delta
+     * race section, with each stage's results delta-encoded. The results are still in ranked order,
+     * but each rider ID is written as its difference from the rider ID ranked before it, each
+     * rider's start time as its difference from the start time of the rider ranked before it, and
+     * each later checkpoint time as its difference from the rider's previous time, all as
+     * zigzag varints. Riders in a mass start share a start time and checkpoints are minutes
+     * apart, so most numbers shrink from eight bytes to one to four, and the repeated patterns
+     * left compress well.
+     *
+     * @param section The encoder to write to.
+     * @param race The image of the race to encode.
+     * @param deltaEncoded true to delta-encode the results, false to write them in full.
+     */
+    static void writeRace(Encoder section, PortalImage.RaceImage race, boolean deltaEncoded) {
+        section.writeVarInt(race.id);
+        section.writeString(race.name);
+        section.writeString(race.description);
+        section.writeVarInt(race.stages.length);
+        for (PortalImage.StageImage stage : race.stages) {
+            section.writeVarInt(stage.id);
+            section.writeString(stage.name);
+            section.writeString(stage.description);
+            section.writeDouble(stage.length);
+            section.writeDateTime(stage.startTime);
+            section.writeString(stage.type.name());
+            section.writeString(stage.state.name());
+            section.writeVarInt(stage.checkpoints.length);
+            for (Checkpoint checkpoint : stage.checkpoints) {
+                section.writeVarInt(checkpoint.getId());
+                section.writeString(checkpoint.getType().name());
+                section.writeDouble(checkpoint.getLocation());
+                boolean climb = checkpoint instanceof Climb;
+                section.writeBoolean(climb);
+                if (climb) {
+                    section.writeDouble(((Climb) checkpoint).getAverageGradient());
+                    section.writeDouble(((Climb) checkpoint).getLength());
+                }
+            }
+            int timesPerResult = stage.timesPerResult;
+            //checkpoint points used to be assigned lazily, and this flag recorded if they were pending
+            section.writeBoolean(false);
+            section.writeVarInt(stage.riderIds.length);
+            section.writeVarInt(timesPerResult);
+            int previousRiderId = 0;
+            long previousStart = 0;
+            for (int position = 0; position < stage.riderIds.length; position++) {
+                int riderId = stage.riderIds[position];
+                int first = position * timesPerResult;
+                if (!deltaEncoded) {
+                    section.writeVarInt(riderId);
+                    for (int i = 0; i < timesPerResult; i++) {
+                        section.writeLong(stage.times[first + i]);
+                    }
+                    continue;
+                }
+                section.writeSignedVarLong((long) riderId - previousRiderId);
+                previousRiderId = riderId;
+                long previous = previousStart;
+                for (int i = 0; i < timesPerResult; i++) {
+                    long time = stage.times[first + i];
+                    section.writeSignedVarLong(time - previous);
+                    previous = time;
+                }
+                previousStart = timesPerResult > 0 ? stage.times[first] : 0;
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot into empty team and race maps. The riders are added to their teams and
+     * every stage's results are registered again, so the races' rankings and classifications
+     * are complete when this returns. Sealed races are mapped from their archive files again.
+     * The portal's indexes are left to the caller.
+     *
+     * @param in The stream to read from, positioned at the start of the magic, which may be the
+     *           compressed magic. It is not closed.
+     * @param teams The map to fill with the teams, by team ID.
+     * @param races The map to fill with the races held on the heap, by race ID.
+     * @param sealedRaces The map to fill with the sealed races, by race ID.
+     * @return The next team, rider, race, stage and checkpoint IDs, in that order.
+     * @throws IOException If the stream cannot be read, does not hold a snapshot this class
+     *                     can read, or names an archive file that cannot be read.
+     */
+    static int[] read(InputStream in, Map<Integer, Team> teams, Map<Integer, Race> races,
+            Map<Integer, RaceArchive> sealedRaces) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        int magicLength = in.readNBytes(magic, 0, magic.length);
+        if (hasCompressedMagic(magic, magicLength)) {
+            Inflater inflater = new Inflater();
+            try {
+                //the compressed stream is not closed, as that would close the caller's stream
+                return read(new InflaterInputStream(in, inflater, 1 << 16), teams, races, sealedRaces);
+            } finally {
+                inflater.end();
+            }
+        }
+        if (!hasMagic(magic, magicLength)) {
+            throw new IOException("The file is not a cycling portal snapshot.");
+        }
+        int version = readVarInt(in);
+        if (version > VERSION) {
+            throw new IOException("The snapshot is version " + version + " but only versions up to " + VERSION + " can be read.");
+        }
+        int[] counters = null;
+        HashMap<Integer, Rider> ridersById = new HashMap<>();
+        while (true) {
+            int tag = in.read();
+            if (tag < 0) {
+                throw new EOFException("The snapshot ended before its end marker.");
+            }
+            if (tag == SECTION_END) {
+                break;
+            }
+            int length = readVarInt(in);
+            byte[] payload = in.readNBytes(length);
+            if (payload.length != length) {
+                throw new EOFException("The snapshot ended in the middle of a section.");
+            }
+            Decoder section = new Decoder(payload);
+            try {
+                switch (tag) {
+                    case SECTION_COUNTERS:
+                        counters = readCounters(section);
+                        break;
+                    case SECTION_TEAMS:
+                        readTeams(section, teams, ridersById);
+                        break;
+                    case SECTION_RACE:
+                    case SECTION_DELTA_RACE:
+                        Race race = readRace(section, ridersById, tag == SECTION_DELTA_RACE);
+                        races.put(race.getRaceId(), race);
+                        break;
+                    case SECTION_SEALED_RACE:
+                        RaceArchive archive = RaceArchive.open(section.readString());
+                        sealedRaces.put(archive.getRaceId(), archive);
+                        break;
+                    default:
+                        //a section added by a later version, which this version has no use for
+                        break;
+                }
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException("Section " + tag + " of the snapshot is corrupt.", e);
+            }
+        }
+        if (counters == null) {
+            throw new IOException("The snapshot has no counters section.");
+        }
+        return counters;
+    }
+
+    /**
+     * Opens a snapshot without reading its races. The counters, teams, riders and sealed races
+     * are read as {@link #read} reads them, but each race section is only located and is
+     * described by its entry in the race index, so that it can be read later with
+     * {@link RaceSegment#load(Map)}. The file is read with positioned reads and skipping a race
+     * section costs one small read, however large the race is. A snapshot written before the
+     * race index was added has its races read straight away.
+     *
+     * @param channel The snapshot file, which must stay open for as long as its segments are used.
+     * @param teams The map to fill with the teams, by team ID.
+     * @param races The map to fill with any races that had to be read straight away, by race ID.
+     * @param sealedRaces The map to fill with the sealed races, by race ID.
+     * @param unreadRaces The map to fill with a segment for every race that was not read, by race ID.
+     * @return The next team, rider, race, stage and checkpoint IDs, in that order.
+     * @throws IOException If the file cannot be read, does not hold a snapshot this class can
+     *                     read, or names an archive file that cannot be read.
+     */
+    static int[] readLazily(FileChannel channel, Map<Integer, Team> teams, Map<Integer, Race> races,
+            Map<Integer, RaceArchive> sealedRaces, Map<Integer, RaceSegment> unreadRaces) throws IOException {
+        byte[] start = RaceSegment.readAt(channel, 0, MAGIC.length + 5);
+        ByteArrayInputStream header = new ByteArrayInputStream(start);
+        byte[] magic = header.readNBytes(MAGIC.length);
+        if (hasCompressedMagic(magic, magic.length)) {
+            throw new IOException("A compressed snapshot cannot be loaded lazily.");
+        }
+        if (!hasMagic(magic, magic.length)) {
+            throw new IOException("The file is not a cycling portal snapshot.");
+        }
+        int version = readVarInt(header);
+        if (version > VERSION) {
+            throw new IOException("The snapshot is version " + version + " but only versions up to " + VERSION + " can be read.");
+        }
+        long position = start.length - header.available();
+        int[] counters = null;
+        HashMap<Integer, Rider> ridersById = new HashMap<>();
+        //the offset, length and tag of every race section's payload, in file order
+        List<long[]> raceSections = new ArrayList<>();
+        boolean indexed = false;
+        while (true) {
+            header = new ByteArrayInputStream(RaceSegment.readAt(channel, position, 6));
+            int tag = header.read();
+            if (tag < 0) {
+                throw new EOFException("The snapshot ended before its end marker.");
+            }
+            if (tag == SECTION_END) {
+                break;
+            }
+            int unread = header.available();
+            int length = readVarInt(header);
+            position += 1 + unread - header.available();
+            if (tag == SECTION_RACE || tag == SECTION_DELTA_RACE) {
+                raceSections.add(new long[] {position, length, tag});
+                position += length;
+                continue;
+            }
+            byte[] payload = RaceSegment.readAt(channel, position, length);
+            if (payload.length != length) {
+                throw new EOFException("The snapshot ended in the middle of a section.");
+            }
+            position += length;
+            Decoder section = new Decoder(payload);
+            try {
+                switch (tag) {
+                    case SECTION_COUNTERS:
+                        counters = readCounters(section);
+                        break;
+                    case SECTION_TEAMS:
+                        readTeams(section, teams, ridersById);
+                        break;
+                    case SECTION_SEALED_RACE:
+                        RaceArchive archive = RaceArchive.open(section.readString());
+                        sealedRaces.put(archive.getRaceId(), archive);
+                        break;
+                    case SECTION_RACE_INDEX:
+                        if (section.readVarInt() != raceSections.size()) {
+                            throw new IllegalArgumentException("The race index does not match the race sections");
+                        }
+                        for (long[] raceSection : raceSections) {
+                            RaceSegment segment = RaceSegment.readIndexEntry(section, channel, raceSection[0], (int) raceSection[1],
+                                    raceSection[2] == SECTION_DELTA_RACE);
+                            unreadRaces.put(segment.getRaceId(), segment);
+                        }
+                        indexed = true;
+                        break;
+                    default:
+                        //a section added by a later version, which this version has no use for
+                        break;
+                }
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException("Section " + tag + " of the snapshot is corrupt.", e);
+            }
+        }
+        if (counters == null) {
+            throw new IOException("The snapshot has no counters section.");
+        }
+        if (!indexed) {
+            for (long[] raceSection : raceSections) {
+                byte[] payload = RaceSegment.readAt(channel, raceSection[0], (int) raceSection[1]);
+                try {
+                    Race race = readRace(new Decoder(payload), ridersById, raceSection[2] == SECTION_DELTA_RACE);
+                    races.put(race.getRaceId(), race);
+                } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                    throw new IOException("Section " + raceSection[2] + " of the snapshot is corrupt.", e);
+                }
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * This helper method decodes the counters section.
+     *
+     * @param section The section's payload.
+     * @return The next team, rider, race, stage and checkpoint IDs, in that order.
+     */
+    private static int[] readCounters(Decoder section) {
+        int[] counters = new int[NUMBER_OF_COUNTERS];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = section.readVarInt();
+        }
+        return counters;
+    }
+
+    /**
+     * This helper method decodes the teams section, creating every team and rider.
+     *
+     * @param section The section's payload.
+     * @param teams The map to fill with the teams, by team ID.
+     * @param ridersById The map to fill with the riders, by rider ID, for the race sections to use.
+     */
+    private static void readTeams(Decoder section, Map<Integer, Team> teams, Map<Integer, Rider> ridersById) {
+        int numberOfTeams = section.readVarInt();
+        for (int t = 0; t < numberOfTeams; t++) {
+            Team team = new Team(section.readVarInt(), section.readString(), section.readString());
+            int numberOfRiders = section.readVarInt();
+            for (int r = 0; r < numberOfRiders; r++) {
+                Rider rider = new Rider(section.readVarInt(), section.readString(), section.readVarInt(), team);
+                team.addRider(rider.getRiderId(), rider);
+                ridersById.put(rider.getRiderId(), rider);
+            }
+            teams.put(team.getTeamId(), team);
+        }
+    }
+
+    /**
+     * Decodes a race written by {@link #writeRace(Encoder, Race)}, creating the race, its stages
+     * and checkpoints, and registering each stage's results as one batch.
+     *
+     * @param section The section's payload.
+     * @param ridersById Every rider in the portal, by rider ID.
+     * @return The race.
+     * @throws IllegalArgumentException If a result names a rider that is not in any team, or an
+     *                                  enum constant is not recognised.
+     */
+    static Race readRace(Decoder section, Map<Integer, Rider> ridersById) {
+        return readRace(section, ridersById, false);
+    }
+
+    /**
+     * Decodes a race written by {@link #writeRace(Encoder, PortalImage.RaceImage, boolean)}.
+     *
+     * @param section The section's payload.
+     * @param ridersById Every rider in the portal, by rider ID.
+     * @param deltaEncoded true if the results are delta-encoded, false if they are written in full.
+     * @return The race.
+     * @throws IllegalArgumentException If a result names a rider that is not in any team, or an
+     *                                  enum constant is not recognised.
+     */
+    static Race readRace(Decoder section, Map<Integer, Rider> ridersById, boolean deltaEncoded) {
+        Race race = new Race(section.readVarInt(), section.readString(), section.readString());
+        int numberOfStages = section.readVarInt();
+        for (int s = 0; s < numberOfStages; s++) {
+            int stageId = section.readVarInt();
+            String name = section.readString();
+            String description = section.readString();
+            double length = section.readDouble();
+            LocalDateTime startTime = section.readDateTime();
+            StageType type = StageType.valueOf(section.readString());
+            StageState state = StageState.valueOf(section.readString());
+            Stage stage = new Stage(stageId, name, race, description, length, startTime, type);
+            race.addStage(stageId, stage);
+            int numberOfCheckpoints = section.readVarInt();
+            for (int c = 0; c < numberOfCheckpoints; c++) {
+                int checkpointId = section.readVarInt();
+                CheckpointType checkpointType = CheckpointType.valueOf(section.readString());
+                double location = section.readDouble();
+                Checkpoint checkpoint = section.readBoolean()
+                        ? new Climb(checkpointId, location, stageId, checkpointType, section.readDouble(), section.readDouble())
+                        : new Checkpoint(checkpointId, location, stageId, checkpointType);
+                stage.addCheckpointToStage(checkpointId, checkpoint);
+            }
+            if (state == StageState.WAITING_FOR_RESULTS) {
+                stage.setWaitingForResults();
+            }
+            //the pending checkpoint points flag, as points are worked out when the results are registered
+            section.readBoolean();
+            int numberOfResults = section.readVarInt();
+            int timesPerResult = section.readVarInt();
+            int[] riderIds = new int[numberOfResults];
+            long[][] times = new long[numberOfResults][];
+            int previousRiderId = 0;
+            long previousStart = 0;
+            for (int r = 0; r < numberOfResults; r++) {
+                int riderId = deltaEncoded ? (int) (previousRiderId + section.readSignedVarLong()) : section.readVarInt();
+                previousRiderId = riderId;
+                Rider rider = ridersById.get(riderId);
+                if (rider == null) {
+                    throw new IllegalArgumentException("Stage " + stageId + " has a result for unknown rider " + riderId);
+                }
+                Result raceResult = race.riderHasResult(riderId) ? race.getOverallResult(riderId) : new Result(riderId);
+                race.addOverallResult(riderId, raceResult);
+                raceResult.addStageResult(stageId);
+                if (!rider.ridersInRace(race)) {
+                    rider.addRace(race);
+                }
+                riderIds[r] = riderId;
+                times[r] = new long[timesPerResult];
+                long previous = previousStart;
+                for (int i = 0; i < timesPerResult; i++) {
+                    times[r][i] = deltaEncoded ? previous + section.readSignedVarLong() : section.readLong();
+                    previous = times[r][i];
+                }
+                previousStart = timesPerResult > 0 ? times[r][0] : 0;
+            }
+            stage.addStageResults(riderIds, times);
+        }
+        return race;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint directly from a stream.
+     *
+     * @param in The stream to read from.
+     * @return The value.
+     * @throws IOException If the stream ends first or the varint is longer than five bytes.
+     */
+    static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("The snapshot ended in the middle of a number.");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("The snapshot holds a malformed number.");
+    }
+
+    /**
+     * A growable byte buffer that section payloads are encoded into before being written, so
+     * that their length can be written in front of them.
+     */
+    static final class Encoder {
+        /** The encoded bytes; only the first {@link #size} are in use. */
+        private byte[] bytes = new byte[1 << 12];
+        /** The number of bytes encoded. */
+        private int size;
+
+        /**
+         * Gets the number of bytes encoded.
+         *
+         * @return The number of bytes.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Gets a view of the encoded bytes. The view is only valid until more is encoded.
+         *
+         * @return A buffer positioned at the first encoded byte and limited to the last.
+         */
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+
+        /**
+         * Empties the buffer, keeping its capacity.
+         */
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Writes the encoded bytes to a stream and empties the buffer, keeping its capacity.
+         *
+         * @param out The stream to write to.
+         * @throws IOException If the stream cannot be written.
+         */
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+            size = 0;
+        }
+
+        /**
+         * This helper method makes room for more bytes.
+         *
+         * @param extra The number of bytes about to be written.
+         */
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        /**
+         * Encodes a non-negative int as an unsigned LEB128 varint, one to five bytes long.
+         *
+         * @param value The value.
+         */
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Encodes a long that may be negative as a zigzag varint: the sign moves to the lowest
+         * bit, so values near zero of either sign take one byte, and the result is written as
+         * an unsigned LEB128 varint up to ten bytes long.
+         *
+         * @param value The value.
+         */
+        void writeSignedVarLong(long value) {
+            ensureCapacity(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[size++] = (byte) zigzag;
+        }
+
+        /**
+         * Encodes a long as eight big-endian bytes.
+         *
+         * @param value The value.
+         */
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Encodes a double as the eight bytes of its IEEE 754 bit pattern.
+         *
+         * @param value The value.
+         */
+        void writeDouble(double value) {
+            writeLong(Double.doubleToLongBits(value));
+        }
+
+        /**
+         * Encodes a boolean as one byte.
+         *
+         * @param value The value.
+         */
+        void writeBoolean(boolean value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) (value ? 1 : 0);
+        }
+
+        /**
+         * Encodes a date and time as a presence flag, then the epoch day and the nanosecond of the
+         * day as eight-byte longs.
+         *
+         * @param value The date and time, which may be null.
+         */
+        void writeDateTime(LocalDateTime value) {
+            writeBoolean(value != null);
+            if (value != null) {
+                writeLong(value.toLocalDate().toEpochDay());
+                writeLong(value.toLocalTime().toNanoOfDay());
+            }
+        }
+
+        /**
+         * Encodes a string as its UTF-8 byte length plus one, then the bytes. Null is encoded as 0.
+         *
+         * @param value The string, which may be null.
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 1);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+    }
+
+    /**
+     * Decodes the payload of one section, the reverse of {@link Encoder}. Reading past the end
+     * of the payload throws an IndexOutOfBoundsException.
+     */
+    static final class Decoder {
+        /** The payload. */
+        private final byte[] bytes;
+        /** The index of the next byte to decode. */
+        private int position;
+
+        /**
+         * Creates a decoder over a section's payload.
+         *
+         * @param bytes The payload.
+         */
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Decodes an unsigned LEB128 varint.
+         *
+         * @return The value.
+         * @throws IllegalArgumentException If the varint is longer than five bytes.
+         */
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at byte " + (position - 5));
+        }
+
+        /**
+         * Decodes a zigzag varint written by {@link Encoder#writeSignedVarLong}.
+         *
+         * @return The value.
+         * @throws IllegalArgumentException If the varint is longer than ten bytes.
+         */
+        long readSignedVarLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = bytes[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at byte " + (position - 10));
+        }
+
+        /**
+         * Decodes an eight-byte big-endian long.
+         *
+         * @return The value.
+         */
+        long readLong() {
+            if (position + 8 > bytes.length) {
+                throw new IndexOutOfBoundsException("Long at byte " + position + " runs past the end of the section");
+            }
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        /**
+         * Decodes an eight-byte double.
+         *
+         * @return The value.
+         */
+        double readDouble() {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        /**
+         * Decodes a one-byte boolean.
+         *
+         * @return The value.
+         */
+        boolean readBoolean() {
+            return bytes[position++] != 0;
+        }
+
+        /**
+         * Decodes a date and time written by {@link Encoder#writeDateTime}.
+         *
+         * @return The date and time, which may be null.
+         */
+        LocalDateTime readDateTime() {
+            if (!readBoolean()) {
+                return null;
+            }
+            LocalDate date = LocalDate.ofEpochDay(readLong());
+            return LocalDateTime.of(date, LocalTime.ofNanoOfDay(readLong()));
+        }
+
+        /**
+         * Checks if there is anything left to decode.
+         *
+         * @return true if the end of the payload has not been reached, false otherwise.
+         */
+        boolean hasRemaining() {
+            return position < bytes.length;
+        }
+
+        /**
+         * Decodes a string written by {@link Encoder#writeString}.
+         *
+         * @return The string, which may be null.
+         */
+        String readString() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (position + length > bytes.length) {
+                throw new IndexOutOfBoundsException("String at byte " + position + " runs past the end of the section");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
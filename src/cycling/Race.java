@@ -1,8 +1,8 @@
 package cycling;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.LocalTime;
-import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -16,6 +16,16 @@ import java.util.HashMap;
  * @version 1.0
  */
 public class Race implements Serializable {
+    /** Orders results by points, including sprint points, then as in the general classification. */
+    private static final Comparator<Result> POINTS_ORDER = (r1, r2) -> {
+        int comparison = Integer.compare(r2.getPoints() + r2.getSprintPoints(), r1.getPoints() + r1.getSprintPoints());
+        return comparison != 0 ? comparison : r1.compareTo(r2);
+    };
+    /** Orders results by mountain points, then as in the general classification. */
+    private static final Comparator<Result> MOUNTAIN_ORDER = (r1, r2) -> {
+        int comparison = Integer.compare(r2.getMountainPoints(), r1.getMountainPoints());
+        return comparison != 0 ? comparison : r1.compareTo(r2);
+    };
     /** The unique identifier for this race */
     private final int id;
     /** The name of the race */
@@ -26,6 +36,14 @@ public class Race implements Serializable {
     private HashMap<Integer, Stage> stages;
     /** A mapping of rider IDs to their respective Result objects within this race */
     private HashMap<Integer, Result> riderResults = new HashMap<>();
+    /** The riders' overall results, kept sorted by total adjusted elapsed time (the general classification) */
+    private ArrayList<Result> generalClassification = new ArrayList<>();
+    /** The riders' overall results in points classification order, built when first needed and then kept up to date. */
+    private transient volatile ArrayList<Result> pointsClassification;
+    /** The riders' overall results in mountain classification order, built when first needed and then kept up to date. */
+    private transient volatile ArrayList<Result> mountainClassification;
+    /** The general classification built by {@link #getStandings()} since the results last changed, or null if they have changed since. */
+    private transient volatile Standings standings;
 
 
     /**
@@ -70,6 +88,15 @@ public class Race implements Serializable {
         return name;
     }
 
+    /**
+     * Gets the race's description.
+     *
+     * @return The description of the race.
+     */
+    public String getDescription() {
+        return description;
+    }
+
     /**
      * Provides detailed information about the race, including stage details.
      *
@@ -110,17 +137,22 @@ public class Race implements Serializable {
      * @param stageId The ID of the stage to be removed.
      */
     public void removeStage(int stageId){
-        stages.remove(stageId);
-        
-        Iterator<Result> iterator = riderResults.values().iterator();
-        while(iterator.hasNext()){
-            Result result = iterator.next();
-            if(result.hasStageResult(stageId)){
-                result.removeStageResult(stageId);
-            }
+        Stage stage = stages.remove(stageId);
+        if(stage == null){
+            return;
+        }
+        StageResultTable stageResults = stage.getResults();
+        for(int slot = 0; slot < stageResults.size(); slot++){
+            int riderId = stageResults.getRiderId(slot);
+            //take the stage's contribution off the rider's totals
+            applyStageResultChange(riderId, -stageResults.getAdjustedElapsedTime(slot), -stageResults.getPoints(slot),
+                    -stageResults.getSprintPoints(slot), -stageResults.getMountainPoints(slot));
+            Result result = riderResults.get(riderId);
+            result.removeStageResult(stageId);
             //this will ensure that the HashMap is empty if there are no results
             if(result.isEmpty()){
-                iterator.remove();
+                removeFromClassifications(result);
+                riderResults.remove(riderId);
             }
         }
     }
@@ -184,7 +216,110 @@ public class Race implements Serializable {
      * @param raceResult The result object containing the rider's performance data.
      */
     public void addOverallResult(int riderId , Result raceResult){
-        riderResults.put(riderId, raceResult);
+        if(riderResults.put(riderId, raceResult) == null){
+            //binarySearch returns -(insertion point) - 1 as the result is not in the list yet
+            generalClassification.add(-Collections.binarySearch(generalClassification, raceResult) - 1, raceResult);
+            insert(pointsClassification, raceResult, POINTS_ORDER);
+            insert(mountainClassification, raceResult, MOUNTAIN_ORDER);
+            standings = null;
+        }
+    }
+
+    /**
+     * This helper method removes a result from the general classification and from the points
+     * and mountain classifications that have been built.
+     *
+     * @param result The result to remove, whose totals must not have changed since it was placed.
+     */
+    private void removeFromClassifications(Result result){
+        generalClassification.remove(Collections.binarySearch(generalClassification, result));
+        remove(pointsClassification, result, POINTS_ORDER);
+        remove(mountainClassification, result, MOUNTAIN_ORDER);
+        standings = null;
+    }
+
+    /**
+     * This helper method inserts a result in its place in a sorted classification.
+     *
+     * @param classification The classification, or null if it has not been built.
+     * @param result The result to insert.
+     * @param order The order the classification is sorted in.
+     */
+    private static void insert(ArrayList<Result> classification, Result result, Comparator<Result> order){
+        if(classification != null){
+            classification.add(-Collections.binarySearch(classification, result, order) - 1, result);
+        }
+    }
+
+    /**
+     * This helper method removes a result from a sorted classification.
+     *
+     * @param classification The classification, or null if it has not been built.
+     * @param result The result to remove.
+     * @param order The order the classification is sorted in.
+     */
+    private static void remove(ArrayList<Result> classification, Result result, Comparator<Result> order){
+        if(classification != null){
+            classification.remove(Collections.binarySearch(classification, result, order));
+        }
+    }
+
+    /**
+     * Applies a change in one of a rider's stage results to their overall result. Stages call this
+     * whenever a result is added, removed or re-ranked, so the totals are kept up to date without
+     * re-summing every stage. If the total time changes, the result is moved to its new position in
+     * the general classification, and the points and mountain classifications that have been built
+     * are kept in order the same way.
+     *
+     * @param riderId The ID of the rider whose stage result changed.
+     * @param adjustedElapsedTimeChange The change in adjusted elapsed time, in nanoseconds.
+     * @param pointsChange The change in stage finishing points.
+     * @param sprintPointsChange The change in sprint points.
+     * @param mountainPointsChange The change in mountain points.
+     */
+    public void applyStageResultChange(int riderId, long adjustedElapsedTimeChange, int pointsChange,
+            int sprintPointsChange, int mountainPointsChange){
+        Result result = riderResults.get(riderId);
+        if(result == null){
+            return;
+        }
+        //ties in points are broken by total time, so a change in either can move a rider
+        ArrayList<Result> byPoints = adjustedElapsedTimeChange != 0 || pointsChange + sprintPointsChange != 0
+                ? pointsClassification : null;
+        ArrayList<Result> byMountainPoints = adjustedElapsedTimeChange != 0 || mountainPointsChange != 0
+                ? mountainClassification : null;
+        remove(byPoints, result, POINTS_ORDER);
+        remove(byMountainPoints, result, MOUNTAIN_ORDER);
+        if(adjustedElapsedTimeChange != 0){
+            generalClassification.remove(Collections.binarySearch(generalClassification, result));
+            result.addAdjustedElapsedTime(adjustedElapsedTimeChange);
+            generalClassification.add(-Collections.binarySearch(generalClassification, result) - 1, result);
+        }
+        result.addPoints(pointsChange);
+        result.addSprintPoints(sprintPointsChange);
+        result.addMountainPoints(mountainPointsChange);
+        insert(byPoints, result, POINTS_ORDER);
+        insert(byMountainPoints, result, MOUNTAIN_ORDER);
+        standings = null;
+    }
+
+    /**
+     * Removes a rider's result in one stage of the race. The rider's overall result is removed
+     * as well if it was their only stage result.
+     *
+     * @param stage The stage the result belongs to.
+     * @param riderId The ID of the rider whose result is being removed.
+     */
+    public void removeStageResult(Stage stage, int riderId){
+        stage.removeRiderResults(riderId);
+        Result result = riderResults.get(riderId);
+        if(result != null){
+            result.removeStageResult(stage.getStageId());
+            if(result.isEmpty()){
+                removeFromClassifications(result);
+                riderResults.remove(riderId);
+            }
+        }
     }
 
     /**
@@ -198,23 +333,130 @@ public class Race implements Serializable {
         }
         Result riderResult = riderResults.get(riderId);
         if(riderResult != null){
+            removeFromClassifications(riderResult);
             riderResult.clearStageResults();
             riderResults.remove(riderId);
         }
     }
 
     /**
-     * Gets a sorted list of results for all riders in the race, based on their performance.
+     * Copies one page of the general classification, with each rider's total adjusted elapsed
+     * time, points and mountain points. The classification is kept in order, so only the riders
+     * in the page are read.
      *
-     * @return A sorted ArrayList of Result objects.
+     * @param offset The position of the first rider in the page, starting from 0.
+     * @param limit The most riders the page can hold.
+     * @return The page, which is empty if the offset is past the last rider.
+     * @throws IllegalArgumentException If the offset or limit is negative.
      */
-    public ArrayList<Result> getSortedListOfResults() {
-        for(Result result: riderResults.values()){
-           result.updateResult();
+    public Standings getStandingsPage(int offset, int limit){
+        int size = Standings.pageSize(generalClassification.size(), offset, limit);
+        int[] riderIds = new int[size];
+        long[] totalTimes = new long[size];
+        int[] points = new int[size];
+        int[] mountainPoints = new int[size];
+        for(int i = 0; i < size; i++){
+            Result result = generalClassification.get(offset + i);
+            riderIds[i] = result.getRiderId();
+            totalTimes[i] = result.getTotalAdjustedElapsedNanos();
+            points[i] = result.getPoints() + result.getSprintPoints();
+            mountainPoints[i] = result.getMountainPoints();
         }
-        ArrayList<Result> riderResultsByTime = new ArrayList<>(riderResults.values());
-        Collections.sort(riderResultsByTime);
-        return riderResultsByTime;
+        return new Standings(riderIds, totalTimes, points, mountainPoints, offset + 1, generalClassification.size());
+    }
+
+    /**
+     * Gets a rider's rank in the general classification by binary search, as the classification
+     * is kept sorted by total time.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's rank, starting from 1, or 0 if the rider has no result in the race.
+     */
+    public int getRiderRank(int riderId){
+        Result result = riderResults.get(riderId);
+        return result == null ? 0 : Collections.binarySearch(generalClassification, result) + 1;
+    }
+
+    /**
+     * Gets where a rider stands in the race: their general classification rank, total time, gap
+     * to the leader, and points and mountain points with their ranks in those classifications.
+     * Each rank is a binary search in a classification kept in order. The points and mountain
+     * classifications are sorted the first time they are needed and kept in order from then on.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's standing, or null if the rider has no result in the race.
+     */
+    public RiderStanding getRiderStanding(int riderId){
+        Result result = riderResults.get(riderId);
+        if(result == null){
+            return null;
+        }
+        long totalTime = result.getTotalAdjustedElapsedNanos();
+        long leaderTime = generalClassification.get(0).getTotalAdjustedElapsedNanos();
+        int pointsRank = Collections.binarySearch(pointsClassification(), result, POINTS_ORDER) + 1;
+        int mountainPointsRank = Collections.binarySearch(mountainClassification(), result, MOUNTAIN_ORDER) + 1;
+        return new RiderStanding(riderId, Collections.binarySearch(generalClassification, result) + 1, totalTime,
+                totalTime - leaderTime, result.getPoints() + result.getSprintPoints(), pointsRank,
+                result.getMountainPoints(), mountainPointsRank);
+    }
+
+    /**
+     * This helper method gets the points classification, sorting it from the general
+     * classification the first time it is needed.
+     *
+     * @return The overall results in points classification order.
+     */
+    private ArrayList<Result> pointsClassification(){
+        ArrayList<Result> classification = pointsClassification;
+        if(classification == null){
+            classification = new ArrayList<>(generalClassification);
+            classification.sort(POINTS_ORDER);
+            pointsClassification = classification;
+        }
+        return classification;
+    }
+
+    /**
+     * This helper method gets the mountain classification, sorting it from the general
+     * classification the first time it is needed.
+     *
+     * @return The overall results in mountain classification order.
+     */
+    private ArrayList<Result> mountainClassification(){
+        ArrayList<Result> classification = mountainClassification;
+        if(classification == null){
+            classification = new ArrayList<>(generalClassification);
+            classification.sort(MOUNTAIN_ORDER);
+            mountainClassification = classification;
+        }
+        return classification;
+    }
+
+    /**
+     * Gets an immutable copy of the general classification, with each rider's total adjusted
+     * elapsed time, points and mountain points. The copy is only built the first time it is
+     * asked for after a result changes. Building it reads the results, so the caller must stop
+     * them changing meanwhile.
+     *
+     * @return The race's standings.
+     */
+    public Standings getStandings(){
+        Standings built = standings;
+        if(built == null){
+            built = getStandingsPage(0, generalClassification.size());
+            standings = built;
+        }
+        return built;
+    }
+
+    /**
+     * Gets the general classification built by {@link #getStandings()}, without building it. It
+     * reads no results, so it can be called while they are being changed.
+     *
+     * @return The standings, or null if a result has changed since they were last built.
+     */
+    public Standings getBuiltStandings(){
+        return standings;
     }
 
     /**
@@ -223,45 +465,68 @@ public class Race implements Serializable {
      * @return An array of LocalTime objects representing the sorted times.
      */
     public LocalTime[] getSortedListOfTimes(){
-        ArrayList<Result> riderResultsByTime = getSortedListOfResults();
-        LocalTime[] sortedListOfTimes = new LocalTime[riderResultsByTime.size()];
+        LocalTime[] sortedListOfTimes = new LocalTime[generalClassification.size()];
         int index = 0;
-        for(Result result: riderResultsByTime){
+        for(Result result: generalClassification){
             sortedListOfTimes[index++] = result.getTotalAdjustedElapsedTime();
         }
         return sortedListOfTimes;
     }
 
+    /**
+     * Retrieves a sorted list of total times for all riders in the race as durations, which
+     * can be longer than 24 hours.
+     *
+     * @return An array of Duration objects representing the sorted times.
+     */
+    public Duration[] getSortedListOfDurations(){
+        Duration[] sortedListOfDurations = new Duration[generalClassification.size()];
+        int index = 0;
+        for(Result result: generalClassification){
+            sortedListOfDurations[index++] = Duration.ofNanos(result.getTotalAdjustedElapsedNanos());
+        }
+        return sortedListOfDurations;
+    }
+
     /**
      * Gets an array of rider IDs sorted by their total time in the race.
      *
      * @return An array of rider IDs, ordered by performance.
      */
     public int[] getRiderIdsByTotalTime(){
-        //if there are no results, return an empty array
-        if(riderResults.isEmpty()){
-            return new int[0];
-        }
-        ArrayList<Result> riderResultsByTime = getSortedListOfResults();
-        int[] sortedListOfIds = new int[riderResultsByTime.size()];
+        int[] sortedListOfIds = new int[generalClassification.size()];
         int index = 0;
-        for(Result result: riderResultsByTime){
+        for(Result result: generalClassification){
             sortedListOfIds[index++] = result.getRiderId();
         }
         return sortedListOfIds;
     }
 
+    /**
+     * Gets the first riders in the general classification. The classification is kept in order,
+     * so only those riders are read.
+     *
+     * @param limit The number of riders asked for.
+     * @return An array of at most limit rider IDs, ordered by total time.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    public int[] getTopRiderIdsByTotalTime(int limit){
+        int[] top = new int[TopSelection.count(generalClassification.size(), limit)];
+        for(int i = 0; i < top.length; i++){
+            top[i] = generalClassification.get(i).getRiderId();
+        }
+        return top;
+    }
+
     /**
      * Calculates and returns the total points for all riders in the race.
      *
      * @return An array of points for each rider, sorted by their performance.
      */
     public int[] getTotalPoints(){
-        ArrayList<Result> riderResultsByTime = getSortedListOfResults();
-        int[] sortedListOfPoints= new int[riderResultsByTime.size()];
+        int[] sortedListOfPoints= new int[generalClassification.size()];
         int index = 0;
-        for(Result result: riderResultsByTime){
-            result.calculateTotalPoints();
+        for(Result result: generalClassification){
             sortedListOfPoints[index++] = result.getPoints() + result.getSprintPoints();
         }
         return sortedListOfPoints;
@@ -273,11 +538,9 @@ public class Race implements Serializable {
      * @return An array of mountain points, sorted by the riders' performance.
      */
     public int[] getMountainPoints(){
-        ArrayList<Result> riderResultsByTime = getSortedListOfResults();
-        int[] sortedListOfMountainPoints= new int[riderResultsByTime.size()];
+        int[] sortedListOfMountainPoints= new int[generalClassification.size()];
         int index = 0;
-        for(Result result: riderResultsByTime){
-            result.calculateMountainPoints();
+        for(Result result: generalClassification){
             sortedListOfMountainPoints[index++] = result.getMountainPoints();
         }
         return sortedListOfMountainPoints;
@@ -289,7 +552,7 @@ public class Race implements Serializable {
      * @return An array of rider IDs, sorted by the total points they have earned.
      */
     public int[] getRiderIdsByPoints() {
-        ArrayList<Result> sortedResultsByPoints = new ArrayList<>(riderResults.values());
+        ArrayList<Result> sortedResultsByPoints = new ArrayList<>(generalClassification);
         Collections.sort(sortedResultsByPoints, new Comparator<Result>() {
             @Override
             public int compare(Result r1, Result r2) {
@@ -311,7 +574,7 @@ public class Race implements Serializable {
      * @return An array of rider IDs, sorted by their mountain points.
      */
     public int[] getRiderIdsByMountainPoints() {
-        ArrayList<Result> sortedResultsByMountainPoints = new ArrayList<>(riderResults.values());
+        ArrayList<Result> sortedResultsByMountainPoints = new ArrayList<>(generalClassification);
         Collections.sort(sortedResultsByMountainPoints, new Comparator<Result>() {
             @Override
             public int compare(Result r1, Result r2) {
@@ -327,6 +590,51 @@ public class Race implements Serializable {
         return riderIdsSortedByMountainPoints;
     }
 
+    /**
+     * Picks the riders with the most points in the race without sorting the whole field. The
+     * riders are the first ones {@link #getRiderIdsByPoints()} would return, in the same order.
+     *
+     * @param limit The number of riders asked for.
+     * @return An array of at most limit rider IDs, the rider with the most points first.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    public int[] getTopRiderIdsByPoints(int limit) {
+        int[] positions = TopSelection.highest(generalClassification.size(), limit, position -> {
+            Result result = generalClassification.get(position);
+            return result.getPoints() + result.getSprintPoints();
+        });
+        return toRiderIds(positions);
+    }
+
+    /**
+     * Picks the riders with the most mountain points in the race without sorting the whole
+     * field. The riders are the first ones {@link #getRiderIdsByMountainPoints()} would return,
+     * in the same order.
+     *
+     * @param limit The number of riders asked for.
+     * @return An array of at most limit rider IDs, the rider with the most mountain points first.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    public int[] getTopRiderIdsByMountainPoints(int limit) {
+        int[] positions = TopSelection.highest(generalClassification.size(), limit,
+                position -> generalClassification.get(position).getMountainPoints());
+        return toRiderIds(positions);
+    }
+
+    /**
+     * This helper method replaces positions in the general classification with the IDs of the
+     * riders at them.
+     *
+     * @param positions The positions, which are overwritten.
+     * @return The same array, now holding rider IDs.
+     */
+    private int[] toRiderIds(int[] positions) {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = generalClassification.get(positions[i]).getRiderId();
+        }
+        return positions;
+    }
+
 
 }
 
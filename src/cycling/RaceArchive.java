@@ -0,0 +1,820 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A finished race sealed into a read-only file that is memory-mapped rather than read onto the
+ * heap. Its general classification, points classifications and every stage's ranking, adjusted
+ * elapsed times, points and checkpoint times are worked out once when the race is sealed and
+ * stored as fixed-width columns, so queries read them straight from the mapped file and a
+ * sealed race costs the heap little more than this object.
+ * <p>
+ * The file also holds the race in the snapshot encoding of {@link PortalSnapshot}, from which
+ * {@link #unseal(Map)} rebuilds the race on the heap if it ever has to change again.
+ * <p>
+ * All numbers are big-endian. The file starts with a fixed header:
+ * <pre>
+ * magic "CYPA", version, race ID, number of stages, number of riders in the general
+ * classification, and the offsets of the race name, race details, snapshot encoding (and its
+ * length), classification columns and stage directory
+ * </pre>
+ * The classification columns hold, for the {@code n} riders in general classification order,
+ * their IDs, total times, points and mountain points, followed by the rider IDs in points and
+ * mountain points classification order and the rider IDs sorted by ID. The stage directory
+ * lists each stage's ID and the offset of its block, in the order the race lists its stages. A
+ * stage block holds the stage's ID, length, name and type, its checkpoint IDs in location order,
+ * and for its {@code m} results in ranked order the rider IDs, adjusted elapsed times, points,
+ * mountain points and checkpoint times, followed by the rider IDs sorted by ID with the position
+ * of each. Strings are a length followed by UTF-8 bytes.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class RaceArchive {
+    /** The first four bytes of every archive, "CYPA" in ASCII. */
+    static final byte[] MAGIC = {'C', 'Y', 'P', 'A'};
+    /** The version of the format written by this class. */
+    static final int VERSION = 1;
+
+    /** Offset of the race ID in the header. */
+    private static final int RACE_ID = 8;
+    /** Offset of the number of stages in the header. */
+    private static final int STAGE_COUNT = 12;
+    /** Offset of the number of riders in the general classification in the header. */
+    private static final int RIDER_COUNT = 16;
+    /** Offset of the race name's offset in the header. */
+    private static final int RACE_NAME = 20;
+    /** Offset of the race details' offset in the header. */
+    private static final int RACE_DETAILS = 24;
+    /** Offset of the snapshot encoding's offset in the header. */
+    private static final int SOURCE = 28;
+    /** Offset of the snapshot encoding's length in the header. */
+    private static final int SOURCE_LENGTH = 32;
+    /** Offset of the classification columns' offset in the header. */
+    private static final int CLASSIFICATION = 36;
+    /** Offset of the stage directory's offset in the header. */
+    private static final int STAGE_DIRECTORY = 40;
+    /** The size of the header. */
+    private static final int HEADER_SIZE = 44;
+    /** The bytes per rider in the classification columns: six ints and a long. */
+    private static final int CLASSIFICATION_ENTRY_SIZE = 6 * 4 + 8;
+    /** The size of the fixed fields at the start of a stage block. */
+    private static final int STAGE_HEADER_SIZE = 32;
+
+    /** The file the archive was read from. */
+    private final String filename;
+    /** The mapped contents of the file. Only read with absolute gets, so it is shared by every thread. */
+    private final ByteBuffer buffer;
+    /** The ID of the sealed race. */
+    private final int raceId;
+    /** The number of riders in the general classification. */
+    private final int riderCount;
+    /** The offset of the classification columns. */
+    private final int classification;
+    /** The general classification, read from the mapped columns. */
+    private final Standings standings;
+    /** The IDs of the stages, in the order the race lists them. */
+    private final int[] stageIds;
+    /** The offset of each stage's block, in the same order as {@link #stageIds}. */
+    private final int[] stageOffsets;
+    /** The standings of each stage, read from the mapped columns, in the same order as {@link #stageIds}. */
+    private final Standings[] stageStandings;
+    /** An index of positions in the points classification, built the first time a rider's points rank is looked up. */
+    private volatile long[] pointsIndex;
+    /** An index of positions in the mountain classification, built the first time a rider's mountain rank is looked up. */
+    private volatile long[] mountainPointsIndex;
+
+    /**
+     * Opens an archive that has been mapped into memory.
+     *
+     * @param filename The file the archive was read from.
+     * @param buffer The mapped contents of the file.
+     * @throws IOException If the contents are not an archive this class can read.
+     */
+    private RaceArchive(String filename, ByteBuffer buffer) throws IOException {
+        this.filename = filename;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.get(0) != MAGIC[0] || buffer.get(1) != MAGIC[1]
+                || buffer.get(2) != MAGIC[2] || buffer.get(3) != MAGIC[3]) {
+            throw new IOException(filename + " is not a sealed race archive.");
+        }
+        if (buffer.getInt(4) > VERSION) {
+            throw new IOException(filename + " is archive version " + buffer.getInt(4) + " but only versions up to "
+                    + VERSION + " can be read.");
+        }
+        try {
+            raceId = buffer.getInt(RACE_ID);
+            riderCount = buffer.getInt(RIDER_COUNT);
+            classification = buffer.getInt(CLASSIFICATION);
+            standings = new MappedStandings(buffer, classification, riderCount);
+            int numberOfStages = buffer.getInt(STAGE_COUNT);
+            stageIds = new int[numberOfStages];
+            stageOffsets = new int[numberOfStages];
+            stageStandings = new Standings[numberOfStages];
+            int directory = buffer.getInt(STAGE_DIRECTORY);
+            for (int i = 0; i < numberOfStages; i++) {
+                stageIds[i] = buffer.getInt(directory + i * 8);
+                stageOffsets[i] = buffer.getInt(directory + i * 8 + 4);
+                int results = resultsOffset(stageOffsets[i]);
+                stageStandings[i] = new MappedStandings(buffer, results, buffer.getInt(stageOffsets[i] + 24));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(filename + " is a corrupt sealed race archive.", e);
+        }
+    }
+
+    /**
+     * Writes a race to an archive file and maps it, with every stage's standings.
+     *
+     * @param race The race to seal. Every stage must be waiting for results.
+     * @param filename The file to write, replacing any file of the same name.
+     * @return The archive, mapped from the new file.
+     * @throws IOException If the file cannot be written.
+     */
+    static RaceArchive write(Race race, String filename) throws IOException {
+        Stage[] stages = race.getStages();
+        Standings classification = race.getStandings();
+        int n = classification.size();
+        PortalSnapshot.Encoder source = new PortalSnapshot.Encoder();
+        PortalSnapshot.writeRace(source, race);
+
+        //work out where everything goes, leaving the strings and snapshot encoding for the end
+        int offset = HEADER_SIZE;
+        int classificationOffset = offset;
+        offset += n * CLASSIFICATION_ENTRY_SIZE;
+        int directoryOffset = offset;
+        offset += stages.length * 8;
+        int[] stageOffsets = new int[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            StageResultTable results = stages[i].getResults();
+            stageOffsets[i] = offset;
+            offset += STAGE_HEADER_SIZE + stages[i].getCheckpoints().size() * 4
+                    + results.size() * (4 * 6 + 8 + 8 * results.getTimesPerResult());
+        }
+        ArrayList<byte[]> strings = new ArrayList<>();
+        strings.add(race.getRaceName().getBytes(StandardCharsets.UTF_8));
+        strings.add(race.getRaceDetails().getBytes(StandardCharsets.UTF_8));
+        for (Stage stage : stages) {
+            strings.add(stage.getStageName().getBytes(StandardCharsets.UTF_8));
+            strings.add(stage.getStageType().name().getBytes(StandardCharsets.UTF_8));
+        }
+        int[] stringOffsets = new int[strings.size()];
+        for (int i = 0; i < stringOffsets.length; i++) {
+            stringOffsets[i] = offset;
+            offset += 4 + strings.get(i).length;
+        }
+        ByteBuffer sourceBytes = source.asByteBuffer();
+        int sourceOffset = offset;
+        offset += sourceBytes.remaining();
+
+        ByteBuffer out = ByteBuffer.allocate(offset);
+        out.put(MAGIC).putInt(VERSION).putInt(race.getRaceId()).putInt(stages.length).putInt(n)
+                .putInt(stringOffsets[0]).putInt(stringOffsets[1]).putInt(sourceOffset).putInt(sourceBytes.remaining())
+                .putInt(classificationOffset).putInt(directoryOffset);
+        writeColumns(out, classificationOffset, classification);
+        int[] pointsOrder = race.getRiderIdsByPoints();
+        int[] mountainPointsOrder = race.getRiderIdsByMountainPoints();
+        int[] sortedRiderIds = classification.getRiderIds();
+        Arrays.sort(sortedRiderIds);
+        for (int i = 0; i < n; i++) {
+            out.putInt(classificationOffset + n * 20 + i * 4, pointsOrder[i]);
+            out.putInt(classificationOffset + n * 24 + i * 4, mountainPointsOrder[i]);
+            out.putInt(classificationOffset + n * 28 + i * 4, sortedRiderIds[i]);
+        }
+        for (int i = 0; i < stages.length; i++) {
+            out.putInt(directoryOffset + i * 8, stages[i].getStageId());
+            out.putInt(directoryOffset + i * 8 + 4, stageOffsets[i]);
+            writeStage(out, stageOffsets[i], stages[i], stringOffsets[2 + i * 2], stringOffsets[3 + i * 2]);
+        }
+        for (int i = 0; i < stringOffsets.length; i++) {
+            out.putInt(stringOffsets[i], strings.get(i).length);
+            out.put(stringOffsets[i] + 4, strings.get(i));
+        }
+        out.put(sourceOffset, sourceBytes, sourceBytes.position(), sourceBytes.remaining());
+
+        out.clear();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        return open(filename);
+    }
+
+    /**
+     * This helper method writes the columns of some standings: the rider IDs, times, points and
+     * mountain points, one after the other.
+     *
+     * @param out The buffer to write to.
+     * @param offset The offset of the first column.
+     * @param standings The standings to write.
+     */
+    private static void writeColumns(ByteBuffer out, int offset, Standings standings) {
+        int n = standings.size();
+        for (int i = 0; i < n; i++) {
+            out.putInt(offset + i * 4, standings.getRiderId(i));
+            out.putLong(offset + n * 4 + i * 8, standings.getAdjustedElapsedTime(i));
+            out.putInt(offset + n * 12 + i * 4, standings.getPoints(i));
+            out.putInt(offset + n * 16 + i * 4, standings.getMountainPoints(i));
+        }
+    }
+
+    /**
+     * This helper method writes a stage's block.
+     *
+     * @param out The buffer to write to.
+     * @param offset The offset of the block.
+     * @param stage The stage to write.
+     * @param nameOffset The offset the stage's name is written at.
+     * @param typeOffset The offset the stage's type is written at.
+     */
+    private static void writeStage(ByteBuffer out, int offset, Stage stage, int nameOffset, int typeOffset) {
+        StageResultTable results = stage.getResults();
+        int[] checkpointIds = stage.getOrderedCheckpointIds();
+        int m = results.size();
+        int t = results.getTimesPerResult();
+        out.putInt(offset, stage.getStageId());
+        out.putDouble(offset + 4, stage.getLength());
+        out.putInt(offset + 12, nameOffset);
+        out.putInt(offset + 16, typeOffset);
+        out.putInt(offset + 20, checkpointIds.length);
+        out.putInt(offset + 24, m);
+        out.putInt(offset + 28, t);
+        for (int i = 0; i < checkpointIds.length; i++) {
+            out.putInt(offset + STAGE_HEADER_SIZE + i * 4, checkpointIds[i]);
+        }
+        int columns = offset + STAGE_HEADER_SIZE + checkpointIds.length * 4;
+        writeColumns(out, columns, stage.getStandings());
+        int times = columns + m * 20;
+        //rider IDs are non-negative ints, so each is packed above its position and sorting the
+        //packed values sorts by rider ID while carrying the position along
+        long[] riderIdsAndPositions = new long[m];
+        for (int position = 0; position < m; position++) {
+            int slot = results.slotAtPosition(position);
+            for (int i = 0; i < t; i++) {
+                out.putLong(times + (position * t + i) * 8, results.getCheckpointTime(slot, i));
+            }
+            riderIdsAndPositions[position] = ((long) results.getRiderId(slot) << 32) | position;
+        }
+        Arrays.sort(riderIdsAndPositions);
+        int index = times + m * t * 8;
+        for (int i = 0; i < m; i++) {
+            out.putInt(index + i * 4, (int) (riderIdsAndPositions[i] >>> 32));
+            out.putInt(index + m * 4 + i * 4, (int) riderIdsAndPositions[i]);
+        }
+    }
+
+    /**
+     * Maps an archive file written by {@link #write(Race, String)}.
+     *
+     * @param filename The archive file.
+     * @return The archive.
+     * @throws IOException If the file cannot be read or is not an archive.
+     */
+    static RaceArchive open(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filename + " is too large to be a sealed race archive.");
+            }
+            //the mapping stays valid after the channel is closed
+            return new RaceArchive(filename, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Gets the file the archive was read from.
+     *
+     * @return The archive's file name.
+     */
+    String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Gets the ID of the sealed race.
+     *
+     * @return The race ID.
+     */
+    int getRaceId() {
+        return raceId;
+    }
+
+    /**
+     * Gets the name of the sealed race.
+     *
+     * @return The race name.
+     */
+    String getRaceName() {
+        return readString(buffer.getInt(RACE_NAME));
+    }
+
+    /**
+     * Gets the details of the sealed race, as {@link Race#getRaceDetails()} described it when it was sealed.
+     *
+     * @return The race details.
+     */
+    String getRaceDetails() {
+        return readString(buffer.getInt(RACE_DETAILS));
+    }
+
+    /**
+     * Gets the IDs of the race's stages.
+     *
+     * @return A new array of stage IDs, in the order the race listed them.
+     */
+    int[] getStageIds() {
+        return stageIds.clone();
+    }
+
+    /**
+     * Gets the number of stages in the race.
+     *
+     * @return The number of stages.
+     */
+    int getNumberOfStages() {
+        return stageIds.length;
+    }
+
+    /**
+     * This helper method finds a stage in the directory.
+     *
+     * @param stageId The ID of the stage.
+     * @return The stage's index in the directory.
+     * @throws IllegalArgumentException If the stage is not part of this race.
+     */
+    private int stageIndex(int stageId) {
+        for (int i = 0; i < stageIds.length; i++) {
+            if (stageIds[i] == stageId) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Stage " + stageId + " is not part of sealed race " + raceId);
+    }
+
+    /**
+     * This helper method finds the offset of a stage's result columns.
+     *
+     * @param stageOffset The offset of the stage's block.
+     * @return The offset of the rider ID column.
+     */
+    private int resultsOffset(int stageOffset) {
+        return stageOffset + STAGE_HEADER_SIZE + buffer.getInt(stageOffset + 20) * 4;
+    }
+
+    /**
+     * Gets the name of a stage.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @return The stage name.
+     */
+    String getStageName(int stageId) {
+        return readString(buffer.getInt(stageOffsets[stageIndex(stageId)] + 12));
+    }
+
+    /**
+     * Gets the type of a stage.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @return The stage type.
+     */
+    StageType getStageType(int stageId) {
+        return StageType.valueOf(readString(buffer.getInt(stageOffsets[stageIndex(stageId)] + 16)));
+    }
+
+    /**
+     * Gets the length of a stage.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @return The length in kilometres.
+     */
+    double getStageLength(int stageId) {
+        return buffer.getDouble(stageOffsets[stageIndex(stageId)] + 4);
+    }
+
+    /**
+     * Gets the checkpoints of a stage.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @return A new array of checkpoint IDs, ordered by location.
+     */
+    int[] getStageCheckpoints(int stageId) {
+        int offset = stageOffsets[stageIndex(stageId)];
+        int[] checkpointIds = new int[buffer.getInt(offset + 20)];
+        for (int i = 0; i < checkpointIds.length; i++) {
+            checkpointIds[i] = buffer.getInt(offset + STAGE_HEADER_SIZE + i * 4);
+        }
+        return checkpointIds;
+    }
+
+    /**
+     * Gets the standings of a stage, read from the mapped file.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @return The stage's standings.
+     */
+    Standings getStageStandings(int stageId) {
+        return stageStandings[stageIndex(stageId)];
+    }
+
+    /**
+     * Gets the general classification, read from the mapped file.
+     *
+     * @return The race's standings.
+     */
+    Standings getStandings() {
+        return standings;
+    }
+
+    /**
+     * This helper method finds a rider's position in a stage by binary search over the stage's
+     * rider IDs sorted by ID.
+     *
+     * @param stageIndex The stage's index in the directory.
+     * @param riderId The ID of the rider.
+     * @return The rider's position in the stage ranking, or -1 if they have no result.
+     */
+    private int positionInStage(int stageIndex, int riderId) {
+        int offset = stageOffsets[stageIndex];
+        int m = buffer.getInt(offset + 24);
+        int sorted = resultsOffset(offset) + m * (20 + 8 * buffer.getInt(offset + 28));
+        int low = 0;
+        int high = m - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = buffer.getInt(sorted + middle * 4);
+            if (id < riderId) {
+                low = middle + 1;
+            } else if (id > riderId) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(sorted + m * 4 + middle * 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if a rider has a result in a stage.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @param riderId The ID of the rider.
+     * @return true if the rider has a result in the stage, false otherwise.
+     */
+    boolean hasResult(int stageId, int riderId) {
+        return positionInStage(stageIndex(stageId), riderId) != -1;
+    }
+
+    /**
+     * Gets a rider's checkpoint times in a stage, in the form of {@link Stage#getRiderResults(int)}.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @param riderId The ID of the rider.
+     * @return The times at each checkpoint followed by the elapsed time, or an empty array if
+     *         the rider has no result in the stage.
+     */
+    LocalTime[] getRiderResults(int stageId, int riderId) {
+        int index = stageIndex(stageId);
+        int position = positionInStage(index, riderId);
+        if (position == -1) {
+            return new LocalTime[0];
+        }
+        int offset = stageOffsets[index];
+        int m = buffer.getInt(offset + 24);
+        int t = buffer.getInt(offset + 28);
+        int times = resultsOffset(offset) + m * 20 + position * t * 8;
+        LocalTime[] resultTimes = new LocalTime[t - 1];
+        for (int i = 0; i < resultTimes.length - 1; i++) {
+            long nanos = buffer.getLong(times + (i + 1) * 8);
+            resultTimes[i] = nanos == StageResultTable.NO_TIME ? null : LocalTime.ofNanoOfDay(nanos);
+        }
+        resultTimes[resultTimes.length - 1] = LocalTime.ofNanoOfDay(buffer.getLong(times + (t - 1) * 8) - buffer.getLong(times));
+        return resultTimes;
+    }
+
+    /**
+     * Gets a rider's adjusted elapsed time in a stage.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @param riderId The ID of the rider.
+     * @return The adjusted elapsed time, or null if the rider has no result in the stage.
+     */
+    LocalTime getRiderAdjustedElapsedTime(int stageId, int riderId) {
+        int index = stageIndex(stageId);
+        int position = positionInStage(index, riderId);
+        return position == -1 ? null : LocalTime.ofNanoOfDay(stageStandings[index].getAdjustedElapsedTime(position));
+    }
+
+    /**
+     * Gets a rider's rank in a stage, by binary search over the stage's rider IDs sorted by ID.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @param riderId The ID of the rider.
+     * @return The rider's rank, starting from 1, or 0 if the rider has no result in the stage.
+     */
+    int getRiderRankInStage(int stageId, int riderId) {
+        return positionInStage(stageIndex(stageId), riderId) + 1;
+    }
+
+    /**
+     * Gets a rider's rank in the general classification.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's rank, starting from 1, or 0 if the rider has no result in the race.
+     */
+    int getRiderGeneralClassificationRank(int riderId) {
+        return standings.getRank(riderId);
+    }
+
+    /**
+     * Gets where a rider stood in a stage when the race was sealed.
+     *
+     * @param stageId The ID of a stage in the race.
+     * @param riderId The ID of the rider.
+     * @return The rider's standing, or null if the rider has no result in the stage.
+     */
+    RiderStanding getRiderStandingInStage(int stageId, int riderId) {
+        int index = stageIndex(stageId);
+        int position = positionInStage(index, riderId);
+        if (position == -1) {
+            return null;
+        }
+        Standings stage = stageStandings[index];
+        long time = stage.getAdjustedElapsedTime(position);
+        return new RiderStanding(riderId, position + 1, time, time - stage.getAdjustedElapsedTime(0),
+                stage.getPoints(position), 0, stage.getMountainPoints(position), 0);
+    }
+
+    /**
+     * Gets where a rider stood in the race when it was sealed. The points and mountain ranks are
+     * found in indexes of the stored classifications, built the first time they are needed.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's standing, or null if the rider has no result in the race.
+     */
+    RiderStanding getRiderStanding(int riderId) {
+        int rank = standings.getRank(riderId);
+        if (rank == 0) {
+            return null;
+        }
+        long[] byPoints = pointsIndex;
+        if (byPoints == null) {
+            byPoints = Standings.indexByRiderId(getRiderIdsByPoints());
+            pointsIndex = byPoints;
+        }
+        long[] byMountainPoints = mountainPointsIndex;
+        if (byMountainPoints == null) {
+            byMountainPoints = Standings.indexByRiderId(getRiderIdsByMountainPoints());
+            mountainPointsIndex = byMountainPoints;
+        }
+        int position = rank - 1;
+        long time = standings.getAdjustedElapsedTime(position);
+        return new RiderStanding(riderId, rank, time, time - standings.getAdjustedElapsedTime(0),
+                standings.getPoints(position), Standings.positionOf(byPoints, riderId) + 1,
+                standings.getMountainPoints(position), Standings.positionOf(byMountainPoints, riderId) + 1);
+    }
+
+    /**
+     * Checks if a rider has a result anywhere in the race, by binary search over the general
+     * classification's rider IDs sorted by ID.
+     *
+     * @param riderId The ID of the rider.
+     * @return true if the rider is in the general classification, false otherwise.
+     */
+    boolean hasRider(int riderId) {
+        int sorted = classification + riderCount * 28;
+        int low = 0;
+        int high = riderCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = buffer.getInt(sorted + middle * 4);
+            if (id < riderId) {
+                low = middle + 1;
+            } else if (id > riderId) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the points classification as it was when the race was sealed.
+     *
+     * @return A new array of rider IDs, ordered by their points.
+     */
+    int[] getRiderIdsByPoints() {
+        return readInts(classification + riderCount * 20, riderCount);
+    }
+
+    /**
+     * Gets the mountain points classification as it was when the race was sealed.
+     *
+     * @return A new array of rider IDs, ordered by their mountain points.
+     */
+    int[] getRiderIdsByMountainPoints() {
+        return readInts(classification + riderCount * 24, riderCount);
+    }
+
+    /**
+     * Gets the first riders of the points classification as it was when the race was sealed,
+     * reading only their entries.
+     *
+     * @param limit The number of riders asked for.
+     * @return A new array of at most limit rider IDs, ordered by their points.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    int[] getTopRiderIdsByPoints(int limit) {
+        return readInts(classification + riderCount * 20, TopSelection.count(riderCount, limit));
+    }
+
+    /**
+     * Gets the first riders of the mountain points classification as it was when the race was
+     * sealed, reading only their entries.
+     *
+     * @param limit The number of riders asked for.
+     * @return A new array of at most limit rider IDs, ordered by their mountain points.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    int[] getTopRiderIdsByMountainPoints(int limit) {
+        return readInts(classification + riderCount * 24, TopSelection.count(riderCount, limit));
+    }
+
+    /**
+     * Rebuilds the race on the heap from the snapshot encoding held in the archive, adding it to
+     * the races of each rider with a result in it. The archive file is left as it is.
+     *
+     * @param ridersById Every rider in the portal, by rider ID.
+     * @return The race, with its stages, checkpoints and results.
+     * @throws IllegalStateException If the archive's snapshot encoding is corrupt or names a rider
+     *                               that is no longer in the portal.
+     */
+    Race unseal(Map<Integer, Rider> ridersById) {
+        byte[] source = new byte[buffer.getInt(SOURCE_LENGTH)];
+        buffer.get(buffer.getInt(SOURCE), source);
+        try {
+            return PortalSnapshot.readRace(new PortalSnapshot.Decoder(source), ridersById);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IllegalStateException("The sealed race in " + filename + " could not be read back", e);
+        }
+    }
+
+    /**
+     * This helper method reads a length-prefixed UTF-8 string.
+     *
+     * @param offset The offset of the string's length.
+     * @return The string.
+     */
+    private String readString(int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This helper method reads a column of ints.
+     *
+     * @param offset The offset of the column.
+     * @param length The number of ints.
+     * @return A new array of the ints.
+     */
+    private int[] readInts(int offset, int length) {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = buffer.getInt(offset + i * 4);
+        }
+        return values;
+    }
+
+    /**
+     * Standings read straight from the columns of a mapped archive, rather than from arrays.
+     */
+    private static final class MappedStandings extends Standings {
+        /** The mapped archive. */
+        private final ByteBuffer buffer;
+        /** The offset of the rider ID column; the times, points and mountain points columns follow it. */
+        private final int offset;
+        /** The number of riders. */
+        private final int size;
+
+        /**
+         * Creates standings over columns in a mapped archive.
+         *
+         * @param buffer The mapped archive.
+         * @param offset The offset of the rider ID column.
+         * @param size The number of riders.
+         */
+        MappedStandings(ByteBuffer buffer, int offset, int size) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int getClassificationSize() {
+            return size;
+        }
+
+        @Override
+        public int getRiderId(int position) {
+            return buffer.getInt(offset + checkPosition(position) * 4);
+        }
+
+        @Override
+        public long getAdjustedElapsedTime(int position) {
+            return buffer.getLong(offset + size * 4 + checkPosition(position) * 8);
+        }
+
+        @Override
+        public int getPoints(int position) {
+            return buffer.getInt(offset + size * 12 + checkPosition(position) * 4);
+        }
+
+        @Override
+        public int getMountainPoints(int position) {
+            return buffer.getInt(offset + size * 16 + checkPosition(position) * 4);
+        }
+
+        /**
+         * This helper method checks that a position is within the standings, as reading past the
+         * end of a column would otherwise silently read the next one.
+         *
+         * @param position The position.
+         * @return The position.
+         * @throws ArrayIndexOutOfBoundsException If the position is outside the standings.
+         */
+        private int checkPosition(int position) {
+            if (position < 0 || position >= size) {
+                throw new ArrayIndexOutOfBoundsException("Position " + position + " out of bounds for length " + size);
+            }
+            return position;
+        }
+
+        @Override
+        public int[] getRiderIds() {
+            int[] riderIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                riderIds[i] = buffer.getInt(offset + i * 4);
+            }
+            return riderIds;
+        }
+
+        @Override
+        public LocalTime[] getAdjustedElapsedLocalTimes() {
+            LocalTime[] times = new LocalTime[size];
+            for (int i = 0; i < size; i++) {
+                times[i] = LocalTime.ofNanoOfDay(buffer.getLong(offset + size * 4 + i * 8));
+            }
+            return times;
+        }
+
+        @Override
+        public Duration[] getAdjustedElapsedDurations() {
+            Duration[] durations = new Duration[size];
+            for (int i = 0; i < size; i++) {
+                durations[i] = Duration.ofNanos(buffer.getLong(offset + size * 4 + i * 8));
+            }
+            return durations;
+        }
+
+        @Override
+        public int[] getPoints() {
+            int[] points = new int[size];
+            for (int i = 0; i < size; i++) {
+                points[i] = buffer.getInt(offset + size * 12 + i * 4);
+            }
+            return points;
+        }
+
+        @Override
+        public int[] getMountainPoints() {
+            int[] mountainPoints = new int[size];
+            for (int i = 0; i < size; i++) {
+                mountainPoints[i] = buffer.getInt(offset + size * 16 + i * 4);
+            }
+            return mountainPoints;
+        }
+
+        @Override
+        public String toString() {
+            return "Standings riders=" + Arrays.toString(getRiderIds()) + " mapped";
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package cycling;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * One race of a snapshot, described by an entry of the snapshot's race index. An entry holds
+ * what the portal needs to know about a race without reading it: the race's ID and name, its
+ * stages' IDs, names and checkpoint IDs, and the IDs of the riders with results in it. A
+ * snapshot opened with {@link PortalSnapshot#readLazily} gives one segment per race, each
+ * pointing at its race section in the file, and {@link #load(Map)} reads the race from there
+ * when it is first needed.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class RaceSegment {
+    /** The snapshot file the race is read from, or null if the segment only describes a race on the heap. */
+    private final FileChannel channel;
+    /** The position of the race section's payload in the file. */
+    private final long offset;
+    /** The length of the race section's payload. */
+    private final int length;
+    /** Whether the race section is a delta race section. */
+    private final boolean deltaEncoded;
+    /** The ID of the race. */
+    private final int raceId;
+    /** The name of the race. */
+    private final String raceName;
+    /** The IDs of the race's stages. */
+    private final int[] stageIds;
+    /** The names of the race's stages, in the same order as their IDs. */
+    private final String[] stageNames;
+    /** The IDs of each stage's checkpoints, in the same order as the stage IDs. */
+    private final int[][] checkpointIds;
+    /** The IDs of the riders with a result in any stage of the race, sorted. */
+    private final int[] riderIds;
+
+    /**
+     * Creates a segment.
+     *
+     * @param channel The snapshot file, or null if the segment only describes a race on the heap.
+     * @param offset The position of the race section's payload in the file.
+     * @param length The length of the race section's payload.
+     * @param deltaEncoded Whether the race section is a delta race section.
+     * @param raceId The ID of the race.
+     * @param raceName The name of the race.
+     * @param stageIds The IDs of the race's stages.
+     * @param stageNames The names of the race's stages.
+     * @param checkpointIds The IDs of each stage's checkpoints.
+     * @param riderIds The IDs of the riders with results in the race, sorted.
+     */
+    private RaceSegment(FileChannel channel, long offset, int length, boolean deltaEncoded, int raceId, String raceName,
+            int[] stageIds, String[] stageNames, int[][] checkpointIds, int[] riderIds) {
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+        this.deltaEncoded = deltaEncoded;
+        this.raceId = raceId;
+        this.raceName = raceName;
+        this.stageIds = stageIds;
+        this.stageNames = stageNames;
+        this.checkpointIds = checkpointIds;
+        this.riderIds = riderIds;
+    }
+
+    /**
+     * Describes an image of a race held on the heap, for writing its entry in a snapshot's race
+     * index.
+     *
+     * @param race The image of the race.
+     * @return A segment describing the race, which cannot be loaded.
+     */
+    static RaceSegment describe(PortalImage.RaceImage race) {
+        PortalImage.StageImage[] stages = race.stages;
+        int[] stageIds = new int[stages.length];
+        String[] stageNames = new String[stages.length];
+        int[][] checkpointIds = new int[stages.length][];
+        int[] riderIds = new int[0];
+        int numberOfRiders = 0;
+        for (int s = 0; s < stages.length; s++) {
+            stageIds[s] = stages[s].id;
+            stageNames[s] = stages[s].name;
+            checkpointIds[s] = stages[s].orderedCheckpointIds;
+            riderIds = Arrays.copyOf(riderIds, numberOfRiders + stages[s].riderIds.length);
+            System.arraycopy(stages[s].riderIds, 0, riderIds, numberOfRiders, stages[s].riderIds.length);
+            numberOfRiders += stages[s].riderIds.length;
+        }
+        Arrays.sort(riderIds);
+        int distinct = 0;
+        for (int i = 0; i < riderIds.length; i++) {
+            if (distinct == 0 || riderIds[i] != riderIds[distinct - 1]) {
+                riderIds[distinct++] = riderIds[i];
+            }
+        }
+        return new RaceSegment(null, -1, 0, false, race.id, race.name, stageIds, stageNames, checkpointIds,
+                Arrays.copyOf(riderIds, distinct));
+    }
+
+    /**
+     * Encodes the segment as an entry of a snapshot's race index.
+     *
+     * @param section The encoder to write to.
+     */
+    void writeIndexEntry(PortalSnapshot.Encoder section) {
+        section.writeVarInt(raceId);
+        section.writeString(raceName);
+        section.writeVarInt(stageIds.length);
+        for (int s = 0; s < stageIds.length; s++) {
+            section.writeVarInt(stageIds[s]);
+            section.writeString(stageNames[s]);
+            section.writeVarInt(checkpointIds[s].length);
+            for (int checkpointId : checkpointIds[s]) {
+                section.writeVarInt(checkpointId);
+            }
+        }
+        section.writeVarInt(riderIds.length);
+        for (int riderId : riderIds) {
+            section.writeVarInt(riderId);
+        }
+    }
+
+    /**
+     * Decodes an entry of a snapshot's race index written by {@link #writeIndexEntry}.
+     *
+     * @param section The race index's payload, positioned at the entry.
+     * @param channel The snapshot file.
+     * @param offset The position of the race section's payload in the file.
+     * @param length The length of the race section's payload.
+     * @param deltaEncoded Whether the race section is a delta race section.
+     * @return The segment.
+     */
+    static RaceSegment readIndexEntry(PortalSnapshot.Decoder section, FileChannel channel, long offset, int length,
+            boolean deltaEncoded) {
+        int raceId = section.readVarInt();
+        String raceName = section.readString();
+        int numberOfStages = section.readVarInt();
+        int[] stageIds = new int[numberOfStages];
+        String[] stageNames = new String[numberOfStages];
+        int[][] checkpointIds = new int[numberOfStages][];
+        for (int s = 0; s < numberOfStages; s++) {
+            stageIds[s] = section.readVarInt();
+            stageNames[s] = section.readString();
+            checkpointIds[s] = new int[section.readVarInt()];
+            for (int c = 0; c < checkpointIds[s].length; c++) {
+                checkpointIds[s][c] = section.readVarInt();
+            }
+        }
+        int[] riderIds = new int[section.readVarInt()];
+        for (int r = 0; r < riderIds.length; r++) {
+            riderIds[r] = section.readVarInt();
+        }
+        return new RaceSegment(channel, offset, length, deltaEncoded, raceId, raceName, stageIds, stageNames, checkpointIds, riderIds);
+    }
+
+    /**
+     * Reads bytes from a position in a file.
+     *
+     * @param channel The file.
+     * @param position The position of the first byte.
+     * @param length The number of bytes to read.
+     * @return The bytes, which are fewer than asked for if the file ends first.
+     * @throws IOException If the file cannot be read.
+     */
+    static byte[] readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Reads the race section's payload, for loading the race or copying it into a new snapshot.
+     *
+     * @return The payload, in the encoding of {@link PortalSnapshot#writeRace(PortalSnapshot.Encoder, PortalImage.RaceImage, boolean)}.
+     * @throws IOException If the file cannot be read or ends before the payload does.
+     */
+    byte[] readPayload() throws IOException {
+        byte[] payload = readAt(channel, offset, length);
+        if (payload.length != length) {
+            throw new EOFException("Race " + raceId + " runs past the end of the snapshot.");
+        }
+        return payload;
+    }
+
+    /**
+     * Reads the race from the snapshot file and registers its results again, as
+     * {@link PortalSnapshot#read} does for every race.
+     *
+     * @param ridersById Every rider in the portal, by rider ID.
+     * @return The race.
+     * @throws IOException If the file cannot be read or the race section is corrupt.
+     */
+    Race load(Map<Integer, Rider> ridersById) throws IOException {
+        try {
+            return PortalSnapshot.readRace(new PortalSnapshot.Decoder(readPayload()), ridersById, deltaEncoded);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("The section of race " + raceId + " in the snapshot is corrupt.", e);
+        }
+    }
+
+    /**
+     * Checks if the race section is a delta race section, whose results are delta-encoded.
+     *
+     * @return true if the results are delta-encoded, false if they are written in full.
+     */
+    boolean isDeltaEncoded() {
+        return deltaEncoded;
+    }
+
+    /**
+     * Gets the ID of the race.
+     *
+     * @return The race ID.
+     */
+    int getRaceId() {
+        return raceId;
+    }
+
+    /**
+     * Gets the name of the race.
+     *
+     * @return The race name.
+     */
+    String getRaceName() {
+        return raceName;
+    }
+
+    /**
+     * Gets the IDs of the race's stages.
+     *
+     * @return The stage IDs. The array must not be changed.
+     */
+    int[] getStageIds() {
+        return stageIds;
+    }
+
+    /**
+     * Gets the name of one of the race's stages.
+     *
+     * @param index The stage's index in {@link #getStageIds()}.
+     * @return The stage name.
+     */
+    String getStageName(int index) {
+        return stageNames[index];
+    }
+
+    /**
+     * Gets the checkpoint IDs of one of the race's stages.
+     *
+     * @param index The stage's index in {@link #getStageIds()}.
+     * @return The checkpoint IDs. The array must not be changed.
+     */
+    int[] getCheckpointIds(int index) {
+        return checkpointIds[index];
+    }
+
+    /**
+     * Gets the IDs of the riders with a result in any stage of the race.
+     *
+     * @return The rider IDs, sorted. The array must not be changed.
+     */
+    int[] getRiderIds() {
+        return riderIds;
+    }
+
+    /**
+     * Checks if a rider has a result in any stage of the race.
+     *
+     * @param riderId The ID of the rider.
+     * @return true if the rider has a result in the race, false otherwise.
+     */
+    boolean hasRider(int riderId) {
+        return Arrays.binarySearch(riderIds, riderId) >= 0;
+    }
+}
@@ -0,0 +1,281 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps track of the races a portal does not hold on the heap: races sealed into read-only
+ * archive files, and races of a lazily loaded snapshot that have not been read yet. It indexes
+ * both by race, stage and checkpoint ID, remembers which races were read from the snapshot and
+ * not changed since (least recently used first), and keeps the snapshot file open.
+ * <p>
+ * The storage only does the bookkeeping. Moving a race on or off the heap, and keeping the
+ * portal's own indexes up to date while doing it, is left to the portal. Finding a race here
+ * never reads anything or changes the order of the unchanged races, except through
+ * {@link #markUsed(int)}.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class RaceStorage {
+    /** Races sealed into read-only archive files, mapped by race ID. */
+    private final HashMap<Integer, RaceArchive> sealedRaces = new HashMap<>();
+    /** The sealed race each sealed stage belongs to, mapped by stage ID. */
+    private final HashMap<Integer, RaceArchive> sealedRacesByStageId = new HashMap<>();
+    /** The sealed race each checkpoint of a sealed stage belongs to, mapped by checkpoint ID. */
+    private final HashMap<Integer, RaceArchive> sealedRacesByCheckpointId = new HashMap<>();
+    /** Races of a lazily loaded snapshot that have not been read onto the heap, mapped by race ID. */
+    private final HashMap<Integer, RaceSegment> unreadRaces = new HashMap<>();
+    /** The unread race each stage of an unread race belongs to, mapped by stage ID. */
+    private final HashMap<Integer, RaceSegment> unreadRacesByStageId = new HashMap<>();
+    /** The unread race each checkpoint of an unread race belongs to, mapped by checkpoint ID. */
+    private final HashMap<Integer, RaceSegment> unreadRacesByCheckpointId = new HashMap<>();
+    /** Races read from the lazily loaded snapshot and not changed since, least recently used first. */
+    private final LinkedHashMap<Integer, RaceSegment> evictableRaces = new LinkedHashMap<>(16, 0.75f, true);
+    /** The most races read from the lazily loaded snapshot that are kept on the heap unchanged. */
+    private int maxEvictableRaces = Integer.MAX_VALUE;
+    /** The lazily loaded snapshot file, kept open for reading races from, or null if there is none. */
+    private FileChannel lazySnapshot;
+
+    /**
+     * Forgets every sealed and unread race and closes the previous snapshot file, ready for the
+     * races of a newly loaded portal to be added.
+     *
+     * @param snapshot The lazily loaded snapshot file, or null if the portal was not loaded lazily.
+     * @param maxReadRaces The most unchanged races read from the snapshot to keep on the heap.
+     */
+    void reset(FileChannel snapshot, int maxReadRaces) {
+        closeSnapshot();
+        sealedRaces.clear();
+        sealedRacesByStageId.clear();
+        sealedRacesByCheckpointId.clear();
+        lazySnapshot = snapshot;
+        maxEvictableRaces = maxReadRaces;
+    }
+
+    /**
+     * Forgets every sealed and unread race and closes the snapshot file.
+     */
+    void clear() {
+        reset(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Forgets the races of the lazily loaded snapshot and closes its file.
+     */
+    private void closeSnapshot() {
+        unreadRaces.clear();
+        unreadRacesByStageId.clear();
+        unreadRacesByCheckpointId.clear();
+        evictableRaces.clear();
+        maxEvictableRaces = Integer.MAX_VALUE;
+        if (lazySnapshot != null) {
+            try {
+                lazySnapshot.close();
+            } catch (IOException e) {
+                //nothing more is read from it, so a failure to close it is of no consequence
+            }
+            lazySnapshot = null;
+        }
+    }
+
+    /**
+     * Gets a sealed race.
+     *
+     * @param raceId The ID of the race.
+     * @return The sealed race, or null if the race is not sealed.
+     */
+    RaceArchive getSealedRace(int raceId) {
+        return sealedRaces.get(raceId);
+    }
+
+    /**
+     * Gets the sealed race a stage belongs to.
+     *
+     * @param stageId The ID of the stage.
+     * @return The sealed race, or null if the stage's race is not sealed.
+     */
+    RaceArchive getSealedRaceOfStage(int stageId) {
+        return sealedRacesByStageId.get(stageId);
+    }
+
+    /**
+     * Gets the sealed race a checkpoint belongs to.
+     *
+     * @param checkpointId The ID of the checkpoint.
+     * @return The sealed race, or null if the checkpoint's race is not sealed.
+     */
+    RaceArchive getSealedRaceOfCheckpoint(int checkpointId) {
+        return sealedRacesByCheckpointId.get(checkpointId);
+    }
+
+    /**
+     * Gets every sealed race.
+     *
+     * @return A live view of the sealed races.
+     */
+    Collection<RaceArchive> getSealedRaces() {
+        return sealedRaces.values();
+    }
+
+    /**
+     * Adds a sealed race and indexes its stages and checkpoints.
+     *
+     * @param archive The sealed race.
+     */
+    void addSealedRace(RaceArchive archive) {
+        sealedRaces.put(archive.getRaceId(), archive);
+        for (int stageId : archive.getStageIds()) {
+            sealedRacesByStageId.put(stageId, archive);
+            for (int checkpointId : archive.getStageCheckpoints(stageId)) {
+                sealedRacesByCheckpointId.put(checkpointId, archive);
+            }
+        }
+    }
+
+    /**
+     * Removes a sealed race and its stages and checkpoints. The archive file is left where it is.
+     *
+     * @param archive The sealed race.
+     */
+    void removeSealedRace(RaceArchive archive) {
+        sealedRaces.remove(archive.getRaceId());
+        for (int stageId : archive.getStageIds()) {
+            sealedRacesByStageId.remove(stageId);
+            for (int checkpointId : archive.getStageCheckpoints(stageId)) {
+                sealedRacesByCheckpointId.remove(checkpointId);
+            }
+        }
+    }
+
+    /**
+     * Gets a race of the lazily loaded snapshot that has not been read.
+     *
+     * @param raceId The ID of the race.
+     * @return The unread race, or null if the race is not waiting to be read.
+     */
+    RaceSegment getUnreadRace(int raceId) {
+        return unreadRaces.get(raceId);
+    }
+
+    /**
+     * Gets the unread race a stage belongs to.
+     *
+     * @param stageId The ID of the stage.
+     * @return The unread race, or null if the stage's race is not waiting to be read.
+     */
+    RaceSegment getUnreadRaceOfStage(int stageId) {
+        return unreadRacesByStageId.get(stageId);
+    }
+
+    /**
+     * Gets the unread race a checkpoint belongs to.
+     *
+     * @param checkpointId The ID of the checkpoint.
+     * @return The unread race, or null if the checkpoint's race is not waiting to be read.
+     */
+    RaceSegment getUnreadRaceOfCheckpoint(int checkpointId) {
+        return unreadRacesByCheckpointId.get(checkpointId);
+    }
+
+    /**
+     * Gets every race of the lazily loaded snapshot that has not been read.
+     *
+     * @return A live view of the unread races.
+     */
+    Collection<RaceSegment> getUnreadRaces() {
+        return unreadRaces.values();
+    }
+
+    /**
+     * Adds a race waiting to be read from the lazily loaded snapshot and indexes its stages and
+     * checkpoints.
+     *
+     * @param segment The unread race.
+     */
+    void addUnreadRace(RaceSegment segment) {
+        unreadRaces.put(segment.getRaceId(), segment);
+        int[] stageIds = segment.getStageIds();
+        for (int s = 0; s < stageIds.length; s++) {
+            unreadRacesByStageId.put(stageIds[s], segment);
+            for (int checkpointId : segment.getCheckpointIds(s)) {
+                unreadRacesByCheckpointId.put(checkpointId, segment);
+            }
+        }
+    }
+
+    /**
+     * Removes an unread race and its stages and checkpoints.
+     *
+     * @param segment The unread race.
+     */
+    void removeUnreadRace(RaceSegment segment) {
+        unreadRaces.remove(segment.getRaceId());
+        int[] stageIds = segment.getStageIds();
+        for (int s = 0; s < stageIds.length; s++) {
+            unreadRacesByStageId.remove(stageIds[s]);
+            for (int checkpointId : segment.getCheckpointIds(s)) {
+                unreadRacesByCheckpointId.remove(checkpointId);
+            }
+        }
+    }
+
+    /**
+     * Records that an unread race has been read onto the heap unchanged, so it can be evicted.
+     * The race must already have been removed with {@link #removeUnreadRace(RaceSegment)}.
+     *
+     * @param segment The race that was read.
+     * @return The ID of the least recently used unchanged race, which must now be evicted to stay
+     *         within the limit, or -1 if none has to be.
+     */
+    int markRead(RaceSegment segment) {
+        evictableRaces.put(segment.getRaceId(), segment);
+        return evictableRaces.size() > maxEvictableRaces ? leastRecentlyUsed() : -1;
+    }
+
+    /**
+     * Marks an unchanged race as the most recently used, so it is the last to be evicted. Races
+     * that are not evictable are ignored.
+     *
+     * @param raceId The ID of a race held on the heap.
+     */
+    void markUsed(int raceId) {
+        if (!evictableRaces.isEmpty()) {
+            evictableRaces.get(raceId);
+        }
+    }
+
+    /**
+     * Stops a race from being evicted because it is about to be changed, so that the heap holds
+     * the only up-to-date copy of it.
+     *
+     * @param raceId The ID of a race held on the heap.
+     */
+    void keep(int raceId) {
+        evictableRaces.remove(raceId);
+    }
+
+    /**
+     * Gets the unchanged race that was used least recently.
+     *
+     * @return Its race ID, or -1 if no race can be evicted.
+     */
+    int leastRecentlyUsed() {
+        Iterator<Integer> raceIds = evictableRaces.keySet().iterator();
+        return raceIds.hasNext() ? raceIds.next() : -1;
+    }
+
+    /**
+     * Stops tracking an unchanged race because it is being evicted.
+     *
+     * @param raceId The ID of an evictable race.
+     * @return Where the race is in the lazily loaded snapshot.
+     */
+    RaceSegment removeEvictable(int raceId) {
+        return evictableRaces.remove(raceId);
+    }
+}
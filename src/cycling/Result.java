@@ -2,7 +2,7 @@ package cycling;
 
 import java.time.LocalTime;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * Represents the result of a rider in a race, storing stage times, total time, and points.
@@ -12,8 +12,8 @@ import java.util.HashMap;
  */
 public class Result implements Comparable <Result>, Serializable {
 
-    /** The sum of adjusted elapsed times across all stages */
-    private LocalTime totalAdjustedElapsedTime = LocalTime.MIN;
+    /** The sum of adjusted elapsed times across all stages, in nanoseconds */
+    private long totalAdjustedElapsedTime = 0;
     /** Unique identifier for the rider */
     private final int riderId;
     /** Total points accumulated by the rider across all stages */
@@ -22,8 +22,8 @@ public class Result implements Comparable <Result>, Serializable {
     private int mountainPoints = 0;
     /** Total sprint classification points accumulated by the rider */
     private int sprintPoints = 0;
-    /** Mapping of stage IDs to the rider's results in each stage */
-    private HashMap<Integer, StageResult> stageResults = new HashMap<>();
+    /** IDs of the stages the rider has a result in */
+    private HashSet<Integer> stageResults = new HashSet<>();
 
     /**
      * Constructs a Result object for a rider.
@@ -45,7 +45,8 @@ public class Result implements Comparable <Result>, Serializable {
     }
 
     /**
-     * Compares this result with another to order them by total adjusted elapsed time.
+     * Compares this result with another to order them by total adjusted elapsed time, and then
+     * by rider ID so that every result has its own position in the general classification.
      *
      * @param other The other result to compare to.
      * @return A negative integer, zero, or a positive integer as this result is less than,
@@ -53,26 +54,31 @@ public class Result implements Comparable <Result>, Serializable {
      */
     @Override
     public int compareTo(Result other) {
-        return this.totalAdjustedElapsedTime.compareTo(other.totalAdjustedElapsedTime);
+        int comparison = Long.compare(this.totalAdjustedElapsedTime, other.totalAdjustedElapsedTime);
+        if (comparison != 0) {
+            return comparison;
+        }
+        return Integer.compare(this.riderId, other.riderId);
     }
 
     /**
-     * Adds a stage result to this result.
+     * Records that the rider has a result in a stage. The times and points of the result are held
+     * by the stage, which reports them to the race as they change.
      *
      * @param stageId The ID of the stage.
-     * @param stageResult The result from the stage.
      */
-    public void addStageResult(int stageId, StageResult stageResult) {
-        stageResults.put(stageId, stageResult);
+    public void addStageResult(int stageId) {
+        stageResults.add(stageId);
     }
 
     /**
      * Removes a stage result from this result.
      *
      * @param stageId The ID of the stage.
+     * @return true if there was a result for the stage, false otherwise.
      */
-    public void removeStageResult(int stageId) {
-        stageResults.remove(stageId);
+    public boolean removeStageResult(int stageId) {
+        return stageResults.remove(stageId);
     }
 
     /**
@@ -82,39 +88,48 @@ public class Result implements Comparable <Result>, Serializable {
      * @return true if the stage has a stage result in this overall result, false otherwise
      */
     public boolean hasStageResult(int stageId) {
-        return stageResults.containsKey(stageId);
+        return stageResults.contains(stageId);
     }
 
     /**
      * Checks if this result has any stages associated with it.
      *
-     * @return true if the Result doesn't have any StageResults, false otherwise.
+     * @return true if the Result doesn't have any stage results, false otherwise.
      */
     public boolean isEmpty() {
         return stageResults.isEmpty();
     }
 
     /**
-     * Adds two LocalTime objects together.
+     * Gets the total adjusted elapsed time for the rider across all stages.
+     * This can only represent totals of less than 24 hours; see {@link #getTotalAdjustedElapsedNanos()}.
      *
-     * @param time1 The first time.
-     * @param time2 The second time.
-     * @return The sum of the two times.
+     * @return The total adjusted elapsed time for the rider across all stages.
      */
-    private LocalTime addLocalTimes(LocalTime time1, LocalTime time2) {
-        long totalNanoseconds = time1.toNanoOfDay() + time2.toNanoOfDay();
-        return LocalTime.ofNanoOfDay(totalNanoseconds);
+    public LocalTime getTotalAdjustedElapsedTime() {
+        return LocalTime.ofNanoOfDay(totalAdjustedElapsedTime);
     }
 
     /**
-     * Calculates the total adjusted elapsed time for the rider by summing up the adjusted times from all stages.
+     * Gets the total adjusted elapsed time for the rider across all stages in nanoseconds.
      *
-     * @return The total adjusted elapsed time for the rider across all stages.
+     * @return The total adjusted elapsed time in nanoseconds.
      */
-    public LocalTime getTotalAdjustedElapsedTime() {
+    public long getTotalAdjustedElapsedNanos() {
         return totalAdjustedElapsedTime;
     }
 
+    /**
+     * Adds to (or, with a negative value, subtracts from) the total adjusted elapsed time.
+     * The general classification order depends on this total, so it should only be changed
+     * through {@link Race#applyStageResultChange(int, long, int, int, int)}.
+     *
+     * @param nanos The change in adjusted elapsed time, in nanoseconds.
+     */
+    void addAdjustedElapsedTime(long nanos) {
+        this.totalAdjustedElapsedTime += nanos;
+    }
+
     /**
      * Gets the unique ID of the rider associated with this result.
      *
@@ -124,7 +139,7 @@ public class Result implements Comparable <Result>, Serializable {
         return riderId;
     }
 
-     /**
+    /**
      * Adds points to the rider's total points.
      *
      * @param points The number of points to be added.
@@ -139,7 +154,6 @@ public class Result implements Comparable <Result>, Serializable {
      * @return The total points.
      */
     public int getPoints(){
-        calculateTotalPoints();
         return points;
     }
 
@@ -148,8 +162,7 @@ public class Result implements Comparable <Result>, Serializable {
      *
      * @return The total mountain points.
      */
-    public Integer getMountainPoints() {
-        calculateMountainPoints();
+    public int getMountainPoints() {
         return mountainPoints;
     }
 
@@ -176,57 +189,14 @@ public class Result implements Comparable <Result>, Serializable {
      *
      * @return The total sprint points.
      */
-    public Integer getSprintPoints() {
-        calculateTotalPoints();
+    public int getSprintPoints() {
         return sprintPoints;
     }
 
-    /**
-     * Calculates the total points accumulated by the rider across all stages.
-     */
-    public void calculateTotalPoints(){
-        this.points = 0;
-        this.sprintPoints = 0;
-        for(StageResult result: stageResults.values()){
-            addPoints(result.getPoints());
-            addSprintPoints(result.getSprintPoints());
-        }
-    }
-
-    /**
-     * Calculates the total mountain points accumulated by the rider across all stages.
-     */
-    public void calculateMountainPoints(){
-        this.mountainPoints = 0;
-        for(StageResult result: stageResults.values()){
-            addMountainPoints(result.getMountainPoints());
-        }
-    }
-
-    /**
-     * Calculates the total adjusted elapsed time for the rider across all stages.
-     */
-    public void calculateAdjustedElapsedTime(){
-        this.totalAdjustedElapsedTime = LocalTime.MIN;
-        for (StageResult result : stageResults.values()) {
-            LocalTime adjustedElapsedTime = result.getAdjustedElapsedTime();
-            this.totalAdjustedElapsedTime = addLocalTimes(totalAdjustedElapsedTime, adjustedElapsedTime);
-        }
-    }
-
     /**
      * Clears the stageResults hash maps containing all the results for individual stages.
      */
     public void clearStageResults(){
         stageResults.clear();
     }
-    
-    /**
-     * Clears the stageResults hash maps containing all the results for individual stages.
-     */
-    public void updateResult(){
-        calculateAdjustedElapsedTime();
-        calculateTotalPoints();
-        calculateMountainPoints();
-    }
 }
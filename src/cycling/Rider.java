@@ -19,7 +19,7 @@ public class Rider implements Serializable {
     private Team team;
     /** Year of birth of the rider */
     private int yearOfBirth;
-    /** List of races in which the rider is participating */
+    /** List of races in which the rider is participating. Guarded by this rider, as riders are shared between races. */
     private ArrayList<Race> races = new ArrayList<>();
 
     /**
@@ -57,6 +57,24 @@ public class Rider implements Serializable {
         return id;
     }
 
+    /**
+     * Gets the name of the rider.
+     *
+     * @return The name of the rider.
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Gets the year the rider was born.
+     *
+     * @return The rider's year of birth.
+     */
+    public int getYearOfBirth(){
+        return yearOfBirth;
+    }
+
     /**
      * Gets the team to which the rider belongs.
      *
@@ -71,7 +89,7 @@ public class Rider implements Serializable {
      *
      * @param race The race the rider will be racing.
      */
-    public void addRace(Race race){
+    public synchronized void addRace(Race race){
         races.add(race);
     }
 
@@ -80,7 +98,7 @@ public class Rider implements Serializable {
      *
      * @param race The race the rider will no longer be racing.
      */
-    public void removeRace(Race race){
+    public synchronized void removeRace(Race race){
         races.remove(race);
     }
 
@@ -90,7 +108,7 @@ public class Rider implements Serializable {
      * @param race The race in question.
      * @return true if the rider is competing in the race, false otherwise.
      */
-    public boolean ridersInRace(Race race){
+    public synchronized boolean ridersInRace(Race race){
         return races.contains(race);
     }
 
@@ -0,0 +1,143 @@
+package cycling;
+
+import java.time.Duration;
+
+/**
+ * Where one rider stands in a stage or race: their rank and adjusted elapsed time, how far they
+ * are behind the leader, and their points and mountain points with their rank in the points and
+ * mountain classifications. It answers "where is this rider?" without copying the whole
+ * classification.
+ * <p>
+ * A stage only has a ranking by time, so for a stage the points and mountain classification
+ * ranks are 0.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+public final class RiderStanding {
+    /** The ID of the rider. */
+    private final int riderId;
+    /** The rider's rank by time, starting from 1. */
+    private final int rank;
+    /** The rider's adjusted elapsed time, in nanoseconds. */
+    private final long adjustedElapsedTime;
+    /** How far the rider's time is behind the leader's, in nanoseconds. */
+    private final long gapToLeader;
+    /** The rider's points, including sprint points. */
+    private final int points;
+    /** The rider's rank in the points classification, or 0 for a stage. */
+    private final int pointsRank;
+    /** The rider's mountain points. */
+    private final int mountainPoints;
+    /** The rider's rank in the mountain classification, or 0 for a stage. */
+    private final int mountainPointsRank;
+
+    /**
+     * Creates a rider's standing.
+     *
+     * @param riderId The ID of the rider.
+     * @param rank The rider's rank by time, starting from 1.
+     * @param adjustedElapsedTime The rider's adjusted elapsed time, in nanoseconds.
+     * @param gapToLeader How far the rider's time is behind the leader's, in nanoseconds.
+     * @param points The rider's points, including sprint points.
+     * @param pointsRank The rider's rank in the points classification, or 0 for a stage.
+     * @param mountainPoints The rider's mountain points.
+     * @param mountainPointsRank The rider's rank in the mountain classification, or 0 for a stage.
+     */
+    RiderStanding(int riderId, int rank, long adjustedElapsedTime, long gapToLeader, int points, int pointsRank,
+            int mountainPoints, int mountainPointsRank) {
+        this.riderId = riderId;
+        this.rank = rank;
+        this.adjustedElapsedTime = adjustedElapsedTime;
+        this.gapToLeader = gapToLeader;
+        this.points = points;
+        this.pointsRank = pointsRank;
+        this.mountainPoints = mountainPoints;
+        this.mountainPointsRank = mountainPointsRank;
+    }
+
+    /**
+     * Gets the ID of the rider.
+     *
+     * @return The rider ID.
+     */
+    public int getRiderId() {
+        return riderId;
+    }
+
+    /**
+     * Gets the rider's rank in the stage ranking or general classification.
+     *
+     * @return The rank, starting from 1.
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * Gets the rider's adjusted elapsed time, which for a race is the total over every stage.
+     *
+     * @return The adjusted elapsed time.
+     */
+    public Duration getAdjustedElapsedTime() {
+        return Duration.ofNanos(adjustedElapsedTime);
+    }
+
+    /**
+     * Gets how far the rider is behind the leader.
+     *
+     * @return The difference between the rider's adjusted elapsed time and the leader's, which is
+     *         zero for the leader.
+     */
+    public Duration getGapToLeader() {
+        return Duration.ofNanos(gapToLeader);
+    }
+
+    /**
+     * Gets the rider's points, including sprint points.
+     *
+     * @return The points.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Gets the rider's rank in the points classification.
+     *
+     * @return The rank, starting from 1, or 0 for a stage.
+     */
+    public int getPointsRank() {
+        return pointsRank;
+    }
+
+    /**
+     * Gets the rider's mountain points.
+     *
+     * @return The mountain points.
+     */
+    public int getMountainPoints() {
+        return mountainPoints;
+    }
+
+    /**
+     * Gets the rider's rank in the mountain classification.
+     *
+     * @return The rank, starting from 1, or 0 for a stage.
+     */
+    public int getMountainPointsRank() {
+        return mountainPointsRank;
+    }
+
+    /**
+     * Returns a string with the rider's rank, time, gap and points.
+     *
+     * @return A string representation of the standing.
+     */
+    @Override
+    public String toString() {
+        return "Rider " + riderId + " rank=" + rank + " time=" + getAdjustedElapsedTime() + " gap=" + getGapToLeader()
+                + " points=" + points + " (rank " + pointsRank + ") mountain points=" + mountainPoints
+                + " (rank " + mountainPointsRank + ")";
+    }
+}
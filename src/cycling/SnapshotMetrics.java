@@ -0,0 +1,99 @@
+package cycling;
+
+import java.time.Duration;
+
+/**
+ * How a snapshot saved in the background went: how long the portal was held still while its
+ * image was taken, how long the image took to write, and how big the file is. Writers are only
+ * held off for the capture time, so it is the figure to watch as the portal grows.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+public final class SnapshotMetrics {
+    /** The path and name of the file written. */
+    private final String filename;
+    /** The time taken to take the image, including waiting for the calls already running. */
+    private final Duration captureTime;
+    /** The time taken to write the image, from the start of writing. */
+    private final Duration writeTime;
+    /** The time between the snapshot being asked for and the file being written. */
+    private final Duration totalTime;
+    /** The size of the file written, in bytes. */
+    private final long bytesWritten;
+
+    /**
+     * Creates the metrics of a finished snapshot.
+     *
+     * @param filename The path and name of the file written.
+     * @param captureTime The time taken to take the image.
+     * @param writeTime The time taken to write the image.
+     * @param totalTime The time from the snapshot being asked for to the file being written.
+     * @param bytesWritten The size of the file written, in bytes.
+     */
+    SnapshotMetrics(String filename, Duration captureTime, Duration writeTime, Duration totalTime, long bytesWritten) {
+        this.filename = filename;
+        this.captureTime = captureTime;
+        this.writeTime = writeTime;
+        this.totalTime = totalTime;
+        this.bytesWritten = bytesWritten;
+    }
+
+    /**
+     * Gets the file the snapshot was written to.
+     *
+     * @return The path and name of the file.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Gets the time taken to take the image of the portal, during which no other call could
+     * change or query it. It includes waiting for the calls that were running to finish.
+     *
+     * @return The capture time.
+     */
+    public Duration getCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * Gets the time taken to encode and write the image, during which the portal was free.
+     *
+     * @return The write time.
+     */
+    public Duration getWriteTime() {
+        return writeTime;
+    }
+
+    /**
+     * Gets the time from the snapshot being asked for to the file being written, including any
+     * time spent waiting behind earlier snapshots.
+     *
+     * @return The total time.
+     */
+    public Duration getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Gets the size of the file written.
+     *
+     * @return The size in bytes.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Describes the metrics.
+     *
+     * @return A string naming the file and giving its size and times.
+     */
+    @Override
+    public String toString() {
+        return "SnapshotMetrics[filename=" + filename + ", bytesWritten=" + bytesWritten + ", captureTime=" + captureTime
+                + ", writeTime=" + writeTime + ", totalTime=" + totalTime + "]";
+    }
+}
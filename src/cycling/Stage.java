@@ -3,9 +3,7 @@ package cycling;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 
@@ -20,6 +18,16 @@ import java.util.HashMap;
  */
 
 public class Stage implements Serializable {
+    /** The number of nanoseconds in one second. */
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    /** The stage points awarded by finishing position in a flat stage. */
+    private static final int[] FLAT_POINTS = {50, 30, 20, 18, 16, 14, 12, 10, 8, 7, 6, 5, 4, 3, 2};
+    /** The stage points awarded by finishing position in a medium mountain stage. */
+    private static final int[] MEDIUM_MOUNTAIN_POINTS = {30, 25, 22, 19, 17, 15, 13, 11, 9, 7, 6, 5, 4, 3, 2};
+    /** The stage points awarded by finishing position in a high mountain stage or time trial. */
+    private static final int[] HIGH_MOUNTAIN_AND_TT_POINTS = {20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+    /** The stage points for a type of stage that awards none. */
+    private static final int[] NO_POINTS = new int[0];
     /** Unique identifier for the stage. */
     private final int id;
     /** Name of the stage. */
@@ -36,14 +44,20 @@ public class Stage implements Serializable {
     private StageType stageType;
     /** Collection of checkpoints associated with this stage, mapped by their Id. */
     private HashMap<Integer, Checkpoint> checkpoints = new HashMap<>();
+    /**
+     * The same checkpoints ordered by location, and by ID at the same location, which is the
+     * order of their times in each result. It is kept up to date as checkpoints are added and
+     * removed, replacing the array rather than changing it, and is null until first needed.
+     */
+    private transient volatile Checkpoint[] checkpointsByLocation;
     /** Current state of the stage (e.g. under construction, waiting for results). */
     private StageState stageState;
-    /** Flag indicating if the times have been adjusted for the stage. */
-    private boolean timesAdjusted;
-    /** Flag indicating if the points for checkpoints have been updated. */
-    private boolean checkpointPointsUpdated;
-    /** Results for riders in this stage, mapped by rider ID. */
-    private HashMap<Integer, StageResult> riderResults = new HashMap<>();
+    /** Keeps the sprint and mountain points of the results up to date, created when first needed. */
+    private transient CheckpointPointsEngine checkpointPoints;
+    /** Results for riders in this stage, stored column by column and kept in ranked order. */
+    private StageResultTable riderResults = new StageResultTable();
+    /** The standings built by {@link #getStandings()} since the results last changed, or null if they have changed since. */
+    private transient volatile Standings standings;
 
     /**
      * Constructs a stage with specified attributes.
@@ -64,8 +78,6 @@ public class Stage implements Serializable {
         this.length = length;
         this.startTime = startTime;
         this.stageType = stageType;
-        this.timesAdjusted = true; //this is set to false when the adjusted rider elapsed times need to be updated
-        this.checkpointPointsUpdated = true; //this is set to false when the adjusted rider elapsed times need to be updated
         this.stageState = StageState.CONSTRUCTING;
     }
 
@@ -106,6 +118,24 @@ public class Stage implements Serializable {
         return length;
     }
 
+    /**
+     * Gets the description of the stage.
+     *
+     * @return The description of the stage.
+     */
+    public String getDescription(){
+        return description;
+    }
+
+    /**
+     * Gets the date and time the stage starts.
+     *
+     * @return The start time of the stage.
+     */
+    public LocalDateTime getStartTime(){
+        return startTime;
+    }
+
     /**
      * Adds a checkpoint to the stage.
      *
@@ -113,7 +143,21 @@ public class Stage implements Serializable {
      * @param checkpoint The checkpoint object to add to the stage.
      */
     public void addCheckpointToStage(int checkpointId, Checkpoint checkpoint) {
-        this.checkpoints.put(checkpointId, checkpoint);
+        Checkpoint replaced = this.checkpoints.put(checkpointId, checkpoint);
+        Checkpoint[] ordered = checkpointsByLocation;
+        if (ordered == null || replaced != null) {
+            checkpointsByLocation = null;
+            return;
+        }
+        int index = 0;
+        while (index < ordered.length && comesBefore(ordered[index], checkpoint)) {
+            index++;
+        }
+        Checkpoint[] added = new Checkpoint[ordered.length + 1];
+        System.arraycopy(ordered, 0, added, 0, index);
+        added[index] = checkpoint;
+        System.arraycopy(ordered, index, added, index + 1, ordered.length - index);
+        checkpointsByLocation = added;
     }
 
     /**
@@ -157,35 +201,67 @@ public class Stage implements Serializable {
      * @param checkpointId The ID of the checkpoint to remove.
      */
     public void removeCheckpointFromStage(int checkpointId) {
-        this.checkpoints.remove(checkpointId);
+        Checkpoint removed = this.checkpoints.remove(checkpointId);
+        Checkpoint[] ordered = checkpointsByLocation;
+        if (ordered == null || removed == null) {
+            return;
+        }
+        Checkpoint[] kept = new Checkpoint[ordered.length - 1];
+        int index = 0;
+        for (Checkpoint checkpoint : ordered) {
+            if (checkpoint != removed) {
+                kept[index++] = checkpoint;
+            }
+        }
+        checkpointsByLocation = kept;
+    }
+
+    /**
+     * Gets the stage's checkpoints in the order riders reach them, which is also the order of
+     * their times in each result, after the start time.
+     *
+     * @return The checkpoints ordered by location, and by ID at the same location. The array
+     *         must not be changed.
+     */
+    public Checkpoint[] getCheckpointsByLocation() {
+        Checkpoint[] ordered = checkpointsByLocation;
+        if (ordered == null) {
+            ordered = checkpoints.values().toArray(new Checkpoint[0]);
+            Arrays.sort(ordered, new Comparator<Checkpoint>() {
+                @Override
+                public int compare(Checkpoint c1, Checkpoint c2) {
+                    return comesBefore(c1, c2) ? -1 : comesBefore(c2, c1) ? 1 : 0;
+                }
+            });
+            checkpointsByLocation = ordered;
+        }
+        return ordered;
+    }
+
+    /**
+     * Checks if one checkpoint comes before another in the stage.
+     *
+     * @param checkpoint The checkpoint being compared.
+     * @param other The checkpoint being compared against.
+     * @return true if the checkpoint is nearer the start, or at the same location with a lower ID.
+     */
+    private static boolean comesBefore(Checkpoint checkpoint, Checkpoint other) {
+        if (checkpoint.getLocation() != other.getLocation()) {
+            return checkpoint.getLocation() < other.getLocation();
+        }
+        return checkpoint.getId() < other.getId();
     }
 
     /**
-     * Orders and returns the checkpoint IDs based on their location within the stage.
+     * Returns the checkpoint IDs ordered by their location within the stage.
      *
      * @return An array of checkpoint IDs, ordered by their location.
      */
     public int[] getOrderedCheckpointIds() {
-        int[] checkpointIds = new int[checkpoints.size()];
-        int index = 0;
-        //creates an array of the checkpoint ids
-        for (Integer checkpointId : checkpoints.keySet()) {
-            checkpointIds[index++] = checkpointId;
-        }
-        //orders the array by the location
-        for (int i = 0; i < checkpointIds.length - 1; i++) {
-            int minIndex = i;
-            for (int j = i + 1; j < checkpointIds.length; j++) {
-                if (checkpoints.get(checkpointIds[j]).getLocation() < checkpoints.get(checkpointIds[minIndex]).getLocation()) {
-                    minIndex = j;
-                }
-            }
-            //if the location that is stored in i is greater than the location of the checkpoint in j then swap them around
-            if (minIndex != i) {
-                int temp = checkpointIds[i];
-                checkpointIds[i] = checkpointIds[minIndex];
-                checkpointIds[minIndex] = temp;
-            }
+        Checkpoint[] ordered = getCheckpointsByLocation();
+        int[] checkpointIds = new int[ordered.length];
+        for (int i = 0; i < ordered.length; i++) {
+            checkpointIds[i] = ordered[i].getId();
         }
         return checkpointIds;
     }
@@ -203,82 +279,147 @@ public class Stage implements Serializable {
      * Records the result of a rider for this stage.
      *
      * @param riderId The ID of the rider whose result is being recorded.
-     * @param results The results object containing the rider's times and rankings.
+     * @param checkpointTimes The rider's times at each checkpoint, including the start and finish.
+     */
+    public void addStageResult(int riderId, LocalTime... checkpointTimes){
+        addStageResult(riderId, toNanosOfDay(checkpointTimes));
+    }
+
+    /**
+     * Converts checkpoint times to nanoseconds of the day, the form results are stored in.
+     *
+     * @param checkpointTimes The times, any of which may be null if not recorded.
+     * @return The times in nanoseconds of the day, with {@link StageResultTable#NO_TIME} in place of null.
+     */
+    public static long[] toNanosOfDay(LocalTime[] checkpointTimes){
+        long [] nanos = new long[checkpointTimes.length];
+        for (int i = 0; i < checkpointTimes.length; i++) {
+            nanos[i] = checkpointTimes[i] == null ? StageResultTable.NO_TIME : checkpointTimes[i].toNanoOfDay();
+        }
+        return nanos;
+    }
+
+    /**
+     * Records the result of a rider for this stage.
+     *
+     * @param riderId The ID of the rider whose result is being recorded.
+     * @param checkpointTimes The rider's times at each checkpoint, including the start and finish,
+     *                        in nanoseconds of the day.
+     */
+    public void addStageResult(int riderId, long[] checkpointTimes){
+        //stores the rider's result in ranked order
+        int rank = riderResults.insert(riderId, checkpointTimes);
+        assert riderResults.slotOf(riderId) != -1 : "Results for rider with ID " + riderId + " were not successfully added to the stage.";
+        repairRanking(rank, rank);
+        pointsEngine().resultAdded(riderId);
+        discardStandings();
+    }
+
+    /**
+     * Records the results of many riders for this stage at once. The results are merged into
+     * the ranking together, and the stage points and adjusted elapsed times are then repaired
+     * in a single pass, rather than once per rider. The checkpoint points are updated rider by
+     * rider for a few results, and worked out again for every checkpoint in one pass for many.
+     *
+     * @param riderIds The IDs of the riders, none of whom may already have a result in this stage.
+     * @param checkpointTimes The times of each rider at each checkpoint, including the start and
+     *                        finish, in nanoseconds of the day.
+     */
+    public void addStageResults(int[] riderIds, long[][] checkpointTimes){
+        if (riderIds.length == 0) {
+            return;
+        }
+        int first = riderResults.insertAll(riderIds, checkpointTimes);
+        //new results may be spread all through the ranking, so every position after the first is repaired
+        repairRanking(first, riderResults.size() - 1);
+        CheckpointPointsEngine engine = pointsEngine();
+        if (riderIds.length > riderResults.size() / 8) {
+            engine.recomputeAll();
+        } else {
+            for (int riderId : riderIds) {
+                engine.resultAdded(riderId);
+            }
+        }
+        discardStandings();
+    }
+
+    /**
+     * Gets the table holding the results of this stage. The table is only for the classes of
+     * this package that keep the stage's rankings and points up to date; changing it from
+     * anywhere else would break them.
+     *
+     * @return The stage's result table.
      */
-    public void addStageResult(int riderId, StageResult results){
-        //stores the rider id with their results
-        riderResults.put(riderId, results);
-        assert riderResults.containsKey(riderId) : "Results for rider with ID " + riderId + " were not successfully added to the stage.";
-        timesAdjusted = false;
-        checkpointPointsUpdated = false;
+    StageResultTable getResults(){
+        return riderResults;
     }
 
     /**
      * Retrieves the results for a specified rider in this stage.
      *
      * @param riderId The ID of the rider whose results are requested.
-     * @return An array of LocalTime objects representing the rider's times at checkpoints.
+     * @return An array of LocalTime objects representing the rider's times at checkpoints, or an
+     *         empty array if the rider has no result in this stage.
      */
     public LocalTime [] getRiderResults(int riderId){
-        if(!timesAdjusted){
-            adjustRiderElapsedTimes();
-        }
         //get the results for the specific rider
-        StageResult results = riderResults.get(riderId);
-        LocalTime [] checkpointTimes = results.getCheckpointTimes();
+        int slot = riderResults.slotOf(riderId);
+        if (slot == -1) {
+            return new LocalTime[0];
+        }
         //create a new array for the result times
-        LocalTime [] resultTimes = new LocalTime[checkpointTimes.length-1];
-        //copy the contents of the checkpointTimes array
-        System.arraycopy(checkpointTimes, 1, resultTimes, 0, checkpointTimes.length - 1);
+        LocalTime [] resultTimes = new LocalTime[riderResults.getTimesPerResult()-1];
+        //copy the intermediate checkpoint times, skipping the start time
+        for (int i = 0; i < resultTimes.length - 1; i++) {
+            long nanos = riderResults.getCheckpointTime(slot, i + 1);
+            resultTimes[i] = nanos == StageResultTable.NO_TIME ? null : LocalTime.ofNanoOfDay(nanos);
+        }
         //add the elapsed time to the end
-        resultTimes[resultTimes.length-1] = results.getElapsedTime();
+        resultTimes[resultTimes.length-1] = LocalTime.ofNanoOfDay(riderResults.getElapsedTime(slot));
         return resultTimes;
     }
 
     /**
-     * Sorts and returns the list of rider results based on elapsed times.
+     * Repairs the stage points and adjusted elapsed times after results have been inserted into
+     * or removed from the ranked results between the given positions. Results before the first
+     * position are unaffected. Stage points only change within the points-scoring positions, and
+     * the adjusted time of a result only depends on the result ahead of it, so once past the last
+     * changed position the repair stops as soon as an adjusted time comes out unchanged.
      *
-     * @return A sorted list of StageResults according to elapsed time.
-     */
-    public ArrayList<StageResult> getSortedListOfElapsedTimes() {
-        ArrayList<StageResult> riderRanksByElapsedTime = new ArrayList<>(riderResults.values());
-        Collections.sort(riderRanksByElapsedTime);
-        return riderRanksByElapsedTime;
-    }
-
-    /**
-     * Adjusts the elapsed times for all riders, considering various race conditions.
+     * @param position The first position in the ranked results where a change happened.
+     * @param lastChangedPosition The last position where a change happened.
      */
-    public void adjustRiderElapsedTimes() {
-        //this if statement means the method will only be called if the times have been adjusted since the last call
-        if(!timesAdjusted){
-            ArrayList<StageResult> sortedElapsedTimes = getSortedListOfElapsedTimes();
-            int [] pointsDistribution = getPointsDistributionByStageType();
-            if (!sortedElapsedTimes.isEmpty()) {
-                sortedElapsedTimes.get(0).setAdjustedElapsedTime(sortedElapsedTimes.get(0).getElapsedTime());
-                sortedElapsedTimes.get(0).setRank(1);
-                sortedElapsedTimes.get(0).setPoints(pointsDistribution[0]);
+    private void repairRanking(int position, int lastChangedPosition) {
+        int [] pointsDistribution = pointsDistributionOf(stageType);
+        //the result pushed out of (or pulled into) the last scoring position is included, and when
+        //several results changed at once, scoring results may have been pushed as far as the last change
+        int lastAffected = Math.max(pointsDistribution.length, lastChangedPosition);
+        for (int i = position; i < riderResults.size() && i <= lastAffected; i++) {
+            int slot = riderResults.slotAtPosition(i);
+            int points = i < pointsDistribution.length ? pointsDistribution[i] : 0;
+            if (points != riderResults.getPoints(slot)) {
+                race.applyStageResultChange(riderResults.getRiderId(slot), 0, points - riderResults.getPoints(slot), 0, 0);
+                riderResults.setPoints(slot, points);
             }
-            for (int i = 1; i < sortedElapsedTimes.size(); i++) {
-                StageResult previousResult = sortedElapsedTimes.get(i - 1);
-                StageResult currentResult = sortedElapsedTimes.get(i);
-                LocalTime previousElapsedTime = previousResult.getElapsedTime();
-                LocalTime currentElapsedTime = currentResult.getElapsedTime();
-                long secondsBetween = ChronoUnit.SECONDS.between(previousElapsedTime, currentElapsedTime);
-                currentResult.setRank(i+1);
-                if(i < pointsDistribution.length){
-                    currentResult.setPoints(pointsDistribution[i]);
-                }
-                else{
-                    currentResult.setPoints(0);
-                }
-                if (secondsBetween < 1) {
-                    currentResult.setAdjustedElapsedTime(previousResult.getAdjustedElapsedTime());
-                } else {
-                    currentResult.setAdjustedElapsedTime(currentElapsedTime);
+        }
+        for (int i = position; i < riderResults.size(); i++) {
+            int slot = riderResults.slotAtPosition(i);
+            long currentElapsedTime = riderResults.getElapsedTime(slot);
+            long adjustedElapsedTime = currentElapsedTime;
+            if (i > 0) {
+                int previousSlot = riderResults.slotAtPosition(i - 1);
+                //riders finishing less than a second behind the rider ahead are given the same time
+                if (currentElapsedTime - riderResults.getElapsedTime(previousSlot) < NANOS_PER_SECOND) {
+                    adjustedElapsedTime = riderResults.getAdjustedElapsedTime(previousSlot);
                 }
             }
-            timesAdjusted = true; // resets timesAdjusted to be true until a new result is added
+            if (i > lastChangedPosition && adjustedElapsedTime == riderResults.getAdjustedElapsedTime(slot)) {
+                //every result after this one is ranked behind the same results as before
+                break;
+            }
+            race.applyStageResultChange(riderResults.getRiderId(slot),
+                    adjustedElapsedTime - riderResults.getAdjustedElapsedTime(slot), 0, 0, 0);
+            riderResults.setAdjustedElapsedTime(slot, adjustedElapsedTime);
         }
     }
 
@@ -286,12 +427,15 @@ public class Stage implements Serializable {
      * Retrieves the adjusted elapsed time for a specific rider in this stage.
      *
      * @param riderId The ID of the rider.
-     * @return The adjusted elapsed time for the rider.
+     * @return The adjusted elapsed time for the rider, or null if the rider has no result in this stage.
      */
     public LocalTime getRiderAdjustedElapsedTime(int riderId){
         //get the results for the specific rider
-        StageResult results = riderResults.get(riderId);
-        return results.getAdjustedElapsedTime();
+        int slot = riderResults.slotOf(riderId);
+        if (slot == -1) {
+            return null;
+        }
+        return LocalTime.ofNanoOfDay(riderResults.getAdjustedElapsedTime(slot));
     }
 
     /**
@@ -300,9 +444,17 @@ public class Stage implements Serializable {
      * @param riderId The ID of the rider whose results are to be removed.
      */
     public void removeRiderResults(int riderId){
-        riderResults.remove(riderId);
-        timesAdjusted = false;
-        checkpointPointsUpdated = false;
+        int slot = riderResults.slotOf(riderId);
+        if (slot == -1) {
+            return;
+        }
+        //take this result's contribution off the rider's race totals before re-ranking the others
+        race.applyStageResultChange(riderId, -riderResults.getAdjustedElapsedTime(slot), -riderResults.getPoints(slot),
+                -riderResults.getSprintPoints(slot), -riderResults.getMountainPoints(slot));
+        int rank = riderResults.remove(riderId);
+        repairRanking(rank, rank);
+        pointsEngine().resultRemoved(riderId);
+        discardStandings();
     }
 
     /**
@@ -311,54 +463,60 @@ public class Stage implements Serializable {
      * @return An array of rider IDs in the order of their rank.
      */
     public int [] getRiderRanks(){
-        if(!checkpointPointsUpdated){
-            assignCheckpointPoints();
-        }
-        if(!timesAdjusted){
-            adjustRiderElapsedTimes();
-        }
         int [] ranks = new int [riderResults.size()];
-        for(StageResult result : riderResults.values()){
-            int riderRank = result.getRank();
-            ranks[riderRank-1] = result.getRiderId();
+        for(int i = 0; i < ranks.length; i++){
+            ranks[i] = riderResults.getRiderId(riderResults.slotAtPosition(i));
         }
         return ranks;
     }
 
+    /**
+     * Gets the first riders in the stage ranking. The results are kept in ranked order, so only
+     * those riders are read.
+     *
+     * @param limit The number of riders asked for.
+     * @return An array of at most limit rider IDs in the order of their rank.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    public int [] getTopRiderRanks(int limit){
+        int [] top = new int [TopSelection.count(riderResults.size(), limit)];
+        for(int i = 0; i < top.length; i++){
+            top[i] = riderResults.getRiderId(riderResults.slotAtPosition(i));
+        }
+        return top;
+    }
+
     /**
      * Retrieves the adjusted elapsed times for riders in the stage, sorted by rank.
      *
      * @return An array of LocalTime objects representing the sorted adjusted times.
      */
     public LocalTime [] getRankedAdjustedElapsedTimes(){
-        if(!timesAdjusted){
-            adjustRiderElapsedTimes();
-        }
-        int[] riderRanks = getRiderRanks();
-        LocalTime [] rankedAdjustedElapsedTimes = new LocalTime [riderRanks.length];
-        for(int i = 0; i < riderRanks.length; i++){
-            rankedAdjustedElapsedTimes[i] = riderResults.get(riderRanks[i]).getAdjustedElapsedTime();
+        LocalTime [] rankedAdjustedElapsedTimes = new LocalTime [riderResults.size()];
+        for(int i = 0; i < rankedAdjustedElapsedTimes.length; i++){
+            rankedAdjustedElapsedTimes[i] = LocalTime.ofNanoOfDay(riderResults.getAdjustedElapsedTime(riderResults.slotAtPosition(i)));
         }
         return rankedAdjustedElapsedTimes;
     }
 
     /**
-     * Calculates the points distribution based on the type of the stage.
+     * Gets the points distribution for a type of stage. The returned array is shared and must
+     * not be modified.
      *
+     * @param type The type of the stage.
      * @return An array of points corresponding to stage rankings.
      */
-    private int[] getPointsDistributionByStageType() {
-        switch (stageType) {
+    private static int[] pointsDistributionOf(StageType type) {
+        switch (type) {
             case FLAT:
-                return new int[]{50, 30, 20, 18, 16, 14, 12, 10, 8, 7, 6, 5, 4, 3, 2};
+                return FLAT_POINTS;
             case MEDIUM_MOUNTAIN:
-                return new int[]{30, 25, 22, 19, 17, 15, 13, 11, 9, 7, 6, 5, 4, 3, 2};
+                return MEDIUM_MOUNTAIN_POINTS;
             case HIGH_MOUNTAIN:
-                return new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
             case TT:
-                return new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+                return HIGH_MOUNTAIN_AND_TT_POINTS;
             default:
-                return new int[0];
+                return NO_POINTS;
         }
     }
 
@@ -368,75 +526,129 @@ public class Stage implements Serializable {
      * @return An array of points corresponding to each rider's total in the stage.
      */
     public int[] getOrderedPoints(){
-        if(!checkpointPointsUpdated){
-            assignCheckpointPoints();
-        }
-        if(!timesAdjusted){
-            adjustRiderElapsedTimes();
-        }
         int[] orderedPoints = new int[riderResults.size()];
-        for(StageResult result: riderResults.values()){
-            int rank = result.getRank();
-            int points = result.getPoints() + result.getSprintPoints();
-            orderedPoints[rank-1] = points;
+        for(int i = 0; i < orderedPoints.length; i++){
+            int slot = riderResults.slotAtPosition(i);
+            orderedPoints[i] = riderResults.getPoints(slot) + riderResults.getSprintPoints(slot);
         }
         return orderedPoints;
     }
 
     /**
-     * Determines the points distribution for different types of checkpoints.
+     * Copies one page of the stage ranking, with each rider's adjusted elapsed time, points and
+     * mountain points. The results are kept in ranked order, so only the riders in the page are read.
      *
-     * @param type The type of checkpoint (e.g., C4, C3, C2, C1, HC, SPRINT).
-     * @return An array representing the points distribution for the specified checkpoint type.
+     * @param offset The position of the first rider in the page, starting from 0.
+     * @param limit The most riders the page can hold.
+     * @return The page, which is empty if the offset is past the last rider.
+     * @throws IllegalArgumentException If the offset or limit is negative.
      */
-    private int[] getCheckpointPointsDistributionByType(CheckpointType type) {
-        switch (type) {
-            case C4:
-                return new int[]{1};
-            case C3:
-                return new int[]{2, 1};
-            case C2:
-                return new int[]{5, 3 , 2 , 1};
-            case C1:
-                return new int[]{10, 8, 6, 4, 2, 1};
-            case HC:
-                return new int[]{20, 15, 12, 10, 8, 6, 4, 2};
-            case SPRINT:
-                return new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
-            default:
-                return new int[0];
+    public Standings getStandingsPage(int offset, int limit){
+        int size = Standings.pageSize(riderResults.size(), offset, limit);
+        int[] riderIds = new int[size];
+        long[] adjustedElapsedTimes = new long[size];
+        int[] points = new int[size];
+        int[] mountainPoints = new int[size];
+        for(int i = 0; i < size; i++){
+            int slot = riderResults.slotAtPosition(offset + i);
+            riderIds[i] = riderResults.getRiderId(slot);
+            adjustedElapsedTimes[i] = riderResults.getAdjustedElapsedTime(slot);
+            points[i] = riderResults.getPoints(slot) + riderResults.getSprintPoints(slot);
+            mountainPoints[i] = riderResults.getMountainPoints(slot);
         }
+        return new Standings(riderIds, adjustedElapsedTimes, points, mountainPoints, offset + 1, riderResults.size());
     }
 
     /**
-     * Assigns points to riders based on their performance at checkpoints within the stage.
+     * Gets a rider's rank in the stage, found by binary search over the ranked order of the
+     * results in O(log n) time.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's rank, starting from 1, or 0 if the rider has no result in the stage.
      */
-    public void assignCheckpointPoints() {
-    int checkpointIndex = 1;
-    for (Checkpoint checkpoint : checkpoints.values()) {
-            CheckpointType checkpointType = checkpoint.getType();
-            int[] checkpointPointsDistribution = getCheckpointPointsDistributionByType(checkpointType);
-            ArrayList<StageResult> riderResultsAtCheckpoint = new ArrayList<>();
-            final int currentCheckpointIndex = checkpointIndex;
-            for (StageResult result : riderResults.values()) {
-                if (result.getCheckpointTimeAtIndex(currentCheckpointIndex)!= null) {
-                    riderResultsAtCheckpoint.add(result);
-                }
-            }
-            riderResultsAtCheckpoint.sort(Comparator.comparing(result -> result.getCheckpointTimeAtIndex(currentCheckpointIndex)));
-
-            // Assign points to riders based on their order
-            for (int i = 0; i < riderResultsAtCheckpoint.size() && i < checkpointPointsDistribution.length; i++) {
-                StageResult result = riderResultsAtCheckpoint.get(i);
-                if (checkpoint instanceof Climb) {
-                    result.addMountainPoints(checkpointPointsDistribution[i]);
-                } else if (checkpoint.getType() == CheckpointType.SPRINT) {
-                    result.addSprintPoints(checkpointPointsDistribution[i]);
-                }
-            }
-        checkpointIndex++;
+    public int getRiderRank(int riderId){
+        int slot = riderResults.slotOf(riderId);
+        return slot == -1 ? 0 : riderResults.getRank(slot);
     }
-    checkpointPointsUpdated = true;
+
+    /**
+     * Gets where a rider stands in the stage: their rank, adjusted elapsed time, gap to the
+     * leader, points and mountain points, all read from the rider's row of the results.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's standing, or null if the rider has no result in the stage.
+     */
+    public RiderStanding getRiderStanding(int riderId){
+        int slot = riderResults.slotOf(riderId);
+        if(slot == -1){
+            return null;
+        }
+        long time = riderResults.getAdjustedElapsedTime(slot);
+        long leaderTime = riderResults.getAdjustedElapsedTime(riderResults.slotAtPosition(0));
+        return new RiderStanding(riderId, riderResults.getRank(slot), time, time - leaderTime,
+                riderResults.getPoints(slot) + riderResults.getSprintPoints(slot), 0,
+                riderResults.getMountainPoints(slot), 0);
+    }
+
+    /**
+     * Gets an immutable copy of the stage ranking, with each rider's adjusted elapsed time,
+     * points and mountain points. The copy is only built the first time it is asked for after
+     * the results change, so changing a result costs nothing extra however many riders the
+     * stage has. Building it reads the results, so the caller must stop them changing meanwhile.
+     *
+     * @return The stage's standings.
+     */
+    public Standings getStandings(){
+        Standings built = standings;
+        if (built == null) {
+            built = getStandingsPage(0, riderResults.size());
+            standings = built;
+        }
+        return built;
+    }
+
+    /**
+     * Gets the standings built by {@link #getStandings()}, without building them. It reads no
+     * results, so it can be called while they are being changed.
+     *
+     * @return The standings, or null if the results have changed since they were last built.
+     */
+    public Standings getBuiltStandings(){
+        return standings;
+    }
+
+    /**
+     * This helper method discards the built standings after the results have changed, so that
+     * they are built again when next asked for.
+     */
+    private void discardStandings(){
+        standings = null;
+    }
+
+    /**
+     * Gets the engine keeping the checkpoint points up to date, creating it the first time. A
+     * new engine works out every checkpoint's points from the results already in the stage.
+     *
+     * @return The stage's points engine.
+     */
+    private CheckpointPointsEngine pointsEngine() {
+        if (checkpointPoints == null) {
+            checkpointPoints = new CheckpointPointsEngine(this);
+            checkpointPoints.recomputeAll();
+            discardStandings();
+        }
+        return checkpointPoints;
+    }
+
+    /**
+     * Works out the sprint and mountain points of every checkpoint again from the results,
+     * setting each rider's points and changing the race's totals by the difference. The points
+     * are kept up to date as results change, so this only has to be called for results whose
+     * points were stored by something else.
+     */
+    public void assignCheckpointPoints() {
+        pointsEngine().recomputeAll();
+        discardStandings();
     }
 
     /**
@@ -445,14 +657,9 @@ public class Stage implements Serializable {
      * @return An array of mountain points for each rider, ordered by their rank.
      */
     public int[] getOrderedMountainPoints(){
-        if(!checkpointPointsUpdated){
-            assignCheckpointPoints();
-        }
         int[] orderedMountainPoints = new int[riderResults.size()];
-        for(StageResult result: riderResults.values()){
-            int rank = result.getRank();
-            int mountainPoints = result.getMountainPoints();
-            orderedMountainPoints[rank-1] = mountainPoints;
+        for(int i = 0; i < orderedMountainPoints.length; i++){
+            orderedMountainPoints[i] = riderResults.getMountainPoints(riderResults.slotAtPosition(i));
         }
         return orderedMountainPoints;
     }
@@ -473,7 +680,7 @@ public class Stage implements Serializable {
      * @return True if the rider has a result, fals otherwise.
      */
     public boolean riderHasResult(int riderId){
-        return riderResults.containsKey(riderId);
+        return riderResults.slotOf(riderId) != -1;
     }
 }
 
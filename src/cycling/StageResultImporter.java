@@ -0,0 +1,514 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Imports stage results from the delimited files exported by chip-timing systems. Each line
+ * holds one result: the stage ID, the rider ID, and then the rider's times at the start, at each
+ * checkpoint and at the finish, separated by commas or tabs. Times are written as
+ * {@code HH:MM:SS} (the hours may be a single digit, and the seconds may be left out or followed
+ * by up to nine digits of fractional seconds), and any field may be wrapped in double quotes. Blank lines and lines starting with
+ * {@code #} are ignored, and so is a header line if it is the first line of the file.
+ * <p>
+ * The file is read through a fixed-size buffer and parsed byte by byte, so no line is ever
+ * turned into a String and no time goes through {@code LocalTime.parse}. Consecutive rows for
+ * the same stage are gathered into batches of at most {@link #getBatchSize()} rows and passed to
+ * {@link CyclingPortal#registerRidersResultsInStage}, so memory use stays bounded however long
+ * the file is. Files are expected to be grouped by stage; a stage split across the file is still
+ * imported, just in more batches.
+ * <p>
+ * A row the portal rejects, or a line that cannot be parsed, is counted and skipped rather than
+ * ending the import. The first {@value #MAX_REPORTED_REJECTIONS} are described in the report.
+ * An importer is not thread-safe, but a portal that is (such as ConcurrentCyclingPortalImpl) can
+ * be fed by several importers at once.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+public class StageResultImporter {
+    /** The number of rows registered together when no batch size is given. */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    /** The most rejected rows described in a report; the rest are only counted. */
+    public static final int MAX_REPORTED_REJECTIONS = 100;
+    /** The number of bytes read from the file at a time. Grown if a single line is longer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** The number of nanoseconds in a second. */
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** The portal the results are registered in. */
+    private final CyclingPortal portal;
+    /** The largest number of rows registered in one call. */
+    private final int batchSize;
+
+    /** The stage the rows in the current batch belong to. */
+    private int batchStageId;
+    /** The number of rows in the current batch. */
+    private int batchCount;
+    /** The rider ID of each row in the current batch. */
+    private int[] batchRiderIds;
+    /** The times of each row in the current batch. */
+    private LocalTime[][] batchTimes;
+    /** The line number of each row in the current batch, used to describe rejections. */
+    private long[] batchLineNumbers;
+    /** The times of the line being parsed, in nanoseconds of the day. Grown when a line has more. */
+    private long[] lineTimes = new long[8];
+    /** The index in the buffer of the next field to parse on the current line. */
+    private int cursor;
+    /** The report of the import in progress. */
+    private Report report;
+
+    /**
+     * Creates an importer that registers results in batches of {@value #DEFAULT_BATCH_SIZE} rows.
+     *
+     * @param portal The portal to register the results in.
+     */
+    public StageResultImporter(CyclingPortal portal) {
+        this(portal, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates an importer that registers results in batches of a given size.
+     *
+     * @param portal The portal to register the results in.
+     * @param batchSize The largest number of rows to register in one call.
+     * @throws IllegalArgumentException If the batch size is less than 1.
+     */
+    public StageResultImporter(CyclingPortal portal, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1 but was " + batchSize);
+        }
+        this.portal = portal;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets the largest number of rows registered in one call to the portal.
+     *
+     * @return The batch size.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Imports every result in a file.
+     *
+     * @param file The file to read.
+     * @return A report of how many rows were registered and rejected.
+     * @throws IOException If the file cannot be read.
+     */
+    public Report importFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importFrom(channel);
+        }
+    }
+
+    /**
+     * Imports every result read from a channel, until the end of its data. The channel is not
+     * closed.
+     *
+     * @param channel The channel to read.
+     * @return A report of how many rows were registered and rejected.
+     * @throws IOException If the channel cannot be read.
+     */
+    public Report importFrom(ReadableByteChannel channel) throws IOException {
+        long start = System.nanoTime();
+        report = new Report();
+        batchCount = 0;
+        batchRiderIds = new int[batchSize];
+        batchTimes = new LocalTime[batchSize][];
+        batchLineNumbers = new long[batchSize];
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long lineNumber = 0;
+        int end = 0;
+        boolean endOfData = false;
+        while (!endOfData) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                endOfData = true;
+            } else {
+                end = buffer.position();
+            }
+            //handle every complete line in the buffer, and the unterminated last line at the end of the data
+            int lineStart = 0;
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    parseLine(bytes, lineStart, i, ++lineNumber);
+                    lineStart = i + 1;
+                }
+            }
+            if (endOfData) {
+                if (lineStart < end) {
+                    parseLine(bytes, lineStart, end, ++lineNumber);
+                }
+                break;
+            }
+            //move the partial line to the front, growing the buffer if it already fills it
+            int remaining = end - lineStart;
+            if (remaining == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                buffer = ByteBuffer.wrap(bytes);
+            } else {
+                System.arraycopy(bytes, lineStart, bytes, 0, remaining);
+            }
+            buffer.clear().position(remaining);
+            end = remaining;
+        }
+        flushBatch();
+        Report finished = report;
+        finished.elapsedNanos = System.nanoTime() - start;
+        report = null;
+        batchRiderIds = null;
+        batchTimes = null;
+        batchLineNumbers = null;
+        return finished;
+    }
+
+    /**
+     * This helper method parses one line and adds it to the current batch, registering the batch
+     * first if the line belongs to another stage or the batch is full.
+     *
+     * @param bytes The buffer holding the line.
+     * @param from The index of the first byte of the line.
+     * @param to The index just past the last byte of the line, not counting the line break.
+     * @param lineNumber The line's number in the file, starting from 1.
+     */
+    private void parseLine(byte[] bytes, int from, int to, long lineNumber) {
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        int first = skipSpaces(bytes, from, to);
+        if (first == to || bytes[first] == '#') {
+            return;
+        }
+        if (lineNumber == 1 && !isDigit(bytes[first]) && bytes[first] != '"') {
+            //a header naming the columns
+            return;
+        }
+        report.rowsRead++;
+        cursor = from;
+        long stageId = parseId(bytes, to);
+        long riderId = stageId < 0 ? -1 : parseId(bytes, to);
+        if (stageId < 0 || riderId < 0) {
+            report.reject(lineNumber, "expected a stage ID and a rider ID");
+            return;
+        }
+        int numberOfTimes = 0;
+        while (cursor < to) {
+            long time = parseTime(bytes, to);
+            if (time < 0) {
+                report.reject(lineNumber, "time " + (numberOfTimes + 1) + " is not in the form HH:MM:SS");
+                return;
+            }
+            if (numberOfTimes == lineTimes.length) {
+                lineTimes = Arrays.copyOf(lineTimes, numberOfTimes * 2);
+            }
+            lineTimes[numberOfTimes++] = time;
+        }
+        LocalTime[] times = new LocalTime[numberOfTimes];
+        for (int i = 0; i < numberOfTimes; i++) {
+            times[i] = LocalTime.ofNanoOfDay(lineTimes[i]);
+        }
+        if (batchCount == batchSize || (batchCount > 0 && batchStageId != stageId)) {
+            flushBatch();
+        }
+        batchStageId = (int) stageId;
+        batchRiderIds[batchCount] = (int) riderId;
+        batchTimes[batchCount] = times;
+        batchLineNumbers[batchCount++] = lineNumber;
+    }
+
+    /**
+     * This helper method registers the rows in the current batch and records any that were
+     * rejected. If the portal rejects the whole batch, because the stage is unknown or not
+     * waiting for results, every row in it is recorded as rejected.
+     */
+    private void flushBatch() {
+        if (batchCount == 0) {
+            return;
+        }
+        int[] riderIds = batchCount == batchSize ? batchRiderIds : Arrays.copyOf(batchRiderIds, batchCount);
+        LocalTime[][] times = batchCount == batchSize ? batchTimes : Arrays.copyOf(batchTimes, batchCount);
+        Exception[] errors;
+        try {
+            errors = portal.registerRidersResultsInStage(batchStageId, riderIds, times);
+        } catch (IDNotRecognisedException | InvalidStageStateException e) {
+            errors = new Exception[batchCount];
+            Arrays.fill(errors, e);
+        }
+        for (int row = 0; row < batchCount; row++) {
+            if (errors[row] == null) {
+                report.rowsRegistered++;
+            } else {
+                report.reject(batchLineNumbers[row], errors[row].getMessage());
+            }
+        }
+        Arrays.fill(batchTimes, 0, batchCount, null);
+        batchCount = 0;
+    }
+
+    /**
+     * This helper method parses a field holding a non-negative ID, starting at the cursor, and
+     * moves the cursor past it and its delimiter.
+     *
+     * @param bytes The buffer holding the line.
+     * @param to The index just past the end of the line.
+     * @return The ID, or -1 if the field is not a whole number that fits in an int.
+     */
+    private long parseId(byte[] bytes, int to) {
+        int i = skipSpaces(bytes, cursor, to);
+        boolean quoted = i < to && bytes[i] == '"';
+        if (quoted) {
+            i++;
+        }
+        int digitsStart = i;
+        long value = 0;
+        while (i < to && isDigit(bytes[i])) {
+            value = value * 10 + (bytes[i++] - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        if (i == digitsStart) {
+            return -1;
+        }
+        i = endField(bytes, i, to, quoted);
+        if (i < 0) {
+            return -1;
+        }
+        cursor = i;
+        return value;
+    }
+
+    /**
+     * This helper method parses a field holding a time of day, starting at the cursor, and moves
+     * the cursor past it and its delimiter.
+     *
+     * @param bytes The buffer holding the line.
+     * @param to The index just past the end of the line.
+     * @return The time in nanoseconds of the day, or -1 if the field is not a valid time.
+     */
+    private long parseTime(byte[] bytes, int to) {
+        int i = skipSpaces(bytes, cursor, to);
+        boolean quoted = i < to && bytes[i] == '"';
+        if (quoted) {
+            i++;
+        }
+        //one or two digits of hours, then two digits of minutes and optionally two of seconds
+        if (i >= to || !isDigit(bytes[i])) {
+            return -1;
+        }
+        int hours = bytes[i++] - '0';
+        if (i < to && isDigit(bytes[i])) {
+            hours = hours * 10 + (bytes[i++] - '0');
+        }
+        if (i + 3 > to || bytes[i] != ':' || !isDigit(bytes[i + 1]) || !isDigit(bytes[i + 2])) {
+            return -1;
+        }
+        int minutes = (bytes[i + 1] - '0') * 10 + (bytes[i + 2] - '0');
+        i += 3;
+        int seconds = 0;
+        boolean hasSeconds = i < to && bytes[i] == ':';
+        if (hasSeconds) {
+            if (i + 3 > to || !isDigit(bytes[i + 1]) || !isDigit(bytes[i + 2])) {
+                return -1;
+            }
+            seconds = (bytes[i + 1] - '0') * 10 + (bytes[i + 2] - '0');
+            i += 3;
+        }
+        if (hours > 23 || minutes > 59 || seconds > 59) {
+            return -1;
+        }
+        long nanos = 0;
+        if (hasSeconds && i < to && bytes[i] == '.') {
+            i++;
+            long scale = NANOS_PER_SECOND;
+            int digitsStart = i;
+            while (i < to && isDigit(bytes[i])) {
+                if (i - digitsStart == 9) {
+                    return -1;
+                }
+                scale /= 10;
+                nanos += (bytes[i++] - '0') * scale;
+            }
+            if (i == digitsStart) {
+                return -1;
+            }
+        }
+        i = endField(bytes, i, to, quoted);
+        if (i < 0) {
+            return -1;
+        }
+        cursor = i;
+        return ((hours * 60L + minutes) * 60L + seconds) * NANOS_PER_SECOND + nanos;
+    }
+
+    /**
+     * This helper method checks that a field ends where its value does, allowing for a closing
+     * quote and trailing spaces, and moves past the delimiter that follows it.
+     *
+     * @param bytes The buffer holding the line.
+     * @param i The index just past the field's value.
+     * @param to The index just past the end of the line.
+     * @param quoted true if the field started with a quote, which must then be closed.
+     * @return The index of the start of the next field (or the end of the line), or -1 if
+     *         anything else follows the value.
+     */
+    private static int endField(byte[] bytes, int i, int to, boolean quoted) {
+        if (quoted) {
+            if (i >= to || bytes[i] != '"') {
+                return -1;
+            }
+            i++;
+        }
+        i = skipSpaces(bytes, i, to);
+        if (i == to) {
+            return to;
+        }
+        if (bytes[i] != ',' && bytes[i] != '\t') {
+            return -1;
+        }
+        //a trailing delimiter at the end of the line does not start another field
+        int next = skipSpaces(bytes, i + 1, to);
+        return next == to ? to : i + 1;
+    }
+
+    /**
+     * This helper method skips spaces (but not tabs, which separate fields).
+     *
+     * @param bytes The buffer holding the line.
+     * @param i The index to start from.
+     * @param to The index just past the end of the line.
+     * @return The index of the first byte that is not a space, or {@code to}.
+     */
+    private static int skipSpaces(byte[] bytes, int i, int to) {
+        while (i < to && bytes[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * This helper method checks if a byte is an ASCII digit.
+     *
+     * @param b The byte to check.
+     * @return true if the byte is between '0' and '9', false otherwise.
+     */
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * The outcome of one import: how many rows were read, registered and rejected, why the
+     * first few were rejected, and how long it took.
+     */
+    public static final class Report {
+        /** The number of result rows read, not counting blank lines, comments or the header. */
+        private long rowsRead;
+        /** The number of rows registered in the portal. */
+        private long rowsRegistered;
+        /** The number of rows that could not be parsed or were rejected by the portal. */
+        private long rowsRejected;
+        /** The time the import took, in nanoseconds. */
+        private long elapsedNanos;
+        /** Descriptions of the first rejected rows, each starting with the line number. */
+        private final ArrayList<String> rejections = new ArrayList<>();
+
+        /**
+         * Creates an empty report. Reports are only made by the importer.
+         */
+        private Report() {
+        }
+
+        /**
+         * This helper method counts a rejected row and describes it if there is room.
+         *
+         * @param lineNumber The line number of the row.
+         * @param reason Why the row was rejected.
+         */
+        private void reject(long lineNumber, String reason) {
+            rowsRejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add("Line " + lineNumber + ": " + reason);
+            }
+        }
+
+        /**
+         * Gets the number of result rows read.
+         *
+         * @return The number of rows read.
+         */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        /**
+         * Gets the number of rows registered in the portal.
+         *
+         * @return The number of rows registered.
+         */
+        public long getRowsRegistered() {
+            return rowsRegistered;
+        }
+
+        /**
+         * Gets the number of rows that were not registered.
+         *
+         * @return The number of rows rejected.
+         */
+        public long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        /**
+         * Gets the time the import took.
+         *
+         * @return The elapsed time in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the rate at which rows were read and registered.
+         *
+         * @return The number of rows read per second, or 0 if no time was measured.
+         */
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Gets descriptions of the first {@value StageResultImporter#MAX_REPORTED_REJECTIONS}
+         * rejected rows. Lines that could not be parsed are described as they are read, and rows
+         * the portal rejected when their batch is registered.
+         *
+         * @return An unmodifiable list of descriptions, each starting with the line number.
+         */
+        public List<String> getRejections() {
+            return Collections.unmodifiableList(rejections);
+        }
+
+        /**
+         * Returns a one-line summary of the import.
+         *
+         * @return A string giving the row counts and the rate.
+         */
+        @Override
+        public String toString() {
+            return String.format("%d rows read, %d registered, %d rejected in %.1f ms (%.0f rows/s)",
+                    rowsRead, rowsRegistered, rowsRejected, elapsedNanos / 1e6, getRowsPerSecond());
+        }
+    }
+}
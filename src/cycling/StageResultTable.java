@@ -0,0 +1,444 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Stores the results of every rider in a stage as columns of primitive arrays rather than
+ * one object per rider. Each result occupies a slot, and the same slot index is used in every
+ * column (rider ID, checkpoint times, elapsed time, adjusted elapsed time and points), so
+ * ranking and points calculations scan contiguous memory. Slots are kept dense: when a result
+ * is removed, the last slot is moved into its place.
+ * <p>
+ * The table also keeps the slots in ranked order (by elapsed time, then rider ID). The rank of a
+ * result is not stored: it is the result's position in that order, found by binary search, so
+ * adding or removing a result never has to rewrite the ranks of the results behind it. The
+ * ranked order itself is a single array, so adding or removing a result still shifts the
+ * entries behind it, which is O(n) but only one contiguous copy.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+public class StageResultTable implements Serializable {
+    /** Marks a checkpoint that has no time recorded for the rider. */
+    public static final long NO_TIME = -1;
+    /** The number of slots allocated when the table is first used. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The number of results in the table. */
+    private int size = 0;
+    /** The number of times recorded per result (the checkpoints plus the start and finish). */
+    private int timesPerResult = 0;
+    /** The rider ID of the result in each slot. */
+    private int[] riderIds = new int[0];
+    /** The checkpoint times of every slot, in nanoseconds of the day, stored one slot after another. */
+    private long[] checkpointTimes = new long[0];
+    /** The elapsed time of each slot, in nanoseconds. */
+    private long[] elapsedTimes = new long[0];
+    /** The adjusted elapsed time of each slot, in nanoseconds. */
+    private long[] adjustedElapsedTimes = new long[0];
+    /** The stage finishing points of each slot. */
+    private int[] points = new int[0];
+    /** The sprint points of each slot. */
+    private int[] sprintPoints = new int[0];
+    /** The mountain points of each slot. */
+    private int[] mountainPoints = new int[0];
+    /** The slots in ranked order, so rankedSlots[0] is the stage winner. */
+    private int[] rankedSlots = new int[0];
+    /** The slot holding each rider's result, mapped by rider ID. */
+    private HashMap<Integer, Integer> slotsByRiderId = new HashMap<>();
+
+    /**
+     * Gets the number of results in the table.
+     *
+     * @return The number of results.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of times recorded per result, including the start and finish.
+     *
+     * @return The number of times per result, or 0 if no result has been added yet.
+     */
+    public int getTimesPerResult() {
+        return timesPerResult;
+    }
+
+    /**
+     * Finds the slot holding a rider's result.
+     *
+     * @param riderId The ID of the rider.
+     * @return The slot of the rider's result, or -1 if the rider has no result.
+     */
+    public int slotOf(int riderId) {
+        Integer slot = slotsByRiderId.get(riderId);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Gets the slot holding the result at a position in the ranking.
+     *
+     * @param position The position in the ranking, starting from 0 for the winner.
+     * @return The slot of the result at that position.
+     */
+    public int slotAtPosition(int position) {
+        return rankedSlots[position];
+    }
+
+    /**
+     * Adds a rider's result to the table, placing it in ranked order. Finding the position is
+     * O(log n); making room for it in the ranked order shifts the results behind it, which is O(n).
+     *
+     * @param riderId The ID of the rider.
+     * @param times The times at each checkpoint, including the start and finish, in nanoseconds of the day.
+     * @return The position (starting from 0) the result was ranked at.
+     */
+    public int insert(int riderId, long[] times) {
+        if (size == 0 && timesPerResult != times.length) {
+            timesPerResult = times.length;
+            checkpointTimes = new long[riderIds.length * timesPerResult];
+        }
+        ensureCapacity(size + 1);
+        int slot = size++;
+        riderIds[slot] = riderId;
+        System.arraycopy(times, 0, checkpointTimes, slot * timesPerResult, timesPerResult);
+        elapsedTimes[slot] = times[times.length - 1] - times[0];
+        adjustedElapsedTimes[slot] = 0;
+        points[slot] = 0;
+        sprintPoints[slot] = 0;
+        mountainPoints[slot] = 0;
+        slotsByRiderId.put(riderId, slot);
+
+        int position = findPosition(elapsedTimes[slot], riderId);
+        System.arraycopy(rankedSlots, position, rankedSlots, position + 1, slot - position);
+        rankedSlots[position] = slot;
+        return position;
+    }
+
+    /**
+     * Adds many riders' results to the table at once. The new results are sorted among
+     * themselves and then merged into the ranked order in a single pass.
+     *
+     * @param newRiderIds The IDs of the riders, none of whom may already have a result.
+     * @param times The times of each rider at each checkpoint, including the start and finish, in nanoseconds of the day.
+     * @return The first position (starting from 0) whose result changed, or the size of the table if nothing was added.
+     */
+    public int insertAll(int[] newRiderIds, long[][] times) {
+        int count = newRiderIds.length;
+        if (count == 0) {
+            return size;
+        }
+        if (size == 0 && timesPerResult != times[0].length) {
+            timesPerResult = times[0].length;
+            checkpointTimes = new long[riderIds.length * timesPerResult];
+        }
+        ensureCapacity(size + count);
+        int oldSize = size;
+        int[] newSlots = new int[count];
+        for (int i = 0; i < count; i++) {
+            int slot = size++;
+            riderIds[slot] = newRiderIds[i];
+            System.arraycopy(times[i], 0, checkpointTimes, slot * timesPerResult, timesPerResult);
+            elapsedTimes[slot] = times[i][timesPerResult - 1] - times[i][0];
+            adjustedElapsedTimes[slot] = 0;
+            points[slot] = 0;
+            sprintPoints[slot] = 0;
+            mountainPoints[slot] = 0;
+            slotsByRiderId.put(newRiderIds[i], slot);
+            newSlots[i] = slot;
+        }
+        sortSlots(newSlots, new int[count], 0, count);
+
+        //merge the existing ranked slots with the sorted new ones
+        int[] merged = new int[rankedSlots.length];
+        int first = -1;
+        int existing = 0;
+        int added = 0;
+        for (int position = 0; position < size; position++) {
+            if (added < count && (existing == oldSize || rankedBefore(newSlots[added], rankedSlots[existing]))) {
+                if (first == -1) {
+                    first = position;
+                }
+                merged[position] = newSlots[added++];
+            } else {
+                merged[position] = rankedSlots[existing++];
+            }
+        }
+        rankedSlots = merged;
+        return first;
+    }
+
+    /**
+     * Removes a rider's result from the table. The last slot is moved into the freed slot.
+     * Closing the gap in the ranked order shifts the results behind it, which is O(n).
+     *
+     * @param riderId The ID of the rider.
+     * @return The position (starting from 0) the result was ranked at, or -1 if the rider had no result.
+     */
+    public int remove(int riderId) {
+        Integer removedSlot = slotsByRiderId.remove(riderId);
+        if (removedSlot == null) {
+            return -1;
+        }
+        int slot = removedSlot;
+        int position = positionOfSlot(slot);
+        System.arraycopy(rankedSlots, position + 1, rankedSlots, position, size - position - 1);
+        int last = --size;
+        if (slot != last) {
+            moveSlot(last, slot);
+        }
+        return position;
+    }
+
+    /**
+     * Gets the rider ID of the result in a slot.
+     *
+     * @param slot The slot.
+     * @return The rider ID.
+     */
+    public int getRiderId(int slot) {
+        return riderIds[slot];
+    }
+
+    /**
+     * Gets a checkpoint time of the result in a slot.
+     *
+     * @param slot The slot.
+     * @param index The index of the time, where 0 is the start time.
+     * @return The time in nanoseconds of the day, or {@link #NO_TIME}.
+     */
+    public long getCheckpointTime(int slot, int index) {
+        return checkpointTimes[slot * timesPerResult + index];
+    }
+
+    /**
+     * Gets the elapsed time of the result in a slot.
+     *
+     * @param slot The slot.
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedTime(int slot) {
+        return elapsedTimes[slot];
+    }
+
+    /**
+     * Gets the adjusted elapsed time of the result in a slot.
+     *
+     * @param slot The slot.
+     * @return The adjusted elapsed time in nanoseconds.
+     */
+    public long getAdjustedElapsedTime(int slot) {
+        return adjustedElapsedTimes[slot];
+    }
+
+    /**
+     * Sets the adjusted elapsed time of the result in a slot.
+     *
+     * @param slot The slot.
+     * @param nanos The adjusted elapsed time in nanoseconds.
+     */
+    public void setAdjustedElapsedTime(int slot, long nanos) {
+        adjustedElapsedTimes[slot] = nanos;
+    }
+
+    /**
+     * Gets the rank of the result in a slot, by binary searching the ranked order for it.
+     *
+     * @param slot The slot.
+     * @return The rank, starting from 1.
+     */
+    public int getRank(int slot) {
+        return positionOfSlot(slot) + 1;
+    }
+
+    /**
+     * Gets the stage finishing points of the result in a slot.
+     *
+     * @param slot The slot.
+     * @return The points.
+     */
+    public int getPoints(int slot) {
+        return points[slot];
+    }
+
+    /**
+     * Sets the stage finishing points of the result in a slot.
+     *
+     * @param slot The slot.
+     * @param value The points.
+     */
+    public void setPoints(int slot, int value) {
+        points[slot] = value;
+    }
+
+    /**
+     * Gets the sprint points of the result in a slot.
+     *
+     * @param slot The slot.
+     * @return The sprint points.
+     */
+    public int getSprintPoints(int slot) {
+        return sprintPoints[slot];
+    }
+
+    /**
+     * Sets the sprint points of the result in a slot.
+     *
+     * @param slot The slot.
+     * @param value The sprint points.
+     */
+    public void setSprintPoints(int slot, int value) {
+        sprintPoints[slot] = value;
+    }
+
+    /**
+     * Gets the mountain points of the result in a slot.
+     *
+     * @param slot The slot.
+     * @return The mountain points.
+     */
+    public int getMountainPoints(int slot) {
+        return mountainPoints[slot];
+    }
+
+    /**
+     * Sets the mountain points of the result in a slot.
+     *
+     * @param slot The slot.
+     * @param value The mountain points.
+     */
+    public void setMountainPoints(int slot, int value) {
+        mountainPoints[slot] = value;
+    }
+
+    /**
+     * Binary searches the ranked order for the position a result belongs at.
+     *
+     * @param elapsedTime The elapsed time of the result.
+     * @param riderId The rider ID of the result, used to break ties.
+     * @return The position of the first ranked result that comes after the given one.
+     */
+    private int findPosition(long elapsedTime, int riderId) {
+        int low = 0;
+        int high = size - 1;
+        //the slot being inserted is not in rankedSlots yet, so only size - 1 entries are searched
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int slot = rankedSlots[middle];
+            int comparison = Long.compare(elapsedTimes[slot], elapsedTime);
+            if (comparison == 0) {
+                comparison = Integer.compare(riderIds[slot], riderId);
+            }
+            if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary searches the ranked order for the position of a slot that is already in it.
+     *
+     * @param slot The slot.
+     * @return The position of the slot in the ranked order, starting from 0.
+     */
+    private int positionOfSlot(int slot) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rankedBefore(rankedSlots[middle], slot)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Checks if the result in one slot is ranked ahead of the result in another.
+     *
+     * @param slot The slot being compared.
+     * @param otherSlot The slot being compared against.
+     * @return true if the first result has a lower elapsed time, or the same time and a lower rider ID.
+     */
+    private boolean rankedBefore(int slot, int otherSlot) {
+        if (elapsedTimes[slot] != elapsedTimes[otherSlot]) {
+            return elapsedTimes[slot] < elapsedTimes[otherSlot];
+        }
+        return riderIds[slot] < riderIds[otherSlot];
+    }
+
+    /**
+     * Sorts part of an array of slots into ranked order with a merge sort.
+     *
+     * @param slots The slots to sort.
+     * @param buffer Working space at least as long as the slots.
+     * @param from The first index to sort.
+     * @param to The index after the last one to sort.
+     */
+    private void sortSlots(int[] slots, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sortSlots(slots, buffer, from, middle);
+        sortSlots(slots, buffer, middle, to);
+        System.arraycopy(slots, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || (left < middle && !rankedBefore(buffer[right], buffer[left]))) {
+                slots[i] = buffer[left++];
+            } else {
+                slots[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Moves the result in one slot into another, updating the ranked order and rider index.
+     * The moved slot must still be in the ranked order so that its position can be found.
+     *
+     * @param from The slot to move.
+     * @param to The slot to move it into.
+     */
+    private void moveSlot(int from, int to) {
+        riderIds[to] = riderIds[from];
+        System.arraycopy(checkpointTimes, from * timesPerResult, checkpointTimes, to * timesPerResult, timesPerResult);
+        elapsedTimes[to] = elapsedTimes[from];
+        adjustedElapsedTimes[to] = adjustedElapsedTimes[from];
+        int position = positionOfSlot(from);
+        points[to] = points[from];
+        sprintPoints[to] = sprintPoints[from];
+        mountainPoints[to] = mountainPoints[from];
+        slotsByRiderId.put(riderIds[to], to);
+        rankedSlots[position] = to;
+    }
+
+    /**
+     * Grows every column so that the table can hold at least the given number of results.
+     *
+     * @param capacity The number of results the table must be able to hold.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= riderIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(INITIAL_CAPACITY, Math.max(capacity, riderIds.length * 2));
+        riderIds = Arrays.copyOf(riderIds, newCapacity);
+        checkpointTimes = Arrays.copyOf(checkpointTimes, newCapacity * timesPerResult);
+        elapsedTimes = Arrays.copyOf(elapsedTimes, newCapacity);
+        adjustedElapsedTimes = Arrays.copyOf(adjustedElapsedTimes, newCapacity);
+        points = Arrays.copyOf(points, newCapacity);
+        sprintPoints = Arrays.copyOf(sprintPoints, newCapacity);
+        mountainPoints = Arrays.copyOf(mountainPoints, newCapacity);
+        rankedSlots = Arrays.copyOf(rankedSlots, newCapacity);
+    }
+}
@@ -0,0 +1,374 @@
+package cycling;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the standings of a stage or race at one moment: the riders in ranked
+ * order, together with each rider's adjusted elapsed time, points and mountain points. For a
+ * stage the ranking is the stage ranking and the times are adjusted elapsed times; for a race
+ * it is the general classification and the times are totals over every stage.
+ * <p>
+ * Stages and races build a new Standings the first time they are asked for one after their
+ * results change, so a reader holding one always sees a consistent ranking and can read it by position without locking or allocating.
+ * The standings of a sealed race are read from its archive file instead, by a subclass.
+ * <p>
+ * Standings can also hold one page of a classification, such as ranks 51 to 100, so a caller
+ * showing a few rows at a time only copies those rows. Positions are then counted from the
+ * first row of the page, whose rank is {@link #getFirstRank()}.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+public class Standings {
+    /** Standings with no riders. */
+    public static final Standings EMPTY = new Standings(new int[0], new long[0], new int[0], new int[0]);
+
+    /** The rider IDs in ranked order. */
+    private final int[] riderIds;
+    /** The adjusted elapsed time at each position, in nanoseconds. */
+    private final long[] adjustedElapsedTimes;
+    /** The points (including sprint points) at each position. */
+    private final int[] points;
+    /** The mountain points at each position. */
+    private final int[] mountainPoints;
+    /** The rank of the rider at position 0, which is 1 unless this is a later page of a classification. */
+    private final int firstRank;
+    /** The number of riders in the whole classification this is a page of. */
+    private final int classificationSize;
+    /** Each rider ID shifted above its position and sorted, built the first time a rider's rank is looked up. */
+    private volatile long[] riderIdsAndPositions;
+
+    /**
+     * Creates standings from columns in ranked order. The arrays are kept, not copied, so the
+     * caller must not change them afterwards.
+     *
+     * @param riderIds The rider IDs in ranked order.
+     * @param adjustedElapsedTimes The adjusted elapsed time at each position, in nanoseconds.
+     * @param points The points at each position.
+     * @param mountainPoints The mountain points at each position.
+     */
+    Standings(int[] riderIds, long[] adjustedElapsedTimes, int[] points, int[] mountainPoints) {
+        this(riderIds, adjustedElapsedTimes, points, mountainPoints, 1, riderIds.length);
+    }
+
+    /**
+     * Creates a page of a classification from columns in ranked order. The arrays are kept, not
+     * copied, so the caller must not change them afterwards.
+     *
+     * @param riderIds The rider IDs in ranked order.
+     * @param adjustedElapsedTimes The adjusted elapsed time at each position, in nanoseconds.
+     * @param points The points at each position.
+     * @param mountainPoints The mountain points at each position.
+     * @param firstRank The rank of the first rider in the page, starting from 1.
+     * @param classificationSize The number of riders in the whole classification.
+     */
+    Standings(int[] riderIds, long[] adjustedElapsedTimes, int[] points, int[] mountainPoints, int firstRank,
+            int classificationSize) {
+        this.riderIds = riderIds;
+        this.adjustedElapsedTimes = adjustedElapsedTimes;
+        this.points = points;
+        this.mountainPoints = mountainPoints;
+        this.firstRank = firstRank;
+        this.classificationSize = classificationSize;
+    }
+
+    /**
+     * Creates standings that keep no columns of their own, for subclasses that read their
+     * columns from somewhere else and override every accessor.
+     */
+    Standings() {
+        this(new int[0], new long[0], new int[0], new int[0]);
+    }
+
+    /**
+     * Gets the number of riders in the standings.
+     *
+     * @return The number of riders.
+     */
+    public int size() {
+        return riderIds.length;
+    }
+
+    /**
+     * Gets the rank of the rider at position 0.
+     *
+     * @return The rank, starting from 1, which is only more than 1 for a later page of a classification.
+     */
+    public int getFirstRank() {
+        return firstRank;
+    }
+
+    /**
+     * Gets the number of riders in the whole classification, for working out how many pages it
+     * has. For standings that are not a page it is the same as {@link #size()}.
+     *
+     * @return The number of riders in the classification.
+     */
+    public int getClassificationSize() {
+        return classificationSize;
+    }
+
+    /**
+     * Copies one page of the standings, such as rows 51 to 100 of a results table.
+     *
+     * @param offset The position of the first rider in the page, starting from 0.
+     * @param limit The most riders the page can hold.
+     * @return Standings holding at most limit riders from the offset onwards, which are empty if
+     *         the offset is past the last rider.
+     * @throws IllegalArgumentException If the offset or limit is negative.
+     */
+    public Standings getPage(int offset, int limit) {
+        int count = pageSize(size(), offset, limit);
+        int[] pageRiderIds = new int[count];
+        long[] pageTimes = new long[count];
+        int[] pagePoints = new int[count];
+        int[] pageMountainPoints = new int[count];
+        for (int i = 0; i < count; i++) {
+            pageRiderIds[i] = getRiderId(offset + i);
+            pageTimes[i] = getAdjustedElapsedTime(offset + i);
+            pagePoints[i] = getPoints(offset + i);
+            pageMountainPoints[i] = getMountainPoints(offset + i);
+        }
+        return new Standings(pageRiderIds, pageTimes, pagePoints, pageMountainPoints, getFirstRank() + offset,
+                getClassificationSize());
+    }
+
+    /**
+     * Works out how many riders a page holds.
+     *
+     * @param size The number of riders the page is taken from.
+     * @param offset The position of the first rider in the page.
+     * @param limit The most riders the page can hold.
+     * @return The number of riders in the page.
+     * @throws IllegalArgumentException If the offset or limit is negative.
+     */
+    static int pageSize(int size, int offset, int limit) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset of a page cannot be negative: " + offset);
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("The number of riders in a page cannot be negative: " + limit);
+        }
+        return Math.max(0, Math.min(limit, size - offset));
+    }
+
+    /**
+     * Finds a rider's rank. The first lookup sorts the rider IDs with their positions, in
+     * O(n log n) time, and every later one is a binary search over them.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's rank, starting from 1, or 0 if the rider is not in the standings.
+     */
+    public int getRank(int riderId) {
+        long[] index = riderIdsAndPositions;
+        if (index == null) {
+            int[] ids = new int[size()];
+            for (int position = 0; position < ids.length; position++) {
+                ids[position] = getRiderId(position);
+            }
+            index = indexByRiderId(ids);
+            riderIdsAndPositions = index;
+        }
+        int position = positionOf(index, riderId);
+        return position == -1 ? 0 : getFirstRank() + position;
+    }
+
+    /**
+     * Builds an index for finding riders' positions in an order of rider IDs: each rider ID
+     * shifted above its position, sorted.
+     *
+     * @param riderIds The rider IDs, in order.
+     * @return The index, for {@link #positionOf(long[], int)}.
+     */
+    static long[] indexByRiderId(int[] riderIds) {
+        //rider IDs are non-negative ints, so sorting the packed values sorts by rider ID
+        long[] index = new long[riderIds.length];
+        for (int position = 0; position < index.length; position++) {
+            index[position] = ((long) riderIds[position] << 32) | position;
+        }
+        Arrays.sort(index);
+        return index;
+    }
+
+    /**
+     * Finds a rider's position by binary search in an index built by {@link #indexByRiderId(int[])}.
+     *
+     * @param index The index.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 0, or -1 if the rider is not in the index.
+     */
+    static int positionOf(long[] index, int riderId) {
+        int low = 0;
+        int high = index.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = (int) (index[middle] >>> 32);
+            if (id < riderId) {
+                low = middle + 1;
+            } else if (id > riderId) {
+                high = middle - 1;
+            } else {
+                return (int) index[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the ID of the rider at a position.
+     *
+     * @param position The position, starting from 0 for the leader.
+     * @return The rider ID.
+     */
+    public int getRiderId(int position) {
+        return riderIds[position];
+    }
+
+    /**
+     * Gets the adjusted elapsed time of the rider at a position.
+     *
+     * @param position The position, starting from 0 for the leader.
+     * @return The adjusted elapsed time in nanoseconds.
+     */
+    public long getAdjustedElapsedTime(int position) {
+        return adjustedElapsedTimes[position];
+    }
+
+    /**
+     * Gets the points, including sprint points, of the rider at a position.
+     *
+     * @param position The position, starting from 0 for the leader.
+     * @return The points.
+     */
+    public int getPoints(int position) {
+        return points[position];
+    }
+
+    /**
+     * Gets the mountain points of the rider at a position.
+     *
+     * @param position The position, starting from 0 for the leader.
+     * @return The mountain points.
+     */
+    public int getMountainPoints(int position) {
+        return mountainPoints[position];
+    }
+
+    /**
+     * Copies the rider IDs in ranked order.
+     *
+     * @return A new array of rider IDs.
+     */
+    public int[] getRiderIds() {
+        return riderIds.clone();
+    }
+
+    /**
+     * Copies the IDs of the first riders in ranked order.
+     *
+     * @param limit The number of riders asked for.
+     * @return A new array of at most limit rider IDs.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    public int[] getTopRiderIds(int limit) {
+        int[] top = new int[TopSelection.count(size(), limit)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = getRiderId(i);
+        }
+        return top;
+    }
+
+    /**
+     * Picks the riders with the most points, including sprint points, without ordering the rest.
+     * Riders with the same points keep their ranked order.
+     *
+     * @param limit The number of riders asked for.
+     * @return A new array of at most limit rider IDs, the rider with the most points first.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    public int[] getTopRiderIdsByPoints(int limit) {
+        return toRiderIds(TopSelection.highest(size(), limit, this::getPoints));
+    }
+
+    /**
+     * Picks the riders with the most mountain points, without ordering the rest. Riders with the
+     * same mountain points keep their ranked order.
+     *
+     * @param limit The number of riders asked for.
+     * @return A new array of at most limit rider IDs, the rider with the most mountain points first.
+     * @throws IllegalArgumentException If the number of riders asked for is negative.
+     */
+    public int[] getTopRiderIdsByMountainPoints(int limit) {
+        return toRiderIds(TopSelection.highest(size(), limit, this::getMountainPoints));
+    }
+
+    /**
+     * This helper method replaces positions with the IDs of the riders at them.
+     *
+     * @param positions The positions, which are overwritten.
+     * @return The same array, now holding rider IDs.
+     */
+    private int[] toRiderIds(int[] positions) {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = getRiderId(positions[i]);
+        }
+        return positions;
+    }
+
+    /**
+     * Copies the adjusted elapsed times in ranked order as times of day, which only works for
+     * times under 24 hours.
+     *
+     * @return A new array of LocalTime objects.
+     */
+    public LocalTime[] getAdjustedElapsedLocalTimes() {
+        LocalTime[] times = new LocalTime[adjustedElapsedTimes.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = LocalTime.ofNanoOfDay(adjustedElapsedTimes[i]);
+        }
+        return times;
+    }
+
+    /**
+     * Copies the adjusted elapsed times in ranked order as durations.
+     *
+     * @return A new array of Duration objects.
+     */
+    public Duration[] getAdjustedElapsedDurations() {
+        Duration[] durations = new Duration[adjustedElapsedTimes.length];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = Duration.ofNanos(adjustedElapsedTimes[i]);
+        }
+        return durations;
+    }
+
+    /**
+     * Copies the points in ranked order.
+     *
+     * @return A new array of points.
+     */
+    public int[] getPoints() {
+        return points.clone();
+    }
+
+    /**
+     * Copies the mountain points in ranked order.
+     *
+     * @return A new array of mountain points.
+     */
+    public int[] getMountainPoints() {
+        return mountainPoints.clone();
+    }
+
+    /**
+     * Returns a string listing the riders and times in the standings.
+     *
+     * @return A string representation of the standings.
+     */
+    @Override
+    public String toString() {
+        return "Standings riders=" + Arrays.toString(riderIds) + " times=" + Arrays.toString(adjustedElapsedTimes);
+    }
+}
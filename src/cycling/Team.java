@@ -63,6 +63,15 @@ public class Team implements Serializable {
         return name;
     }
 
+    /**
+     * Gets the description of the team.
+     *
+     * @return The description of the team.
+     */
+    public String getDescription(){
+        return description;
+    }
+
     /**
      * Retrieves an array of all riders in the team.
      *
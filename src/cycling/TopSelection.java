@@ -0,0 +1,152 @@
+package cycling;
+
+/**
+ * Picks the first few places of a classification without ranking the whole field. The stage
+ * ranking and the general classification are kept in order, so their first places are simply
+ * copied, but the points and mountain classifications are only ordered when asked for. For those,
+ * the best riders are kept in a heap no bigger than the number asked for while the field is read
+ * once, which takes O(n log k) time instead of the O(n log n) of sorting every rider.
+ *
+ * @author Olly Johnson and Laith Al Qudah
+ * @version 1.0
+ */
+final class TopSelection {
+    /**
+     * Gives the score of the rider at each position of the order a classification is picked from.
+     */
+    interface Scores {
+        /**
+         * Gets a score.
+         *
+         * @param position The position, starting from 0.
+         * @return The score of the rider at that position; higher scores are ranked first.
+         */
+        int at(int position);
+    }
+
+    /**
+     * Not used, as the class only has static methods.
+     */
+    private TopSelection() {
+    }
+
+    /**
+     * Works out how many places to return when some are asked for.
+     *
+     * @param size The number of riders in the classification.
+     * @param limit The number of places asked for.
+     * @return The smaller of the two.
+     * @throws IllegalArgumentException If the number of places asked for is negative.
+     */
+    static int count(int size, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The number of places asked for cannot be negative: " + limit);
+        }
+        return Math.min(size, limit);
+    }
+
+    /**
+     * Finds the positions of the riders with the highest scores, best first. Riders with the same
+     * score keep the order of their positions, as a stable sort of every rider by score would.
+     *
+     * @param size The number of riders.
+     * @param limit The number of places asked for.
+     * @param scores The score of the rider at each position.
+     * @return The positions of the best riders, at most limit of them.
+     * @throws IllegalArgumentException If the number of places asked for is negative.
+     */
+    static int[] highest(int size, int limit, Scores scores) {
+        int[] heap = new int[count(size, limit)];
+        if (heap.length == 0) {
+            return heap;
+        }
+        //a heap with the worst of the best riders found so far at the top
+        int filled = 0;
+        int position = 0;
+        for (; position < size && filled < heap.length; position++) {
+            heap[filled] = position;
+            siftUp(heap, filled++, scores);
+        }
+        //the score a rider must beat to get in; a later position with the same score is ranked behind
+        int threshold = scores.at(heap[0]);
+        for (; position < size; position++) {
+            if (scores.at(position) > threshold) {
+                heap[0] = position;
+                siftDown(heap, 0, heap.length, scores);
+                threshold = scores.at(heap[0]);
+            }
+        }
+        //taking the worst off the top and putting it at the end leaves the best first
+        for (int end = heap.length - 1; end > 0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(heap, 0, end, scores);
+        }
+        return heap;
+    }
+
+    /**
+     * This helper method checks if the rider at one position is ranked behind the rider at another.
+     *
+     * @param position The position being compared.
+     * @param other The position being compared against.
+     * @param scores The score of the rider at each position.
+     * @return true if the first rider has a lower score, or the same score and a later position.
+     */
+    private static boolean rankedBehind(int position, int other, Scores scores) {
+        int score = scores.at(position);
+        int otherScore = scores.at(other);
+        if (score != otherScore) {
+            return score < otherScore;
+        }
+        return position > other;
+    }
+
+    /**
+     * This helper method moves an entry of the heap up until the entry above it is ranked behind it.
+     *
+     * @param heap The heap.
+     * @param index The index of the entry to move.
+     * @param scores The score of the rider at each position.
+     */
+    private static void siftUp(int[] heap, int index, Scores scores) {
+        int position = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!rankedBehind(position, heap[parent], scores)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = position;
+    }
+
+    /**
+     * This helper method moves an entry of the heap down until both entries below it are ranked ahead of it.
+     *
+     * @param heap The heap.
+     * @param index The index of the entry to move.
+     * @param end The number of entries in the heap.
+     * @param scores The score of the rider at each position.
+     */
+    private static void siftDown(int[] heap, int index, int end, Scores scores) {
+        int position = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= end) {
+                break;
+            }
+            if (child + 1 < end && rankedBehind(heap[child + 1], heap[child], scores)) {
+                child++;
+            }
+            if (!rankedBehind(heap[child], position, scores)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = position;
+    }
+}